@@ -0,0 +1,89 @@
+package com.recursivedescentmathparser.jmh;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.Expression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.VariableFrame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bytes allocated per evaluation through each evaluation API; read the {@code gc.alloc.rate.norm} column.
+ * {@link #main} runs this class with the GC profiler, or pass {@code -prof gc} to the benchmarks jar.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AllocationBenchmark {
+
+    @Param({"sqrt(sqr(x) + sqr(y))", "E^Pi + Pi^E + x^2 - 2*x*y + y^2"})
+    public String formula;
+
+    private MathParser parser;
+    private Expression parsed;
+    private CompiledExpression compiled;
+    private VariableFrame frame;
+    private double[] variables;
+    private int xSlot;
+    private double x;
+
+    @Setup
+    public void setUp() {
+        this.parser = Formulas.newParser();
+        this.parsed = this.parser.parse(this.formula);
+        this.compiled = this.parser.compile(this.formula);
+        this.frame = this.compiled.newFrame();
+        this.xSlot = this.frame.indexOf("x");
+        this.variables = new double[this.compiled.getVariableCount()];
+        for (int slot = 0; slot < this.variables.length; ++slot) {
+            this.variables[slot] = this.compiled.getDefaultValue(slot);
+        }
+    }
+
+    private double nextX() {
+        this.x = this.x > 10 ? 0 : this.x + 0.25;
+        return this.x;
+    }
+
+    @Benchmark
+    public double parserVariables() {
+        this.parser.addVariable("x", nextX());
+        return this.parsed.evaluate();
+    }
+
+    @Benchmark
+    public double frame() {
+        return this.compiled.evaluate(this.frame.set(this.xSlot, nextX()));
+    }
+
+    @Benchmark
+    public double array() {
+        this.variables[this.xSlot] = nextX();
+        return this.compiled.evaluate(this.variables);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AllocationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
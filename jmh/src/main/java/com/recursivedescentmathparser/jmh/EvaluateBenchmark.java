@@ -0,0 +1,94 @@
+package com.recursivedescentmathparser.jmh;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.Expression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.codegen.BytecodeCompiler;
+import com.recursivedescentmathparser.parser.interpreter.StackCompiler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of evaluating one expression, per formula and evaluator:
+ * {@code tree} walks the AST, {@code stack} runs a {@link StackCompiler} program and {@code bytecode} runs
+ * the class generated by {@link BytecodeCompiler}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class EvaluateBenchmark {
+
+    @Param({"2+3*5-38/2+28/2", "sqrt(sqr(x) + sqr(y))", "(sin(x))^2+(cos(x))^2",
+            "max(sin(x),sin(y)) + log(49,7) + hypot(x,y)", "E^Pi + Pi^E + x^2 - 2*x*y + y^2"})
+    public String formula;
+
+    @Param({"tree", "stack", "bytecode"})
+    public String evaluator;
+
+    private CompiledExpression expression;
+    private Expression parsed;
+    private double[] variables;
+    private int iteration;
+
+    @Setup
+    public void setUp() {
+        final MathParser parser = Formulas.newParser();
+        final CompiledExpression compiled = parser.compile(this.formula);
+        switch (this.evaluator) {
+            case "tree":
+                this.expression = compiled;
+                break;
+            case "stack":
+                this.expression = new StackCompiler().compile(compiled);
+                break;
+            case "bytecode":
+                this.expression = new BytecodeCompiler().compile(compiled);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown evaluator " + this.evaluator);
+        }
+        this.parsed = parser.parse(this.formula);
+        this.variables = new double[compiled.getVariableCount()];
+        for (int slot = 0; slot < this.variables.length; ++slot) {
+            this.variables[slot] = compiled.getDefaultValue(slot);
+        }
+    }
+
+    @Benchmark
+    public double evaluate() {
+        return this.expression.evaluate(this.variables);
+    }
+
+    /**
+     * Same, with the first variable changing on every call so that no evaluation repeats the previous one.
+     */
+    @Benchmark
+    public double evaluateVarying() {
+        if (this.variables.length > 0) {
+            this.variables[0] = 0.5 + (this.iteration++ & 1023) * 1e-3;
+        }
+        return this.expression.evaluate(this.variables);
+    }
+
+    /**
+     * {@link Expression#evaluate()} on the parser's variables; always the tree, so it only depends on the formula.
+     */
+    @Benchmark
+    public double evaluateParsed() {
+        return this.parsed.evaluate();
+    }
+}
@@ -0,0 +1,47 @@
+package com.recursivedescentmathparser.jmh;
+
+import com.recursivedescentmathparser.parser.MathParser;
+
+/**
+ * Formulas in the style of MathParserTest, shared by the benchmarks.
+ */
+final class Formulas {
+    static final String[] TERMS = {
+            "2+3*5-38/2+28/2",
+            "3e+4+2e-7*(12e-2-5e+7)",
+            "sqrt(sqr(x) + sqr(y))",
+            "5e-1*(exp(x) + exp(-x))",
+            "(sin(x))^2+(cos(x))^2",
+            "180*arcsin(x/100)/Pi",
+            "(x!=7)*8+(y<14)*100",
+            "max(sin(x),sin(y)) + log(49,7) + hypot(x,y)",
+            "E^Pi + Pi^E + x^2 - 2*x*y + y^2"
+    };
+
+    private Formulas() {
+    }
+
+    /**
+     * @return a formula of {@code terms} parenthesized terms, cycling through {@link #TERMS}
+     */
+    static String ofSize(final int terms) {
+        final StringBuilder formula = new StringBuilder();
+        for (int i = 0; i < terms; ++i) {
+            if (i > 0) {
+                formula.append('+');
+            }
+            formula.append('(').append(TERMS[i % TERMS.length]).append(')');
+        }
+        return formula.toString();
+    }
+
+    /**
+     * @return a parser with the variables {@code x} and {@code y} the formulas use
+     */
+    static MathParser newParser() {
+        final MathParser parser = new MathParser();
+        parser.addVariable("x", 0.5);
+        parser.addVariable("y", 1.5);
+        return parser;
+    }
+}
@@ -0,0 +1,79 @@
+package com.recursivedescentmathparser.jmh;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.optimizer.FormulaSet;
+import com.recursivedescentmathparser.parser.optimizer.LiveFormulaSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A dashboard: {@code formulas} formulas over 100 inputs, each reading three of them. Every operation changes one
+ * input and reads all results, either re-evaluating everything ({@link FormulaSet}) or recomputing only what
+ * depends on the input ({@link LiveFormulaSet}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class LiveFormulaBenchmark {
+    private static final int INPUTS = 100;
+
+    @Param({"1000", "5000"})
+    public int formulas;
+
+    private FormulaSet set;
+    private LiveFormulaSet live;
+    private double[] frame;
+    private double[] results;
+    private int step;
+
+    @Setup
+    public void setUp() {
+        final MathParser parser = new MathParser();
+        for (int i = 0; i < INPUTS; ++i) {
+            parser.addVariable("in" + i, i);
+        }
+        final Map<String, CompiledExpression> compiled = new LinkedHashMap<>();
+        for (int i = 0; i < this.formulas; ++i) {
+            final String a = "in" + i % INPUTS, b = "in" + (i * 7 + 3) % INPUTS, c = "in" + (i * 13 + 5) % INPUTS;
+            compiled.put("f" + i, parser.compile("sqrt(" + a + "*" + a + "+" + b + "*" + b + ")*sin(" + c + ")+"
+                    + (i % 10) + "*max(" + a + "," + c + ")"));
+        }
+        this.set = FormulaSet.compile(parser.getRegistry(), compiled);
+        this.live = LiveFormulaSet.compile(parser.getRegistry(), compiled);
+        this.frame = this.set.newFrame();
+        this.results = new double[this.formulas];
+    }
+
+    @Benchmark
+    public double[] fullReevaluation() {
+        final int input = this.step++ % INPUTS;
+        this.frame[input] += 0.5;
+        this.set.evaluate(this.frame, this.results);
+        return this.results;
+    }
+
+    @Benchmark
+    public double[] live() {
+        final int input = this.step++ % INPUTS;
+        this.live.set(input, this.live.getVariable(input) + 0.5);
+        this.live.evaluate(this.results);
+        return this.results;
+    }
+}
@@ -0,0 +1,57 @@
+package com.recursivedescentmathparser.jmh;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.codegen.BytecodeCompiler;
+import com.recursivedescentmathparser.parser.metrics.ParserMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of instrumenting a generated-bytecode formula: not instrumented, instrumented but disabled, timing one
+ * evaluation in 64 and timing every evaluation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class MetricsBenchmark {
+
+    @Param({"none", "disabled", "sampled", "timed"})
+    public String metrics;
+
+    private CompiledExpression expression;
+    private double[] variables;
+
+    @Setup
+    public void setUp() {
+        final MathParser parser = Formulas.newParser();
+        final CompiledExpression compiled = new BytecodeCompiler().compile(parser.compile(Formulas.TERMS[2]));
+        final ParserMetrics parserMetrics = new ParserMetrics();
+        this.expression = this.metrics.equals("none") ? compiled : parserMetrics.instrument("formula", compiled);
+        parserMetrics.setEnabled(!this.metrics.equals("disabled"));
+        parserMetrics.setSampleInterval(this.metrics.equals("sampled") ? 64 : 1);
+        this.variables = new double[compiled.getVariableCount()];
+        for (int slot = 0; slot < this.variables.length; ++slot) {
+            this.variables[slot] = compiled.getDefaultValue(slot);
+        }
+    }
+
+    @Benchmark
+    public double evaluate() {
+        return this.expression.evaluate(this.variables);
+    }
+}
@@ -0,0 +1,84 @@
+package com.recursivedescentmathparser.jmh;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.batch.BatchEvaluator;
+import com.recursivedescentmathparser.parser.batch.ParallelBatchEvaluator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling of {@link ParallelBatchEvaluator} with the number of worker threads, against one
+ * {@link BatchEvaluator} on the calling thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ParallelBatchBenchmark {
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private BatchEvaluator sequential;
+    private ParallelBatchEvaluator parallel;
+    private ForkJoinPool pool;
+    private double[][] columns;
+    private double[] out;
+
+    @Setup
+    public void setUp() {
+        final MathParser parser = new MathParser();
+        parser.addVariable("x", 0);
+        parser.addVariable("y", 0);
+        final CompiledExpression expression = parser.compile("sqrt(sqr(x) + sqr(y)) * exp(-x/10) + max(sin(x), y)");
+        this.columns = new double[2][this.rows];
+        for (int row = 0; row < this.rows; ++row) {
+            this.columns[expression.indexOf("x")][row] = row * 1e-6;
+            this.columns[expression.indexOf("y")][row] = (row % 1000) * 1e-3;
+        }
+        this.out = new double[this.rows];
+        this.sequential = new BatchEvaluator(expression);
+        this.pool = new ForkJoinPool(this.threads);
+        this.parallel = new ParallelBatchEvaluator(expression, this.pool,
+                ParallelBatchEvaluator.DEFAULT_MIN_CHUNK_SIZE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.pool.shutdown();
+    }
+
+    /**
+     * Does not depend on {@code threads}; the baseline for {@link #parallel()}.
+     */
+    @Benchmark
+    public double[] sequential() {
+        this.sequential.evaluate(this.columns, this.out);
+        return this.out;
+    }
+
+    @Benchmark
+    public double[] parallel() {
+        this.parallel.evaluate(this.columns, this.out);
+        return this.out;
+    }
+}
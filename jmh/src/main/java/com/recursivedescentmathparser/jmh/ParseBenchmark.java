@@ -0,0 +1,56 @@
+package com.recursivedescentmathparser.jmh;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.Expression;
+import com.recursivedescentmathparser.parser.ExpressionCompiler;
+import com.recursivedescentmathparser.parser.MathParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse throughput for formulas of 1 to 64 MathParserTest-style terms, through the stateful parser and through
+ * the thread-safe compiler. No expression cache is set, so every operation parses.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+    @Param({"1", "4", "16", "64"})
+    public int terms;
+
+    private MathParser parser;
+    private ExpressionCompiler compiler;
+    private String formula;
+
+    @Setup
+    public void setUp() {
+        this.parser = Formulas.newParser();
+        this.compiler = this.parser.compiler();
+        this.formula = Formulas.ofSize(this.terms);
+    }
+
+    @Benchmark
+    public Expression parse() {
+        return this.parser.parse(this.formula);
+    }
+
+    @Benchmark
+    public CompiledExpression compile() {
+        return this.compiler.compile(this.formula);
+    }
+}
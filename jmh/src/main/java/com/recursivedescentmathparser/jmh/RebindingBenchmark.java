@@ -0,0 +1,114 @@
+package com.recursivedescentmathparser.jmh;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.Expression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.VariableFrame;
+import com.recursivedescentmathparser.parser.sampling.Sampler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The loops of {@code Main.main}: rebind a variable, then evaluate, for every point of a range.
+ * Each operation is a whole sweep (41 points for the parabola, 73 for the sine).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class RebindingBenchmark {
+
+    private MathParser parser;
+    private Expression parabola;
+    private Expression sinus;
+    private CompiledExpression compiledParabola;
+    private CompiledExpression compiledSinus;
+    private VariableFrame parabolaFrame;
+    private VariableFrame sinusFrame;
+    private int exisSlot;
+    private int angleSlot;
+    private Sampler parabolaSampler;
+    private Sampler sinusSampler;
+    private final double[] parabolaValues = new double[41];
+    private final double[] sinusValues = new double[73];
+
+    @Setup
+    public void setUp() {
+        this.parser = new MathParser();
+        this.parser.addVariable("exis", 3.0);
+        this.parabola = this.parser.parse("exis^2");
+        this.parser.addFunction("degToRad", angle -> Math.toRadians(angle));
+        this.parser.addVariable("angle", -2 * Math.PI);
+        this.sinus = this.parser.parse("sin(degToRad(angle))");
+
+        this.compiledParabola = this.parser.compile("exis^2");
+        this.compiledSinus = this.parser.compile("sin(degToRad(angle))");
+        this.parabolaFrame = this.compiledParabola.newFrame();
+        this.sinusFrame = this.compiledSinus.newFrame();
+        this.exisSlot = this.parabolaFrame.indexOf("exis");
+        this.angleSlot = this.sinusFrame.indexOf("angle");
+        this.parabolaSampler = new Sampler(this.compiledParabola, "exis");
+        this.sinusSampler = new Sampler(this.compiledSinus, "angle");
+    }
+
+    /**
+     * As in {@code Main.main}: {@link MathParser#addVariable} then {@link Expression#evaluate()}.
+     */
+    @Benchmark
+    public double parserVariables() {
+        double sum = 0;
+        for (double x = -20.0; x <= 20.0; ++x) {
+            this.parser.addVariable("exis", x);
+            sum += this.parabola.evaluate();
+        }
+        for (double angle = -180.0; angle <= 180; angle += 5) {
+            this.parser.addVariable("angle", angle);
+            sum += this.sinus.evaluate();
+        }
+        return sum;
+    }
+
+    /**
+     * The same sweeps with a {@link VariableFrame} per expression and slots resolved up front.
+     */
+    @Benchmark
+    public double frameSlots() {
+        double sum = 0;
+        for (double x = -20.0; x <= 20.0; ++x) {
+            sum += this.compiledParabola.evaluate(this.parabolaFrame.set(this.exisSlot, x));
+        }
+        for (double angle = -180.0; angle <= 180; angle += 5) {
+            sum += this.compiledSinus.evaluate(this.sinusFrame.set(this.angleSlot, angle));
+        }
+        return sum;
+    }
+
+    /**
+     * The same sweeps with a {@link Sampler} filling preallocated buffers.
+     */
+    @Benchmark
+    public double sampler() {
+        this.parabolaSampler.sample(-20, 20, this.parabolaValues);
+        this.sinusSampler.sample(-180, 180, this.sinusValues);
+        double sum = 0;
+        for (double value : this.parabolaValues) {
+            sum += value;
+        }
+        for (double value : this.sinusValues) {
+            sum += value;
+        }
+        return sum;
+    }
+}
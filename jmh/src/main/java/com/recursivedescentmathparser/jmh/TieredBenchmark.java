@@ -0,0 +1,65 @@
+package com.recursivedescentmathparser.jmh;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.codegen.BytecodeCompiler;
+import com.recursivedescentmathparser.parser.tiered.TieredCompiler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A hot formula whose {@code y} never changes: walked as a tree, compiled to bytecode, and tiered, which after
+ * the threshold runs bytecode with {@code y} folded in behind a guard.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class TieredBenchmark {
+
+    @Param({"tree", "bytecode", "tiered"})
+    public String evaluator;
+
+    private CompiledExpression expression;
+    private double[] variables;
+
+    @Setup
+    public void setUp() {
+        final MathParser parser = Formulas.newParser();
+        final CompiledExpression compiled = parser.compile(Formulas.TERMS[7]);
+        this.variables = new double[compiled.getFrameSize()];
+        for (int slot = 0; slot < compiled.getVariableCount(); ++slot) {
+            this.variables[slot] = compiled.getDefaultValue(slot);
+        }
+        if (this.evaluator.equals("bytecode")) {
+            this.expression = new BytecodeCompiler().compile(compiled);
+        } else if (this.evaluator.equals("tiered")) {
+            final TieredCompiler compiler = new TieredCompiler(parser.getRegistry()).withExecutor(Runnable::run);
+            this.expression = compiler.compile(compiled);
+            for (int i = 0; i < compiler.getThreshold(); ++i) {
+                this.expression.evaluate(this.variables);
+            }
+        } else {
+            this.expression = compiled;
+        }
+    }
+
+    @Benchmark
+    public double evaluate() {
+        this.variables[0] += 1e-9;
+        return this.expression.evaluate(this.variables);
+    }
+}
@@ -0,0 +1,79 @@
+package com.recursivedescentmathparser.jmh;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.codegen.BytecodeCompiler;
+import com.recursivedescentmathparser.parser.interpreter.StackCompiler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nested two-argument calls and {@code +} chains against the same computation as one variadic call:
+ * {@code max} of 8 values, a sum of 8 terms and a degree 6 polynomial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class VariadicBenchmark {
+    private static final String[][] FORMULAS = {
+            {"max(max(max(max(max(max(max(x, y), x*y), 1), sin(x)), y*y), x-y), 0.5)",
+                    "max(x, y, x*y, 1, sin(x), y*y, x-y, 0.5)"},
+            {"x + y + x*y + 1 + sin(x) + y*y + (x-y) + 0.5", "sum(x, y, x*y, 1, sin(x), y*y, x-y, 0.5)"},
+            {"1 + 2*x + 3*x^2 + 4*x^3 + 5*x^4 + 6*x^5 + 7*x^6", "poly(x, 1, 2, 3, 4, 5, 6, 7)"}
+    };
+
+    @Param({"max", "sum", "poly"})
+    public String computation;
+
+    @Param({"chain", "variadic"})
+    public String form;
+
+    @Param({"tree", "stack", "bytecode"})
+    public String evaluator;
+
+    private CompiledExpression expression;
+    private double[] variables;
+
+    @Setup
+    public void setUp() {
+        final MathParser parser = Formulas.newParser();
+        final int row = this.computation.equals("max") ? 0 : this.computation.equals("sum") ? 1 : 2;
+        final CompiledExpression compiled = parser.compile(FORMULAS[row][this.form.equals("chain") ? 0 : 1]);
+        switch (this.evaluator) {
+            case "tree":
+                this.expression = compiled;
+                break;
+            case "stack":
+                this.expression = new StackCompiler().compile(compiled);
+                break;
+            case "bytecode":
+                this.expression = new BytecodeCompiler().compile(compiled);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown evaluator " + this.evaluator);
+        }
+        this.variables = new double[compiled.getVariableCount()];
+        for (int slot = 0; slot < this.variables.length; ++slot) {
+            this.variables[slot] = compiled.getDefaultValue(slot);
+        }
+    }
+
+    @Benchmark
+    public double evaluate() {
+        return this.expression.evaluate(this.variables);
+    }
+}
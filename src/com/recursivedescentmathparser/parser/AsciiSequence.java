@@ -0,0 +1,59 @@
+package com.recursivedescentmathparser.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only {@link CharSequence} view of the ASCII bytes between a buffer's position and limit.
+ * The bytes are read in place with absolute gets, so neither the content nor the buffer's position is touched.
+ */
+final class AsciiSequence implements CharSequence {
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    private AsciiSequence(final ByteBuffer buffer, final int offset, final int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @return a view of {@code buffer} if it is plain ASCII, otherwise its UTF-8 decoding; the grammar itself is
+     * ASCII, so only custom operators or names with other characters pay for the decoded copy
+     */
+    static CharSequence of(final ByteBuffer buffer) {
+        for (int i = buffer.position(); i < buffer.limit(); ++i) {
+            if (buffer.get(i) < 0) {
+                return StandardCharsets.UTF_8.decode(buffer.duplicate());
+            }
+        }
+        return new AsciiSequence(buffer, buffer.position(), buffer.remaining());
+    }
+
+    @Override
+    public int length() {
+        return this.length;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        if (index < 0 || index >= this.length) throw new IndexOutOfBoundsException(String.valueOf(index));
+        return (char) this.buffer.get(this.offset + index);
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        if (start < 0 || end > this.length || start > end) {
+            throw new IndexOutOfBoundsException(start + ", " + end);
+        }
+        return new AsciiSequence(this.buffer, this.offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        final char[] chars = new char[this.length];
+        for (int i = 0; i < this.length; ++i) chars[i] = (char) this.buffer.get(this.offset + i);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,170 @@
+package com.recursivedescentmathparser.parser;
+
+/**
+ * Built-in functions and operators that have no direct {@link Math} counterpart.
+ * They are static methods rather than lambdas so that generated code can call them directly.
+ */
+public final class BuiltinFunctions {
+
+    private BuiltinFunctions() {
+    }
+
+    public static double ctg(final double arg) {
+        return 1.0 / Math.tan(arg);
+    }
+
+    public static double sec(final double arg) {
+        return 1.0 / Math.sin(arg);
+    }
+
+    public static double cosec(final double arg) {
+        return 1.0 / Math.cos(arg);
+    }
+
+    public static double arcsec(final double arg) {
+        return Math.asin(1 / arg);
+    }
+
+    public static double arccosec(final double arg) {
+        return Math.acos(1 / arg);
+    }
+
+    public static double arcctg(final double arg) {
+        return Math.atan(1 / arg);
+    }
+
+    public static double cth(final double arg) {
+        return 1.0 / Math.tanh(arg);
+    }
+
+    public static double sech(final double arg) {
+        return 1.0 / Math.sinh(arg);
+    }
+
+    public static double cosech(final double arg) {
+        return 1.0 / Math.cosh(arg);
+    }
+
+    public static double arcsech(final double arg) {
+        return MathParser.asinh(1 / arg);
+    }
+
+    public static double arccosech(final double arg) {
+        return MathParser.acosh(1 / arg);
+    }
+
+    public static double arccth(final double arg) {
+        return MathParser.atanh(1 / arg);
+    }
+
+    public static double sqr(final double arg) {
+        return arg * arg;
+    }
+
+    public static double cube(final double arg) {
+        return arg * arg * arg;
+    }
+
+    public static double log2(final double arg) {
+        return Math.log10(arg) / Math.log10(2);
+    }
+
+    public static double log4(final double arg) {
+        return Math.log10(arg) / Math.log10(4);
+    }
+
+    public static double log8(final double arg) {
+        return Math.log10(arg) / Math.log10(8);
+    }
+
+    public static double log16(final double arg) {
+        return Math.log10(arg) / Math.log10(16);
+    }
+
+    public static double greaterOrEqual(final double a, final double b) {
+        return (a >= b) ? 1.0 : 0;
+    }
+
+    public static double lessOrEqual(final double a, final double b) {
+        return (a <= b) ? 1.0 : 0;
+    }
+
+    public static double greater(final double a, final double b) {
+        return (a > b) ? 1.0 : 0;
+    }
+
+    public static double less(final double a, final double b) {
+        return (a < b) ? 1.0 : 0;
+    }
+
+    public static double equal(final double a, final double b) {
+        return Double.compare(a, b) == 0 ? 1.0 : 0;
+    }
+
+    public static double notEqual(final double a, final double b) {
+        return Double.compare(a, b) != 0 ? 1.0 : 0;
+    }
+
+    public static double exponent(final double a, final double b) {
+        return a * Math.pow(10, b);
+    }
+
+    public static double log(final double a, final double b) {
+        return Math.log(a) / Math.log(b);
+    }
+
+    /**
+     * Adds from left to right, so the result is the same as chaining {@code +}.
+     */
+    public static double sum(final double[] arguments, final int offset, final int count) {
+        if (count == 0) {
+            return 0;
+        }
+        double sum = arguments[offset];
+        for (int i = offset + 1; i < offset + count; ++i) {
+            sum += arguments[i];
+        }
+        return sum;
+    }
+
+    public static double avg(final double[] arguments, final int offset, final int count) {
+        return sum(arguments, offset, count) / count;
+    }
+
+    public static double min(final double[] arguments, final int offset, final int count) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        double min = arguments[offset];
+        for (int i = offset + 1; i < offset + count; ++i) {
+            min = Math.min(min, arguments[i]);
+        }
+        return min;
+    }
+
+    public static double max(final double[] arguments, final int offset, final int count) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        double max = arguments[offset];
+        for (int i = offset + 1; i < offset + count; ++i) {
+            max = Math.max(max, arguments[i]);
+        }
+        return max;
+    }
+
+    /**
+     * {@code poly(x, c0, c1, ..., cn)} is {@code c0 + c1*x + ... + cn*x^n}, evaluated by Horner's method.
+     */
+    public static double poly(final double[] arguments, final int offset, final int count) {
+        if (count < 2) {
+            return 0;
+        }
+        final double x = arguments[offset];
+        double result = arguments[offset + count - 1];
+        for (int i = offset + count - 2; i > offset; --i) {
+            result = result * x + arguments[i];
+        }
+        return result;
+    }
+}
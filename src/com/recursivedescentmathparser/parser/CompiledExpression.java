@@ -0,0 +1,187 @@
+package com.recursivedescentmathparser.parser;
+
+import com.recursivedescentmathparser.parser.ast.Node;
+import com.recursivedescentmathparser.parser.batch.BatchEvaluator;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parsed expression with its variables resolved to slots.
+ * The slot layout is fixed at parse time: slot {@code i} holds the variable {@code getVariableNames().get(i)},
+ * numbered in order of first appearance in the source.
+ */
+public class CompiledExpression {
+    private final Node root;
+    private final String[] variableNames;
+    private final double[] defaultValues;
+    private final int frameSize;
+    private final Evaluator evaluator;
+    private final ThreadLocal<double[]> scratchFrame;
+    private BatchEvaluator batchEvaluator;
+
+    CompiledExpression(final Node root, final String[] variableNames, final double[] defaultValues) {
+        this(root, variableNames, defaultValues, variableNames.length, root::evaluate);
+    }
+
+    private CompiledExpression(final Node root, final String[] variableNames, final double[] defaultValues,
+                               final int frameSize, final Evaluator evaluator) {
+        this.root = root;
+        this.variableNames = variableNames;
+        this.defaultValues = defaultValues;
+        this.frameSize = frameSize;
+        this.evaluator = evaluator;
+        this.scratchFrame = frameSize > variableNames.length
+                ? ThreadLocal.withInitial(() -> new double[frameSize])
+                : null;
+    }
+
+    /**
+     * Rebuilds an expression from its parts, e.g. when it is loaded from a serialized form.
+     * @param variableNames names of the variable slots, in slot order
+     * @param defaultValues default value of every variable slot
+     * @param frameSize number of variables plus the temporaries the tree stores with {@code LetNode}s
+     */
+    public static CompiledExpression of(final Node root, final List<String> variableNames,
+                                        final double[] defaultValues, final int frameSize) {
+        if (variableNames.size() != defaultValues.length) {
+            throw new IllegalArgumentException("Every variable needs a default value");
+        }
+        if (frameSize < variableNames.size()) {
+            throw new IllegalArgumentException("Frame size " + frameSize + " is smaller than the number of variables");
+        }
+        return new CompiledExpression(root, variableNames.toArray(new String[0]), defaultValues.clone(), frameSize,
+                root::evaluate);
+    }
+
+    public Node getRoot() {
+        return this.root;
+    }
+
+    public Evaluator getEvaluator() {
+        return this.evaluator;
+    }
+
+    /**
+     * @return an equivalent tree with the same slot layout, e.g. the output of an optimization pass
+     */
+    public CompiledExpression withRoot(final Node root) {
+        return withRoot(root, this.frameSize);
+    }
+
+    /**
+     * @param frameSize number of variables plus the temporaries the new tree stores with {@code LetNode}s
+     */
+    public CompiledExpression withRoot(final Node root, final int frameSize) {
+        return new CompiledExpression(root, this.variableNames, this.defaultValues, frameSize, root::evaluate);
+    }
+
+    /**
+     * @return the same expression, with the same slot layout, evaluated by another back end
+     */
+    public CompiledExpression withEvaluator(final Evaluator evaluator) {
+        return new CompiledExpression(this.root, this.variableNames, this.defaultValues, this.frameSize, evaluator);
+    }
+
+    public List<String> getVariableNames() {
+        return Collections.unmodifiableList(Arrays.asList(this.variableNames));
+    }
+
+    public int getVariableCount() {
+        return this.variableNames.length;
+    }
+
+    /**
+     * @return length of the arrays the evaluator works on: the variables followed by temporaries
+     */
+    public int getFrameSize() {
+        return this.frameSize;
+    }
+
+    /**
+     * @return slot of the variable or -1 if the expression does not use it
+     */
+    public int indexOf(final String varName) {
+        for (int slot = 0; slot < this.variableNames.length; ++slot) {
+            if (this.variableNames[slot].equals(varName)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return value the variable in this slot had when the expression was parsed
+     */
+    public double getDefaultValue(final int slot) {
+        return this.defaultValues[slot];
+    }
+
+    /**
+     * @return a frame holding the values the variables had when the expression was parsed
+     */
+    public VariableFrame newFrame() {
+        return new VariableFrame(this, Arrays.copyOf(this.defaultValues, this.frameSize));
+    }
+
+    /**
+     * @param variables values by slot, at least {@link #getVariableCount()} of them. If the array is at least
+     * {@link #getFrameSize()} long the temporaries are stored in it, otherwise in a per-thread scratch frame.
+     */
+    public double evaluate(final double[] variables) {
+        if (variables.length < this.frameSize) {
+            if (variables.length < this.variableNames.length) {
+                throw new IllegalArgumentException("Expected " + this.variableNames.length + " variables, got "
+                        + variables.length);
+            }
+            final double[] frame = this.scratchFrame.get();
+            System.arraycopy(variables, 0, frame, 0, this.variableNames.length);
+            return this.evaluator.evaluate(frame);
+        }
+        return this.evaluator.evaluate(variables);
+    }
+
+    /**
+     * @param frame created by this expression or by one it was derived from with {@link #withRoot}; a frame
+     * without room for this expression's temporaries is evaluated on a scratch copy
+     */
+    public double evaluate(final VariableFrame frame) {
+        if (frame.getOwner().variableNames != this.variableNames) {
+            throw new IllegalArgumentException("Frame was created by another expression");
+        }
+        return this.evaluate(frame.values());
+    }
+
+    /**
+     * Evaluates the expression for every row of columnar input, see {@link BatchEvaluator}.
+     * @param columns column {@code i} holds the values of slot {@code i}, or is null to use the default value
+     * @param out receives one result per row
+     */
+    public void evaluateBatch(final double[][] columns, final double[] out) {
+        BatchEvaluator evaluator = this.batchEvaluator;
+        if (evaluator == null) {
+            evaluator = new BatchEvaluator(this);
+            this.batchEvaluator = evaluator;
+        }
+        evaluator.evaluate(columns, out);
+    }
+
+    /**
+     * Same as {@link #evaluateBatch(double[][], double[])} with the columns given by variable name;
+     * variables without a column keep their default value.
+     */
+    public void evaluateBatch(final Map<String, double[]> columns, final double[] out) {
+        final double[][] bySlot = new double[this.variableNames.length][];
+        for (int slot = 0; slot < bySlot.length; ++slot) {
+            bySlot[slot] = columns.get(this.variableNames[slot]);
+        }
+        evaluateBatch(bySlot, out);
+    }
+
+    @Override
+    public String toString() {
+        return this.root.toString();
+    }
+}
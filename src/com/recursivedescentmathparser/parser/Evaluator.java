@@ -0,0 +1,10 @@
+package com.recursivedescentmathparser.parser;
+
+/**
+ * Evaluation strategy of a {@link CompiledExpression}: walks the node tree by default,
+ * other back ends (e.g. generated bytecode) plug in through {@link CompiledExpression#withEvaluator(Evaluator)}.
+ */
+@FunctionalInterface
+public interface Evaluator {
+    double evaluate(double[] variables);
+}
@@ -0,0 +1,121 @@
+package com.recursivedescentmathparser.parser;
+
+import com.recursivedescentmathparser.parser.cache.CacheScope;
+import com.recursivedescentmathparser.parser.cache.ExpressionCache;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Thread-safe counterpart of {@link MathParser}: an immutable function registry plus the names (and default values)
+ * of the variables expressions may refer to. {@link #compile(String)} can be called concurrently, and the
+ * {@link CompiledExpression}s it returns take their variable values as an argument, so a single compiled formula can be
+ * evaluated from many threads at once, each with its own {@link VariableFrame} or {@code double[]}.
+ */
+public final class ExpressionCompiler {
+    private final FunctionRegistry registry;
+    private final Map<String, Double> variables;
+    private final ExpressionCache cache;
+    private final ParseLimits limits;
+    private final CacheScope scope;
+    private final NameTable variableNames;
+    private final double[] defaultValues;
+
+    public ExpressionCompiler(final FunctionRegistry registry, final Map<String, Double> variables) {
+        this(registry, variables, null);
+    }
+
+    /**
+     * @param cache shared cache of compiled expressions, or null to parse on every call
+     */
+    public ExpressionCompiler(final FunctionRegistry registry, final Map<String, Double> variables,
+                              final ExpressionCache cache) {
+        this(registry, variables, cache, ParseLimits.DEFAULT);
+    }
+
+    /**
+     * @param limits bounds on the expressions this compiler accepts; an expression found in {@code cache} was
+     * checked against the limits of the compiler that parsed it, except for the length, which is checked first
+     */
+    public ExpressionCompiler(final FunctionRegistry registry, final Map<String, Double> variables,
+                              final ExpressionCache cache, final ParseLimits limits) {
+        this.registry = registry;
+        this.variables = Collections.unmodifiableMap(new HashMap<>(variables));
+        this.cache = cache;
+        this.limits = limits;
+        this.scope = cache != null ? CacheScope.of(this.variables) : null;
+        this.variableNames = new NameTable(this.variables.keySet().toArray(new String[0]));
+        this.defaultValues = new double[this.variables.size()];
+        for (int i = 0; i < this.defaultValues.length; ++i) {
+            this.defaultValues[i] = this.variables.get(this.variableNames.name(i));
+        }
+    }
+
+    public FunctionRegistry getRegistry() {
+        return this.registry;
+    }
+
+    public Map<String, Double> getVariables() {
+        return this.variables;
+    }
+
+    public ParseLimits getLimits() {
+        return this.limits;
+    }
+
+    public ExpressionCompiler withVariable(final String varName, final double defaultValue) {
+        final Map<String, Double> copy = new HashMap<>(this.variables);
+        copy.put(varName, defaultValue);
+        return new ExpressionCompiler(this.registry, copy, this.cache, this.limits);
+    }
+
+    public ExpressionCompiler withRegistry(final FunctionRegistry registry) {
+        return new ExpressionCompiler(registry, this.variables, this.cache, this.limits);
+    }
+
+    public ExpressionCompiler withCache(final ExpressionCache cache) {
+        return new ExpressionCompiler(this.registry, this.variables, cache, this.limits);
+    }
+
+    public ExpressionCompiler withLimits(final ParseLimits limits) {
+        return new ExpressionCompiler(this.registry, this.variables, this.cache, limits);
+    }
+
+
+    public CompiledExpression compile(final String expression) {
+        return this.compile((CharSequence) expression);
+    }
+
+    /**
+     * Compiles straight from {@code expression} without copying it, unless a cache is set: cache keys are Strings.
+     */
+    public CompiledExpression compile(final CharSequence expression) {
+        if (this.cache != null) {
+            this.limits.checkLength(expression);
+            return this.cache.get(expression.toString(), this.registry.getVersion(), this.scope, this::parse);
+        }
+        return parse(expression);
+    }
+
+    /**
+     * Compiles {@code length} characters of {@code expression} starting at {@code offset}.
+     */
+    public CompiledExpression compile(final char[] expression, final int offset, final int length) {
+        return this.compile(CharBuffer.wrap(expression, offset, length));
+    }
+
+    /**
+     * Compiles the ASCII or UTF-8 bytes between the buffer's position and limit; the position is not moved.
+     */
+    public CompiledExpression compile(final ByteBuffer expression) {
+        return this.compile(AsciiSequence.of(expression));
+    }
+
+    private CompiledExpression parse(final CharSequence expression) {
+        return new ExpressionParser(expression, this.registry, this.variableNames, i -> this.defaultValues[i],
+                this.limits).parse();
+    }
+}
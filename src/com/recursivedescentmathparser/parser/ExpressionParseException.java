@@ -0,0 +1,46 @@
+package com.recursivedescentmathparser.parser;
+
+/**
+ * Thrown when an expression cannot be parsed.
+ * It is still a {@link RuntimeException} with the parser's usual messages, and additionally tells where in the
+ * input the problem was found and what kind of problem it is.
+ */
+public class ExpressionParseException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    private final int position;
+    private final Reason reason;
+
+    public enum Reason {
+        /** the input does not follow the grammar */
+        SYNTAX,
+        /** an identifier or operator that is not declared */
+        UNKNOWN_NAME,
+        /** over {@link ParseLimits#getMaxLength()} */
+        TOO_LONG,
+        /** over {@link ParseLimits#getMaxDepth()} */
+        TOO_DEEP,
+        /** over {@link ParseLimits#getMaxNodes()} */
+        TOO_MANY_NODES
+    }
+
+    public ExpressionParseException(final String message, final int position) {
+        this(message, position, Reason.SYNTAX);
+    }
+
+    public ExpressionParseException(final String message, final int position, final Reason reason) {
+        super(message);
+        this.position = position;
+        this.reason = reason;
+    }
+
+    /**
+     * @return zero-based offset of the offending token in the parsed text
+     */
+    public int getPosition() {
+        return this.position;
+    }
+
+    public Reason getReason() {
+        return this.reason;
+    }
+}
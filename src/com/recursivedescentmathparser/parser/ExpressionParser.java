@@ -0,0 +1,427 @@
+package com.recursivedescentmathparser.parser;
+
+import com.recursivedescentmathparser.parser.ast.BiFunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.BinaryOperatorNode;
+import com.recursivedescentmathparser.parser.ast.ConditionalNode;
+import com.recursivedescentmathparser.parser.ast.ConstantNode;
+import com.recursivedescentmathparser.parser.ast.FunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.NegateNode;
+import com.recursivedescentmathparser.parser.ast.Node;
+import com.recursivedescentmathparser.parser.ast.VariableNode;
+import com.recursivedescentmathparser.parser.ast.VariadicFunctionCallNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Precedence climbing parser for a single input. Operators wait on an explicit stack until an operator that binds
+ * weaker, a closing bracket or the end of the input completes their operands, so nesting costs heap instead of
+ * call stack, every token is handled once and {@link ParseLimits} can stop the parse as soon as a limit is crossed.
+ * It reads the {@link TokenStream} produced by the registry's {@link Lexer}. All the parse state lives here,
+ * so a new instance is created for every call and the {@link FunctionRegistry} and variable declarations
+ * it reads from can be shared between threads.
+ * <p>
+ * From weakest to strongest: {@code ||}, {@code &&}, {@code + -}, {@code * /}, then the prefixes {@code + - !}
+ * and one-argument function names, then the registry's operators, which are right associative: {@code -x^2} is
+ * {@code -(x^2)} and {@code sin(x)^2} is {@code sin((x)^2)}.
+ */
+class ExpressionParser {
+    private static final Node TRUE = new ConstantNode(1.0), FALSE = new ConstantNode(0.0);
+
+    private static final int OR = 0, AND = 1, ADD = 2, SUBTRACT = 3, MULTIPLY = 4, DIVIDE = 5, OPERATOR = 6,
+            NEGATE = 7, NOT = 8, FUNCTION = 9, PARENTHESIS = 10, CALL = 11, CONDITIONAL = 12;
+    /** by kind; brackets have none, they are only closed by {@code )} */
+    private static final int[] PRECEDENCE = {1, 2, 3, 3, 4, 4, 5, 5, 5, 5, 0, 0, 0};
+
+    private final FunctionRegistry registry;
+    private final NameTable variables;
+    private final IntToDoubleFunction values;
+    private final ParseLimits limits;
+    private final TokenStream tokens;
+    private final Map<String, Integer> variableSlots = new LinkedHashMap<>();
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private final List<Node> operands = new ArrayList<>();
+    /** depth of the subtree of each operand on the operand stack */
+    private int[] operandDepths = new int[16];
+    /** deepest of the operands popped for the node being built */
+    private int childDepth;
+    private int nodeCount;
+
+    /**
+     * @param variables names of the declared variables
+     * @param values current value of a declared variable by its index in {@code variables}
+     */
+    ExpressionParser(final CharSequence inputExpression, final FunctionRegistry registry,
+                     final NameTable variables, final IntToDoubleFunction values, final ParseLimits limits) {
+        limits.checkLength(inputExpression);
+        this.registry = registry;
+        this.variables = variables;
+        this.values = values;
+        this.limits = limits;
+        this.tokens = registry.lexer().tokenize(inputExpression, variables);
+    }
+
+    CompiledExpression parse(){
+        boolean expectOperand = true;
+        while(expectOperand || this.tokens.kind() != TokenStream.END){
+            expectOperand = expectOperand ? this.readOperand() : this.readOperator();
+        }
+        final Pending bracket = this.reduce(0, false);
+        if(bracket != null) throw unclosed(bracket);
+        final Node root = this.operands.get(0);
+        final String[] variableNames = this.variableSlots.keySet().toArray(new String[0]);
+        final double[] defaultValues = new double[variableNames.length];
+        for(int i = 0; i < variableNames.length; ++i){
+            defaultValues[i] = this.values.applyAsDouble(
+                    this.variables.indexOf(variableNames[i], 0, variableNames[i].length()));
+        }
+        return new CompiledExpression(root, variableNames, defaultValues);
+    }
+
+    private ExpressionParseException error(final String message){
+        return error(message, ExpressionParseException.Reason.SYNTAX);
+    }
+
+    private ExpressionParseException error(final String message, final ExpressionParseException.Reason reason){
+        return new ExpressionParseException(message, this.tokens.start(), reason);
+    }
+
+    private boolean consume(final int charToConsume){
+        if(this.tokens.character() == charToConsume){
+            this.tokens.advance();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads a token where an operand starts.
+     * @return whether an operand is still expected, i.e. the token was a prefix or an opening bracket
+     */
+    private boolean readOperand(){
+        final String name = this.tokens.name();
+        final int kind = this.tokens.kind();
+        final int start = this.tokens.start();
+        if(consume('+')){
+            return true; //Unary plus
+        } else if(consume('-')){
+            this.push(NEGATE, null, null, start); //Unary minus
+            return true;
+        } else if(consume('!')){
+            this.push(NOT, null, null, start); //Logical not
+            return true;
+        } else if(consume('(')){
+            this.push(PARENTHESIS, null, null, start);
+            return true;
+        } else if(kind == TokenStream.NUMBER){
+            this.operand(new ConstantNode(this.tokens.number()));
+            this.tokens.advance();
+            return false;
+        } else if(kind == TokenStream.VARIABLE){
+            Integer slot = this.variableSlots.get(name);
+            if(slot == null){
+                slot = this.variableSlots.size();
+                this.variableSlots.put(name, slot);
+            }
+            this.operand(new VariableNode(name, slot));
+            this.tokens.advance();
+            return false;
+        } else if(kind == TokenStream.FUNCTION){
+            final Object function = this.tokens.implementation();
+            this.tokens.advance();
+            this.push(FUNCTION, name, function, start);
+            return true;
+        } else if(kind == TokenStream.BI_FUNCTION || kind == TokenStream.VARIADIC_FUNCTION){
+            final Object implementation = this.tokens.implementation();
+            this.tokens.advance();
+            if(!consume('(')) throw error("Missing ( after " + name);
+            this.push(CALL, name, implementation, start);
+            return true;
+        } else if(kind == TokenStream.UNKNOWN && "if".contentEquals(this.tokens.text())){
+            //if is only a keyword where no variable or function of that name is declared
+            this.tokens.advance();
+            if(!consume('(')) throw error("Missing ( after if");
+            this.push(CONDITIONAL, "if", null, start);
+            return true;
+        } else if(kind == TokenStream.UNKNOWN){
+            throw error("Unknown function or variable " + this.tokens.text(),
+                    ExpressionParseException.Reason.UNKNOWN_NAME);
+        }
+        throw error("Unexpected: " + (kind == TokenStream.END ? (char) -1 : this.tokens.text().charAt(0)));
+    }
+
+    /**
+     * Reads a token after a complete operand.
+     * @return whether an operand is expected next, i.e. the token was a binary operator or a comma
+     */
+    private boolean readOperator(){
+        final int start = this.tokens.start();
+        if(this.tokens.kind() == TokenStream.OPERATOR){
+            final DoubleBinaryOperator operatorFunction = (DoubleBinaryOperator) this.tokens.implementation();
+            if(operatorFunction == null){
+                throw error("Unknown operator " + this.tokens.text(), ExpressionParseException.Reason.UNKNOWN_NAME);
+            }
+            final String operator = this.tokens.name();
+            this.tokens.advance();
+            this.binary(OPERATOR, operator, operatorFunction, start);
+        } else if(consumePair('|')){
+            this.binary(OR, null, null, start);
+        } else if(consumePair('&')){
+            this.binary(AND, null, null, start);
+        } else if(consume('+')){
+            this.binary(ADD, null, null, start);
+        } else if(consume('-')){
+            this.binary(SUBTRACT, null, null, start);
+        } else if(consume('*')){
+            this.binary(MULTIPLY, null, null, start);
+        } else if(consume('/')){
+            this.binary(DIVIDE, null, null, start);
+        } else if(this.tokens.character() == ','){
+            final Pending bracket = this.reduce(0, false);
+            if(bracket == null || bracket.kind == PARENTHESIS || bracket.kind == CONDITIONAL && bracket.commas == 2){
+                throw unclosed(bracket);
+            }
+            this.tokens.advance();
+            ++bracket.commas;
+            return true;
+        } else if(this.tokens.character() == ')'){
+            final Pending bracket = this.reduce(0, false);
+            if(bracket == null || bracket.kind == CONDITIONAL && bracket.commas < 2) throw unclosed(bracket);
+            this.tokens.advance();
+            this.pending.pop();
+            this.close(bracket);
+            return false;
+        } else {
+            throw unclosed(this.innermostBracket());
+        }
+        return true;
+    }
+
+    /**
+     * Consumes a two-character logical operator, whose characters must be adjacent.
+     */
+    private boolean consumePair(final int character){
+        if(this.tokens.character() != character){
+            return false;
+        }
+        final int secondStart = this.tokens.start() + 1;
+        this.tokens.advance();
+        if(this.tokens.character() != character || this.tokens.start() != secondStart){
+            throw error("Expected " + (char) character + (char) character);
+        }
+        this.tokens.advance();
+        return true;
+    }
+
+    /**
+     * @return the error for a token that cannot continue the innermost open bracket, or the whole input if none
+     */
+    private ExpressionParseException unclosed(final Pending bracket){
+        if(bracket == null){
+            return error("Unexpected character: " + this.tokens.text().charAt(0));
+        } else if(bracket.kind == PARENTHESIS){
+            return error("Unbalanced parentheses");
+        } else if(bracket.kind == CALL){
+            return error("Missing ) after " + bracket.name + " arguments");
+        }
+        return error(bracket.commas == 0 ? "Missing , after if condition"
+                : bracket.commas == 1 ? "Missing , after if second argument" : "Missing ) after if third argument");
+    }
+
+    private Pending innermostBracket(){
+        for(Pending operator : this.pending){
+            if(PRECEDENCE[operator.kind] == 0){
+                return operator;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param start offset of the operator's token, reported if it is one level too deep
+     */
+    private void push(final int kind, final String name, final Object implementation, final int start){
+        if(this.pending.size() == this.limits.getMaxDepth()){
+            throw new ExpressionParseException("Expression is nested deeper than " + this.limits.getMaxDepth()
+                    + " levels", start, ExpressionParseException.Reason.TOO_DEEP);
+        }
+        this.pending.push(new Pending(kind, name, implementation));
+    }
+
+    private void binary(final int kind, final String name, final Object implementation, final int start){
+        this.reduce(PRECEDENCE[kind], kind == OPERATOR);
+        this.push(kind, name, implementation, start);
+    }
+
+    /**
+     * Applies the pending operators that bind at least as strongly as an operator of {@code precedence}, or more
+     * strongly if that operator is right associative.
+     * @return the innermost open bracket if the reduction stopped at one, otherwise null
+     */
+    private Pending reduce(final int precedence, final boolean rightAssociative){
+        while(!this.pending.isEmpty()){
+            final Pending top = this.pending.peek();
+            final int topPrecedence = PRECEDENCE[top.kind];
+            if(topPrecedence == 0){
+                return top;
+            }
+            if(topPrecedence < precedence || topPrecedence == precedence && rightAssociative){
+                return null;
+            }
+            this.pending.pop();
+            this.apply(top);
+        }
+        return null;
+    }
+
+    private void apply(final Pending operator){
+        final Node right = this.pop();
+        final int rightDepth = this.childDepth;
+        switch(operator.kind){
+            case NEGATE:
+                this.operand(new NegateNode(right));
+                return;
+            case NOT:
+                this.operand(new ConditionalNode(right, FALSE, TRUE));
+                return;
+            case FUNCTION:
+                this.operand(new FunctionCallNode(operator.name, (DoubleUnaryOperator) operator.implementation, right));
+                return;
+            default:
+                break;
+        }
+        final Node left = this.pop();
+        switch(operator.kind){
+            //|| and && are built as conditionals, so the right operand is only evaluated when it decides the result
+            case OR:
+                this.operand(new ConditionalNode(left, TRUE, this.truthValue(right, rightDepth)));
+                break;
+            case AND:
+                this.operand(new ConditionalNode(left, this.truthValue(right, rightDepth), FALSE));
+                break;
+            case ADD:
+                this.operand(new BinaryOperatorNode("+", BinaryOperatorNode.ADD, left, right));
+                break;
+            case SUBTRACT:
+                this.operand(new BinaryOperatorNode("-", BinaryOperatorNode.SUBTRACT, left, right));
+                break;
+            case MULTIPLY:
+                this.operand(new BinaryOperatorNode("*", BinaryOperatorNode.MULTIPLY, left, right));
+                break;
+            case DIVIDE:
+                this.operand(new BinaryOperatorNode("/", BinaryOperatorNode.DIVIDE, left, right));
+                break;
+            default:
+                this.operand(new BinaryOperatorNode(operator.name, (DoubleBinaryOperator) operator.implementation,
+                        left, right));
+        }
+    }
+
+    /**
+     * Builds the call or conditional of a closed bracket from the arguments on the operand stack.
+     */
+    private void close(final Pending bracket){
+        if(bracket.kind == PARENTHESIS){
+            return;
+        }
+        final Node[] arguments = new Node[bracket.commas + 1];
+        for(int i = arguments.length - 1; i >= 0; --i){
+            arguments[i] = this.pop();
+        }
+        if(bracket.kind == CONDITIONAL){
+            this.operand(new ConditionalNode(arguments[0], arguments[1], arguments[2]));
+        } else if(bracket.implementation instanceof DoubleBinaryOperator && arguments.length == 2){
+            this.operand(new BiFunctionCallNode(bracket.name, (DoubleBinaryOperator) bracket.implementation,
+                    arguments[0], arguments[1]));
+        } else {
+            final VariadicFunction function = bracket.implementation instanceof VariadicFunction
+                    ? (VariadicFunction) bracket.implementation
+                    : this.registry.getVariadicFunction(bracket.name);
+            if(function == null) throw error(bracket.name + " takes 2 arguments, got " + arguments.length);
+            this.operand(new VariadicFunctionCallNode(bracket.name, function, arguments));
+        }
+    }
+
+    private Node pop(){
+        final int top = this.operands.size() - 1;
+        this.childDepth = Math.max(this.childDepth, this.operandDepths[top]);
+        return this.operands.remove(top);
+    }
+
+    /**
+     * Pushes a node built from the operands popped since the previous node, one level deeper than the deepest
+     * of them. Left associative chains like {@code x+x+x} never wait on the operator stack, so the depth of the
+     * tree is checked here.
+     */
+    private void operand(final Node node){
+        final int depth = this.childDepth + 1;
+        this.childDepth = 0;
+        if(depth > this.limits.getMaxDepth()){
+            throw error("Expression is nested deeper than " + this.limits.getMaxDepth() + " levels",
+                    ExpressionParseException.Reason.TOO_DEEP);
+        }
+        final int top = this.operands.size();
+        if(top == this.operandDepths.length){
+            this.operandDepths = Arrays.copyOf(this.operandDepths, 2 * top);
+        }
+        this.operandDepths[top] = depth;
+        this.operands.add(this.counted(node));
+    }
+
+    private Node counted(final Node node){
+        if(++this.nodeCount > this.limits.getMaxNodes()){
+            throw error("Expression has more than " + this.limits.getMaxNodes() + " nodes",
+                    ExpressionParseException.Reason.TOO_MANY_NODES);
+        }
+        return node;
+    }
+
+    /**
+     * @param depth depth of {@code node}'s subtree
+     * @return {@code node} as 1 or 0, the way comparisons report their result
+     */
+    private Node truthValue(final Node node, final int depth){
+        if(node instanceof ConditionalNode && ((ConditionalNode) node).getWhenTrue().equals(TRUE)
+                && ((ConditionalNode) node).getWhenFalse().equals(FALSE)){
+            return node;
+        }
+        if(node instanceof BinaryOperatorNode && isComparison((BinaryOperatorNode) node)){
+            return node;
+        }
+        this.childDepth = Math.max(this.childDepth, depth + 1);
+        return this.counted(new ConditionalNode(node, TRUE, FALSE));
+    }
+
+    private static boolean isComparison(final BinaryOperatorNode node){
+        switch(node.getOperator()){
+            case ">=": case "<=": case ">": case "<": case "==": case "!=":
+                return node.getFunction() == FunctionRegistry.defaults().getBinaryOperator(node.getOperator());
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * An operator, prefix or open bracket waiting for its operands.
+     */
+    private static final class Pending {
+        private final int kind;
+        private final String name;
+        private final Object implementation;
+        /** commas read so far inside a call or conditional */
+        private int commas;
+
+        Pending(final int kind, final String name, final Object implementation) {
+            this.kind = kind;
+            this.name = name;
+            this.implementation = implementation;
+        }
+    }
+}
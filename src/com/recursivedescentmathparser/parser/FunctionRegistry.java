@@ -0,0 +1,371 @@
+package com.recursivedescentmathparser.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Immutable set of the functions, binary operators, two-argument and variadic functions an expression may use.
+ * Every modification returns a new registry, so one instance can be shared by any number of threads
+ * and parsers.
+ */
+public final class FunctionRegistry {
+    private static final AtomicLong versionCounter = new AtomicLong();
+    private static final FunctionRegistry DEFAULTS = createDefaults();
+
+    private final Map<String, DoubleUnaryOperator> functions;
+    private final Map<String, DoubleBinaryOperator> binaryOperators;
+    private final Map<String, DoubleBinaryOperator> biFunctions;
+    private final Map<String, VariadicFunction> variadicFunctions;
+    private final Set<Object> pureImplementations;
+    private final Map<Object, DoubleUnaryOperator> derivatives;
+    private final long version;
+    private volatile Lexer lexer;
+    private volatile long fingerprint;
+
+    private FunctionRegistry(final Map<String, DoubleUnaryOperator> functions,
+                             final Map<String, DoubleBinaryOperator> binaryOperators,
+                             final Map<String, DoubleBinaryOperator> biFunctions,
+                             final Map<String, VariadicFunction> variadicFunctions,
+                             final Set<Object> pureImplementations,
+                             final Map<Object, DoubleUnaryOperator> derivatives) {
+        this.functions = Collections.unmodifiableMap(functions);
+        this.binaryOperators = Collections.unmodifiableMap(binaryOperators);
+        this.biFunctions = Collections.unmodifiableMap(biFunctions);
+        this.variadicFunctions = Collections.unmodifiableMap(variadicFunctions);
+        this.pureImplementations = Collections.unmodifiableSet(pureImplementations);
+        this.derivatives = Collections.unmodifiableMap(derivatives);
+        this.version = versionCounter.incrementAndGet();
+    }
+
+    /**
+     * @return registry with the built-in functions and operators, all of them pure
+     */
+    public static FunctionRegistry defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * @return number that is different for every registry created in this JVM, so anything derived from a
+     * registry (e.g. cached expressions) can be keyed by it
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Unlike {@link #getVersion()} this is stable across JVMs: it hashes the registered names, their kinds and
+     * whether they are pure, but not the implementations, which cannot be compared between processes.
+     * @return 64-bit FNV-1a hash of the registered names
+     */
+    public long getFingerprint() {
+        long fingerprint = this.fingerprint;
+        if (fingerprint == 0) {
+            final List<String> entries = new ArrayList<>();
+            this.functions.forEach((name, function) -> entries.add("f:" + name + ":" + isPure(function)));
+            this.binaryOperators.forEach((name, function) -> entries.add("o:" + name + ":" + isPure(function)));
+            this.biFunctions.forEach((name, function) -> entries.add("b:" + name + ":" + isPure(function)));
+            this.variadicFunctions.forEach((name, function) -> entries.add("v:" + name + ":" + isPure(function)));
+            Collections.sort(entries);
+            fingerprint = 0xcbf29ce484222325L;
+            for (String entry : entries) {
+                for (int i = 0; i < entry.length(); ++i) {
+                    fingerprint = (fingerprint ^ entry.charAt(i)) * 0x100000001b3L;
+                }
+                fingerprint = (fingerprint ^ '\n') * 0x100000001b3L;
+            }
+            this.fingerprint = fingerprint;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @return tokenizer tables for this registry, built on first use; a benign race may build them twice
+     */
+    Lexer lexer() {
+        Lexer lexer = this.lexer;
+        if (lexer == null) {
+            lexer = new Lexer(this);
+            this.lexer = lexer;
+        }
+        return lexer;
+    }
+
+    public Map<String, DoubleUnaryOperator> getFunctions() {
+        return this.functions;
+    }
+
+    public Map<String, DoubleBinaryOperator> getBinaryOperators() {
+        return this.binaryOperators;
+    }
+
+    public Map<String, DoubleBinaryOperator> getBiFunctions() {
+        return this.biFunctions;
+    }
+
+    public Map<String, VariadicFunction> getVariadicFunctions() {
+        return this.variadicFunctions;
+    }
+
+    public DoubleUnaryOperator getFunction(final String name) {
+        return this.functions.get(name);
+    }
+
+    public DoubleBinaryOperator getBinaryOperator(final String operator) {
+        return this.binaryOperators.get(operator);
+    }
+
+    public DoubleBinaryOperator getBiFunction(final String name) {
+        return this.biFunctions.get(name);
+    }
+
+    public VariadicFunction getVariadicFunction(final String name) {
+        return this.variadicFunctions.get(name);
+    }
+
+    /**
+     * A pure implementation always returns the same result for the same arguments and has no side effects,
+     * so calls with constant arguments may be evaluated once at compile time.
+     * @param implementation a function or operator registered here
+     */
+    public boolean isPure(final Object implementation) {
+        return this.pureImplementations.contains(implementation);
+    }
+
+    /**
+     * Built-in functions have their derivatives built in and are not listed here.
+     * @param function a function registered here
+     * @return the derivative registered with {@code function}, or null
+     */
+    public DoubleUnaryOperator getDerivative(final DoubleUnaryOperator function) {
+        return this.derivatives.get(function);
+    }
+
+    /**
+     * Registers a function that is treated as impure, i.e. never folded at compile time.
+     */
+    public FunctionRegistry withFunction(final String name, final DoubleUnaryOperator function) {
+        return withFunction(name, function, false);
+    }
+
+    public FunctionRegistry withFunction(final String name, final DoubleUnaryOperator function, final boolean pure) {
+        final Builder builder = new Builder(this);
+        builder.functions.put(name, function);
+        return builder.markPure(function, pure).build();
+    }
+
+    /**
+     * @param derivative derivative of {@code function}, used when an expression calling it is differentiated
+     */
+    public FunctionRegistry withFunction(final String name, final DoubleUnaryOperator function, final boolean pure,
+                                         final DoubleUnaryOperator derivative) {
+        final Builder builder = new Builder(this);
+        builder.functions.put(name, function);
+        builder.derivatives.put(function, derivative);
+        return builder.markPure(function, pure).build();
+    }
+
+    public FunctionRegistry withoutFunction(final String name) {
+        final Builder builder = new Builder(this);
+        builder.functions.remove(name);
+        return builder.build();
+    }
+
+    public FunctionRegistry withBinaryOperator(final String operator, final DoubleBinaryOperator function) {
+        return withBinaryOperator(operator, function, false);
+    }
+
+    public FunctionRegistry withBinaryOperator(final String operator, final DoubleBinaryOperator function,
+                                               final boolean pure) {
+        final Builder builder = new Builder(this);
+        builder.binaryOperators.put(operator, function);
+        return builder.markPure(function, pure).build();
+    }
+
+    public FunctionRegistry withoutBinaryOperator(final String operator) {
+        final Builder builder = new Builder(this);
+        builder.binaryOperators.remove(operator);
+        return builder.build();
+    }
+
+    public FunctionRegistry withBiFunction(final String name, final DoubleBinaryOperator function) {
+        return withBiFunction(name, function, false);
+    }
+
+    public FunctionRegistry withBiFunction(final String name, final DoubleBinaryOperator function,
+                                           final boolean pure) {
+        final Builder builder = new Builder(this);
+        builder.biFunctions.put(name, function);
+        return builder.markPure(function, pure).build();
+    }
+
+    public FunctionRegistry withoutBiFunction(final String name) {
+        final Builder builder = new Builder(this);
+        builder.biFunctions.remove(name);
+        return builder.build();
+    }
+
+    /**
+     * Registers a function of any number of arguments. A two-argument function with the same name is still called
+     * for two arguments, the variadic one for any other count.
+     */
+    public FunctionRegistry withVariadicFunction(final String name, final VariadicFunction function) {
+        return withVariadicFunction(name, function, false);
+    }
+
+    public FunctionRegistry withVariadicFunction(final String name, final VariadicFunction function,
+                                                 final boolean pure) {
+        final Builder builder = new Builder(this);
+        builder.variadicFunctions.put(name, function);
+        return builder.markPure(function, pure).build();
+    }
+
+    public FunctionRegistry withoutVariadicFunction(final String name) {
+        final Builder builder = new Builder(this);
+        builder.variadicFunctions.remove(name);
+        return builder.build();
+    }
+
+    private static FunctionRegistry createDefaults() {
+        final Builder builder = new Builder();
+        builder.functions.putAll(createFunctionsMap());
+        builder.binaryOperators.putAll(createBinaryOperatorsMap());
+        builder.biFunctions.putAll(createBiFunctionsMap());
+        builder.variadicFunctions.putAll(createVariadicFunctionsMap());
+        builder.functions.values().forEach(function -> builder.markPure(function, true));
+        builder.binaryOperators.values().forEach(function -> builder.markPure(function, true));
+        builder.biFunctions.values().forEach(function -> builder.markPure(function, true));
+        builder.variadicFunctions.values().forEach(function -> builder.markPure(function, true));
+        return builder.build();
+    }
+
+    /**
+     * Mutable copy used to derive a new registry.
+     */
+    private static class Builder {
+        private final Map<String, DoubleUnaryOperator> functions;
+        private final Map<String, DoubleBinaryOperator> binaryOperators;
+        private final Map<String, DoubleBinaryOperator> biFunctions;
+        private final Map<String, VariadicFunction> variadicFunctions;
+        private final Set<Object> pureImplementations = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final Map<Object, DoubleUnaryOperator> derivatives = new IdentityHashMap<>();
+
+        Builder() {
+            this.functions = new HashMap<>();
+            this.binaryOperators = new HashMap<>();
+            this.biFunctions = new HashMap<>();
+            this.variadicFunctions = new HashMap<>();
+        }
+
+        Builder(final FunctionRegistry registry) {
+            this.functions = new HashMap<>(registry.functions);
+            this.binaryOperators = new HashMap<>(registry.binaryOperators);
+            this.biFunctions = new HashMap<>(registry.biFunctions);
+            this.variadicFunctions = new HashMap<>(registry.variadicFunctions);
+            this.pureImplementations.addAll(registry.pureImplementations);
+            this.derivatives.putAll(registry.derivatives);
+        }
+
+        Builder markPure(final Object implementation, final boolean pure) {
+            if (pure) {
+                this.pureImplementations.add(implementation);
+            } else {
+                this.pureImplementations.remove(implementation);
+            }
+            return this;
+        }
+
+        FunctionRegistry build() {
+            final Set<Object> stillRegistered = Collections.newSetFromMap(new IdentityHashMap<>());
+            stillRegistered.addAll(this.functions.values());
+            stillRegistered.addAll(this.binaryOperators.values());
+            stillRegistered.addAll(this.biFunctions.values());
+            stillRegistered.addAll(this.variadicFunctions.values());
+            this.pureImplementations.retainAll(stillRegistered);
+            this.derivatives.keySet().retainAll(stillRegistered);
+            return new FunctionRegistry(this.functions, this.binaryOperators, this.biFunctions,
+                    this.variadicFunctions, this.pureImplementations, this.derivatives);
+        }
+    }
+
+    private static Map<String, DoubleUnaryOperator> createFunctionsMap(){
+        Map<String, DoubleUnaryOperator> functionsMap = new HashMap<>();
+        functionsMap.put("sin", Math::sin);
+        functionsMap.put("cos", Math::cos);
+        functionsMap.put("tg", Math::tan);
+        functionsMap.put("ctg", BuiltinFunctions::ctg);
+        functionsMap.put("sec", BuiltinFunctions::sec);
+        functionsMap.put("cosec", BuiltinFunctions::cosec);
+        functionsMap.put("arcsin", Math::asin);
+        functionsMap.put("arccos", Math::acos);
+        functionsMap.put("arctg", Math::atan);
+        functionsMap.put("arcsec", BuiltinFunctions::arcsec);
+        functionsMap.put("arccosec", BuiltinFunctions::arccosec);
+        functionsMap.put("arcctg", BuiltinFunctions::arcctg);
+        functionsMap.put("sh", Math::sinh);
+        functionsMap.put("ch", Math::cosh);
+        functionsMap.put("th", Math::tanh);
+        functionsMap.put("cth", BuiltinFunctions::cth);
+        functionsMap.put("sech", BuiltinFunctions::sech);
+        functionsMap.put("cosech", BuiltinFunctions::cosech);
+        functionsMap.put("arcsh", MathParser::asinh);
+        functionsMap.put("arcch", MathParser::acosh);
+        functionsMap.put("arcth", MathParser::atanh);
+        functionsMap.put("arcsech", BuiltinFunctions::arcsech);
+        functionsMap.put("arccosech", BuiltinFunctions::arccosech);
+        functionsMap.put("arccth", BuiltinFunctions::arccth);
+        functionsMap.put("sqr", BuiltinFunctions::sqr);
+        functionsMap.put("cube", BuiltinFunctions::cube);
+        functionsMap.put("sqrt", Math::sqrt);
+        functionsMap.put("cbrt", Math::cbrt);
+        functionsMap.put("signum", Math::signum);
+        functionsMap.put("abs", Math::abs);
+        functionsMap.put("exp", Math::exp);
+        functionsMap.put("ln", Math::log);
+        functionsMap.put("log2", BuiltinFunctions::log2);
+        functionsMap.put("log4", BuiltinFunctions::log4);
+        functionsMap.put("log8", BuiltinFunctions::log8);
+        functionsMap.put("log10", Math::log10);
+        functionsMap.put("log16", BuiltinFunctions::log16);
+        return functionsMap;
+    }
+
+    private static Map<String, DoubleBinaryOperator> createBinaryOperatorsMap() {
+        Map<String, DoubleBinaryOperator> binaryOperatorsMap = new HashMap<>();
+        binaryOperatorsMap.put("^", Math::pow);
+        binaryOperatorsMap.put(">=", BuiltinFunctions::greaterOrEqual);
+        binaryOperatorsMap.put("<=", BuiltinFunctions::lessOrEqual);
+        binaryOperatorsMap.put(">", BuiltinFunctions::greater);
+        binaryOperatorsMap.put("<", BuiltinFunctions::less);
+        binaryOperatorsMap.put("==", BuiltinFunctions::equal);
+        binaryOperatorsMap.put("!=", BuiltinFunctions::notEqual);
+        binaryOperatorsMap.put("e", BuiltinFunctions::exponent);
+        return binaryOperatorsMap;
+    }
+
+    private static Map<String, DoubleBinaryOperator> createBiFunctionsMap() {
+        Map<String, DoubleBinaryOperator> map = new HashMap<>();
+        map.put("max", Math::max);
+        map.put("min", Math::min);
+        map.put("hypot", Math::hypot);
+        map.put("log", BuiltinFunctions::log);
+        return map;
+    }
+
+    private static Map<String, VariadicFunction> createVariadicFunctionsMap() {
+        Map<String, VariadicFunction> map = new HashMap<>();
+        map.put("sum", BuiltinFunctions::sum);
+        map.put("avg", BuiltinFunctions::avg);
+        map.put("min", BuiltinFunctions::min);
+        map.put("max", BuiltinFunctions::max);
+        map.put("poly", BuiltinFunctions::poly);
+        return map;
+    }
+}
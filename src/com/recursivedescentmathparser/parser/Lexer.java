@@ -0,0 +1,166 @@
+package com.recursivedescentmathparser.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Table-driven tokenizer for one {@link FunctionRegistry}.
+ * The character classes, the operator trie and the identifier table are computed once per registry
+ * (see {@link FunctionRegistry#lexer()}), so tokenizing costs the same no matter how many functions and
+ * operators are registered. Instances are immutable and shared between threads.
+ */
+final class Lexer {
+    private static final byte DIGIT = 1;
+    private static final byte LETTER = 2;
+
+    private static final byte[] CHARACTER_CLASSES = new byte[128];
+
+    static {
+        for (char ch = '0'; ch <= '9'; ++ch) CHARACTER_CLASSES[ch] = DIGIT;
+        CHARACTER_CLASSES['.'] = DIGIT;
+        for (char ch = 'a'; ch <= 'z'; ++ch) CHARACTER_CLASSES[ch] = LETTER;
+        for (char ch = 'A'; ch <= 'Z'; ++ch) CHARACTER_CLASSES[ch] = LETTER;
+    }
+
+    private final boolean[] operatorCharacters;
+    private final TrieNode operators = new TrieNode();
+    private final NameTable symbolNames;
+    private final int[] symbolKinds;
+    private final Object[] symbolFunctions;
+
+    Lexer(final FunctionRegistry registry) {
+        int maxOperatorCharacter = -1;
+        for (String operator : registry.getBinaryOperators().keySet()) {
+            for (int i = 0; i < operator.length(); ++i) {
+                maxOperatorCharacter = Math.max(maxOperatorCharacter, operator.charAt(i));
+            }
+        }
+        this.operatorCharacters = new boolean[maxOperatorCharacter + 1];
+        registry.getBinaryOperators().forEach((operator, function) -> {
+            TrieNode node = this.operators;
+            for (int i = 0; i < operator.length(); ++i) {
+                this.operatorCharacters[operator.charAt(i)] = true;
+                node = node.childOrCreate(operator.charAt(i));
+            }
+            node.operator = operator;
+            node.function = function;
+        });
+        //Functions are added last, so they win over two-argument functions with the same name, which win over
+        //variadic ones; the parser still finds a variadic function when a two-argument one gets another count
+        final List<String> names = new ArrayList<>();
+        final List<Object> functions = new ArrayList<>();
+        names.addAll(registry.getVariadicFunctions().keySet());
+        registry.getVariadicFunctions().keySet().forEach(name -> functions.add(registry.getVariadicFunction(name)));
+        final int firstBiFunction = names.size();
+        names.addAll(registry.getBiFunctions().keySet());
+        registry.getBiFunctions().keySet().forEach(name -> functions.add(registry.getBiFunction(name)));
+        final int firstFunction = names.size();
+        names.addAll(registry.getFunctions().keySet());
+        registry.getFunctions().keySet().forEach(name -> functions.add(registry.getFunction(name)));
+        this.symbolNames = new NameTable(names.toArray(new String[0]));
+        this.symbolFunctions = functions.toArray();
+        this.symbolKinds = new int[names.size()];
+        Arrays.fill(this.symbolKinds, 0, firstBiFunction, TokenStream.VARIADIC_FUNCTION);
+        Arrays.fill(this.symbolKinds, firstBiFunction, firstFunction, TokenStream.BI_FUNCTION);
+        Arrays.fill(this.symbolKinds, firstFunction, names.size(), TokenStream.FUNCTION);
+    }
+
+    /**
+     * Splits the whole input in one pass.
+     * A run of operator characters is only an operator when it directly follows an operand (a number, a variable
+     * or a closing parenthesis); everywhere else the characters are read as identifiers or single characters,
+     * which is how the parser has always treated e.g. {@code 5e-7} and {@code exp(1)}.
+     * Identifiers are resolved in place against {@code variables} first and then against the registry, so
+     * only unknown identifiers are ever copied out of the input.
+     */
+    TokenStream tokenize(final CharSequence input, final NameTable variables) {
+        final TokenStream tokens = new TokenStream(input);
+        final int length = input.length();
+        boolean afterOperand = false;
+        int position = 0;
+        while (position < length) {
+            final char ch = input.charAt(position);
+            final int start = position;
+            if (afterOperand && isOperatorCharacter(ch)) {
+                TrieNode node = this.operators;
+                while (position < length && isOperatorCharacter(input.charAt(position))) {
+                    node = node == null ? null : node.child(input.charAt(position));
+                    ++position;
+                }
+                if (node == null || node.operator == null) {
+                    tokens.add(TokenStream.OPERATOR, start, position, null, null);
+                } else {
+                    tokens.add(TokenStream.OPERATOR, start, position, node.operator, node.function);
+                }
+                afterOperand = false;
+            } else if (ch == ' ') {
+                ++position;
+                afterOperand = false;
+            } else if (characterClass(ch) == DIGIT) {
+                while (position < length && characterClass(input.charAt(position)) == DIGIT) ++position;
+                tokens.add(TokenStream.NUMBER, start, position, null, null);
+                afterOperand = true;
+            } else if (characterClass(ch) != 0) {
+                while (position < length && characterClass(input.charAt(position)) != 0) ++position;
+                final int variable = variables.indexOf(input, start, position);
+                final int symbol;
+                if (variable >= 0) {
+                    tokens.add(TokenStream.VARIABLE, start, position, variables.name(variable), null);
+                    afterOperand = true;
+                } else if ((symbol = this.symbolNames.indexOf(input, start, position)) >= 0) {
+                    tokens.add(this.symbolKinds[symbol], start, position, this.symbolNames.name(symbol),
+                            this.symbolFunctions[symbol]);
+                    afterOperand = false;
+                } else {
+                    tokens.add(TokenStream.UNKNOWN, start, position, null, null);
+                    afterOperand = true;
+                }
+            } else {
+                ++position;
+                tokens.add(TokenStream.CHARACTER, start, position, null, null);
+                afterOperand = ch == ')';
+            }
+        }
+        tokens.add(TokenStream.END, length, length, null, null);
+        return tokens;
+    }
+
+    private static int characterClass(final char ch) {
+        return ch < CHARACTER_CLASSES.length ? CHARACTER_CLASSES[ch] : 0;
+    }
+
+    private boolean isOperatorCharacter(final char ch) {
+        return ch < this.operatorCharacters.length && this.operatorCharacters[ch];
+    }
+
+    /**
+     * Operators are short and share few prefixes, so children are kept in small parallel arrays.
+     */
+    private static final class TrieNode {
+        private char[] labels = new char[0];
+        private TrieNode[] children = new TrieNode[0];
+        private String operator;
+        private DoubleBinaryOperator function;
+
+        TrieNode child(final char label) {
+            for (int i = 0; i < this.labels.length; ++i) {
+                if (this.labels[i] == label) return this.children[i];
+            }
+            return null;
+        }
+
+        TrieNode childOrCreate(final char label) {
+            TrieNode child = child(label);
+            if (child == null) {
+                child = new TrieNode();
+                this.labels = Arrays.copyOf(this.labels, this.labels.length + 1);
+                this.children = Arrays.copyOf(this.children, this.children.length + 1);
+                this.labels[this.labels.length - 1] = label;
+                this.children[this.children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+}
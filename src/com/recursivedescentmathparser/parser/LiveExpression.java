@@ -0,0 +1,44 @@
+package com.recursivedescentmathparser.parser;
+
+import com.recursivedescentmathparser.parser.optimizer.LiveFormulaSet;
+
+import java.util.Collections;
+
+/**
+ * Expression returned by {@link MathParser#parseLive(String)}.
+ * Like {@link ParsedExpression} it reads the parser's variables on every evaluation, but it only recomputes the
+ * subexpressions that depend on a variable whose value changed since the previous evaluation.
+ * Not thread-safe.
+ */
+public class LiveExpression implements Expression {
+    private final LiveFormulaSet formula;
+    private final VariableTable variables;
+    private final int[] parserSlots;
+
+    LiveExpression(final FunctionRegistry registry, final CompiledExpression compiled, final VariableTable variables,
+                   final int[] parserSlots) {
+        this.formula = LiveFormulaSet.compile(registry, Collections.singletonMap(compiled.toString(), compiled));
+        this.variables = variables;
+        this.parserSlots = parserSlots;
+    }
+
+    /**
+     * @return the memoized formula, e.g. to see how many subexpressions were recomputed
+     */
+    public LiveFormulaSet getFormula() {
+        return this.formula;
+    }
+
+    @Override
+    public double evaluate() {
+        for (int i = 0; i < this.parserSlots.length; ++i) {
+            this.formula.set(i, this.variables.get(this.parserSlots[i]));
+        }
+        return this.formula.get(0);
+    }
+
+    @Override
+    public String toString() {
+        return this.formula.getFormulaNames().get(0);
+    }
+}
@@ -1,38 +1,126 @@
 package com.recursivedescentmathparser.parser;
 
+import com.recursivedescentmathparser.parser.cache.ExpressionCache;
+import com.recursivedescentmathparser.parser.metrics.ParserMetrics;
+import com.recursivedescentmathparser.parser.tiered.TieredCompiler;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.BiFunction;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.Function;
 
 /**
  * Created by igor on 09.03.18.
+ *
+ * Mutable front end kept for single-threaded use: it owns a set of variables and a {@link FunctionRegistry}
+ * and the expressions returned by {@link #parse(String)} read the variables back from it.
+ * For concurrent use take a snapshot with {@link #compiler()}.
  */
 public class MathParser {
-    private final Map<String, Function<Double,Double>> functions = createFunctionsMap();
-    private final Map<String, BiFunction<Double,Double,Double>> binaryOperatorsMap = createBinaryOperatorsMap();
-    private final Map<String, BiFunction<Double, Double, Double>> biFunctionsMap = createBiFunctionsMap();
-    private final Map<String, Double> variables = new HashMap<>();
-    private String inputExpression;
-    private int currentPosition = -1, currentCharacter;
+    private FunctionRegistry registry = FunctionRegistry.defaults();
+    private final VariableTable variables = new VariableTable();
+    private ExpressionCache cache;
+    private ParserMetrics metrics;
+    private ParseLimits limits = ParseLimits.DEFAULT;
+    private TieredCompiler tieredCompiler;
 
     public MathParser(){
         this.addConstantsToVariableMap();
-        this.inputExpression = "0";
-        this.currentPosition = -1;
     }
 
     public Map<String, Double> getVariables() {
-        return Collections.unmodifiableMap(this.variables);
+        return this.variables.asMap();
     }
 
     public Map<String, Function<Double,Double>> getFunctions(){
-        return Collections.unmodifiableMap(this.functions);
+        final Map<String, Function<Double,Double>> boxed = new HashMap<>();
+        this.registry.getFunctions().forEach((name, function) -> boxed.put(name, function::applyAsDouble));
+        return Collections.unmodifiableMap(boxed);
     }
 
     public Map<String, BiFunction<Double,Double,Double>> getBinaryOperators(){
-        return Collections.unmodifiableMap(this.binaryOperatorsMap);
+        final Map<String, BiFunction<Double,Double,Double>> boxed = new HashMap<>();
+        this.registry.getBinaryOperators().forEach((name, operator) -> boxed.put(name, operator::applyAsDouble));
+        return Collections.unmodifiableMap(boxed);
+    }
+
+    public Map<String, DoubleUnaryOperator> getPrimitiveFunctions(){
+        return this.registry.getFunctions();
+    }
+
+    public Map<String, DoubleBinaryOperator> getPrimitiveBinaryOperators(){
+        return this.registry.getBinaryOperators();
+    }
+
+    public FunctionRegistry getRegistry() {
+        return this.registry;
+    }
+
+    public void setRegistry(final FunctionRegistry registry) {
+        this.registry = registry;
+    }
+
+    public ExpressionCache getExpressionCache() {
+        return this.cache;
+    }
+
+    /**
+     * Makes {@link #parse(String)} and {@link #compiler()} reuse compiled expressions from {@code cache}.
+     * Entries are keyed by the registry version and the declared variable names, so changing a function or
+     * declaring a new variable never returns a stale expression; changing a variable's value keeps the entries.
+     */
+    public void setExpressionCache(final ExpressionCache cache) {
+        this.cache = cache;
+    }
+
+    public ParseLimits getParseLimits() {
+        return this.limits;
+    }
+
+    /**
+     * Bounds the length, nesting depth and tree size of the expressions parsed from now on. Expressions already in
+     * the expression cache were checked against the limits in force when they were parsed, except for the length,
+     * which is checked before the lookup.
+     */
+    public void setParseLimits(final ParseLimits limits) {
+        this.limits = limits;
+    }
+
+    public ParserMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Records the duration and tree size of every {@link #parse(String)} and {@link #parseLive(String)} call in
+     * {@code metrics}, or stops recording if {@code metrics} is null.
+     */
+    public void setMetrics(final ParserMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public TieredCompiler getTieredCompiler() {
+        return this.tieredCompiler;
+    }
+
+    /**
+     * Makes the expressions returned by {@link #parse(String)} compile themselves once they are hot, each with
+     * its own profile, or stops doing so for new expressions if {@code tieredCompiler} is null.
+     * Its registry is replaced by the parser's at every parse.
+     */
+    public void setTieredCompiler(final TieredCompiler tieredCompiler) {
+        this.tieredCompiler = tieredCompiler;
+    }
+
+    /**
+     * @return thread-safe compiler bound to the current registry and variables
+     */
+    public ExpressionCompiler compiler() {
+        return new ExpressionCompiler(this.registry, this.variables.asMap(), this.cache, this.limits);
     }
 
     private void addConstantsToVariableMap(){
@@ -45,35 +133,97 @@ public class MathParser {
     }
 
     public void addVariables(final Map<String, Double> variables){
-        this.variables.putAll(variables);
+        variables.forEach(this.variables::put);
     }
 
     public void removeVariable(final String varName){
         this.variables.remove(varName);
     }
 
+    /**
+     * Registers a boxed function. It is adapted to a {@link DoubleUnaryOperator}, so it still boxes on every call;
+     * use {@link #addPrimitiveFunction(String, DoubleUnaryOperator)} on hot paths.
+     */
     public void addFunction(final String funcName, final Function<Double,Double> function){
-        this.functions.put(funcName, function);
+        this.addPrimitiveFunction(funcName, arg -> function.apply(arg));
+    }
+
+    /**
+     * Registers a boxed function together with its derivative, so that expressions calling it can be
+     * differentiated.
+     */
+    public void addFunction(final String funcName, final Function<Double,Double> function,
+                            final Function<Double,Double> derivative){
+        this.addPrimitiveFunction(funcName, arg -> function.apply(arg), false, arg -> derivative.apply(arg));
     }
 
     public void addFunctions(final Map<String,Function<Double,Double>> functions){
-        this.functions.putAll(functions);
+        functions.forEach(this::addFunction);
+    }
+
+    public void addPrimitiveFunction(final String funcName, final DoubleUnaryOperator function){
+        this.registry = this.registry.withFunction(funcName, function);
+    }
+
+    /**
+     * @param pure whether calls with constant arguments may be folded by the optimizer
+     */
+    public void addPrimitiveFunction(final String funcName, final DoubleUnaryOperator function, final boolean pure){
+        this.registry = this.registry.withFunction(funcName, function, pure);
+    }
+
+    /**
+     * @param derivative derivative of {@code function}, used by
+     * {@link com.recursivedescentmathparser.parser.derivative.Differentiator}
+     */
+    public void addPrimitiveFunction(final String funcName, final DoubleUnaryOperator function, final boolean pure,
+                                     final DoubleUnaryOperator derivative){
+        this.registry = this.registry.withFunction(funcName, function, pure, derivative);
     }
 
     public void removeFunction(final String funcName){
-        this.functions.remove(funcName);
+        this.registry = this.registry.withoutFunction(funcName);
+    }
+
+    /**
+     * Registers a function of any number of arguments, e.g. {@code f(a, b, c)}; it receives them as a slice of a
+     * {@code double[]} without boxing.
+     */
+    public void addVariadicFunction(final String funcName, final VariadicFunction function){
+        this.registry = this.registry.withVariadicFunction(funcName, function);
     }
 
+    public void addVariadicFunction(final String funcName, final VariadicFunction function, final boolean pure){
+        this.registry = this.registry.withVariadicFunction(funcName, function, pure);
+    }
+
+    public void removeVariadicFunction(final String funcName){
+        this.registry = this.registry.withoutVariadicFunction(funcName);
+    }
+
+    /**
+     * Registers a boxed binary operator. Like {@link #addFunction(String, Function)} it is adapted to the primitive
+     * interface and keeps boxing on every call.
+     */
     public void addBinaryOperator(final String operator, BiFunction<Double,Double,Double> biFunction){
-        this.binaryOperatorsMap.put(operator, biFunction);
+        this.addPrimitiveBinaryOperator(operator, (a, b) -> biFunction.apply(a, b));
     }
 
     public void addBinaryOperators(final Map<String,BiFunction<Double,Double,Double>> operators){
-        this.binaryOperatorsMap.putAll(operators);
+        operators.forEach(this::addBinaryOperator);
+    }
+
+    public void addPrimitiveBinaryOperator(final String operator, final DoubleBinaryOperator function){
+        this.registry = this.registry.withBinaryOperator(operator, function);
+    }
+
+    public void addPrimitiveBinaryOperator(final String operator, final DoubleBinaryOperator function,
+                                           final boolean pure){
+        this.registry = this.registry.withBinaryOperator(operator, function, pure);
     }
 
     public void removeBinaryOperator(final String operatorName){
-        this.binaryOperatorsMap.remove(operatorName);
+        this.registry = this.registry.withoutBinaryOperator(operatorName);
     }
 
     public static double asinh(final double arg){
@@ -88,247 +238,90 @@ public class MathParser {
         return 0.5 * Math.log((1 + arg) / (1 - arg));
     }
 
-    private static Map<String, Function<Double,Double>> createFunctionsMap(){
-        Map<String, Function<Double,Double>> functionsMap = new HashMap<>();
-        functionsMap.put("sin", Math::sin);
-        functionsMap.put("cos", Math::cos);
-        functionsMap.put("tg", Math::tan);
-        functionsMap.put("ctg", arg -> 1.0 / Math.tan(arg));
-        functionsMap.put("sec", arg -> 1.0 / Math.sin(arg));
-        functionsMap.put("cosec", arg -> 1.0 / Math.cos(arg));
-        functionsMap.put("arcsin", Math::asin);
-        functionsMap.put("arccos", Math::acos);
-        functionsMap.put("arctg", Math::atan);
-        functionsMap.put("arcsec", arg -> Math.asin(1 / arg));
-        functionsMap.put("arccosec", arg -> Math.acos(1 / arg));
-        functionsMap.put("arcctg", arg -> Math.atan(1 / arg));
-        functionsMap.put("sh", Math::sinh);
-        functionsMap.put("ch", Math::cosh);
-        functionsMap.put("th", Math::tanh);
-        functionsMap.put("cth", arg -> 1.0 / Math.tanh(arg));
-        functionsMap.put("sech", arg -> 1.0 / Math.sinh(arg));
-        functionsMap.put("cosech", arg -> 1.0 / Math.cosh(arg));
-        functionsMap.put("arcsh", MathParser::asinh);
-        functionsMap.put("arcch", MathParser::acosh);
-        functionsMap.put("arcth", MathParser::atanh);
-        functionsMap.put("arcsech", arg -> asinh(1 / arg));
-        functionsMap.put("arccosech", arg -> acosh(1 / arg));
-        functionsMap.put("arccth", arg -> atanh(1 / arg));
-        functionsMap.put("sqr", arg -> arg * arg);
-        functionsMap.put("cube", arg -> arg * arg * arg);
-        functionsMap.put("sqrt", Math::sqrt);
-        functionsMap.put("cbrt", Math::cbrt);
-        functionsMap.put("signum", Math::signum);
-        functionsMap.put("abs", Math::abs);
-        functionsMap.put("exp", Math::exp);
-        functionsMap.put("ln", Math::log);
-        functionsMap.put("log2", arg -> Math.log10(arg) / Math.log10(2));
-        functionsMap.put("log4", arg -> Math.log10(arg) / Math.log10(4));
-        functionsMap.put("log8", arg -> Math.log10(arg) / Math.log10(8));
-        functionsMap.put("log10", Math::log10);
-        functionsMap.put("log16", arg -> Math.log10(arg) / Math.log10(16));
-        return functionsMap;
-    }
-
-    private static Map<String,BiFunction<Double,Double,Double>> createBinaryOperatorsMap() {
-        Map<String,BiFunction<Double,Double,Double>> binaryOperatorsMap = new HashMap<>();
-        binaryOperatorsMap.put("^", Math::pow);
-        binaryOperatorsMap.put(">=", (a,b) -> (a >= b) ? 1.0 : 0 );
-        binaryOperatorsMap.put("<=", (a,b) -> (a <= b) ? 1.0 : 0);
-        binaryOperatorsMap.put(">", (a,b) -> (a > b) ? 1.0 : 0 );
-        binaryOperatorsMap.put("<", (a,b) -> (a < b) ? 1.0 : 0);
-        binaryOperatorsMap.put("==", (a,b) -> Double.compare(a,b) == 0 ? 1.0 : 0 );
-        binaryOperatorsMap.put("!=", (a,b) -> Double.compare(a,b) != 0 ? 1.0 : 0);
-        binaryOperatorsMap.put("e", (a,b) -> a * Math.pow(10,b));
-        return binaryOperatorsMap;
-    }
-
-    private Map<String, BiFunction<Double, Double, Double>> createBiFunctionsMap() {
-        Map<String, BiFunction<Double, Double, Double>> map = new HashMap<>();
-        map.put("max", Math::max);
-        map.put("min", Math::min);
-        map.put("hypot", Math::hypot);
-        map.put("log", (a, b) -> Math.log(a) / Math.log(b));
-        return map;
-    }
-
-    private boolean isDigit(final int ch){
-        return (ch >= '0' && ch <= '9') || ch == '.';
-    }
-
-    private boolean isSymbol(final int ch){
-        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || isDigit(ch);
-    }
-
-    private boolean isSpecialOperator(final int ch){
-        for(Map.Entry<String,BiFunction<Double,Double,Double>> entry: this.binaryOperatorsMap.entrySet()){
-            if(entry.getKey().contains(String.valueOf((char)ch))){
-                return true;
-            }
+    public Expression parse(final String expression){
+        return this.parse((CharSequence) expression);
+    }
+
+    /**
+     * Parses straight from {@code expression}: numbers and identifiers are read in place instead of being copied
+     * into Strings. With an expression cache set the text is copied once, since cache keys are Strings.
+     */
+    public Expression parse(final CharSequence expression){
+        final CompiledExpression compiled = this.lookup(expression);
+        final CompiledExpression evaluated = this.tieredCompiler == null ? compiled
+                : this.tieredCompiler.withRegistry(this.registry).compile(compiled);
+        return new ParsedExpression(evaluated, this.variables, this.parserSlots(compiled));
+    }
+
+    /**
+     * Parses an expression for the pattern of changing a variable with {@link #addVariable(String, double)} and
+     * evaluating again: subexpressions are memoized and only those depending on a changed variable are
+     * recomputed. Calls of impure functions are still made on every evaluation.
+     */
+    public LiveExpression parseLive(final String expression){
+        final CompiledExpression compiled = this.lookup(expression);
+        return new LiveExpression(this.registry, compiled, this.variables, this.parserSlots(compiled));
+    }
+
+    private CompiledExpression lookup(final CharSequence expression){
+        final ParserMetrics metrics = this.metrics;
+        if (metrics == null) {
+            return this.lookupUnmetered(expression);
         }
-        return false;
+        final long start = System.nanoTime();
+        final CompiledExpression compiled = this.lookupUnmetered(expression);
+        metrics.recordParse(System.nanoTime() - start, compiled.getRoot());
+        return compiled;
     }
 
-    private void nextCharacter(){
-        this.currentCharacter = (++this.currentPosition < this.inputExpression.length()
-                ? this.inputExpression.charAt(this.currentPosition)
-                : -1);
+    private CompiledExpression lookupUnmetered(final CharSequence expression){
+        this.limits.checkLength(expression);
+        return this.cache == null
+                ? this.compile(expression)
+                : this.cache.get(expression.toString(), this.registry.getVersion(), this.variables.declarations(),
+                        this::compile);
     }
 
-    private boolean consume(final int charToConsume){
-        while (this.currentCharacter == ' ') nextCharacter();
-        if(this.currentCharacter == charToConsume){
-            nextCharacter();
-            return true;
+    private int[] parserSlots(final CompiledExpression compiled){
+        final int[] parserSlots = new int[compiled.getVariableCount()];
+        for(int i = 0; i < parserSlots.length; ++i){
+            parserSlots[i] = this.variables.slotOf(compiled.getVariableNames().get(i));
         }
-        return false;
+        return parserSlots;
     }
 
-    private Expression parse(){
-        nextCharacter();
-        Expression result = parseExpression();
-        if(currentPosition < inputExpression.length()) throw new RuntimeException("Unexpected character: " +
-                (char)currentCharacter);
-        return result;
+    /**
+     * Parses {@code length} characters of {@code expression} starting at {@code offset} without copying them.
+     */
+    public Expression parse(final char[] expression, final int offset, final int length){
+        return this.parse(CharBuffer.wrap(expression, offset, length));
     }
 
-    public Expression parse(final String expression){
-        this.inputExpression = expression;
-        this.currentPosition = -1;
-        this.currentCharacter = -1;
-        return this.parse();
+    /**
+     * Parses the ASCII or UTF-8 bytes between the buffer's position and limit, e.g. a network or memory-mapped
+     * buffer. The bytes are read in place (UTF-8 with non-ASCII characters is decoded first) and the buffer's
+     * position is not moved.
+     */
+    public Expression parse(final ByteBuffer expression){
+        return this.parse(AsciiSequence.of(expression));
     }
+
     public Expression parse(final String expression, final Map<String, Double> variables){
-        this.inputExpression = expression;
-        this.variables.putAll(variables);
-        this.currentPosition = -1;
-        this.currentCharacter = -1;
-        return this.parse();
-    }
-
-    private Expression parseExpression(){
-        Expression currExpr = this.parseHighPriorityOperators();
-        for(;;){
-            final double evalCurrExpr = currExpr.evaluate();
-            if(consume('+')){
-                Expression b = this.parseHighPriorityOperators();
-                currExpr = (() -> evalCurrExpr + b.evaluate());
-            } else if(consume('-')){
-                Expression b = this.parseHighPriorityOperators();
-                currExpr = (() -> evalCurrExpr - b.evaluate());
-            } else {
-                return currExpr;
-            }
-        }
+        this.addVariables(variables);
+        return this.parse(expression);
     }
 
-    private Expression parseHighPriorityOperators(){
-        Expression currExpr = this.parseToken();
-        for (;;){
-            final double evalCurrExpr = currExpr.evaluate();
-            if(consume('*')){
-                Expression b = this.parseToken();
-                currExpr = (() -> evalCurrExpr * b.evaluate());
-            } else if(consume('/')){
-                Expression b = this.parseToken();
-                currExpr = (() -> evalCurrExpr / b.evaluate());
-            } else {
-                return currExpr;
-            }
-        }
+    /**
+     * Parses an expression that is evaluated against caller supplied values instead of the parser's variables.
+     * Identifiers are resolved against the variables defined at this point; their current values become
+     * the defaults of {@link CompiledExpression#newFrame()}.
+     */
+    public CompiledExpression compile(final String expression){
+        return this.compile((CharSequence) expression);
     }
 
-    private Expression parseToken(){
-        if(consume('+')){
-            final Expression a = parseToken();
-            return () -> a.evaluate(); //Unary plus
-        } else if(consume('-')){
-            final Expression a = parseToken();
-            return () -> -1 * a.evaluate(); //Unary minus
-        }
-        Expression res;
-        int startPosition = this.currentPosition;
-        if (consume('(') || consume(',')) {
-            res = this.parseExpression();
-            if (consume(',')) return res;
-            if (!consume(')')) {
-                throw new RuntimeException("Unbalanced parentheses");
-            }
-        } else if(isDigit(this.currentCharacter)){
-            while (isDigit(this.currentCharacter)) nextCharacter();
-            double x = Double.parseDouble(this.inputExpression.substring(startPosition, this.currentPosition));
-            //System.out.println("x = " + x);
-            res = () -> x;
-        } else if(isSymbol(this.currentCharacter)){
-            while (isSymbol(this.currentCharacter)) nextCharacter();
-            final String func = inputExpression.substring(startPosition, this.currentPosition);
-            boolean wasVariableFound = false;
-            String foundedKey ="";
-            for(Map.Entry<String,Double> entry: this.variables.entrySet()){
-                if(entry.getKey().equals(func)){
-                    foundedKey = entry.getKey();
-                    wasVariableFound = true;
-                    break;
-                }
-            }
-            if(wasVariableFound){
-                final String key = foundedKey;
-                res = () -> this.variables.get(key);
-            } else {
-                res = this.parseToken();
-                final Expression x = res;
-                boolean wasFunctionFound = false;
-                String foundedFuncKey = "";
-                for (Map.Entry<String, Function<Double,Double>> entry: functions.entrySet()){
-                    if(entry.getKey().equals(func)){
-                        foundedFuncKey = entry.getKey();
-                        wasFunctionFound = true;
-                        break;
-                    }
-                }
-                if (wasFunctionFound) {
-                    String key = foundedFuncKey;
-                    res = () -> this.functions.get(key).apply(x.evaluate());
-                } else {
-                    boolean isBiFunctionFound = false;
-                    for (Map.Entry<String, BiFunction<Double, Double, Double>> entry : this.biFunctionsMap.entrySet()) {
-                        if (entry.getKey().equals(func)) {
-                            isBiFunctionFound = true;
-                            Expression a = res;
-                            Expression b = this.parseExpression();
-                            if (!consume(')'))
-                                throw new RuntimeException("Missing ) after biFunction second argument");
-                            res = () -> entry.getValue().apply(a.evaluate(), b.evaluate());
-                            break;
-                        }
-                    }
-                    if (!isBiFunctionFound) {
-                        throw new RuntimeException("Unknown function or variable " + func);
-                    }
-                }
-            }
-        } else {
-            throw new RuntimeException("Unexpected: " + (char)this.currentCharacter);
-        }
-
-        startPosition = this.currentPosition;
-        while (isSpecialOperator(this.currentCharacter)) nextCharacter();
-        final String operator = inputExpression.substring(startPosition, this.currentPosition);
-        if(!operator.isEmpty()) {
-            boolean isOperatorValid = false;
-            for (Map.Entry<String, BiFunction<Double, Double, Double>> entry : this.binaryOperatorsMap.entrySet()) {
-                if (entry.getKey().equals(operator)) {
-                    final Expression a = res;
-                    final Expression b = this.parseToken();
-                    res = () -> entry.getValue().apply(a.evaluate(), b.evaluate());
-                    isOperatorValid = true;
-                    break;
-                }
-            }
-            if(!isOperatorValid){
-                throw new RuntimeException("Unknown operator " + operator);
-            }
-        }
-        return res;
+    public CompiledExpression compile(final CharSequence expression){
+        return new ExpressionParser(expression, this.registry, this.variables.nameTable(), this.variables::get,
+                this.limits).parse();
     }
 }
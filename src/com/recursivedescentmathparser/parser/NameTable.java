@@ -0,0 +1,61 @@
+package com.recursivedescentmathparser.parser;
+
+/**
+ * Immutable open-addressing set of names that can be probed with a region of any {@link CharSequence},
+ * so the lexer resolves identifiers without cutting them out of the input first.
+ * Every name keeps the index it had in the array the table was built from.
+ */
+final class NameTable {
+    private final String[] byIndex;
+    private final String[] names;
+    private final int[] indices;
+    private final int mask;
+
+    /**
+     * @param names the names by index; null entries are skipped
+     */
+    NameTable(final String[] names) {
+        this.byIndex = names;
+        int capacity = 4;
+        while (capacity < names.length * 2) capacity <<= 1;
+        this.names = new String[capacity];
+        this.indices = new int[capacity];
+        this.mask = capacity - 1;
+        for (int index = 0; index < names.length; ++index) {
+            final String name = names[index];
+            if (name == null) continue;
+            int bucket = name.hashCode() & this.mask;
+            while (this.names[bucket] != null && !this.names[bucket].equals(name)) bucket = (bucket + 1) & this.mask;
+            this.names[bucket] = name;
+            this.indices[bucket] = index;
+        }
+    }
+
+    /**
+     * @return the name at {@code index}, null if that entry was skipped
+     */
+    String name(final int index) {
+        return this.byIndex[index];
+    }
+
+    /**
+     * @return index of the name spelled by {@code text[start, end)} or -1
+     */
+    int indexOf(final CharSequence text, final int start, final int end) {
+        //Same hash as String.hashCode(), so the names can be inserted by their cached hash codes
+        int hash = 0;
+        for (int i = start; i < end; ++i) hash = 31 * hash + text.charAt(i);
+        for (int bucket = hash & this.mask; this.names[bucket] != null; bucket = (bucket + 1) & this.mask) {
+            if (regionMatches(this.names[bucket], text, start, end)) return this.indices[bucket];
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(final String name, final CharSequence text, final int start, final int end) {
+        if (name.length() != end - start) return false;
+        for (int i = 0; i < name.length(); ++i) {
+            if (name.charAt(i) != text.charAt(start + i)) return false;
+        }
+        return true;
+    }
+}
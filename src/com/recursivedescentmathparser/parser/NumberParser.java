@@ -0,0 +1,71 @@
+package com.recursivedescentmathparser.parser;
+
+/**
+ * Converts numeric literals straight from the input without copying them into a String.
+ * Literals with at most 15 significant digits and a small decimal exponent are exact in a double on both sides of
+ * one multiplication or division by a power of ten, so that single, correctly rounded operation gives the same
+ * result as {@link Double#parseDouble(String)}. Anything else (long mantissas, huge exponents, malformed input)
+ * falls back to {@code Double.parseDouble}, which also produces the usual {@link NumberFormatException}.
+ */
+final class NumberParser {
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private NumberParser() {
+    }
+
+    /**
+     * Parses {@code text[start, end)} in the form {@code digits[.digits][(e|E)[+|-]digits]}; the parser's own
+     * literals are digits and points only, {@code 5e-7} being the {@code e} operator applied to two of them.
+     */
+    static double parse(final CharSequence text, final int start, final int end) {
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean digits = false;
+        boolean point = false;
+        int i = start;
+        for (; i < end; ++i) {
+            final char ch = text.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                digits = true;
+                if (point) --exponent;
+                if (mantissa == 0 && ch == '0') continue;
+                if (++significantDigits > MAX_EXACT_DIGITS) return fallback(text, start, end);
+                mantissa = mantissa * 10 + (ch - '0');
+            } else if (ch == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (!digits) return fallback(text, start, end);
+        if (i < end) {
+            final char ch = text.charAt(i);
+            if (ch != 'e' && ch != 'E') return fallback(text, start, end);
+            boolean negative = false;
+            if (++i < end && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+                negative = text.charAt(i++) == '-';
+            }
+            if (i == end) return fallback(text, start, end);
+            int explicitExponent = 0;
+            for (; i < end; ++i) {
+                final char digit = text.charAt(i);
+                if (digit < '0' || digit > '9' || explicitExponent > 1000) return fallback(text, start, end);
+                explicitExponent = explicitExponent * 10 + (digit - '0');
+            }
+            exponent += negative ? -explicitExponent : explicitExponent;
+        }
+        if (mantissa == 0) return 0.0;
+        if (exponent >= 0 && exponent < POWERS_OF_TEN.length) return mantissa * POWERS_OF_TEN[exponent];
+        if (exponent < 0 && -exponent < POWERS_OF_TEN.length) return mantissa / POWERS_OF_TEN[-exponent];
+        return fallback(text, start, end);
+    }
+
+    private static double fallback(final CharSequence text, final int start, final int end) {
+        return Double.parseDouble(text.subSequence(start, end).toString());
+    }
+}
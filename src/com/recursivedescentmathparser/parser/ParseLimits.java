@@ -0,0 +1,78 @@
+package com.recursivedescentmathparser.parser;
+
+/**
+ * Immutable bounds on the input the parser accepts, for formulas that come from untrusted sources.
+ * Input over a limit is rejected with an {@link ExpressionParseException} whose
+ * {@link ExpressionParseException#getReason() reason} names the limit, as soon as the limit is crossed:
+ * the length before the input is tokenized, the depth and the node count while it is parsed.
+ */
+public final class ParseLimits {
+    /**
+     * No limit on length or size; nesting is limited to 1000 levels, since deeper trees would overflow the stack
+     * of the tree evaluator and the passes over the tree.
+     */
+    public static final ParseLimits DEFAULT = new ParseLimits(Integer.MAX_VALUE, 1000, Integer.MAX_VALUE);
+
+    private final int maxLength;
+    private final int maxDepth;
+    private final int maxNodes;
+
+    private ParseLimits(final int maxLength, final int maxDepth, final int maxNodes) {
+        if (maxLength <= 0 || maxDepth <= 0 || maxNodes <= 0) {
+            throw new IllegalArgumentException("Parse limits must be positive");
+        }
+        this.maxLength = maxLength;
+        this.maxDepth = maxDepth;
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * @return maximum number of characters, spaces included
+     */
+    public int getMaxLength() {
+        return this.maxLength;
+    }
+
+    /**
+     * @return maximum depth of the parsed tree, e.g. 4 for {@code -(x*(y+1))} and 3 for {@code x+x+x}, and
+     * maximum number of brackets, calls and operators waiting for their operands at any point of the input
+     */
+    public int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    /**
+     * @return maximum number of nodes of the parsed tree
+     */
+    public int getMaxNodes() {
+        return this.maxNodes;
+    }
+
+    public ParseLimits withMaxLength(final int maxLength) {
+        return new ParseLimits(maxLength, this.maxDepth, this.maxNodes);
+    }
+
+    public ParseLimits withMaxDepth(final int maxDepth) {
+        return new ParseLimits(this.maxLength, maxDepth, this.maxNodes);
+    }
+
+    public ParseLimits withMaxNodes(final int maxNodes) {
+        return new ParseLimits(this.maxLength, this.maxDepth, maxNodes);
+    }
+
+    /**
+     * Checked before a cache lookup as well, so a shared cache does not hand out an over-long formula.
+     */
+    void checkLength(final CharSequence expression) {
+        if (expression.length() > this.maxLength) {
+            throw new ExpressionParseException("Expression is longer than " + this.maxLength + " characters",
+                    this.maxLength, ExpressionParseException.Reason.TOO_LONG);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ParseLimits{maxLength=" + this.maxLength + ", maxDepth=" + this.maxDepth + ", maxNodes="
+                + this.maxNodes + "}";
+    }
+}
@@ -0,0 +1,51 @@
+package com.recursivedescentmathparser.parser;
+
+/**
+ * Expression returned by {@link MathParser#parse(String)}.
+ * Reads the current values of its variables from the parser on every evaluation,
+ * so changes made with {@link MathParser#addVariable(String, double)} are always seen.
+ */
+public class ParsedExpression implements Expression {
+    private final CompiledExpression compiled;
+    private final VariableTable variables;
+    private final int[] parserSlots;
+    private final double[] slots;
+
+    ParsedExpression(final CompiledExpression compiled, final VariableTable variables, final int[] parserSlots) {
+        this.compiled = compiled;
+        this.variables = variables;
+        this.parserSlots = parserSlots;
+        this.slots = new double[parserSlots.length];
+    }
+
+    public CompiledExpression getCompiledExpression() {
+        return this.compiled;
+    }
+
+    /**
+     * @return the compiled expression with the parser's current values as the default values of its variable
+     * slots, evaluated by walking the tree; e.g. for batch evaluation, where a slot without a column takes its
+     * default value
+     */
+    public CompiledExpression bindCurrentValues() {
+        final double[] values = new double[this.parserSlots.length];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = this.variables.get(this.parserSlots[i]);
+        }
+        return CompiledExpression.of(this.compiled.getRoot(), this.compiled.getVariableNames(), values,
+                this.compiled.getFrameSize());
+    }
+
+    @Override
+    public double evaluate() {
+        for (int i = 0; i < this.parserSlots.length; ++i) {
+            this.slots[i] = this.variables.get(this.parserSlots[i]);
+        }
+        return this.compiled.evaluate(this.slots);
+    }
+
+    @Override
+    public String toString() {
+        return this.compiled.toString();
+    }
+}
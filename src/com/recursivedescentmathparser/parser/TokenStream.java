@@ -0,0 +1,104 @@
+package com.recursivedescentmathparser.parser;
+
+import java.util.Arrays;
+
+/**
+ * Tokens produced by {@link Lexer#tokenize}, stored in parallel arrays and read through a cursor.
+ * Spaces are already dropped, so the parser never looks at the input characters again.
+ */
+final class TokenStream {
+    static final int NUMBER = 0;
+    static final int VARIABLE = 1;
+    static final int FUNCTION = 2;
+    static final int BI_FUNCTION = 3;
+    /** identifier that is neither a variable nor a function */
+    static final int UNKNOWN = 4;
+    /** run of operator characters directly after an operand; the implementation is null if it is not registered */
+    static final int OPERATOR = 5;
+    /** any other single character: {@code + - * / ( ) ,} or an unexpected one */
+    static final int CHARACTER = 6;
+    static final int END = 7;
+    static final int VARIADIC_FUNCTION = 8;
+
+    private final CharSequence input;
+    private int[] kinds = new int[16];
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private String[] names = new String[16];
+    private Object[] implementations = new Object[16];
+    private int size;
+    private int position;
+
+    TokenStream(final CharSequence input) {
+        this.input = input;
+    }
+
+    void add(final int kind, final int start, final int end, final String name, final Object implementation) {
+        if (this.size == this.kinds.length) {
+            final int capacity = this.size * 2;
+            this.kinds = Arrays.copyOf(this.kinds, capacity);
+            this.starts = Arrays.copyOf(this.starts, capacity);
+            this.ends = Arrays.copyOf(this.ends, capacity);
+            this.names = Arrays.copyOf(this.names, capacity);
+            this.implementations = Arrays.copyOf(this.implementations, capacity);
+        }
+        this.kinds[this.size] = kind;
+        this.starts[this.size] = start;
+        this.ends[this.size] = end;
+        this.names[this.size] = name;
+        this.implementations[this.size] = implementation;
+        ++this.size;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    void advance() {
+        ++this.position;
+    }
+
+    int kind() {
+        return this.kinds[this.position];
+    }
+
+    /**
+     * @return the current character token, or -1 if the current token is not a {@link #CHARACTER}
+     */
+    int character() {
+        return this.kinds[this.position] == CHARACTER ? this.input.charAt(this.starts[this.position]) : -1;
+    }
+
+    /**
+     * Numbers are converted without copying when the parser reaches them, so a malformed literal after a syntax
+     * error does not hide that error.
+     */
+    double number() {
+        return NumberParser.parse(this.input, this.starts[this.position], this.ends[this.position]);
+    }
+
+    /**
+     * @return name of a resolved identifier or operator as registered, null for the other kinds
+     */
+    String name() {
+        return this.names[this.position];
+    }
+
+    Object implementation() {
+        return this.implementations[this.position];
+    }
+
+    /**
+     * @return offset of the current token in the input
+     */
+    int start() {
+        return this.starts[this.position];
+    }
+
+    /**
+     * @return copy of the current token's text, only used for error messages
+     */
+    String text() {
+        return this.input.subSequence(this.starts[this.position], this.ends[this.position]).toString();
+    }
+}
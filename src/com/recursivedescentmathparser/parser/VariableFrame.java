@@ -0,0 +1,46 @@
+package com.recursivedescentmathparser.parser;
+
+/**
+ * Reusable set of variable values laid out in the slots of one {@link CompiledExpression}.
+ * Create it with {@link CompiledExpression#newFrame()}, resolve the slots once with {@link #indexOf(String)}
+ * and then update values by index between evaluations.
+ */
+public class VariableFrame {
+    private final CompiledExpression owner;
+    private final double[] values;
+
+    VariableFrame(final CompiledExpression owner, final double[] values) {
+        this.owner = owner;
+        this.values = values;
+    }
+
+    CompiledExpression getOwner() {
+        return this.owner;
+    }
+
+    double[] values() {
+        return this.values;
+    }
+
+    public int indexOf(final String varName) {
+        return this.owner.indexOf(varName);
+    }
+
+    public VariableFrame set(final int slot, final double value) {
+        this.values[slot] = value;
+        return this;
+    }
+
+    public VariableFrame set(final String varName, final double value) {
+        final int slot = this.owner.indexOf(varName);
+        if (slot < 0) {
+            throw new IllegalArgumentException("Expression has no variable " + varName);
+        }
+        this.values[slot] = value;
+        return this;
+    }
+
+    public double get(final int slot) {
+        return this.values[slot];
+    }
+}
@@ -0,0 +1,116 @@
+package com.recursivedescentmathparser.parser;
+
+import com.recursivedescentmathparser.parser.cache.CacheScope;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Variables of a {@link MathParser}. Every name gets a fixed slot the first time it is defined,
+ * so parsed expressions read their values by index instead of hashing the name on every evaluation.
+ */
+class VariableTable {
+    private final Map<String, Integer> slots = new HashMap<>();
+    private String[] names = new String[8];
+    private double[] values = new double[8];
+    private boolean[] defined = new boolean[8];
+    private CacheScope declarations;
+    private NameTable nameTable;
+
+    void put(final String name, final double value) {
+        Integer slot = this.slots.get(name);
+        if (slot == null) {
+            slot = this.slots.size();
+            if (slot == this.values.length) {
+                this.names = Arrays.copyOf(this.names, slot * 2);
+                this.values = Arrays.copyOf(this.values, slot * 2);
+                this.defined = Arrays.copyOf(this.defined, slot * 2);
+            }
+            this.slots.put(name, slot);
+            this.names[slot] = name;
+        }
+        this.values[slot] = value;
+        if (!this.defined[slot]) {
+            this.defined[slot] = true;
+            this.declarations = null;
+            this.nameTable = null;
+        }
+    }
+
+    void remove(final String name) {
+        final Integer slot = this.slots.get(name);
+        if (slot != null && this.defined[slot]) {
+            this.defined[slot] = false;
+            this.declarations = null;
+            this.nameTable = null;
+        }
+    }
+
+    /**
+     * @return the names currently defined, as an expression cache scope; values are deliberately left out since
+     * parsed expressions read them at evaluation time
+     */
+    CacheScope declarations() {
+        if (this.declarations == null) {
+            final Set<String> names = new HashSet<>();
+            for (int slot = 0; slot < this.slots.size(); ++slot) {
+                if (this.defined[slot]) {
+                    names.add(this.names[slot]);
+                }
+            }
+            this.declarations = CacheScope.of(Collections.unmodifiableSet(names));
+        }
+        return this.declarations;
+    }
+
+    /**
+     * @return the names currently defined, indexed by slot, for the lexer to resolve identifiers in place
+     */
+    NameTable nameTable() {
+        if (this.nameTable == null) {
+            final String[] names = new String[this.slots.size()];
+            for (int slot = 0; slot < names.length; ++slot) {
+                if (this.defined[slot]) {
+                    names[slot] = this.names[slot];
+                }
+            }
+            this.nameTable = new NameTable(names);
+        }
+        return this.nameTable;
+    }
+
+    boolean contains(final String name) {
+        final Integer slot = this.slots.get(name);
+        return slot != null && this.defined[slot];
+    }
+
+    /**
+     * @return slot of a defined variable or -1
+     */
+    int slotOf(final String name) {
+        final Integer slot = this.slots.get(name);
+        return slot != null && this.defined[slot] ? slot : -1;
+    }
+
+    double get(final int slot) {
+        if (!this.defined[slot]) {
+            throw new RuntimeException("Variable " + this.names[slot] + " was removed");
+        }
+        return this.values[slot];
+    }
+
+    Map<String, Double> asMap() {
+        final Map<String, Double> map = new LinkedHashMap<>();
+        for (int slot = 0; slot < this.slots.size(); ++slot) {
+            if (this.defined[slot]) {
+                map.put(this.names[slot], this.values[slot]);
+            }
+        }
+        return Collections.unmodifiableMap(map);
+    }
+}
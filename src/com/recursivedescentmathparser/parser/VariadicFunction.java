@@ -0,0 +1,16 @@
+package com.recursivedescentmathparser.parser;
+
+/**
+ * Function of any number of arguments, called without boxing or a list: the arguments are a slice of a
+ * {@code double[]} that evaluators reuse, e.g. the operand stack of a
+ * {@link com.recursivedescentmathparser.parser.interpreter.StackProgram}.
+ */
+@FunctionalInterface
+public interface VariadicFunction {
+
+    /**
+     * @param arguments holds the arguments at indices {@code offset} to {@code offset + count - 1}; it is shared
+     * with the caller, so implementations must neither keep nor modify it
+     */
+    double apply(double[] arguments, int offset, int count);
+}
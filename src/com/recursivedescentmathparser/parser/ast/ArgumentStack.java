@@ -0,0 +1,56 @@
+package com.recursivedescentmathparser.parser.ast;
+
+import com.recursivedescentmathparser.parser.VariadicFunction;
+
+import java.util.Arrays;
+
+/**
+ * Per-thread buffer that variadic calls evaluate their arguments into. Each call takes the slots above the
+ * current top, so calls nested in arguments use the part above their caller's.
+ * <p>
+ * Public for the evaluators generated by {@link com.recursivedescentmathparser.parser.codegen.BytecodeCompiler},
+ * which are defined by another class loader; they evaluate the arguments first, then push and fill the slots.
+ */
+public final class ArgumentStack {
+    private static final ThreadLocal<ArgumentStack> stacks = ThreadLocal.withInitial(ArgumentStack::new);
+
+    double[] values = new double[64];
+    int top;
+
+    private ArgumentStack() {
+    }
+
+    public static ArgumentStack current() {
+        return stacks.get();
+    }
+
+    /**
+     * @return index of the first of {@code count} slots taken above the top
+     */
+    public int push(final int count) {
+        final int base = this.top;
+        if (this.values.length < base + count) {
+            this.values = Arrays.copyOf(this.values, Math.max(base + count, this.values.length * 2));
+        }
+        this.top = base + count;
+        return base;
+    }
+
+    /**
+     * @return the buffer; a later {@link #push} may replace it
+     */
+    public double[] values() {
+        return this.values;
+    }
+
+    /**
+     * Calls {@code function} on the {@code count} slots from {@code base} and frees them, also if it throws.
+     */
+    public double apply(final VariadicFunction function, final int base, final int count) {
+        try {
+            return function.apply(this.values, base, count);
+        } finally {
+            this.top = base;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.recursivedescentmathparser.parser.ast;
+
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Call of a two-argument function such as max(a,b) or log(a,b).
+ */
+public final class BiFunctionCallNode extends Node {
+    private final String name;
+    private final DoubleBinaryOperator function;
+    private final Node first, second;
+
+    public BiFunctionCallNode(final String name, final DoubleBinaryOperator function,
+                              final Node first, final Node second) {
+        this.name = name;
+        this.function = function;
+        this.first = first;
+        this.second = second;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public DoubleBinaryOperator getFunction() {
+        return this.function;
+    }
+
+    public Node getFirst() {
+        return this.first;
+    }
+
+    public Node getSecond() {
+        return this.second;
+    }
+
+    @Override
+    public double evaluate(final double[] variables) {
+        return this.function.applyAsDouble(this.first.evaluate(variables), this.second.evaluate(variables));
+    }
+
+    @Override
+    public <R> R accept(final NodeVisitor<R> visitor) {
+        return visitor.visitBiFunctionCall(this);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof BiFunctionCallNode)) {
+            return false;
+        }
+        final BiFunctionCallNode node = (BiFunctionCallNode) other;
+        return node.function == this.function && node.first.equals(this.first) && node.second.equals(this.second);
+    }
+
+    @Override
+    public int hashCode() {
+        return (31 * System.identityHashCode(this.function) + this.first.hashCode()) * 31 + this.second.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.name + "(" + this.first + ", " + this.second + ")";
+    }
+}
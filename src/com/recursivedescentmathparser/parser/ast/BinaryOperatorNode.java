@@ -0,0 +1,70 @@
+package com.recursivedescentmathparser.parser.ast;
+
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Infix operator: the four arithmetic operators as well as the registered ones (^, comparisons, e).
+ */
+public final class BinaryOperatorNode extends Node {
+    public static final DoubleBinaryOperator ADD = (a, b) -> a + b;
+    public static final DoubleBinaryOperator SUBTRACT = (a, b) -> a - b;
+    public static final DoubleBinaryOperator MULTIPLY = (a, b) -> a * b;
+    public static final DoubleBinaryOperator DIVIDE = (a, b) -> a / b;
+
+    private final String operator;
+    private final DoubleBinaryOperator function;
+    private final Node left, right;
+
+    public BinaryOperatorNode(final String operator, final DoubleBinaryOperator function,
+                              final Node left, final Node right) {
+        this.operator = operator;
+        this.function = function;
+        this.left = left;
+        this.right = right;
+    }
+
+    public String getOperator() {
+        return this.operator;
+    }
+
+    public DoubleBinaryOperator getFunction() {
+        return this.function;
+    }
+
+    public Node getLeft() {
+        return this.left;
+    }
+
+    public Node getRight() {
+        return this.right;
+    }
+
+    @Override
+    public double evaluate(final double[] variables) {
+        return this.function.applyAsDouble(this.left.evaluate(variables), this.right.evaluate(variables));
+    }
+
+    @Override
+    public <R> R accept(final NodeVisitor<R> visitor) {
+        return visitor.visitBinaryOperator(this);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof BinaryOperatorNode)) {
+            return false;
+        }
+        final BinaryOperatorNode node = (BinaryOperatorNode) other;
+        return node.function == this.function && node.left.equals(this.left) && node.right.equals(this.right);
+    }
+
+    @Override
+    public int hashCode() {
+        return (31 * System.identityHashCode(this.function) + this.left.hashCode()) * 31 + this.right.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "(" + this.left + " " + this.operator + " " + this.right + ")";
+    }
+}
@@ -0,0 +1,60 @@
+package com.recursivedescentmathparser.parser.ast;
+
+/**
+ * {@code if(condition, whenTrue, whenFalse)}: evaluates the condition and then only the branch it selects.
+ * A condition is true when it is not 0 (so NaN is true). The parser also builds {@code &&}, {@code ||} and
+ * {@code !} from conditionals, which makes them short-circuit.
+ */
+public final class ConditionalNode extends Node {
+    private final Node condition, whenTrue, whenFalse;
+
+    public ConditionalNode(final Node condition, final Node whenTrue, final Node whenFalse) {
+        this.condition = condition;
+        this.whenTrue = whenTrue;
+        this.whenFalse = whenFalse;
+    }
+
+    public Node getCondition() {
+        return this.condition;
+    }
+
+    public Node getWhenTrue() {
+        return this.whenTrue;
+    }
+
+    public Node getWhenFalse() {
+        return this.whenFalse;
+    }
+
+    @Override
+    public double evaluate(final double[] variables) {
+        return this.condition.evaluate(variables) != 0
+                ? this.whenTrue.evaluate(variables)
+                : this.whenFalse.evaluate(variables);
+    }
+
+    @Override
+    public <R> R accept(final NodeVisitor<R> visitor) {
+        return visitor.visitConditional(this);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof ConditionalNode)) {
+            return false;
+        }
+        final ConditionalNode node = (ConditionalNode) other;
+        return node.condition.equals(this.condition) && node.whenTrue.equals(this.whenTrue)
+                && node.whenFalse.equals(this.whenFalse);
+    }
+
+    @Override
+    public int hashCode() {
+        return (31 * this.condition.hashCode() + this.whenTrue.hashCode()) * 31 + this.whenFalse.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "if(" + this.condition + ", " + this.whenTrue + ", " + this.whenFalse + ")";
+    }
+}
@@ -0,0 +1,39 @@
+package com.recursivedescentmathparser.parser.ast;
+
+public final class ConstantNode extends Node {
+    private final double value;
+
+    public ConstantNode(final double value) {
+        this.value = value;
+    }
+
+    public double getValue() {
+        return this.value;
+    }
+
+    @Override
+    public double evaluate(final double[] variables) {
+        return this.value;
+    }
+
+    @Override
+    public <R> R accept(final NodeVisitor<R> visitor) {
+        return visitor.visitConstant(this);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        return other instanceof ConstantNode
+                && Double.doubleToRawLongBits(((ConstantNode) other).value) == Double.doubleToRawLongBits(this.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Double.hashCode(this.value);
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(this.value);
+    }
+}
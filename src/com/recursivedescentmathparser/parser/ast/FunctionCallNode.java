@@ -0,0 +1,56 @@
+package com.recursivedescentmathparser.parser.ast;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Call of a one-argument function. The function is resolved when the expression is parsed.
+ */
+public final class FunctionCallNode extends Node {
+    private final String name;
+    private final DoubleUnaryOperator function;
+    private final Node argument;
+
+    public FunctionCallNode(final String name, final DoubleUnaryOperator function, final Node argument) {
+        this.name = name;
+        this.function = function;
+        this.argument = argument;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public DoubleUnaryOperator getFunction() {
+        return this.function;
+    }
+
+    public Node getArgument() {
+        return this.argument;
+    }
+
+    @Override
+    public double evaluate(final double[] variables) {
+        return this.function.applyAsDouble(this.argument.evaluate(variables));
+    }
+
+    @Override
+    public <R> R accept(final NodeVisitor<R> visitor) {
+        return visitor.visitFunctionCall(this);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        return other instanceof FunctionCallNode && ((FunctionCallNode) other).function == this.function
+                && ((FunctionCallNode) other).argument.equals(this.argument);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(this.function) + this.argument.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.name + "(" + this.argument + ")";
+    }
+}
@@ -0,0 +1,59 @@
+package com.recursivedescentmathparser.parser.ast;
+
+/**
+ * Evaluates {@code value} once, stores it in a temporary slot and then evaluates {@code body},
+ * which reads the stored value back through a {@link VariableNode} with the same slot.
+ * Produced by common-subexpression elimination; temporaries live in the frame after the variables.
+ */
+public final class LetNode extends Node {
+    private final int slot;
+    private final Node value, body;
+
+    public LetNode(final int slot, final Node value, final Node body) {
+        this.slot = slot;
+        this.value = value;
+        this.body = body;
+    }
+
+    public int getSlot() {
+        return this.slot;
+    }
+
+    public Node getValue() {
+        return this.value;
+    }
+
+    public Node getBody() {
+        return this.body;
+    }
+
+    @Override
+    public double evaluate(final double[] variables) {
+        variables[this.slot] = this.value.evaluate(variables);
+        return this.body.evaluate(variables);
+    }
+
+    @Override
+    public <R> R accept(final NodeVisitor<R> visitor) {
+        return visitor.visitLet(this);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof LetNode)) {
+            return false;
+        }
+        final LetNode node = (LetNode) other;
+        return node.slot == this.slot && node.value.equals(this.value) && node.body.equals(this.body);
+    }
+
+    @Override
+    public int hashCode() {
+        return (31 * this.slot + this.value.hashCode()) * 31 + this.body.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "let $" + this.slot + " = " + this.value + " in " + this.body;
+    }
+}
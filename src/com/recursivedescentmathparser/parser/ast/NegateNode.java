@@ -0,0 +1,41 @@
+package com.recursivedescentmathparser.parser.ast;
+
+/**
+ * Unary minus.
+ */
+public final class NegateNode extends Node {
+    private final Node operand;
+
+    public NegateNode(final Node operand) {
+        this.operand = operand;
+    }
+
+    public Node getOperand() {
+        return this.operand;
+    }
+
+    @Override
+    public double evaluate(final double[] variables) {
+        return -1 * this.operand.evaluate(variables);
+    }
+
+    @Override
+    public <R> R accept(final NodeVisitor<R> visitor) {
+        return visitor.visitNegate(this);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        return other instanceof NegateNode && ((NegateNode) other).operand.equals(this.operand);
+    }
+
+    @Override
+    public int hashCode() {
+        return -this.operand.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "-(" + this.operand + ")";
+    }
+}
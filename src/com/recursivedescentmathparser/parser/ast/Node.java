@@ -0,0 +1,18 @@
+package com.recursivedescentmathparser.parser.ast;
+
+/**
+ * Base class of the compiled expression tree.
+ * Nodes are immutable: a tree is built once by the parser and can be evaluated any number of times.
+ * Equality is structural, with functions compared by identity, so equal subtrees always compute the same value
+ * (given pure functions).
+ */
+public abstract class Node {
+
+    /**
+     * Evaluates this subtree.
+     * @param variables current variable values, indexed by the slot of each {@link VariableNode}
+     */
+    public abstract double evaluate(final double[] variables);
+
+    public abstract <R> R accept(final NodeVisitor<R> visitor);
+}
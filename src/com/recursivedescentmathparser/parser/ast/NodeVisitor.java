@@ -0,0 +1,24 @@
+package com.recursivedescentmathparser.parser.ast;
+
+/**
+ * Visitor over the expression tree, used by the passes that analyse or rewrite a parsed expression.
+ */
+public interface NodeVisitor<R> {
+    R visitConstant(final ConstantNode node);
+
+    R visitVariable(final VariableNode node);
+
+    R visitNegate(final NegateNode node);
+
+    R visitBinaryOperator(final BinaryOperatorNode node);
+
+    R visitFunctionCall(final FunctionCallNode node);
+
+    R visitBiFunctionCall(final BiFunctionCallNode node);
+
+    R visitVariadicFunctionCall(final VariadicFunctionCallNode node);
+
+    R visitLet(final LetNode node);
+
+    R visitConditional(final ConditionalNode node);
+}
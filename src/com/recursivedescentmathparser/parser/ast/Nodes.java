@@ -0,0 +1,143 @@
+package com.recursivedescentmathparser.parser.ast;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Structural helpers shared by the passes over the expression tree.
+ */
+public final class Nodes {
+
+    private Nodes() {
+    }
+
+    public static List<Node> children(final Node node) {
+        return node.accept(CHILDREN);
+    }
+
+    /**
+     * @return a copy of {@code node} with {@code mapper} applied to each direct child,
+     * or {@code node} itself if no child changed
+     */
+    public static Node mapChildren(final Node node, final UnaryOperator<Node> mapper) {
+        return node.accept(new NodeVisitor<Node>() {
+            @Override
+            public Node visitConstant(final ConstantNode node) {
+                return node;
+            }
+
+            @Override
+            public Node visitVariable(final VariableNode node) {
+                return node;
+            }
+
+            @Override
+            public Node visitNegate(final NegateNode node) {
+                final Node operand = mapper.apply(node.getOperand());
+                return operand == node.getOperand() ? node : new NegateNode(operand);
+            }
+
+            @Override
+            public Node visitBinaryOperator(final BinaryOperatorNode node) {
+                final Node left = mapper.apply(node.getLeft()), right = mapper.apply(node.getRight());
+                return left == node.getLeft() && right == node.getRight()
+                        ? node
+                        : new BinaryOperatorNode(node.getOperator(), node.getFunction(), left, right);
+            }
+
+            @Override
+            public Node visitFunctionCall(final FunctionCallNode node) {
+                final Node argument = mapper.apply(node.getArgument());
+                return argument == node.getArgument()
+                        ? node
+                        : new FunctionCallNode(node.getName(), node.getFunction(), argument);
+            }
+
+            @Override
+            public Node visitBiFunctionCall(final BiFunctionCallNode node) {
+                final Node first = mapper.apply(node.getFirst()), second = mapper.apply(node.getSecond());
+                return first == node.getFirst() && second == node.getSecond()
+                        ? node
+                        : new BiFunctionCallNode(node.getName(), node.getFunction(), first, second);
+            }
+
+            @Override
+            public Node visitVariadicFunctionCall(final VariadicFunctionCallNode node) {
+                final Node[] arguments = new Node[node.getArgumentCount()];
+                boolean changed = false;
+                for (int i = 0; i < arguments.length; ++i) {
+                    arguments[i] = mapper.apply(node.getArgument(i));
+                    changed |= arguments[i] != node.getArgument(i);
+                }
+                return changed ? new VariadicFunctionCallNode(node.getName(), node.getFunction(), arguments) : node;
+            }
+
+            @Override
+            public Node visitLet(final LetNode node) {
+                final Node value = mapper.apply(node.getValue()), body = mapper.apply(node.getBody());
+                return value == node.getValue() && body == node.getBody()
+                        ? node
+                        : new LetNode(node.getSlot(), value, body);
+            }
+
+            @Override
+            public Node visitConditional(final ConditionalNode node) {
+                final Node condition = mapper.apply(node.getCondition());
+                final Node whenTrue = mapper.apply(node.getWhenTrue()), whenFalse = mapper.apply(node.getWhenFalse());
+                return condition == node.getCondition() && whenTrue == node.getWhenTrue()
+                        && whenFalse == node.getWhenFalse()
+                        ? node
+                        : new ConditionalNode(condition, whenTrue, whenFalse);
+            }
+        });
+    }
+
+    private static final NodeVisitor<List<Node>> CHILDREN = new NodeVisitor<List<Node>>() {
+        @Override
+        public List<Node> visitConstant(final ConstantNode node) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<Node> visitVariable(final VariableNode node) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<Node> visitNegate(final NegateNode node) {
+            return Collections.singletonList(node.getOperand());
+        }
+
+        @Override
+        public List<Node> visitBinaryOperator(final BinaryOperatorNode node) {
+            return Arrays.asList(node.getLeft(), node.getRight());
+        }
+
+        @Override
+        public List<Node> visitFunctionCall(final FunctionCallNode node) {
+            return Collections.singletonList(node.getArgument());
+        }
+
+        @Override
+        public List<Node> visitBiFunctionCall(final BiFunctionCallNode node) {
+            return Arrays.asList(node.getFirst(), node.getSecond());
+        }
+
+        @Override
+        public List<Node> visitVariadicFunctionCall(final VariadicFunctionCallNode node) {
+            return node.getArguments();
+        }
+
+        @Override
+        public List<Node> visitLet(final LetNode node) {
+            return Arrays.asList(node.getValue(), node.getBody());
+        }
+
+        @Override
+        public List<Node> visitConditional(final ConditionalNode node) {
+            return Arrays.asList(node.getCondition(), node.getWhenTrue(), node.getWhenFalse());
+        }
+    };
+}
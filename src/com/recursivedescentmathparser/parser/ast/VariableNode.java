@@ -0,0 +1,48 @@
+package com.recursivedescentmathparser.parser.ast;
+
+/**
+ * Reads a variable from the slot it was assigned when the expression was parsed.
+ */
+public final class VariableNode extends Node {
+    private final String name;
+    private final int slot;
+
+    public VariableNode(final String name, final int slot) {
+        this.name = name;
+        this.slot = slot;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public int getSlot() {
+        return this.slot;
+    }
+
+    @Override
+    public double evaluate(final double[] variables) {
+        return variables[this.slot];
+    }
+
+    @Override
+    public <R> R accept(final NodeVisitor<R> visitor) {
+        return visitor.visitVariable(this);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        return other instanceof VariableNode && ((VariableNode) other).slot == this.slot
+                && ((VariableNode) other).name.equals(this.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.slot + this.name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+}
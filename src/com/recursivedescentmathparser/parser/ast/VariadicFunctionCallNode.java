@@ -0,0 +1,86 @@
+package com.recursivedescentmathparser.parser.ast;
+
+import com.recursivedescentmathparser.parser.VariadicFunction;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Call of a function of any number of arguments, such as sum(a, b, c) or poly(x, 1, 2, 3).
+ * The arguments are evaluated into a per-thread buffer, so a call allocates nothing.
+ */
+public final class VariadicFunctionCallNode extends Node {
+    private final String name;
+    private final VariadicFunction function;
+    private final Node[] arguments;
+
+    public VariadicFunctionCallNode(final String name, final VariadicFunction function, final Node[] arguments) {
+        this.name = name;
+        this.function = function;
+        this.arguments = arguments.clone();
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public VariadicFunction getFunction() {
+        return this.function;
+    }
+
+    public List<Node> getArguments() {
+        return Collections.unmodifiableList(Arrays.asList(this.arguments));
+    }
+
+    public int getArgumentCount() {
+        return this.arguments.length;
+    }
+
+    public Node getArgument(final int index) {
+        return this.arguments[index];
+    }
+
+    @Override
+    public double evaluate(final double[] variables) {
+        final ArgumentStack stack = ArgumentStack.current();
+        final int base = stack.push(this.arguments.length);
+        try {
+            for (int i = 0; i < this.arguments.length; ++i) {
+                final double value = this.arguments[i].evaluate(variables);
+                stack.values[base + i] = value; // after evaluating, as a nested call may have grown the buffer
+            }
+            return this.function.apply(stack.values, base, this.arguments.length);
+        } finally {
+            stack.top = base;
+        }
+    }
+
+    @Override
+    public <R> R accept(final NodeVisitor<R> visitor) {
+        return visitor.visitVariadicFunctionCall(this);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof VariadicFunctionCallNode)) {
+            return false;
+        }
+        final VariadicFunctionCallNode node = (VariadicFunctionCallNode) other;
+        return node.function == this.function && Arrays.equals(node.arguments, this.arguments);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(this.function) + Arrays.hashCode(this.arguments);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder(this.name).append('(');
+        for (int i = 0; i < this.arguments.length; ++i) {
+            builder.append(i == 0 ? "" : ", ").append(this.arguments[i]);
+        }
+        return builder.append(')').toString();
+    }
+}
@@ -0,0 +1,364 @@
+package com.recursivedescentmathparser.parser.batch;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.FunctionRegistry;
+import com.recursivedescentmathparser.parser.VariadicFunction;
+import com.recursivedescentmathparser.parser.ast.BiFunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.BinaryOperatorNode;
+import com.recursivedescentmathparser.parser.ast.ConditionalNode;
+import com.recursivedescentmathparser.parser.ast.ConstantNode;
+import com.recursivedescentmathparser.parser.ast.FunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.LetNode;
+import com.recursivedescentmathparser.parser.ast.NegateNode;
+import com.recursivedescentmathparser.parser.ast.Node;
+import com.recursivedescentmathparser.parser.ast.NodeVisitor;
+import com.recursivedescentmathparser.parser.ast.VariableNode;
+import com.recursivedescentmathparser.parser.ast.VariadicFunctionCallNode;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Evaluates one expression over many rows of columnar input.
+ * Rows are processed in blocks: the tree is walked once per block and every node runs a tight loop over the
+ * block, so the per-row cost is a few array operations instead of a virtual call per node. Arithmetic and
+ * comparison loops are simple enough for the JIT to vectorize; common built-ins call {@link Math} directly.
+ * <p>
+ * Instances are immutable and thread-safe; every call works on its own buffers.
+ */
+public class BatchEvaluator {
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    private final CompiledExpression expression;
+    private final int blockSize;
+
+    public BatchEvaluator(final CompiledExpression expression) {
+        this(expression, DEFAULT_BLOCK_SIZE);
+    }
+
+    public BatchEvaluator(final CompiledExpression expression, final int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.expression = expression;
+        this.blockSize = blockSize;
+    }
+
+    public CompiledExpression getExpression() {
+        return this.expression;
+    }
+
+    /**
+     * @param columns column {@code i} holds the values of variable slot {@code i}; a null column stands for the
+     * variable's default value
+     * @param out receives one result per row; its length is the number of rows
+     */
+    public void evaluate(final double[][] columns, final double[] out) {
+        evaluate(columns, out, 0, out.length);
+    }
+
+    /**
+     * Evaluates rows {@code from} (inclusive) to {@code to} (exclusive).
+     */
+    public void evaluate(final double[][] columns, final double[] out, final int from, final int to) {
+        if (columns.length < this.expression.getVariableCount()) {
+            throw new IllegalArgumentException("Expected " + this.expression.getVariableCount() + " columns, got "
+                    + columns.length);
+        }
+        final BlockVisitor visitor = new BlockVisitor(columns, Math.min(this.blockSize, Math.max(to - from, 1)));
+        for (int start = from; start < to; start += visitor.capacity) {
+            visitor.start = start;
+            visitor.length = Math.min(visitor.capacity, to - start);
+            final double[] result = this.expression.getRoot().accept(visitor);
+            System.arraycopy(result, 0, out, start, visitor.length);
+            visitor.release(result);
+        }
+    }
+
+    private class BlockVisitor implements NodeVisitor<double[]> {
+        private final double[][] columns;
+        private final int capacity;
+        private final Deque<double[]> freeBuffers = new ArrayDeque<>();
+        private final double[][] temporaries;
+        private double[] row;
+        private int start, length;
+
+        BlockVisitor(final double[][] columns, final int capacity) {
+            this.columns = columns;
+            this.capacity = capacity;
+            this.temporaries = new double[expression.getFrameSize()][];
+        }
+
+        private double[] acquire() {
+            final double[] buffer = this.freeBuffers.poll();
+            return buffer != null ? buffer : new double[this.capacity];
+        }
+
+        void release(final double[] buffer) {
+            this.freeBuffers.push(buffer);
+        }
+
+        @Override
+        public double[] visitConstant(final ConstantNode node) {
+            final double[] result = acquire();
+            Arrays.fill(result, 0, this.length, node.getValue());
+            return result;
+        }
+
+        @Override
+        public double[] visitVariable(final VariableNode node) {
+            final double[] result = acquire();
+            final int slot = node.getSlot();
+            if (slot >= expression.getVariableCount()) {
+                System.arraycopy(this.temporaries[slot], 0, result, 0, this.length);
+            } else if (this.columns[slot] == null) {
+                Arrays.fill(result, 0, this.length, expression.getDefaultValue(slot));
+            } else {
+                System.arraycopy(this.columns[slot], this.start, result, 0, this.length);
+            }
+            return result;
+        }
+
+        @Override
+        public double[] visitNegate(final NegateNode node) {
+            final double[] a = node.getOperand().accept(this);
+            for (int i = 0; i < this.length; ++i) {
+                a[i] = -1 * a[i];
+            }
+            return a;
+        }
+
+        @Override
+        public double[] visitBinaryOperator(final BinaryOperatorNode node) {
+            final double[] a = node.getLeft().accept(this), b = node.getRight().accept(this);
+            final DoubleBinaryOperator function = node.getFunction();
+            final int n = this.length;
+            if (function == BinaryOperatorNode.ADD) {
+                for (int i = 0; i < n; ++i) a[i] = a[i] + b[i];
+            } else if (function == BinaryOperatorNode.SUBTRACT) {
+                for (int i = 0; i < n; ++i) a[i] = a[i] - b[i];
+            } else if (function == BinaryOperatorNode.MULTIPLY) {
+                for (int i = 0; i < n; ++i) a[i] = a[i] * b[i];
+            } else if (function == BinaryOperatorNode.DIVIDE) {
+                for (int i = 0; i < n; ++i) a[i] = a[i] / b[i];
+            } else if (function == FunctionRegistry.defaults().getBinaryOperator(node.getOperator())) {
+                builtinOperator(node.getOperator(), function, a, b, n);
+            } else {
+                for (int i = 0; i < n; ++i) a[i] = function.applyAsDouble(a[i], b[i]);
+            }
+            release(b);
+            return a;
+        }
+
+        private void builtinOperator(final String operator, final DoubleBinaryOperator function,
+                                     final double[] a, final double[] b, final int n) {
+            switch (operator) {
+                case "^":
+                    for (int i = 0; i < n; ++i) a[i] = Math.pow(a[i], b[i]);
+                    break;
+                case ">=":
+                    for (int i = 0; i < n; ++i) a[i] = a[i] >= b[i] ? 1.0 : 0;
+                    break;
+                case "<=":
+                    for (int i = 0; i < n; ++i) a[i] = a[i] <= b[i] ? 1.0 : 0;
+                    break;
+                case ">":
+                    for (int i = 0; i < n; ++i) a[i] = a[i] > b[i] ? 1.0 : 0;
+                    break;
+                case "<":
+                    for (int i = 0; i < n; ++i) a[i] = a[i] < b[i] ? 1.0 : 0;
+                    break;
+                default:
+                    for (int i = 0; i < n; ++i) a[i] = function.applyAsDouble(a[i], b[i]);
+            }
+        }
+
+        @Override
+        public double[] visitFunctionCall(final FunctionCallNode node) {
+            final double[] a = node.getArgument().accept(this);
+            final DoubleUnaryOperator function = node.getFunction();
+            final int n = this.length;
+            final String builtin = function == FunctionRegistry.defaults().getFunction(node.getName())
+                    ? node.getName()
+                    : "";
+            switch (builtin) {
+                case "sqr":
+                    for (int i = 0; i < n; ++i) a[i] = a[i] * a[i];
+                    break;
+                case "abs":
+                    for (int i = 0; i < n; ++i) a[i] = Math.abs(a[i]);
+                    break;
+                case "sqrt":
+                    for (int i = 0; i < n; ++i) a[i] = Math.sqrt(a[i]);
+                    break;
+                case "exp":
+                    for (int i = 0; i < n; ++i) a[i] = Math.exp(a[i]);
+                    break;
+                case "ln":
+                    for (int i = 0; i < n; ++i) a[i] = Math.log(a[i]);
+                    break;
+                case "sin":
+                    for (int i = 0; i < n; ++i) a[i] = Math.sin(a[i]);
+                    break;
+                case "cos":
+                    for (int i = 0; i < n; ++i) a[i] = Math.cos(a[i]);
+                    break;
+                default:
+                    for (int i = 0; i < n; ++i) a[i] = function.applyAsDouble(a[i]);
+            }
+            return a;
+        }
+
+        @Override
+        public double[] visitBiFunctionCall(final BiFunctionCallNode node) {
+            final double[] a = node.getFirst().accept(this), b = node.getSecond().accept(this);
+            final DoubleBinaryOperator function = node.getFunction();
+            final int n = this.length;
+            final String builtin = function == FunctionRegistry.defaults().getBiFunction(node.getName())
+                    ? node.getName()
+                    : "";
+            switch (builtin) {
+                case "max":
+                    for (int i = 0; i < n; ++i) a[i] = Math.max(a[i], b[i]);
+                    break;
+                case "min":
+                    for (int i = 0; i < n; ++i) a[i] = Math.min(a[i], b[i]);
+                    break;
+                default:
+                    for (int i = 0; i < n; ++i) a[i] = function.applyAsDouble(a[i], b[i]);
+            }
+            release(b);
+            return a;
+        }
+
+        /**
+         * Built-in aggregates fold the argument columns into the first one; {@code poly} runs Horner's method
+         * over the coefficient columns. Other functions are called per row with the row's arguments.
+         */
+        @Override
+        public double[] visitVariadicFunctionCall(final VariadicFunctionCallNode node) {
+            final int count = node.getArgumentCount();
+            final int n = this.length;
+            final String builtin = count > 0
+                    && node.getFunction() == FunctionRegistry.defaults().getVariadicFunction(node.getName())
+                    ? node.getName()
+                    : "";
+            if (builtin.equals("poly")) {
+                if (count < 2) {
+                    final double[] result = node.getArgument(0).accept(this);
+                    Arrays.fill(result, 0, n, 0);
+                    return result;
+                }
+                final double[] x = node.getArgument(0).accept(this);
+                final double[][] coefficients = new double[count - 1][];
+                for (int i = 1; i < count; ++i) {
+                    coefficients[i - 1] = node.getArgument(i).accept(this);
+                }
+                final double[] result = coefficients[count - 2];
+                for (int k = count - 3; k >= 0; --k) {
+                    final double[] c = coefficients[k];
+                    for (int i = 0; i < n; ++i) result[i] = result[i] * x[i] + c[i];
+                    release(c);
+                }
+                release(x);
+                return result;
+            }
+            final double[][] arguments = new double[count][];
+            for (int i = 0; i < count; ++i) {
+                arguments[i] = node.getArgument(i).accept(this);
+            }
+            switch (builtin) {
+                case "sum":
+                case "avg": {
+                    final double[] a = arguments[0];
+                    for (int k = 1; k < count; ++k) {
+                        final double[] b = arguments[k];
+                        for (int i = 0; i < n; ++i) a[i] = a[i] + b[i];
+                        release(b);
+                    }
+                    if (builtin.equals("avg")) {
+                        for (int i = 0; i < n; ++i) a[i] = a[i] / count;
+                    }
+                    return a;
+                }
+                case "min":
+                case "max": {
+                    final double[] a = arguments[0];
+                    final boolean min = builtin.equals("min");
+                    for (int k = 1; k < count; ++k) {
+                        final double[] b = arguments[k];
+                        if (min) {
+                            for (int i = 0; i < n; ++i) a[i] = Math.min(a[i], b[i]);
+                        } else {
+                            for (int i = 0; i < n; ++i) a[i] = Math.max(a[i], b[i]);
+                        }
+                        release(b);
+                    }
+                    return a;
+                }
+                default: {
+                    final VariadicFunction function = node.getFunction();
+                    final double[] row = new double[count];
+                    final double[] result = count > 0 ? arguments[0] : acquire();
+                    for (int i = 0; i < n; ++i) {
+                        for (int k = 0; k < count; ++k) row[k] = arguments[k][i];
+                        result[i] = function.apply(row, 0, count);
+                    }
+                    for (int k = 1; k < count; ++k) release(arguments[k]);
+                    return result;
+                }
+            }
+        }
+
+        /**
+         * Walks only the taken branch when the whole block agrees on the condition; a mixed block is evaluated row
+         * by row, so a branch is still never evaluated for a row that does not take it.
+         */
+        @Override
+        public double[] visitConditional(final ConditionalNode node) {
+            final double[] condition = node.getCondition().accept(this);
+            final int n = this.length;
+            int taken = 0;
+            for (int i = 0; i < n; ++i) {
+                if (condition[i] != 0) ++taken;
+            }
+            if (taken == n || taken == 0) {
+                release(condition);
+                return (taken == n ? node.getWhenTrue() : node.getWhenFalse()).accept(this);
+            }
+            if (this.row == null) {
+                this.row = new double[expression.getFrameSize()];
+            }
+            for (int i = 0; i < n; ++i) {
+                loadRow(i);
+                condition[i] = (condition[i] != 0 ? node.getWhenTrue() : node.getWhenFalse()).evaluate(this.row);
+            }
+            return condition;
+        }
+
+        private void loadRow(final int i) {
+            for (int slot = 0; slot < this.row.length; ++slot) {
+                if (slot >= expression.getVariableCount()) {
+                    this.row[slot] = this.temporaries[slot] != null ? this.temporaries[slot][i] : 0;
+                } else if (this.columns[slot] == null) {
+                    this.row[slot] = expression.getDefaultValue(slot);
+                } else {
+                    this.row[slot] = this.columns[slot][this.start + i];
+                }
+            }
+        }
+
+        @Override
+        public double[] visitLet(final LetNode node) {
+            final double[] value = node.getValue().accept(this);
+            this.temporaries[node.getSlot()] = value;
+            final double[] result = node.getBody().accept(this);
+            this.temporaries[node.getSlot()] = null;
+            release(value);
+            return result;
+        }
+    }
+}
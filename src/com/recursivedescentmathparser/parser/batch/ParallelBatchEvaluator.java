@@ -0,0 +1,155 @@
+package com.recursivedescentmathparser.parser.batch;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.Expression;
+import com.recursivedescentmathparser.parser.ParsedExpression;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates one expression over many rows on several threads.
+ * The row range is split into chunks of at least {@code minChunkSize} rows, either recursively on a
+ * {@link ForkJoinPool} or up front when a plain {@link Executor} is supplied. Every chunk runs a
+ * {@link BatchEvaluator} with its own buffers; the expression itself is immutable, so nothing is shared
+ * between threads except the input columns and disjoint parts of the output.
+ */
+public class ParallelBatchEvaluator {
+    public static final int DEFAULT_MIN_CHUNK_SIZE = 16 * 1024;
+
+    private final BatchEvaluator evaluator;
+    private final ParsedExpression parsed;
+    private final ForkJoinPool pool;
+    private final Executor executor;
+    private final int minChunkSize;
+
+    public ParallelBatchEvaluator(final CompiledExpression expression) {
+        this(expression, ForkJoinPool.commonPool(), DEFAULT_MIN_CHUNK_SIZE);
+    }
+
+    public ParallelBatchEvaluator(final CompiledExpression expression, final ForkJoinPool pool,
+                                  final int minChunkSize) {
+        this(expression, pool, null, minChunkSize, null);
+    }
+
+    public ParallelBatchEvaluator(final CompiledExpression expression, final Executor executor,
+                                  final int minChunkSize) {
+        this(expression, null, executor, minChunkSize, null);
+    }
+
+    /**
+     * Variables without a column take the value the parser has for them when {@link #evaluate} is called, as in
+     * {@link Expression#evaluate()}. The slots are those of {@link ParsedExpression#getCompiledExpression()}, or
+     * pass the columns by name.
+     * @param expression an expression returned by {@link com.recursivedescentmathparser.parser.MathParser#parse}
+     */
+    public ParallelBatchEvaluator(final Expression expression) {
+        this(unwrap(expression));
+    }
+
+    private ParallelBatchEvaluator(final ParsedExpression parsed) {
+        this(parsed.getCompiledExpression(), ForkJoinPool.commonPool(), null, DEFAULT_MIN_CHUNK_SIZE, parsed);
+    }
+
+    private ParallelBatchEvaluator(final CompiledExpression expression, final ForkJoinPool pool,
+                                   final Executor executor, final int minChunkSize, final ParsedExpression parsed) {
+        if (minChunkSize <= 0) {
+            throw new IllegalArgumentException("Minimum chunk size must be positive");
+        }
+        this.evaluator = new BatchEvaluator(expression);
+        this.parsed = parsed;
+        this.pool = pool;
+        this.executor = executor;
+        this.minChunkSize = minChunkSize;
+    }
+
+    private static ParsedExpression unwrap(final Expression expression) {
+        if (!(expression instanceof ParsedExpression)) {
+            throw new IllegalArgumentException("Only expressions returned by MathParser.parse can be batched");
+        }
+        return (ParsedExpression) expression;
+    }
+
+    /**
+     * @param columns column {@code i} holds the values of variable slot {@code i}, in the order of
+     * {@link CompiledExpression#getVariableNames()}, or null for the variable's default value
+     * @param out receives one result per row
+     */
+    public void evaluate(final double[][] columns, final double[] out) {
+        final BatchEvaluator evaluator = this.parsed == null ? this.evaluator
+                : new BatchEvaluator(this.parsed.bindCurrentValues());
+        if (this.pool != null) {
+            this.pool.invoke(new Chunk(evaluator, columns, out, 0, out.length));
+        } else {
+            evaluateOnExecutor(evaluator, columns, out);
+        }
+    }
+
+    /**
+     * Same as {@link #evaluate(double[][], double[])} with the columns given by variable name; variables without
+     * a column keep their default value.
+     */
+    public void evaluate(final Map<String, double[]> columns, final double[] out) {
+        final CompiledExpression expression = this.evaluator.getExpression();
+        final double[][] bySlot = new double[expression.getVariableCount()][];
+        for (int slot = 0; slot < bySlot.length; ++slot) {
+            bySlot[slot] = columns.get(expression.getVariableNames().get(slot));
+        }
+        evaluate(bySlot, out);
+    }
+
+    private void evaluateOnExecutor(final BatchEvaluator evaluator, final double[][] columns, final double[] out) {
+        final int rows = out.length;
+        final int chunkSize = Math.max(this.minChunkSize,
+                (rows + 4 * Runtime.getRuntime().availableProcessors() - 1)
+                        / (4 * Runtime.getRuntime().availableProcessors()));
+        final List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (int from = 0; from < rows; from += chunkSize) {
+            final int start = from, end = Math.min(rows, from + chunkSize);
+            chunks.add(CompletableFuture.runAsync(() -> evaluator.evaluate(columns, out, start, end),
+                    this.executor));
+        }
+        try {
+            CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final BatchEvaluator evaluator;
+        private final double[][] columns;
+        private final double[] out;
+        private final int from, to;
+
+        Chunk(final BatchEvaluator evaluator, final double[][] columns, final double[] out, final int from,
+              final int to) {
+            this.evaluator = evaluator;
+            this.columns = columns;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= 2 * minChunkSize) {
+                this.evaluator.evaluate(this.columns, this.out, this.from, this.to);
+                return;
+            }
+            final int middle = (this.from + this.to) >>> 1;
+            invokeAll(new Chunk(this.evaluator, this.columns, this.out, this.from, middle),
+                    new Chunk(this.evaluator, this.columns, this.out, middle, this.to));
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.recursivedescentmathparser.parser.cache;
+
+/**
+ * Immutable wrapper that caches the hash code of a variable declaration set (or map of defaults),
+ * so it can be part of an {@link ExpressionCache} key without rehashing it on every lookup.
+ */
+public final class CacheScope {
+    private final Object declarations;
+    private final int hash;
+
+    private CacheScope(final Object declarations) {
+        this.declarations = declarations;
+        this.hash = declarations.hashCode();
+    }
+
+    /**
+     * @param declarations an immutable collection or map; it must not change afterwards
+     */
+    public static CacheScope of(final Object declarations) {
+        return new CacheScope(declarations);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        return other == this || other instanceof CacheScope && ((CacheScope) other).hash == this.hash
+                && ((CacheScope) other).declarations.equals(this.declarations);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+}
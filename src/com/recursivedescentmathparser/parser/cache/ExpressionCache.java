@@ -0,0 +1,168 @@
+package com.recursivedescentmathparser.parser.cache;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of compiled expressions keyed by normalized source text, registry version and variable scope.
+ * Lookups never block: entries live in a {@link ConcurrentHashMap} and record their last access with a logical
+ * clock. When an insert pushes the cache over its limit the least recently used entries are evicted in one go,
+ * down to 90% of the limit, so eviction work is amortised over many inserts.
+ */
+public class ExpressionCache {
+    private final int maxSize;
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder();
+    private final Object evictionLock = new Object();
+
+    public ExpressionCache(final int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Collapses runs of spaces and trims the text. Other whitespace is kept since the lexer only skips spaces.
+     */
+    public static String normalize(final String source) {
+        final StringBuilder normalized = new StringBuilder(source.length());
+        boolean space = false;
+        for (int i = 0; i < source.length(); ++i) {
+            final char ch = source.charAt(i);
+            if (ch == ' ') {
+                space = true;
+                continue;
+            }
+            if (space && normalized.length() > 0) {
+                normalized.append(' ');
+            }
+            space = false;
+            normalized.append(ch);
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * @param registryVersion {@link com.recursivedescentmathparser.parser.FunctionRegistry#getVersion()} of the
+     * registry the source is compiled against
+     * @param scope identifies the declared variables (and their default values if they matter); must have cheap
+     * equals and hashCode, see {@link CacheScope}
+     * @param compiler called with {@code source} itself on a miss, so that the positions of parse errors refer to
+     * the text the caller passed; the normalized text is only the key
+     */
+    public CompiledExpression get(final String source, final long registryVersion, final Object scope,
+                                  final Function<String, CompiledExpression> compiler) {
+        final Key key = new Key(normalize(source), registryVersion, scope);
+        final Entry entry = this.entries.get(key);
+        if (entry != null) {
+            entry.lastAccess = this.clock.incrementAndGet();
+            this.hits.increment();
+            return entry.expression;
+        }
+        this.misses.increment();
+        final Entry created = new Entry(compiler.apply(source), this.clock.incrementAndGet());
+        final Entry raced = this.entries.putIfAbsent(key, created);
+        if (raced != null) {
+            return raced.expression;
+        }
+        if (this.entries.size() > this.maxSize) {
+            evict();
+        }
+        return created.expression;
+    }
+
+    private void evict() {
+        synchronized (this.evictionLock) {
+            final int excess = this.entries.size() - this.maxSize * 9 / 10;
+            if (this.entries.size() <= this.maxSize || excess <= 0) {
+                return;
+            }
+            final List<Map.Entry<Key, Entry>> snapshot = new ArrayList<>(this.entries.entrySet());
+            snapshot.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+            for (int i = 0; i < excess && i < snapshot.size(); ++i) {
+                if (this.entries.remove(snapshot.get(i).getKey(), snapshot.get(i).getValue())) {
+                    this.evictions.increment();
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        this.entries.clear();
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return this.evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ExpressionCache{size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + "}";
+    }
+
+    private static final class Entry {
+        private final CompiledExpression expression;
+        private volatile long lastAccess;
+
+        Entry(final CompiledExpression expression, final long lastAccess) {
+            this.expression = expression;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private static final class Key {
+        private final String source;
+        private final long registryVersion;
+        private final Object scope;
+        private final int hash;
+
+        Key(final String source, final long registryVersion, final Object scope) {
+            this.source = source;
+            this.registryVersion = registryVersion;
+            this.scope = scope;
+            this.hash = (source.hashCode() * 31 + Long.hashCode(registryVersion)) * 31 + scope.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) other;
+            return key.hash == this.hash && key.registryVersion == this.registryVersion
+                    && key.source.equals(this.source) && key.scope.equals(this.scope);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
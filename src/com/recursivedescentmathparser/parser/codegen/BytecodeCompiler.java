@@ -0,0 +1,431 @@
+package com.recursivedescentmathparser.parser.codegen;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.Evaluator;
+import com.recursivedescentmathparser.parser.FunctionRegistry;
+import com.recursivedescentmathparser.parser.VariadicFunction;
+import com.recursivedescentmathparser.parser.ast.BiFunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.BinaryOperatorNode;
+import com.recursivedescentmathparser.parser.ast.ConditionalNode;
+import com.recursivedescentmathparser.parser.ast.ConstantNode;
+import com.recursivedescentmathparser.parser.ast.FunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.LetNode;
+import com.recursivedescentmathparser.parser.ast.NegateNode;
+import com.recursivedescentmathparser.parser.ast.Node;
+import com.recursivedescentmathparser.parser.ast.NodeVisitor;
+import com.recursivedescentmathparser.parser.ast.VariableNode;
+import com.recursivedescentmathparser.parser.ast.VariadicFunctionCallNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+import static com.recursivedescentmathparser.parser.codegen.ClassEmitter.Code.*;
+
+/**
+ * Compiles an expression tree into a class implementing {@link Evaluator}, so the JIT sees the whole formula
+ * as one straight-line method instead of a chain of virtual calls.
+ * Constants are loaded from the constant pool, arithmetic becomes plain double instructions and built-ins that were
+ * not overridden in the registry become static calls ({@link Math#sin(double)} etc.); user functions are called
+ * through the operator instances captured by the generated object.
+ */
+public class BytecodeCompiler {
+    private static final String EVALUATOR = "com/recursivedescentmathparser/parser/Evaluator";
+    private static final String CLASS_NAME = "com/recursivedescentmathparser/parser/codegen/GeneratedEvaluator";
+    private static final String MATH = "java/lang/Math";
+    private static final String MATH_PARSER = "com/recursivedescentmathparser/parser/MathParser";
+    private static final String BUILTINS = "com/recursivedescentmathparser/parser/BuiltinFunctions";
+    private static final String UNARY_DESCRIPTOR = "(D)D", BINARY_DESCRIPTOR = "(DD)D";
+    private static final String FUNCTIONS_DESCRIPTOR = "[Ljava/util/function/DoubleUnaryOperator;";
+    private static final String OPERATORS_DESCRIPTOR = "[Ljava/util/function/DoubleBinaryOperator;";
+    private static final String VARIADIC_FUNCTION = "com/recursivedescentmathparser/parser/VariadicFunction";
+    private static final String VARIADIC_FUNCTIONS_DESCRIPTOR = "[L" + VARIADIC_FUNCTION + ";";
+    private static final String ARGUMENT_STACK = "com/recursivedescentmathparser/parser/ast/ArgumentStack";
+    private static final Map<String, String[]> INTRINSIC_FUNCTIONS = createIntrinsicFunctions();
+    private static final Map<String, String[]> INTRINSIC_OPERATORS = createIntrinsicOperators();
+    private static final Map<String, String[]> INTRINSIC_BI_FUNCTIONS = createIntrinsicBiFunctions();
+    /**
+     * Largest method HotSpot compiles, in bytes of bytecode ({@code HugeMethodLimit}); a larger one stays
+     * interpreted, unless the JVM runs with {@code -XX:-DontCompileHugeMethods}, and is slower than the tree.
+     */
+    public static final int MAX_METHOD_SIZE = 8000;
+    private static final AtomicInteger classCounter = new AtomicInteger();
+
+    /**
+     * @return the expression evaluated by generated bytecode, or the expression itself if its method would be
+     * longer than {@link #MAX_METHOD_SIZE}
+     */
+    public CompiledExpression compile(final CompiledExpression expression) {
+        try {
+            return expression.withEvaluator(generate(expression.getRoot()));
+        } catch (IllegalStateException tooLarge) {
+            return expression;
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if the method would be longer than {@link #MAX_METHOD_SIZE}
+     */
+    public Evaluator generate(final Node root) {
+        final String className = CLASS_NAME + "$" + classCounter.incrementAndGet();
+        final ClassEmitter emitter = new ClassEmitter(className, "java/lang/Object", EVALUATOR);
+        emitter.addField(ClassEmitter.ACC_PRIVATE | ClassEmitter.ACC_FINAL, "functions", FUNCTIONS_DESCRIPTOR);
+        emitter.addField(ClassEmitter.ACC_PRIVATE | ClassEmitter.ACC_FINAL, "operators", OPERATORS_DESCRIPTOR);
+        emitter.addField(ClassEmitter.ACC_PRIVATE | ClassEmitter.ACC_FINAL, "variadicFunctions",
+                VARIADIC_FUNCTIONS_DESCRIPTOR);
+
+        final ClassEmitter.Code constructor = new ClassEmitter.Code(4)
+                .op(ALOAD_0, 1)
+                .op(INVOKESPECIAL, emitter.methodRef("java/lang/Object", "<init>", "()V"), -1)
+                .op(ALOAD_0, 1).op(ALOAD_1, 1)
+                .op(PUTFIELD, emitter.fieldRef(className, "functions", FUNCTIONS_DESCRIPTOR), -2)
+                .op(ALOAD_0, 1).op(ALOAD_2, 1)
+                .op(PUTFIELD, emitter.fieldRef(className, "operators", OPERATORS_DESCRIPTOR), -2)
+                .op(ALOAD_0, 1).op(ALOAD_3, 1)
+                .op(PUTFIELD, emitter.fieldRef(className, "variadicFunctions", VARIADIC_FUNCTIONS_DESCRIPTOR), -2)
+                .op(RETURN, 0);
+        emitter.addMethod(ClassEmitter.ACC_PUBLIC, "<init>",
+                "(" + FUNCTIONS_DESCRIPTOR + OPERATORS_DESCRIPTOR + VARIADIC_FUNCTIONS_DESCRIPTOR + ")V", constructor);
+
+        final MethodGenerator generator = new MethodGenerator(emitter, className);
+        root.accept(generator);
+        generator.code.op(DRETURN, -2);
+        if (generator.code.length() > MAX_METHOD_SIZE) {
+            throw new IllegalStateException("Method of " + generator.code.length()
+                    + " bytes is too large to be JIT-compiled");
+        }
+        emitter.addMethod(ClassEmitter.ACC_PUBLIC | ClassEmitter.ACC_FINAL, "evaluate", "([D)D", generator.code);
+
+        final GeneratedClassLoader loader = new GeneratedClassLoader(Evaluator.class.getClassLoader());
+        try {
+            final Class<?> generated = loader.define(className.replace('/', '.'), emitter.toByteArray());
+            return (Evaluator) generated
+                    .getConstructor(DoubleUnaryOperator[].class, DoubleBinaryOperator[].class, VariadicFunction[].class)
+                    .newInstance(generator.functions.toArray(new DoubleUnaryOperator[0]),
+                            generator.operators.toArray(new DoubleBinaryOperator[0]),
+                            generator.variadicFunctions.toArray(new VariadicFunction[0]));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new RuntimeException("Failed to load generated evaluator", e);
+        }
+    }
+
+    private static class MethodGenerator implements NodeVisitor<Void> {
+        private final ClassEmitter emitter;
+        private final String className;
+        private final ClassEmitter.Code code = new ClassEmitter.Code(2);
+        private final List<DoubleUnaryOperator> functions = new ArrayList<>();
+        private final List<DoubleBinaryOperator> operators = new ArrayList<>();
+        private final List<VariadicFunction> variadicFunctions = new ArrayList<>();
+        private final Map<Object, Integer> indices = new IdentityHashMap<>();
+        /** first local variable slot not holding arguments of a variadic call being generated */
+        private int freeLocal = 2;
+
+        MethodGenerator(final ClassEmitter emitter, final String className) {
+            this.emitter = emitter;
+            this.className = className;
+        }
+
+        @Override
+        public Void visitConstant(final ConstantNode node) {
+            final double value = node.getValue();
+            if (Double.doubleToRawLongBits(value) == 0L) {
+                this.code.op(DCONST_0, 2);
+            } else if (value == 1.0) {
+                this.code.op(DCONST_1, 2);
+            } else {
+                this.code.op(LDC2_W, this.emitter.doubleConstant(value), 2);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitVariable(final VariableNode node) {
+            this.code.op(ALOAD_1, 1).pushInt(this.emitter, node.getSlot()).op(DALOAD, 0);
+            return null;
+        }
+
+        @Override
+        public Void visitNegate(final NegateNode node) {
+            node.getOperand().accept(this);
+            this.code.op(DNEG, 0);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryOperator(final BinaryOperatorNode node) {
+            final DoubleBinaryOperator function = node.getFunction();
+            final int arithmetic = function == BinaryOperatorNode.ADD ? DADD
+                    : function == BinaryOperatorNode.SUBTRACT ? DSUB
+                    : function == BinaryOperatorNode.MULTIPLY ? DMUL
+                    : function == BinaryOperatorNode.DIVIDE ? DDIV
+                    : -1;
+            if (arithmetic >= 0) {
+                node.getLeft().accept(this);
+                node.getRight().accept(this);
+                this.code.op(arithmetic, -2);
+                return null;
+            }
+            final boolean intrinsic = function == FunctionRegistry.defaults().getBinaryOperator(node.getOperator());
+            binary(intrinsic ? INTRINSIC_OPERATORS.get(node.getOperator()) : null, function,
+                    node.getLeft(), node.getRight());
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionCall(final FunctionCallNode node) {
+            final DoubleUnaryOperator function = node.getFunction();
+            final String[] intrinsic = function == FunctionRegistry.defaults().getFunction(node.getName())
+                    ? INTRINSIC_FUNCTIONS.get(node.getName())
+                    : null;
+            if (intrinsic != null) {
+                node.getArgument().accept(this);
+                this.code.op(INVOKESTATIC, this.emitter.methodRef(intrinsic[0], intrinsic[1], UNARY_DESCRIPTOR), 0);
+                return null;
+            }
+            this.code.op(ALOAD_0, 1)
+                    .op(GETFIELD, this.emitter.fieldRef(this.className, "functions", FUNCTIONS_DESCRIPTOR), 0)
+                    .pushInt(this.emitter, indexOf(function, this.functions))
+                    .op(AALOAD, -1);
+            node.getArgument().accept(this);
+            this.code.invokeInterface(this.emitter.interfaceMethodRef("java/util/function/DoubleUnaryOperator",
+                    "applyAsDouble", UNARY_DESCRIPTOR), 2, -1);
+            return null;
+        }
+
+        @Override
+        public Void visitBiFunctionCall(final BiFunctionCallNode node) {
+            final boolean intrinsic = node.getFunction() == FunctionRegistry.defaults().getBiFunction(node.getName());
+            binary(intrinsic ? INTRINSIC_BI_FUNCTIONS.get(node.getName()) : null, node.getFunction(),
+                    node.getFirst(), node.getSecond());
+            return null;
+        }
+
+        /**
+         * {@code sum}, {@code avg}, {@code min} and {@code max} become a chain of instructions over the arguments and
+         * {@code poly} becomes Horner's method over locals; other functions get the arguments in the thread's
+         * {@link com.recursivedescentmathparser.parser.ast.ArgumentStack}, like on the tree, so no call allocates.
+         */
+        @Override
+        public Void visitVariadicFunctionCall(final VariadicFunctionCallNode node) {
+            final int count = node.getArgumentCount();
+            final String name = count > 0
+                    && node.getFunction() == FunctionRegistry.defaults().getVariadicFunction(node.getName())
+                    ? node.getName()
+                    : "";
+            switch (name) {
+                case "sum":
+                case "avg":
+                    node.getArgument(0).accept(this);
+                    for (int i = 1; i < count; ++i) {
+                        node.getArgument(i).accept(this);
+                        this.code.op(DADD, -2);
+                    }
+                    if (name.equals("avg")) {
+                        this.code.op(LDC2_W, this.emitter.doubleConstant(count), 2).op(DDIV, -2);
+                    }
+                    return null;
+                case "min":
+                case "max":
+                    node.getArgument(0).accept(this);
+                    for (int i = 1; i < count; ++i) {
+                        node.getArgument(i).accept(this);
+                        this.code.op(INVOKESTATIC, this.emitter.methodRef(MATH, name, BINARY_DESCRIPTOR), -2);
+                    }
+                    return null;
+                case "poly":
+                    poly(node);
+                    return null;
+                default:
+                    call(node);
+                    return null;
+            }
+        }
+
+        /**
+         * Evaluates the arguments of {@code node} in order into locals, as the tree evaluates them all before
+         * the call; constants are left to {@link #argument}.
+         * @return the local of the first argument; argument {@code i} is {@code 2 * i} slots above it
+         */
+        private int storeArguments(final VariadicFunctionCallNode node) {
+            final int first = this.freeLocal;
+            this.freeLocal += 2 * node.getArgumentCount();
+            for (int i = 0; i < node.getArgumentCount(); ++i) {
+                if (!(node.getArgument(i) instanceof ConstantNode)) {
+                    node.getArgument(i).accept(this);
+                    this.code.local(DSTORE, first + 2 * i, 2, -2);
+                }
+            }
+            return first;
+        }
+
+        private void argument(final VariadicFunctionCallNode node, final int first, final int i) {
+            if (node.getArgument(i) instanceof ConstantNode) {
+                node.getArgument(i).accept(this);
+            } else {
+                this.code.local(DLOAD, first + 2 * i, 2, 2);
+            }
+        }
+
+        /**
+         * {@code poly(x, c0, ..., cn)} as {@code (cn*x + c(n-1))*x + ... + c0}, which rounds like
+         * {@link com.recursivedescentmathparser.parser.BuiltinFunctions#poly}.
+         */
+        private void poly(final VariadicFunctionCallNode node) {
+            final int count = node.getArgumentCount();
+            final int first = storeArguments(node);
+            if (count < 2) {
+                this.code.op(DCONST_0, 2);
+            } else {
+                argument(node, first, count - 1);
+                for (int i = count - 2; i > 0; --i) {
+                    argument(node, first, 0);
+                    this.code.op(DMUL, -2);
+                    argument(node, first, i);
+                    this.code.op(DADD, -2);
+                }
+            }
+            this.freeLocal = first;
+        }
+
+        /**
+         * Copies the arguments from locals to slots pushed on the thread's argument stack and applies the function
+         * through {@code ArgumentStack.apply}, which pops the slots again even if the function throws.
+         */
+        private void call(final VariadicFunctionCallNode node) {
+            final int count = node.getArgumentCount();
+            final int first = storeArguments(node);
+            final int stack = first + 2 * count, base = stack + 1, values = stack + 2;
+            this.code.op(INVOKESTATIC, this.emitter.methodRef(ARGUMENT_STACK, "current",
+                    "()L" + ARGUMENT_STACK + ";"), 1)
+                    .local(ASTORE, stack, 1, -1)
+                    .local(ALOAD, stack, 1, 1)
+                    .pushInt(this.emitter, count)
+                    .op(INVOKEVIRTUAL, this.emitter.methodRef(ARGUMENT_STACK, "push", "(I)I"), -1)
+                    .local(ISTORE, base, 1, -1)
+                    .local(ALOAD, stack, 1, 1)
+                    .op(INVOKEVIRTUAL, this.emitter.methodRef(ARGUMENT_STACK, "values", "()[D"), 0)
+                    .local(ASTORE, values, 1, -1);
+            for (int i = 0; i < count; ++i) {
+                this.code.local(ALOAD, values, 1, 1).local(ILOAD, base, 1, 1).pushInt(this.emitter, i).op(IADD, -1);
+                argument(node, first, i);
+                this.code.op(DASTORE, -4);
+            }
+            this.code.local(ALOAD, stack, 1, 1)
+                    .op(ALOAD_0, 1)
+                    .op(GETFIELD, this.emitter.fieldRef(this.className, "variadicFunctions",
+                            VARIADIC_FUNCTIONS_DESCRIPTOR), 0)
+                    .pushInt(this.emitter, indexOf(node.getFunction(), this.variadicFunctions))
+                    .op(AALOAD, -1)
+                    .local(ILOAD, base, 1, 1)
+                    .pushInt(this.emitter, count)
+                    .op(INVOKEVIRTUAL, this.emitter.methodRef(ARGUMENT_STACK, "apply",
+                            "(L" + VARIADIC_FUNCTION + ";II)D"), -2);
+            this.freeLocal = first;
+        }
+
+        @Override
+        public Void visitConditional(final ConditionalNode node) {
+            node.getCondition().accept(this);
+            this.code.op(DCONST_0, 2).op(DCMPL, -3);
+            final int toElse = this.code.jump(IFEQ, -1);
+            node.getWhenTrue().accept(this);
+            final int toEnd = this.code.jump(GOTO, -2); // the other branch starts without this one's value
+            this.code.bind(toElse);
+            node.getWhenFalse().accept(this);
+            this.code.bind(toEnd);
+            return null;
+        }
+
+        @Override
+        public Void visitLet(final LetNode node) {
+            this.code.op(ALOAD_1, 1).pushInt(this.emitter, node.getSlot());
+            node.getValue().accept(this);
+            this.code.op(DASTORE, -4);
+            node.getBody().accept(this);
+            return null;
+        }
+
+        private void binary(final String[] intrinsic, final DoubleBinaryOperator function,
+                            final Node left, final Node right) {
+            if (intrinsic != null) {
+                left.accept(this);
+                right.accept(this);
+                this.code.op(INVOKESTATIC, this.emitter.methodRef(intrinsic[0], intrinsic[1], BINARY_DESCRIPTOR), -2);
+                return;
+            }
+            this.code.op(ALOAD_0, 1)
+                    .op(GETFIELD, this.emitter.fieldRef(this.className, "operators", OPERATORS_DESCRIPTOR), 0)
+                    .pushInt(this.emitter, indexOf(function, this.operators))
+                    .op(AALOAD, -1);
+            left.accept(this);
+            right.accept(this);
+            this.code.invokeInterface(this.emitter.interfaceMethodRef("java/util/function/DoubleBinaryOperator",
+                    "applyAsDouble", BINARY_DESCRIPTOR), 4, -3);
+        }
+
+        private <T> int indexOf(final T function, final List<T> table) {
+            Integer index = this.indices.get(function);
+            if (index == null) {
+                index = table.size();
+                table.add(function);
+                this.indices.put(function, index);
+            }
+            return index;
+        }
+    }
+
+    private static Map<String, String[]> createIntrinsicFunctions() {
+        Map<String, String[]> map = new HashMap<>();
+        map.put("sin", new String[]{MATH, "sin"});
+        map.put("cos", new String[]{MATH, "cos"});
+        map.put("tg", new String[]{MATH, "tan"});
+        map.put("arcsin", new String[]{MATH, "asin"});
+        map.put("arccos", new String[]{MATH, "acos"});
+        map.put("arctg", new String[]{MATH, "atan"});
+        map.put("sh", new String[]{MATH, "sinh"});
+        map.put("ch", new String[]{MATH, "cosh"});
+        map.put("th", new String[]{MATH, "tanh"});
+        map.put("arcsh", new String[]{MATH_PARSER, "asinh"});
+        map.put("arcch", new String[]{MATH_PARSER, "acosh"});
+        map.put("arcth", new String[]{MATH_PARSER, "atanh"});
+        map.put("sqrt", new String[]{MATH, "sqrt"});
+        map.put("cbrt", new String[]{MATH, "cbrt"});
+        map.put("signum", new String[]{MATH, "signum"});
+        map.put("abs", new String[]{MATH, "abs"});
+        map.put("exp", new String[]{MATH, "exp"});
+        map.put("ln", new String[]{MATH, "log"});
+        map.put("log10", new String[]{MATH, "log10"});
+        for (String name : new String[]{"ctg", "sec", "cosec", "arcsec", "arccosec", "arcctg", "cth", "sech",
+                "cosech", "arcsech", "arccosech", "arccth", "sqr", "cube", "log2", "log4", "log8", "log16"}) {
+            map.put(name, new String[]{BUILTINS, name});
+        }
+        return map;
+    }
+
+    private static Map<String, String[]> createIntrinsicOperators() {
+        Map<String, String[]> map = new HashMap<>();
+        map.put("^", new String[]{MATH, "pow"});
+        map.put(">=", new String[]{BUILTINS, "greaterOrEqual"});
+        map.put("<=", new String[]{BUILTINS, "lessOrEqual"});
+        map.put(">", new String[]{BUILTINS, "greater"});
+        map.put("<", new String[]{BUILTINS, "less"});
+        map.put("==", new String[]{BUILTINS, "equal"});
+        map.put("!=", new String[]{BUILTINS, "notEqual"});
+        map.put("e", new String[]{BUILTINS, "exponent"});
+        return map;
+    }
+
+    private static Map<String, String[]> createIntrinsicBiFunctions() {
+        Map<String, String[]> map = new HashMap<>();
+        map.put("max", new String[]{MATH, "max"});
+        map.put("min", new String[]{MATH, "min"});
+        map.put("hypot", new String[]{MATH, "hypot"});
+        map.put("log", new String[]{BUILTINS, "log"});
+        return map;
+    }
+}
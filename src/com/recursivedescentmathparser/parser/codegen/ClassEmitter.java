@@ -0,0 +1,320 @@
+package com.recursivedescentmathparser.parser.codegen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal class file writer: a constant pool, fields and methods with a Code attribute.
+ * Classes are written in the Java 5 format, which the JVM still verifies by type inference, so forward jumps need
+ * no stack map frames.
+ */
+class ClassEmitter {
+    static final int ACC_PUBLIC = 0x0001, ACC_PRIVATE = 0x0002, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+    private static final int CLASS_FILE_VERSION = 49;
+    private static final int TAG_UTF8 = 1, TAG_INTEGER = 3, TAG_DOUBLE = 6, TAG_CLASS = 7, TAG_FIELD_REF = 9,
+            TAG_METHOD_REF = 10, TAG_INTERFACE_METHOD_REF = 11, TAG_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream constantPool = new DataOutputStream(this.constantPoolBytes);
+    private final Map<String, Integer> constants = new HashMap<>();
+    private int constantCount = 1;
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+    private final int thisClass, superClass, interfaceClass;
+
+    ClassEmitter(final String className, final String superName, final String interfaceName) {
+        this.thisClass = classConstant(className);
+        this.superClass = classConstant(superName);
+        this.interfaceClass = classConstant(interfaceName);
+    }
+
+    int utf8Constant(final String value) {
+        return constant("U" + value, out -> {
+            out.writeByte(TAG_UTF8);
+            out.writeUTF(value);
+        }, 1);
+    }
+
+    int classConstant(final String internalName) {
+        final int name = utf8Constant(internalName);
+        return constant("C" + internalName, out -> {
+            out.writeByte(TAG_CLASS);
+            out.writeShort(name);
+        }, 1);
+    }
+
+    int integerConstant(final int value) {
+        return constant("I" + value, out -> {
+            out.writeByte(TAG_INTEGER);
+            out.writeInt(value);
+        }, 1);
+    }
+
+    int doubleConstant(final double value) {
+        final long bits = Double.doubleToRawLongBits(value);
+        return constant("D" + bits, out -> {
+            out.writeByte(TAG_DOUBLE);
+            out.writeLong(bits);
+        }, 2);
+    }
+
+    int fieldRef(final String owner, final String name, final String descriptor) {
+        return memberRef(TAG_FIELD_REF, owner, name, descriptor);
+    }
+
+    int methodRef(final String owner, final String name, final String descriptor) {
+        return memberRef(TAG_METHOD_REF, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(final String owner, final String name, final String descriptor) {
+        return memberRef(TAG_INTERFACE_METHOD_REF, owner, name, descriptor);
+    }
+
+    private int memberRef(final int tag, final String owner, final String name, final String descriptor) {
+        final int ownerIndex = classConstant(owner);
+        final int nameIndex = utf8Constant(name), descriptorIndex = utf8Constant(descriptor);
+        final int nameAndType = constant("N" + name + ":" + descriptor, out -> {
+            out.writeByte(TAG_NAME_AND_TYPE);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        }, 1);
+        return constant(tag + owner + "." + name + ":" + descriptor, out -> {
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        }, 1);
+    }
+
+    private int constant(final String key, final ConstantWriter writer, final int size) {
+        final Integer existing = this.constants.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        final int index = this.constantCount;
+        try {
+            writer.write(this.constantPool);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        this.constantCount += size;
+        if (this.constantCount > 0xFFFF) {
+            throw new IllegalStateException("Constant pool overflow");
+        }
+        this.constants.put(key, index);
+        return index;
+    }
+
+    void addField(final int access, final String name, final String descriptor) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8Constant(name));
+            out.writeShort(utf8Constant(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        this.fields.add(bytes.toByteArray());
+    }
+
+    void addMethod(final int access, final String name, final String descriptor, final Code code) {
+        if (code.length() > 0xFFFF || code.getMaxStack() > 0xFFFF || code.getMaxLocals() > 0xFFFF) {
+            throw new IllegalStateException("Method " + name + " is too large");
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8Constant(name));
+            out.writeShort(utf8Constant(descriptor));
+            out.writeShort(1);
+            out.writeShort(utf8Constant("Code"));
+            out.writeInt(12 + code.length());
+            out.writeShort(code.getMaxStack());
+            out.writeShort(code.getMaxLocals());
+            out.writeInt(code.length());
+            out.write(code.toByteArray());
+            out.writeShort(0);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        this.methods.add(bytes.toByteArray());
+    }
+
+    byte[] toByteArray() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_FILE_VERSION);
+            out.writeShort(this.constantCount);
+            out.write(this.constantPoolBytes.toByteArray());
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(this.thisClass);
+            out.writeShort(this.superClass);
+            out.writeShort(1);
+            out.writeShort(this.interfaceClass);
+            writeAll(out, this.fields);
+            writeAll(out, this.methods);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeAll(final DataOutputStream out, final List<byte[]> members) throws IOException {
+        out.writeShort(members.size());
+        for (byte[] member : members) {
+            out.write(member);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConstantWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Bytecode of one method, tracking the operand stack depth (in slots) as instructions are appended.
+     */
+    static class Code {
+        static final int ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, ALOAD_2 = 0x2c, DCONST_0 = 0x0e, DCONST_1 = 0x0f,
+                ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC_W = 0x13, LDC2_W = 0x14,
+                DALOAD = 0x31, AALOAD = 0x32, DASTORE = 0x52, DADD = 0x63, DSUB = 0x67, DMUL = 0x6b, DDIV = 0x6f, DNEG = 0x77,
+                DCMPL = 0x97, IFEQ = 0x99, GOTO = 0xa7, DRETURN = 0xaf, RETURN = 0xb1, GETFIELD = 0xb4,
+                PUTFIELD = 0xb5, INVOKESPECIAL = 0xb7,
+                INVOKESTATIC = 0xb8, INVOKEINTERFACE = 0xb9, DUP = 0x59, ALOAD_3 = 0x2d, INVOKEVIRTUAL = 0xb6,
+                ILOAD = 0x15, DLOAD = 0x18, ALOAD = 0x19, ISTORE = 0x36, DSTORE = 0x39, ASTORE = 0x3a, IADD = 0x60;
+        private static final int WIDE = 0xc4;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final List<int[]> jumps = new ArrayList<>();
+        private int maxLocals;
+        private int stack, maxStack;
+
+        /**
+         * @param maxLocals local variable slots used by the parameters; {@link #local} adds those it addresses
+         */
+        Code(final int maxLocals) {
+            this.maxLocals = maxLocals;
+        }
+
+        /**
+         * @param stackChange net effect of the instruction on the operand stack, in slots
+         */
+        Code op(final int opcode, final int stackChange) {
+            this.bytes.write(opcode);
+            return adjust(stackChange);
+        }
+
+        Code op(final int opcode, final int operand, final int stackChange) {
+            this.bytes.write(opcode);
+            u2(operand);
+            return adjust(stackChange);
+        }
+
+        /**
+         * Appends a jump whose target is set later by {@link #bind(int)}.
+         * @return the jump, to pass to {@link #bind(int)}
+         */
+        int jump(final int opcode, final int stackChange) {
+            final int position = this.bytes.size();
+            this.jumps.add(new int[]{position, -1});
+            this.bytes.write(opcode);
+            u2(0);
+            adjust(stackChange);
+            return this.jumps.size() - 1;
+        }
+
+        /**
+         * Makes {@code jump} continue at the next instruction appended.
+         */
+        void bind(final int jump) {
+            this.jumps.get(jump)[1] = this.bytes.size();
+        }
+
+        /**
+         * Appends a load or store of local variable {@code index}, which takes {@code slots} slots.
+         */
+        Code local(final int opcode, final int index, final int slots, final int stackChange) {
+            if (index > 0xFF) {
+                this.bytes.write(WIDE);
+                this.bytes.write(opcode);
+                u2(index);
+            } else {
+                this.bytes.write(opcode);
+                this.bytes.write(index);
+            }
+            this.maxLocals = Math.max(this.maxLocals, index + slots);
+            return adjust(stackChange);
+        }
+
+        Code invokeInterface(final int methodRef, final int argumentSlots, final int stackChange) {
+            this.bytes.write(INVOKEINTERFACE);
+            u2(methodRef);
+            this.bytes.write(argumentSlots + 1);
+            this.bytes.write(0);
+            return adjust(stackChange);
+        }
+
+        Code pushInt(final ClassEmitter emitter, final int value) {
+            if (value >= 0 && value <= 5) {
+                return op(ICONST_0 + value, 1);
+            } else if (value <= Byte.MAX_VALUE) {
+                this.bytes.write(BIPUSH);
+                this.bytes.write(value);
+                return adjust(1);
+            } else if (value <= Short.MAX_VALUE) {
+                this.bytes.write(SIPUSH);
+                u2(value);
+                return adjust(1);
+            }
+            return op(LDC_W, emitter.integerConstant(value), 1);
+        }
+
+        private void u2(final int value) {
+            this.bytes.write(value >>> 8);
+            this.bytes.write(value);
+        }
+
+        private Code adjust(final int stackChange) {
+            this.stack += stackChange;
+            this.maxStack = Math.max(this.maxStack, this.stack);
+            return this;
+        }
+
+        int length() {
+            return this.bytes.size();
+        }
+
+        int getMaxStack() {
+            return this.maxStack;
+        }
+
+        int getMaxLocals() {
+            return this.maxLocals;
+        }
+
+        byte[] toByteArray() {
+            final byte[] code = this.bytes.toByteArray();
+            for (int[] jump : this.jumps) {
+                final int offset = jump[1] - jump[0];
+                if (offset > Short.MAX_VALUE) {
+                    throw new IllegalStateException("Jump too far");
+                }
+                code[jump[0] + 1] = (byte) (offset >>> 8);
+                code[jump[0] + 2] = (byte) offset;
+            }
+            return code;
+        }
+    }
+}
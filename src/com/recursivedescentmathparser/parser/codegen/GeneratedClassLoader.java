@@ -0,0 +1,16 @@
+package com.recursivedescentmathparser.parser.codegen;
+
+/**
+ * Defines one generated class. Each class gets its own loader so that it can be unloaded
+ * as soon as the expression that uses it is garbage collected.
+ */
+class GeneratedClassLoader extends ClassLoader {
+
+    GeneratedClassLoader(final ClassLoader parent) {
+        super(parent);
+    }
+
+    Class<?> define(final String binaryName, final byte[] classFile) {
+        return defineClass(binaryName, classFile, 0, classFile.length);
+    }
+}
@@ -0,0 +1,405 @@
+package com.recursivedescentmathparser.parser.derivative;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.FunctionRegistry;
+import com.recursivedescentmathparser.parser.ast.BiFunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.BinaryOperatorNode;
+import com.recursivedescentmathparser.parser.ast.ConditionalNode;
+import com.recursivedescentmathparser.parser.ast.ConstantNode;
+import com.recursivedescentmathparser.parser.ast.FunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.LetNode;
+import com.recursivedescentmathparser.parser.ast.NegateNode;
+import com.recursivedescentmathparser.parser.ast.Node;
+import com.recursivedescentmathparser.parser.ast.NodeVisitor;
+import com.recursivedescentmathparser.parser.ast.Nodes;
+import com.recursivedescentmathparser.parser.ast.VariableNode;
+import com.recursivedescentmathparser.parser.ast.VariadicFunctionCallNode;
+import com.recursivedescentmathparser.parser.optimizer.ExpressionOptimizer;
+import com.recursivedescentmathparser.parser.optimizer.FormulaSet;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.UnaryOperator;
+
+/**
+ * Symbolic differentiation of compiled expressions.
+ * Every built-in function, bi-function, variadic function and operator that was not overridden in the registry
+ * has a rule; a user function needs a derivative registered with it (see
+ * {@link FunctionRegistry#withFunction(String, DoubleUnaryOperator, boolean, DoubleUnaryOperator)}).
+ * Comparisons and {@code signum} are piecewise constant, so their derivative is 0 everywhere.
+ * The derivative is simplified by {@link ExpressionOptimizer}; temporaries of the input are inlined first.
+ */
+public class Differentiator {
+    private static final Node ZERO = new ConstantNode(0.0);
+    private static final Node ONE = new ConstantNode(1.0);
+    private static final FunctionRegistry DEFAULTS = FunctionRegistry.defaults();
+    private static final Map<String, UnaryOperator<Node>> FUNCTION_RULES = createFunctionRules();
+
+    private final FunctionRegistry registry;
+    private final ExpressionOptimizer optimizer;
+
+    public Differentiator(final FunctionRegistry registry) {
+        this.registry = registry;
+        this.optimizer = new ExpressionOptimizer(registry);
+    }
+
+    /**
+     * @return derivative of {@code expression} with respect to {@code variable}, over the same variable slots;
+     * 0 if the expression does not use the variable
+     */
+    public CompiledExpression derivative(final CompiledExpression expression, final String variable) {
+        final Node root = inlineTemporaries(expression);
+        final int slot = expression.indexOf(variable);
+        final Node derivative = slot < 0 ? ZERO : this.optimizer.optimize(root.accept(new Derivation(slot)));
+        return expression.withRoot(derivative, expression.getVariableCount());
+    }
+
+    /**
+     * Differentiates with respect to each of {@code variables} (all of the expression's variables if none are
+     * given) and compiles the value and the partial derivatives together, so that subexpressions they share are
+     * evaluated once.
+     */
+    public Gradient gradient(final CompiledExpression expression, final String... variables) {
+        final List<String> names = variables.length == 0
+                ? expression.getVariableNames()
+                : Collections.unmodifiableList(Arrays.asList(variables.clone()));
+        final double[] defaultValues = new double[expression.getVariableCount()];
+        for (int slot = 0; slot < defaultValues.length; ++slot) {
+            defaultValues[slot] = expression.getDefaultValue(slot);
+        }
+        final Map<String, CompiledExpression> formulas = new LinkedHashMap<>();
+        formulas.put("", CompiledExpression.of(inlineTemporaries(expression), expression.getVariableNames(),
+                defaultValues, expression.getVariableCount()));
+        for (int i = 0; i < names.size(); ++i) {
+            formulas.put("d" + i, derivative(expression, names.get(i)));
+        }
+        return new Gradient(FormulaSet.compile(this.registry, formulas), names);
+    }
+
+    /**
+     * @return the root with every read of a temporary replaced by the subtree stored in it
+     */
+    private static Node inlineTemporaries(final CompiledExpression expression) {
+        if (expression.getFrameSize() == expression.getVariableCount()) {
+            return expression.getRoot();
+        }
+        return inline(expression.getRoot(), new Node[expression.getFrameSize()]);
+    }
+
+    private static Node inline(final Node node, final Node[] temporaries) {
+        if (node instanceof LetNode) {
+            final LetNode let = (LetNode) node;
+            temporaries[let.getSlot()] = inline(let.getValue(), temporaries);
+            return inline(let.getBody(), temporaries);
+        }
+        if (node instanceof VariableNode) {
+            final Node value = temporaries[((VariableNode) node).getSlot()];
+            return value != null ? value : node;
+        }
+        return Nodes.mapChildren(node, child -> inline(child, temporaries));
+    }
+
+    private class Derivation implements NodeVisitor<Node> {
+        private final int slot;
+
+        Derivation(final int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public Node visitConstant(final ConstantNode node) {
+            return ZERO;
+        }
+
+        @Override
+        public Node visitVariable(final VariableNode node) {
+            return node.getSlot() == this.slot ? ONE : ZERO;
+        }
+
+        @Override
+        public Node visitNegate(final NegateNode node) {
+            return negate(node.getOperand().accept(this));
+        }
+
+        @Override
+        public Node visitBinaryOperator(final BinaryOperatorNode node) {
+            final Node a = node.getLeft(), b = node.getRight();
+            final Node da = a.accept(this), db = b.accept(this);
+            final OperatorKind kind = OperatorKind.of(node);
+            switch (kind) {
+                case ADD:
+                    return add(da, db);
+                case SUBTRACT:
+                    return subtract(da, db);
+                case MULTIPLY:
+                    return add(multiply(da, b), multiply(a, db));
+                case DIVIDE:
+                    return isZero(db)
+                            ? divide(da, b)
+                            : divide(subtract(multiply(da, b), multiply(a, db)), call("sqr", b));
+                case POWER:
+                    // d(a^b) = b*a^(b-1)*da + a^b*ln(a)*db, without the ln(a) term unless b varies
+                    final Node byBase = isZero(da) ? ZERO
+                            : multiply(multiply(b, operator("^", a, subtract(b, ONE))), da);
+                    final Node byExponent = isZero(db) ? ZERO : multiply(multiply(node, call("ln", a)), db);
+                    return add(byBase, byExponent);
+                case EXPONENT:
+                    // a e b = a*10^b
+                    final Node scale = operator("^", constant(10), b);
+                    return add(multiply(da, scale), isZero(db) ? ZERO
+                            : multiply(multiply(node, constant(Math.log(10))), db));
+                case COMPARISON:
+                    return ZERO;
+                default:
+                    throw new IllegalArgumentException("No derivative for operator " + node.getOperator());
+            }
+        }
+
+        @Override
+        public Node visitFunctionCall(final FunctionCallNode node) {
+            final Node argument = node.getArgument();
+            final Node da = argument.accept(this);
+            if (isZero(da)) {
+                return ZERO;
+            }
+            final DoubleUnaryOperator function = node.getFunction();
+            final UnaryOperator<Node> rule = function == DEFAULTS.getFunction(node.getName())
+                    ? FUNCTION_RULES.get(node.getName())
+                    : null;
+            if (rule != null) {
+                return multiply(rule.apply(argument), da);
+            }
+            final DoubleUnaryOperator derivative = registry.getDerivative(function);
+            if (derivative == null) {
+                throw new IllegalArgumentException("No derivative registered for function " + node.getName());
+            }
+            return multiply(new FunctionCallNode(node.getName() + "'", derivative, argument), da);
+        }
+
+        @Override
+        public Node visitBiFunctionCall(final BiFunctionCallNode node) {
+            final Node a = node.getFirst(), b = node.getSecond();
+            final Node da = a.accept(this), db = b.accept(this);
+            if (isZero(da) && isZero(db)) {
+                return ZERO;
+            }
+            final String name = node.getFunction() == DEFAULTS.getBiFunction(node.getName()) ? node.getName() : "";
+            switch (name) {
+                case "max":
+                    return add(multiply(operator(">=", a, b), da), multiply(operator("<", a, b), db));
+                case "min":
+                    return add(multiply(operator("<=", a, b), da), multiply(operator(">", a, b), db));
+                case "hypot":
+                    return divide(add(multiply(a, da), multiply(b, db)), node);
+                case "log":
+                    // log(a, b) = ln(a)/ln(b)
+                    final Node lnB = call("ln", b);
+                    return subtract(divide(da, multiply(a, lnB)),
+                            divide(multiply(call("ln", a), db), multiply(b, call("sqr", lnB))));
+                default:
+                    throw new IllegalArgumentException("No derivative for function " + node.getName());
+            }
+        }
+
+        @Override
+        public Node visitVariadicFunctionCall(final VariadicFunctionCallNode node) {
+            final int count = node.getArgumentCount();
+            final Node[] derivatives = new Node[count];
+            boolean constant = true;
+            for (int i = 0; i < count; ++i) {
+                derivatives[i] = node.getArgument(i).accept(this);
+                constant &= isZero(derivatives[i]);
+            }
+            if (constant) {
+                return ZERO;
+            }
+            final String name = node.getFunction() == DEFAULTS.getVariadicFunction(node.getName())
+                    ? node.getName()
+                    : "";
+            switch (name) {
+                case "sum":
+                case "avg":
+                    Node sum = ZERO;
+                    for (Node derivative : derivatives) {
+                        sum = add(sum, derivative);
+                    }
+                    return name.equals("sum") ? sum : divide(sum, constant(count));
+                case "min":
+                case "max":
+                    // same as the chain of two-argument calls, whose rule picks the derivative of the selected one
+                    Node chain = node.getArgument(0);
+                    for (int i = 1; i < count; ++i) {
+                        chain = new BiFunctionCallNode(name, DEFAULTS.getBiFunction(name), chain, node.getArgument(i));
+                    }
+                    return chain.accept(this);
+                case "poly":
+                    // d poly(x, c0..cn) = dx * poly(x, c1, 2*c2, ..., n*cn) + poly(x, dc0, ..., dcn)
+                    Node result = ZERO;
+                    if (count > 2 && !isZero(derivatives[0])) {
+                        final Node[] slope = new Node[count - 1];
+                        slope[0] = node.getArgument(0);
+                        for (int k = 1; k < slope.length; ++k) {
+                            slope[k] = multiply(constant(k), node.getArgument(k + 1));
+                        }
+                        result = multiply(poly(slope), derivatives[0]);
+                    }
+                    final Node[] coefficients = derivatives.clone();
+                    coefficients[0] = node.getArgument(0);
+                    boolean constantCoefficients = true;
+                    for (int i = 1; i < count; ++i) {
+                        constantCoefficients &= isZero(coefficients[i]);
+                    }
+                    return constantCoefficients ? result : add(result, poly(coefficients));
+                default:
+                    throw new IllegalArgumentException("No derivative for function " + node.getName());
+            }
+        }
+
+        @Override
+        public Node visitConditional(final ConditionalNode node) {
+            final Node whenTrue = node.getWhenTrue().accept(this), whenFalse = node.getWhenFalse().accept(this);
+            return whenTrue.equals(whenFalse)
+                    ? whenTrue
+                    : new ConditionalNode(node.getCondition(), whenTrue, whenFalse);
+        }
+
+        @Override
+        public Node visitLet(final LetNode node) {
+            throw new IllegalStateException("Temporaries must be inlined before differentiation");
+        }
+    }
+
+    private enum OperatorKind {
+        ADD, SUBTRACT, MULTIPLY, DIVIDE, POWER, EXPONENT, COMPARISON, OTHER;
+
+        static OperatorKind of(final BinaryOperatorNode node) {
+            if (node.getFunction() == BinaryOperatorNode.ADD) return ADD;
+            if (node.getFunction() == BinaryOperatorNode.SUBTRACT) return SUBTRACT;
+            if (node.getFunction() == BinaryOperatorNode.MULTIPLY) return MULTIPLY;
+            if (node.getFunction() == BinaryOperatorNode.DIVIDE) return DIVIDE;
+            if (node.getFunction() != DEFAULTS.getBinaryOperator(node.getOperator())) return OTHER;
+            switch (node.getOperator()) {
+                case "^":
+                    return POWER;
+                case "e":
+                    return EXPONENT;
+                case ">=": case "<=": case ">": case "<": case "==": case "!=":
+                    return COMPARISON;
+                default:
+                    return OTHER;
+            }
+        }
+    }
+
+    private static boolean isZero(final Node node) {
+        return node instanceof ConstantNode && ((ConstantNode) node).getValue() == 0;
+    }
+
+    private static boolean isOne(final Node node) {
+        return node instanceof ConstantNode && ((ConstantNode) node).getValue() == 1;
+    }
+
+    private static Node add(final Node a, final Node b) {
+        if (isZero(a)) return b;
+        if (isZero(b)) return a;
+        return new BinaryOperatorNode("+", BinaryOperatorNode.ADD, a, b);
+    }
+
+    private static Node subtract(final Node a, final Node b) {
+        if (isZero(b)) return a;
+        if (isZero(a)) return negate(b);
+        return new BinaryOperatorNode("-", BinaryOperatorNode.SUBTRACT, a, b);
+    }
+
+    private static Node multiply(final Node a, final Node b) {
+        if (isZero(a) || isZero(b)) return ZERO;
+        if (isOne(a)) return b;
+        if (isOne(b)) return a;
+        return new BinaryOperatorNode("*", BinaryOperatorNode.MULTIPLY, a, b);
+    }
+
+    private static Node divide(final Node a, final Node b) {
+        if (isZero(a)) return ZERO;
+        if (isOne(b)) return a;
+        return new BinaryOperatorNode("/", BinaryOperatorNode.DIVIDE, a, b);
+    }
+
+    private static Node negate(final Node a) {
+        if (isZero(a)) return ZERO;
+        return a instanceof NegateNode ? ((NegateNode) a).getOperand() : new NegateNode(a);
+    }
+
+    private static Node call(final String name, final Node argument) {
+        return new FunctionCallNode(name, DEFAULTS.getFunction(name), argument);
+    }
+
+    private static Node poly(final Node[] arguments) {
+        return new VariadicFunctionCallNode("poly", DEFAULTS.getVariadicFunction("poly"), arguments);
+    }
+
+    private static Node operator(final String operator, final Node a, final Node b) {
+        return new BinaryOperatorNode(operator, DEFAULTS.getBinaryOperator(operator), a, b);
+    }
+
+    private static Node constant(final double value) {
+        return new ConstantNode(value);
+    }
+
+    /**
+     * @return rule for {@code outer(1/u)}: {@code outer'(1/u) * -1/u^2}
+     */
+    private static UnaryOperator<Node> ofReciprocal(final UnaryOperator<Node> outer) {
+        return u -> negate(divide(outer.apply(divide(ONE, u)), call("sqr", u)));
+    }
+
+    /**
+     * Rules give f'(u) for the built-in f; the caller multiplies by du.
+     * They follow the implementations in the registry, e.g. {@code sec} is 1/sin and {@code cosec} is 1/cos.
+     */
+    private static Map<String, UnaryOperator<Node>> createFunctionRules() {
+        final Map<String, UnaryOperator<Node>> rules = new HashMap<>();
+        rules.put("sin", u -> call("cos", u));
+        rules.put("cos", u -> negate(call("sin", u)));
+        rules.put("tg", u -> divide(ONE, call("sqr", call("cos", u))));
+        rules.put("ctg", u -> negate(divide(ONE, call("sqr", call("sin", u)))));
+        rules.put("sec", u -> negate(divide(call("cos", u), call("sqr", call("sin", u)))));
+        rules.put("cosec", u -> divide(call("sin", u), call("sqr", call("cos", u))));
+        rules.put("arcsin", u -> divide(ONE, call("sqrt", subtract(ONE, call("sqr", u)))));
+        rules.put("arccos", u -> negate(divide(ONE, call("sqrt", subtract(ONE, call("sqr", u))))));
+        rules.put("arctg", u -> divide(ONE, add(ONE, call("sqr", u))));
+        rules.put("arcsec", ofReciprocal(rules.get("arcsin")));
+        rules.put("arccosec", ofReciprocal(rules.get("arccos")));
+        rules.put("arcctg", ofReciprocal(rules.get("arctg")));
+        rules.put("sh", u -> call("ch", u));
+        rules.put("ch", u -> call("sh", u));
+        rules.put("th", u -> divide(ONE, call("sqr", call("ch", u))));
+        rules.put("cth", u -> negate(divide(ONE, call("sqr", call("sh", u)))));
+        rules.put("sech", u -> negate(divide(call("ch", u), call("sqr", call("sh", u)))));
+        rules.put("cosech", u -> negate(divide(call("sh", u), call("sqr", call("ch", u)))));
+        rules.put("arcsh", u -> divide(ONE, call("sqrt", add(call("sqr", u), ONE))));
+        rules.put("arcch", u -> divide(ONE, call("sqrt", subtract(call("sqr", u), ONE))));
+        rules.put("arcth", u -> divide(ONE, subtract(ONE, call("sqr", u))));
+        rules.put("arcsech", ofReciprocal(rules.get("arcsh")));
+        rules.put("arccosech", ofReciprocal(rules.get("arcch")));
+        rules.put("arccth", ofReciprocal(rules.get("arcth")));
+        rules.put("sqr", u -> multiply(constant(2), u));
+        rules.put("cube", u -> multiply(constant(3), call("sqr", u)));
+        rules.put("sqrt", u -> divide(constant(0.5), call("sqrt", u)));
+        rules.put("cbrt", u -> divide(ONE, multiply(constant(3), call("sqr", call("cbrt", u)))));
+        rules.put("signum", u -> ZERO);
+        rules.put("abs", u -> call("signum", u));
+        rules.put("exp", u -> call("exp", u));
+        rules.put("ln", u -> divide(ONE, u));
+        rules.put("log2", u -> divide(ONE, multiply(u, constant(Math.log(2)))));
+        rules.put("log4", u -> divide(ONE, multiply(u, constant(Math.log(4)))));
+        rules.put("log8", u -> divide(ONE, multiply(u, constant(Math.log(8)))));
+        rules.put("log10", u -> divide(ONE, multiply(u, constant(Math.log(10)))));
+        rules.put("log16", u -> divide(ONE, multiply(u, constant(Math.log(16)))));
+        return rules;
+    }
+}
@@ -0,0 +1,66 @@
+package com.recursivedescentmathparser.parser.derivative;
+
+import com.recursivedescentmathparser.parser.optimizer.FormulaSet;
+
+import java.util.List;
+
+/**
+ * An expression and its partial derivatives, evaluated together in one pass: subexpressions the value and the
+ * derivatives share are computed once per evaluation. Built by {@link Differentiator#gradient}.
+ * Frames are laid out like {@link FormulaSet} frames (the expression's variables in slot order, then the
+ * temporaries); one frame per thread.
+ */
+public final class Gradient {
+    private final FormulaSet formulas;
+    private final List<String> differentiatedVariables;
+
+    Gradient(final FormulaSet formulas, final List<String> differentiatedVariables) {
+        this.formulas = formulas;
+        this.differentiatedVariables = differentiatedVariables;
+    }
+
+    /**
+     * @return the variables of the expression, in slot order
+     */
+    public List<String> getVariableNames() {
+        return this.formulas.getVariableNames();
+    }
+
+    /**
+     * @return the variables the partial derivatives are taken with respect to, in gradient order
+     */
+    public List<String> getDifferentiatedVariables() {
+        return this.differentiatedVariables;
+    }
+
+    public int indexOf(final String varName) {
+        return this.formulas.indexOf(varName);
+    }
+
+    public int getFrameSize() {
+        return this.formulas.getFrameSize();
+    }
+
+    /**
+     * @return a frame holding the variables' values at parse time
+     */
+    public double[] newFrame() {
+        return this.formulas.newFrame();
+    }
+
+    /**
+     * @param frame variables by slot, followed by room for the temporaries
+     * @param valueAndGradient receives the value at index 0 and the derivative with respect to
+     * {@code getDifferentiatedVariables().get(i)} at index {@code i + 1}
+     */
+    public void evaluate(final double[] frame, final double[] valueAndGradient) {
+        this.formulas.evaluate(frame, valueAndGradient);
+    }
+
+    /**
+     * @return the value followed by the partial derivatives
+     */
+    public double[] evaluate(final double[] frame) {
+        return this.formulas.evaluate(frame);
+    }
+}
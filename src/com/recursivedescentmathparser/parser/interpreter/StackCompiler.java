@@ -0,0 +1,259 @@
+package com.recursivedescentmathparser.parser.interpreter;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.FunctionRegistry;
+import com.recursivedescentmathparser.parser.VariadicFunction;
+import com.recursivedescentmathparser.parser.ast.BiFunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.BinaryOperatorNode;
+import com.recursivedescentmathparser.parser.ast.ConditionalNode;
+import com.recursivedescentmathparser.parser.ast.ConstantNode;
+import com.recursivedescentmathparser.parser.ast.FunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.LetNode;
+import com.recursivedescentmathparser.parser.ast.NegateNode;
+import com.recursivedescentmathparser.parser.ast.Node;
+import com.recursivedescentmathparser.parser.ast.NodeVisitor;
+import com.recursivedescentmathparser.parser.ast.VariableNode;
+import com.recursivedescentmathparser.parser.ast.VariadicFunctionCallNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Lowers an expression tree to a {@link StackProgram}.
+ * Arithmetic and the most common built-ins that were not overridden in the registry get their own opcodes;
+ * every other function or operator is called through the instance captured by the program. Equal constants
+ * share a constant pool entry.
+ */
+public class StackCompiler {
+    private static final Map<String, Integer> INTRINSIC_FUNCTIONS = createIntrinsicFunctions();
+    private static final Map<String, Integer> INTRINSIC_OPERATORS = createIntrinsicOperators();
+    private static final Map<String, Integer> INTRINSIC_BI_FUNCTIONS = createIntrinsicBiFunctions();
+    private static final DoubleUnaryOperator[] NO_FUNCTIONS = new DoubleUnaryOperator[0];
+    private static final DoubleBinaryOperator[] NO_OPERATORS = new DoubleBinaryOperator[0];
+    private static final VariadicFunction[] NO_VARIADIC_FUNCTIONS = new VariadicFunction[0];
+
+    /**
+     * @return the same expression evaluated by a stack program; keep only {@link CompiledExpression#getEvaluator()}
+     * (or {@link #lower(Node)}'s result) to drop the tree and save its heap
+     */
+    public CompiledExpression compile(final CompiledExpression expression) {
+        return expression.withEvaluator(lower(expression.getRoot()));
+    }
+
+    public StackProgram lower(final Node root) {
+        final Lowering lowering = new Lowering();
+        root.accept(lowering);
+        lowering.emit(StackProgram.RETURN);
+        return new StackProgram(Arrays.copyOf(lowering.code, lowering.length),
+                lowering.constants.isEmpty() ? new double[0] : toArray(lowering.constants),
+                lowering.functions.isEmpty() ? NO_FUNCTIONS : lowering.functions.toArray(NO_FUNCTIONS),
+                lowering.operators.isEmpty() ? NO_OPERATORS : lowering.operators.toArray(NO_OPERATORS),
+                lowering.variadicFunctions.isEmpty()
+                        ? NO_VARIADIC_FUNCTIONS
+                        : lowering.variadicFunctions.toArray(NO_VARIADIC_FUNCTIONS),
+                lowering.maxDepth);
+    }
+
+    private static double[] toArray(final List<Double> values) {
+        final double[] array = new double[values.size()];
+        for (int i = 0; i < array.length; ++i) array[i] = values.get(i);
+        return array;
+    }
+
+    private static class Lowering implements NodeVisitor<Void> {
+        private int[] code = new int[32];
+        private int length;
+        private int depth, maxDepth;
+        private final List<Double> constants = new ArrayList<>();
+        private final Map<Long, Integer> constantIndices = new HashMap<>();
+        private final List<DoubleUnaryOperator> functions = new ArrayList<>();
+        private final List<DoubleBinaryOperator> operators = new ArrayList<>();
+        private final List<VariadicFunction> variadicFunctions = new ArrayList<>();
+        private final Map<Object, Integer> indices = new IdentityHashMap<>();
+
+        void emit(final int value) {
+            if (this.length == this.code.length) {
+                this.code = Arrays.copyOf(this.code, this.length * 2);
+            }
+            this.code[this.length++] = value;
+        }
+
+        /**
+         * @param stackEffect change of the stack depth after the instruction
+         */
+        void instruction(final int opcode, final int stackEffect) {
+            emit(opcode);
+            this.depth += stackEffect;
+            this.maxDepth = Math.max(this.maxDepth, this.depth);
+        }
+
+        @Override
+        public Void visitConstant(final ConstantNode node) {
+            final long bits = Double.doubleToRawLongBits(node.getValue());
+            Integer index = this.constantIndices.get(bits);
+            if (index == null) {
+                index = this.constants.size();
+                this.constants.add(node.getValue());
+                this.constantIndices.put(bits, index);
+            }
+            instruction(StackProgram.CONSTANT, 1);
+            emit(index);
+            return null;
+        }
+
+        @Override
+        public Void visitVariable(final VariableNode node) {
+            instruction(StackProgram.LOAD, 1);
+            emit(node.getSlot());
+            return null;
+        }
+
+        @Override
+        public Void visitNegate(final NegateNode node) {
+            node.getOperand().accept(this);
+            instruction(StackProgram.NEGATE, 0);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryOperator(final BinaryOperatorNode node) {
+            node.getLeft().accept(this);
+            node.getRight().accept(this);
+            final DoubleBinaryOperator function = node.getFunction();
+            final int arithmetic = function == BinaryOperatorNode.ADD ? StackProgram.ADD
+                    : function == BinaryOperatorNode.SUBTRACT ? StackProgram.SUBTRACT
+                    : function == BinaryOperatorNode.MULTIPLY ? StackProgram.MULTIPLY
+                    : function == BinaryOperatorNode.DIVIDE ? StackProgram.DIVIDE
+                    : -1;
+            if (arithmetic >= 0) {
+                instruction(arithmetic, -1);
+            } else {
+                final boolean intrinsic = function == FunctionRegistry.defaults().getBinaryOperator(node.getOperator());
+                binary(intrinsic ? INTRINSIC_OPERATORS.get(node.getOperator()) : null, function);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionCall(final FunctionCallNode node) {
+            node.getArgument().accept(this);
+            final DoubleUnaryOperator function = node.getFunction();
+            final Integer intrinsic = function == FunctionRegistry.defaults().getFunction(node.getName())
+                    ? INTRINSIC_FUNCTIONS.get(node.getName())
+                    : null;
+            if (intrinsic != null) {
+                instruction(intrinsic, 0);
+            } else {
+                instruction(StackProgram.CALL_FUNCTION, 0);
+                emit(indexOf(function, this.functions));
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitBiFunctionCall(final BiFunctionCallNode node) {
+            node.getFirst().accept(this);
+            node.getSecond().accept(this);
+            final boolean intrinsic = node.getFunction() == FunctionRegistry.defaults().getBiFunction(node.getName());
+            binary(intrinsic ? INTRINSIC_BI_FUNCTIONS.get(node.getName()) : null, node.getFunction());
+            return null;
+        }
+
+        /**
+         * The arguments stay on the operand stack, which the function reads in place.
+         */
+        @Override
+        public Void visitVariadicFunctionCall(final VariadicFunctionCallNode node) {
+            final int count = node.getArgumentCount();
+            for (Node argument : node.getArguments()) {
+                argument.accept(this);
+            }
+            if (count > 0 && node.getFunction() == FunctionRegistry.defaults().getVariadicFunction("sum")) {
+                instruction(StackProgram.SUM, 1 - count);
+                emit(count);
+                return null;
+            }
+            instruction(StackProgram.CALL_VARIADIC, 1 - count);
+            emit(indexOf(node.getFunction(), this.variadicFunctions));
+            emit(count);
+            return null;
+        }
+
+        @Override
+        public Void visitConditional(final ConditionalNode node) {
+            node.getCondition().accept(this);
+            instruction(StackProgram.JUMP_IF_FALSE, -1);
+            final int elseTarget = this.length;
+            emit(-1);
+            node.getWhenTrue().accept(this);
+            emit(StackProgram.JUMP);
+            final int endTarget = this.length;
+            emit(-1);
+            --this.depth; // only one branch pushes its value
+            this.code[elseTarget] = this.length;
+            node.getWhenFalse().accept(this);
+            this.code[endTarget] = this.length;
+            return null;
+        }
+
+        @Override
+        public Void visitLet(final LetNode node) {
+            node.getValue().accept(this);
+            instruction(StackProgram.STORE, -1);
+            emit(node.getSlot());
+            node.getBody().accept(this);
+            return null;
+        }
+
+        private void binary(final Integer intrinsic, final DoubleBinaryOperator function) {
+            if (intrinsic != null) {
+                instruction(intrinsic, -1);
+            } else {
+                instruction(StackProgram.CALL_OPERATOR, -1);
+                emit(indexOf(function, this.operators));
+            }
+        }
+
+        private <T> int indexOf(final T function, final List<T> table) {
+            Integer index = this.indices.get(function);
+            if (index == null) {
+                index = table.size();
+                table.add(function);
+                this.indices.put(function, index);
+            }
+            return index;
+        }
+    }
+
+    private static Map<String, Integer> createIntrinsicFunctions() {
+        Map<String, Integer> map = new HashMap<>();
+        map.put("sqr", StackProgram.SQUARE);
+        map.put("sqrt", StackProgram.SQRT);
+        map.put("abs", StackProgram.ABS);
+        map.put("exp", StackProgram.EXP);
+        map.put("ln", StackProgram.LN);
+        map.put("sin", StackProgram.SIN);
+        map.put("cos", StackProgram.COS);
+        map.put("tg", StackProgram.TAN);
+        return map;
+    }
+
+    private static Map<String, Integer> createIntrinsicOperators() {
+        Map<String, Integer> map = new HashMap<>();
+        map.put("^", StackProgram.POW);
+        return map;
+    }
+
+    private static Map<String, Integer> createIntrinsicBiFunctions() {
+        Map<String, Integer> map = new HashMap<>();
+        map.put("max", StackProgram.MAX);
+        map.put("min", StackProgram.MIN);
+        return map;
+    }
+}
@@ -0,0 +1,274 @@
+package com.recursivedescentmathparser.parser.interpreter;
+
+import com.recursivedescentmathparser.parser.Evaluator;
+import com.recursivedescentmathparser.parser.VariadicFunction;
+
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Expression lowered by {@link StackCompiler} to a flat program for a stack machine: an {@code int[]} of opcodes
+ * with their operands inline, a {@code double[]} constant pool and the user functions it calls.
+ * A program holds no node objects, so it takes a fraction of the heap of the tree it came from, and it runs as one
+ * {@code switch} loop over an operand stack. The stack is a per-thread array shared by all programs; nested
+ * evaluations (a function that evaluates another program) use the part above the caller's.
+ */
+public final class StackProgram implements Evaluator {
+    /** push {@code constants[operand]} */
+    static final int CONSTANT = 0;
+    /** push {@code variables[operand]} */
+    static final int LOAD = 1;
+    /** pop into {@code variables[operand]} */
+    static final int STORE = 2;
+    static final int NEGATE = 3;
+    static final int ADD = 4;
+    static final int SUBTRACT = 5;
+    static final int MULTIPLY = 6;
+    static final int DIVIDE = 7;
+    static final int POW = 8;
+    static final int MIN = 9;
+    static final int MAX = 10;
+    static final int SQRT = 11;
+    static final int ABS = 12;
+    static final int EXP = 13;
+    static final int LN = 14;
+    static final int SIN = 15;
+    static final int COS = 16;
+    static final int TAN = 17;
+    /** apply {@code functions[operand]} to the top of the stack */
+    static final int CALL_FUNCTION = 18;
+    /** apply {@code operators[operand]} to the two topmost values */
+    static final int CALL_OPERATOR = 19;
+    static final int RETURN = 20;
+    static final int SQUARE = 21;
+    /** pop, and continue at {@code operand} if the value was 0 */
+    static final int JUMP_IF_FALSE = 22;
+    /** continue at {@code operand} */
+    static final int JUMP = 23;
+    /** replace the {@code operand} topmost values by their sum */
+    static final int SUM = 24;
+    /** apply {@code variadicFunctions[operand]} to the {@code second operand} topmost values, in place */
+    static final int CALL_VARIADIC = 25;
+
+    private static final String[] MNEMONICS = {"const", "load", "store", "neg", "add", "sub", "mul", "div", "pow",
+            "min", "max", "sqrt", "abs", "exp", "ln", "sin", "cos", "tan", "call", "call2", "return", "sqr",
+            "jumpfalse", "jump", "sum", "calln"};
+    private static final ThreadLocal<OperandStack> stacks = ThreadLocal.withInitial(OperandStack::new);
+
+    private final int[] code;
+    private final double[] constants;
+    private final DoubleUnaryOperator[] functions;
+    private final DoubleBinaryOperator[] operators;
+    private final VariadicFunction[] variadicFunctions;
+    private final int maxStack;
+
+    StackProgram(final int[] code, final double[] constants, final DoubleUnaryOperator[] functions,
+                 final DoubleBinaryOperator[] operators, final VariadicFunction[] variadicFunctions,
+                 final int maxStack) {
+        this.code = code;
+        this.constants = constants;
+        this.functions = functions;
+        this.operators = operators;
+        this.variadicFunctions = variadicFunctions;
+        this.maxStack = maxStack;
+    }
+
+    /**
+     * @return number of operand stack entries the program needs
+     */
+    public int getMaxStack() {
+        return this.maxStack;
+    }
+
+    /**
+     * @return length of the opcode array, operands included
+     */
+    public int getCodeLength() {
+        return this.code.length;
+    }
+
+    /**
+     * @return number of distinct constants in the pool
+     */
+    public int getConstantCount() {
+        return this.constants.length;
+    }
+
+    @Override
+    public double evaluate(final double[] variables) {
+        final OperandStack stack = stacks.get();
+        final int base = stack.top;
+        if (stack.values.length < base + this.maxStack) {
+            stack.grow(base + this.maxStack);
+        }
+        stack.top = base + this.maxStack;
+        try {
+            return run(variables, stack.values, base);
+        } finally {
+            stack.top = base;
+        }
+    }
+
+    /**
+     * Evaluates on a caller-owned operand stack, e.g. to avoid the thread-local lookup in a tight loop.
+     * @param stack at least {@link #getMaxStack()} entries
+     */
+    public double evaluate(final double[] variables, final double[] stack) {
+        if (stack.length < this.maxStack) {
+            throw new IllegalArgumentException("Operand stack needs " + this.maxStack + " entries");
+        }
+        return run(variables, stack, 0);
+    }
+
+    private double run(final double[] variables, final double[] stack, final int base) {
+        final int[] code = this.code;
+        int pc = 0;
+        int sp = base;
+        for (;;) {
+            switch (code[pc++]) {
+                case CONSTANT:
+                    stack[sp++] = this.constants[code[pc++]];
+                    break;
+                case LOAD:
+                    stack[sp++] = variables[code[pc++]];
+                    break;
+                case STORE:
+                    variables[code[pc++]] = stack[--sp];
+                    break;
+                case NEGATE:
+                    stack[sp - 1] = -stack[sp - 1];
+                    break;
+                case ADD:
+                    --sp;
+                    stack[sp - 1] += stack[sp];
+                    break;
+                case SUBTRACT:
+                    --sp;
+                    stack[sp - 1] -= stack[sp];
+                    break;
+                case MULTIPLY:
+                    --sp;
+                    stack[sp - 1] *= stack[sp];
+                    break;
+                case DIVIDE:
+                    --sp;
+                    stack[sp - 1] /= stack[sp];
+                    break;
+                case POW:
+                    --sp;
+                    stack[sp - 1] = Math.pow(stack[sp - 1], stack[sp]);
+                    break;
+                case MIN:
+                    --sp;
+                    stack[sp - 1] = Math.min(stack[sp - 1], stack[sp]);
+                    break;
+                case MAX:
+                    --sp;
+                    stack[sp - 1] = Math.max(stack[sp - 1], stack[sp]);
+                    break;
+                case SQUARE:
+                    stack[sp - 1] *= stack[sp - 1];
+                    break;
+                case SQRT:
+                    stack[sp - 1] = Math.sqrt(stack[sp - 1]);
+                    break;
+                case ABS:
+                    stack[sp - 1] = Math.abs(stack[sp - 1]);
+                    break;
+                case EXP:
+                    stack[sp - 1] = Math.exp(stack[sp - 1]);
+                    break;
+                case LN:
+                    stack[sp - 1] = Math.log(stack[sp - 1]);
+                    break;
+                case SIN:
+                    stack[sp - 1] = Math.sin(stack[sp - 1]);
+                    break;
+                case COS:
+                    stack[sp - 1] = Math.cos(stack[sp - 1]);
+                    break;
+                case TAN:
+                    stack[sp - 1] = Math.tan(stack[sp - 1]);
+                    break;
+                case CALL_FUNCTION:
+                    stack[sp - 1] = this.functions[code[pc++]].applyAsDouble(stack[sp - 1]);
+                    break;
+                case CALL_OPERATOR:
+                    --sp;
+                    stack[sp - 1] = this.operators[code[pc++]].applyAsDouble(stack[sp - 1], stack[sp]);
+                    break;
+                case JUMP_IF_FALSE:
+                    pc = stack[--sp] != 0 ? pc + 1 : code[pc];
+                    break;
+                case JUMP:
+                    pc = code[pc];
+                    break;
+                case SUM: {
+                    final int count = code[pc++];
+                    sp -= count;
+                    double sum = stack[sp];
+                    for (int i = sp + 1; i < sp + count; ++i) {
+                        sum += stack[i];
+                    }
+                    stack[sp++] = sum;
+                    break;
+                }
+                case CALL_VARIADIC: {
+                    final VariadicFunction function = this.variadicFunctions[code[pc++]];
+                    final int count = code[pc++];
+                    sp -= count;
+                    stack[sp] = function.apply(stack, sp, count);
+                    ++sp;
+                    break;
+                }
+                case RETURN:
+                    return stack[sp - 1];
+                default:
+                    throw new IllegalStateException("Bad opcode " + code[pc - 1] + " at " + (pc - 1));
+            }
+        }
+    }
+
+    static int operandCount(final int opcode) {
+        switch (opcode) {
+            case CONSTANT: case LOAD: case STORE: case CALL_FUNCTION: case CALL_OPERATOR: case JUMP_IF_FALSE:
+            case JUMP: case SUM:
+                return 1;
+            case CALL_VARIADIC:
+                return 2;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return the program as one instruction per line
+     */
+    @Override
+    public String toString() {
+        final StringBuilder listing = new StringBuilder();
+        for (int pc = 0; pc < this.code.length; ++pc) {
+            final int opcode = this.code[pc];
+            listing.append(pc).append(": ").append(MNEMONICS[opcode]);
+            if (opcode == CONSTANT) {
+                listing.append(' ').append(this.constants[this.code[++pc]]);
+            } else {
+                for (int i = operandCount(opcode); i > 0; --i) {
+                    listing.append(' ').append(this.code[++pc]);
+                }
+            }
+            listing.append('\n');
+        }
+        return listing.toString();
+    }
+
+    private static final class OperandStack {
+        private double[] values = new double[64];
+        private int top;
+
+        void grow(final int size) {
+            this.values = Arrays.copyOf(this.values, Math.max(size, this.values.length * 2));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.recursivedescentmathparser.parser.interval;
+
+/**
+ * Immutable closed range {@code [lo, hi]} of doubles, the value of an expression over ranges of its variables.
+ * Since an expression can be undefined at some points, e.g. {@code sqrt(x)} for negative {@code x}, an interval
+ * also tells whether NaN is among its values: {@link #mayBeNaN()}. The {@link #EMPTY} interval has no other value.
+ */
+public final class Interval {
+    public static final Interval EMPTY = new Interval(Double.NaN, Double.NaN, true);
+    public static final Interval ENTIRE = new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, false);
+
+    private final double lo;
+    private final double hi;
+    private final boolean mayBeNaN;
+
+    private Interval(final double lo, final double hi, final boolean mayBeNaN) {
+        this.lo = lo;
+        this.hi = hi;
+        this.mayBeNaN = mayBeNaN;
+    }
+
+    public static Interval of(final double lo, final double hi) {
+        if (!(lo <= hi)) {
+            throw new IllegalArgumentException("Not an interval: [" + lo + ", " + hi + "]");
+        }
+        return new Interval(lo, hi, false);
+    }
+
+    /**
+     * @return the interval holding only {@code value}, {@link #EMPTY} for NaN
+     */
+    public static Interval point(final double value) {
+        return Double.isNaN(value) ? EMPTY : new Interval(value, value, false);
+    }
+
+    /**
+     * Bounds computed by the interval operations: a NaN bound, where a corner of an operation is undefined,
+     * is widened to the infinity on its side.
+     */
+    static Interval bounds(final double lo, final double hi, final boolean mayBeNaN) {
+        if (Double.isNaN(lo) && Double.isNaN(hi)) {
+            return EMPTY;
+        }
+        if (Double.isNaN(lo) || Double.isNaN(hi)) {
+            return new Interval(Double.isNaN(lo) ? Double.NEGATIVE_INFINITY : lo,
+                    Double.isNaN(hi) ? Double.POSITIVE_INFINITY : hi, true);
+        }
+        return new Interval(lo, hi, mayBeNaN);
+    }
+
+    public double getLo() {
+        return this.lo;
+    }
+
+    public double getHi() {
+        return this.hi;
+    }
+
+    public boolean mayBeNaN() {
+        return this.mayBeNaN;
+    }
+
+    /**
+     * @return whether NaN is the only value
+     */
+    public boolean isEmpty() {
+        return Double.isNaN(this.lo);
+    }
+
+    public boolean isPoint() {
+        return this.lo == this.hi && !this.mayBeNaN;
+    }
+
+    /**
+     * @return whether {@code value} may be a value of this interval; NaN only if {@link #mayBeNaN()}
+     */
+    public boolean contains(final double value) {
+        return Double.isNaN(value) ? this.mayBeNaN : this.lo <= value && value <= this.hi;
+    }
+
+    public double getWidth() {
+        return this.isEmpty() ? 0 : this.hi - this.lo;
+    }
+
+    /**
+     * @return the smallest interval holding the values of both intervals
+     */
+    public Interval hull(final Interval other) {
+        if (this.isEmpty() || other.isEmpty()) {
+            return this.isEmpty() ? other.withNaN(true) : this.withNaN(true);
+        }
+        return new Interval(Math.min(this.lo, other.lo), Math.max(this.hi, other.hi),
+                this.mayBeNaN || other.mayBeNaN);
+    }
+
+    Interval withNaN(final boolean mayBeNaN) {
+        return mayBeNaN == this.mayBeNaN || this.isEmpty() ? this : new Interval(this.lo, this.hi, mayBeNaN);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) return true;
+        if (!(other instanceof Interval)) return false;
+        final Interval interval = (Interval) other;
+        return Double.compare(this.lo, interval.lo) == 0 && Double.compare(this.hi, interval.hi) == 0
+                && this.mayBeNaN == interval.mayBeNaN;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Double.hashCode(this.lo) + Double.hashCode(this.hi)) + (this.mayBeNaN ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        if (this.isEmpty()) {
+            return "[NaN]";
+        }
+        return "[" + this.lo + ", " + this.hi + "]" + (this.mayBeNaN ? " or NaN" : "");
+    }
+}
@@ -0,0 +1,316 @@
+package com.recursivedescentmathparser.parser.interval;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.FunctionRegistry;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.ast.BiFunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.BinaryOperatorNode;
+import com.recursivedescentmathparser.parser.ast.ConditionalNode;
+import com.recursivedescentmathparser.parser.ast.ConstantNode;
+import com.recursivedescentmathparser.parser.ast.FunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.LetNode;
+import com.recursivedescentmathparser.parser.ast.NegateNode;
+import com.recursivedescentmathparser.parser.ast.NodeVisitor;
+import com.recursivedescentmathparser.parser.ast.VariableNode;
+import com.recursivedescentmathparser.parser.ast.VariadicFunctionCallNode;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+import java.util.function.UnaryOperator;
+
+import static com.recursivedescentmathparser.parser.interval.IntervalMath.*;
+
+/**
+ * Evaluates a compiled expression over ranges of its variables. The result encloses every value the point
+ * evaluators compute for variable values in the ranges, so a region where the enclosure misses a level, e.g.
+ * does not contain 0, can be discarded without evaluating a single point of it.
+ * Every built-in function, bi-function, variadic function and operator that was not overridden in the registry
+ * has an interval version; other functions need one registered with {@link #withFunction} or
+ * {@link #withBiFunction}. Without one, a pure function is only evaluated when its arguments are single points
+ * and the value is {@link Interval#ENTIRE} (possibly NaN) otherwise.
+ */
+public class IntervalEvaluator {
+    private static final double INFINITY = Double.POSITIVE_INFINITY;
+    private static final FunctionRegistry DEFAULTS = FunctionRegistry.defaults();
+    private static final Map<String, UnaryOperator<Interval>> FUNCTION_RULES = createFunctionRules();
+    private static final Interval UNKNOWN = Interval.ENTIRE.withNaN(true);
+
+    private final FunctionRegistry registry;
+    private final Map<String, UnaryOperator<Interval>> functions;
+    private final Map<String, BinaryOperator<Interval>> biFunctions;
+
+    public IntervalEvaluator(final FunctionRegistry registry) {
+        this(registry, Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    private IntervalEvaluator(final FunctionRegistry registry, final Map<String, UnaryOperator<Interval>> functions,
+                              final Map<String, BinaryOperator<Interval>> biFunctions) {
+        this.registry = registry;
+        this.functions = functions;
+        this.biFunctions = biFunctions;
+    }
+
+    /**
+     * @param function must enclose the registry function's values over the argument interval
+     */
+    public IntervalEvaluator withFunction(final String name, final UnaryOperator<Interval> function) {
+        final Map<String, UnaryOperator<Interval>> copy = new HashMap<>(this.functions);
+        copy.put(name, function);
+        return new IntervalEvaluator(this.registry, copy, this.biFunctions);
+    }
+
+    /**
+     * Registers the interval version of a two-argument function or of an operator.
+     */
+    public IntervalEvaluator withBiFunction(final String name, final BinaryOperator<Interval> function) {
+        final Map<String, BinaryOperator<Interval>> copy = new HashMap<>(this.biFunctions);
+        copy.put(name, function);
+        return new IntervalEvaluator(this.registry, this.functions, copy);
+    }
+
+    /**
+     * @param variables range of each variable slot; slots past the end of the array keep their default value
+     */
+    public Interval evaluate(final CompiledExpression expression, final Interval... variables) {
+        if (variables.length > expression.getVariableCount()) {
+            throw new IllegalArgumentException("Expected at most " + expression.getVariableCount()
+                    + " variables, got " + variables.length);
+        }
+        final Interval[] frame = new Interval[expression.getFrameSize()];
+        for (int slot = 0; slot < expression.getVariableCount(); ++slot) {
+            frame[slot] = slot < variables.length ? variables[slot] : Interval.point(expression.getDefaultValue(slot));
+        }
+        return expression.getRoot().accept(new Enclosure(frame));
+    }
+
+    /**
+     * @param variables range of variables by name; the others keep their default value
+     */
+    public Interval evaluate(final CompiledExpression expression, final Map<String, Interval> variables) {
+        final Interval[] ranges = new Interval[expression.getVariableCount()];
+        for (int slot = 0; slot < ranges.length; ++slot) {
+            final Interval range = variables.get(expression.getVariableNames().get(slot));
+            ranges[slot] = range != null ? range : Interval.point(expression.getDefaultValue(slot));
+        }
+        return evaluate(expression, ranges);
+    }
+
+    private class Enclosure implements NodeVisitor<Interval> {
+        private final Interval[] frame;
+
+        Enclosure(final Interval[] frame) {
+            this.frame = frame;
+        }
+
+        @Override
+        public Interval visitConstant(final ConstantNode node) {
+            return Interval.point(node.getValue());
+        }
+
+        @Override
+        public Interval visitVariable(final VariableNode node) {
+            return this.frame[node.getSlot()];
+        }
+
+        @Override
+        public Interval visitNegate(final NegateNode node) {
+            return negate(node.getOperand().accept(this));
+        }
+
+        @Override
+        public Interval visitBinaryOperator(final BinaryOperatorNode node) {
+            final Interval a = node.getLeft().accept(this), b = node.getRight().accept(this);
+            if (node.getFunction() == BinaryOperatorNode.ADD) return add(a, b);
+            if (node.getFunction() == BinaryOperatorNode.SUBTRACT) return subtract(a, b);
+            if (node.getFunction() == BinaryOperatorNode.MULTIPLY) return multiply(a, b);
+            if (node.getFunction() == BinaryOperatorNode.DIVIDE) return divide(a, b);
+            final String operator = node.getFunction() == DEFAULTS.getBinaryOperator(node.getOperator())
+                    ? node.getOperator()
+                    : "";
+            switch (operator) {
+                case "^":
+                    return pow(a, b);
+                case "e":
+                    // a e b = a*10^b
+                    return multiply(a, pow(Interval.point(10), b));
+                case ">":
+                    return greater(a, b, false);
+                case ">=":
+                    return greater(a, b, true);
+                case "<":
+                    return greater(b, a, false);
+                case "<=":
+                    return greater(b, a, true);
+                case "==":
+                    return equal(a, b);
+                case "!=":
+                    return not(equal(a, b));
+                default:
+                    final BinaryOperator<Interval> function = biFunctions.get(node.getOperator());
+                    return function != null ? function.apply(a, b)
+                            : atPoints(node.getFunction(), new Interval[]{a, b},
+                                    values -> node.getFunction().applyAsDouble(values[0], values[1]));
+            }
+        }
+
+        @Override
+        public Interval visitFunctionCall(final FunctionCallNode node) {
+            final Interval argument = node.getArgument().accept(this);
+            final UnaryOperator<Interval> rule = node.getFunction() == DEFAULTS.getFunction(node.getName())
+                    ? FUNCTION_RULES.get(node.getName())
+                    : functions.get(node.getName());
+            return rule != null ? rule.apply(argument)
+                    : atPoints(node.getFunction(), new Interval[]{argument},
+                            values -> node.getFunction().applyAsDouble(values[0]));
+        }
+
+        @Override
+        public Interval visitBiFunctionCall(final BiFunctionCallNode node) {
+            final Interval a = node.getFirst().accept(this), b = node.getSecond().accept(this);
+            final String name = node.getFunction() == DEFAULTS.getBiFunction(node.getName()) ? node.getName() : "";
+            switch (name) {
+                case "max":
+                    return max(a, b);
+                case "min":
+                    return min(a, b);
+                case "hypot":
+                    return hypot(a, b);
+                case "log":
+                    // log(a, b) = ln(a)/ln(b)
+                    return divide(ln(a), ln(b));
+                default:
+                    final BinaryOperator<Interval> function = biFunctions.get(node.getName());
+                    return function != null ? function.apply(a, b)
+                            : atPoints(node.getFunction(), new Interval[]{a, b},
+                                    values -> node.getFunction().applyAsDouble(values[0], values[1]));
+            }
+        }
+
+        @Override
+        public Interval visitVariadicFunctionCall(final VariadicFunctionCallNode node) {
+            final Interval[] arguments = new Interval[node.getArgumentCount()];
+            for (int i = 0; i < arguments.length; ++i) {
+                arguments[i] = node.getArgument(i).accept(this);
+            }
+            final String name = node.getFunction() == DEFAULTS.getVariadicFunction(node.getName())
+                    ? node.getName()
+                    : "";
+            switch (name) {
+                case "sum":
+                case "avg":
+                    Interval sum = arguments.length == 0 ? ZERO : arguments[0];
+                    for (int i = 1; i < arguments.length; ++i) {
+                        sum = add(sum, arguments[i]);
+                    }
+                    return name.equals("sum") ? sum : divide(sum, Interval.point(arguments.length));
+                case "min":
+                case "max":
+                    Interval extremum = arguments[0];
+                    for (int i = 1; i < arguments.length; ++i) {
+                        extremum = name.equals("min") ? min(extremum, arguments[i]) : max(extremum, arguments[i]);
+                    }
+                    return extremum;
+                case "poly":
+                    if (arguments.length < 2) {
+                        return ZERO;
+                    }
+                    Interval result = arguments[arguments.length - 1];
+                    for (int i = arguments.length - 2; i > 0; --i) {
+                        result = add(multiply(result, arguments[0]), arguments[i]);
+                    }
+                    return result;
+                default:
+                    return atPoints(node.getFunction(), arguments,
+                            values -> node.getFunction().apply(values, 0, values.length));
+            }
+        }
+
+        @Override
+        public Interval visitLet(final LetNode node) {
+            this.frame[node.getSlot()] = node.getValue().accept(this);
+            return node.getBody().accept(this);
+        }
+
+        /**
+         * A condition is true where it is not 0, NaN included; only the branches it may take are evaluated.
+         */
+        @Override
+        public Interval visitConditional(final ConditionalNode node) {
+            final Interval condition = node.getCondition().accept(this);
+            final boolean mayBeTrue = condition.mayBeNaN() || condition.getLo() != 0 || condition.getHi() != 0;
+            final boolean mayBeFalse = !condition.isEmpty() && condition.getLo() <= 0 && condition.getHi() >= 0;
+            if (!mayBeFalse) {
+                return node.getWhenTrue().accept(this);
+            }
+            if (!mayBeTrue) {
+                return node.getWhenFalse().accept(this);
+            }
+            return node.getWhenTrue().accept(this).hull(node.getWhenFalse().accept(this));
+        }
+
+        /**
+         * Evaluates a function without an interval version, which is only possible when its arguments are points.
+         */
+        private Interval atPoints(final Object function, final Interval[] arguments,
+                                  final ToDoubleFunction<double[]> call) {
+            final double[] values = new double[arguments.length];
+            for (int i = 0; i < arguments.length; ++i) {
+                if (!arguments[i].isPoint() || !registry.isPure(function)) {
+                    return UNKNOWN;
+                }
+                values[i] = arguments[i].getLo();
+            }
+            return Interval.point(call.applyAsDouble(values));
+        }
+    }
+
+    private static Interval ln(final Interval x) {
+        return monotone(x, Math::log, true, 0, INFINITY);
+    }
+
+    private static Map<String, UnaryOperator<Interval>> createFunctionRules() {
+        final Map<String, UnaryOperator<Interval>> rules = new HashMap<>();
+        rules.put("sin", x -> periodic(x, Math::sin, Math.PI / 2, -Math.PI / 2));
+        rules.put("cos", x -> periodic(x, Math::cos, 0, Math.PI));
+        rules.put("tg", IntervalMath::tan);
+        rules.put("arcsin", x -> monotone(x, Math::asin, true, -1, 1));
+        rules.put("arccos", x -> monotone(x, Math::acos, false, -1, 1));
+        rules.put("arctg", x -> increasing(x, Math::atan));
+        rules.put("sh", x -> increasing(x, Math::sinh));
+        rules.put("ch", x -> even(x, Math::cosh));
+        rules.put("th", x -> increasing(x, Math::tanh));
+        rules.put("arcsh", IntervalMath::asinh);
+        rules.put("arcch", IntervalMath::acosh);
+        rules.put("arcth", x -> monotone(x, MathParser::atanh, true, -1, 1));
+        // the reciprocal functions are computed as 1/f(x) or f(1/x)
+        final String[][] reciprocals = {{"ctg", "tg"}, {"sec", "sin"}, {"cosec", "cos"}, {"cth", "th"},
+                {"sech", "sh"}, {"cosech", "ch"}};
+        for (String[] pair : reciprocals) {
+            final UnaryOperator<Interval> function = rules.get(pair[1]);
+            rules.put(pair[0], x -> reciprocal(function.apply(x)));
+        }
+        final String[][] ofReciprocals = {{"arcsec", "arcsin"}, {"arccosec", "arccos"}, {"arcctg", "arctg"},
+                {"arcsech", "arcsh"}, {"arccosech", "arcch"}, {"arccth", "arcth"}};
+        for (String[] pair : ofReciprocals) {
+            final UnaryOperator<Interval> function = rules.get(pair[1]);
+            rules.put(pair[0], x -> function.apply(reciprocal(x)));
+        }
+        for (String name : new String[]{"sqr", "abs"}) {
+            final DoubleUnaryOperator function = DEFAULTS.getFunction(name);
+            rules.put(name, x -> even(x, function));
+        }
+        for (String name : new String[]{"cube", "cbrt", "signum", "exp"}) {
+            final DoubleUnaryOperator function = DEFAULTS.getFunction(name);
+            rules.put(name, x -> increasing(x, function));
+        }
+        for (String name : new String[]{"sqrt", "ln", "log2", "log4", "log8", "log10", "log16"}) {
+            final DoubleUnaryOperator function = DEFAULTS.getFunction(name);
+            rules.put(name, x -> monotone(x, function, true, 0, INFINITY));
+        }
+        return rules;
+    }
+}
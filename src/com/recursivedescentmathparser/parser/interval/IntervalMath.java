@@ -0,0 +1,309 @@
+package com.recursivedescentmathparser.parser.interval;
+
+import com.recursivedescentmathparser.parser.MathParser;
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Interval versions of the arithmetic and of the shapes of the built-in functions. Each operation encloses the
+ * values the point evaluators compute, rounding included: {@link Math}'s functions are semi-monotonic and rounding
+ * to nearest is monotone, so a function evaluated at the ends of an interval where it is monotone bounds its
+ * computed values exactly and no outward rounding is needed. A zero bound is taken to be possibly {@code -0.0},
+ * since the sign of a zero decides the sign of an infinite quotient.
+ */
+final class IntervalMath {
+    private static final double INFINITY = Double.POSITIVE_INFINITY;
+    private static final double TWO_PI = 2 * Math.PI;
+    /** beyond this the distance between doubles is too coarse to locate the extrema of a periodic function */
+    private static final double PERIODIC_LIMIT = 1e9;
+    static final Interval ZERO = Interval.point(0), ONE = Interval.point(1);
+    private static final Interval BOOLEAN = Interval.of(0, 1);
+    private static final Interval UNIT = Interval.of(-1, 1);
+
+    private IntervalMath() {
+    }
+
+    private static boolean containsZero(final Interval x) {
+        return x.getLo() <= 0 && x.getHi() >= 0;
+    }
+
+    private static boolean isUnbounded(final Interval x) {
+        return x.getLo() == -INFINITY || x.getHi() == INFINITY;
+    }
+
+    static Interval negate(final Interval x) {
+        return x.isEmpty() ? Interval.EMPTY : Interval.bounds(-x.getHi(), -x.getLo(), x.mayBeNaN());
+    }
+
+    static Interval add(final Interval a, final Interval b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return Interval.EMPTY;
+        }
+        // infinities of opposite signs add up to NaN
+        final boolean mayBeNaN = a.mayBeNaN() || b.mayBeNaN() || a.getLo() == -INFINITY && b.getHi() == INFINITY
+                || a.getHi() == INFINITY && b.getLo() == -INFINITY;
+        return Interval.bounds(a.getLo() + b.getLo(), a.getHi() + b.getHi(), mayBeNaN);
+    }
+
+    static Interval subtract(final Interval a, final Interval b) {
+        return add(a, negate(b));
+    }
+
+    static Interval multiply(final Interval a, final Interval b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return Interval.EMPTY;
+        }
+        final boolean mayBeNaN = a.mayBeNaN() || b.mayBeNaN() || containsZero(a) && isUnbounded(b)
+                || containsZero(b) && isUnbounded(a);
+        return corners((x, y) -> x * y, 0, a.getLo(), a.getHi(), b.getLo(), b.getHi(), mayBeNaN);
+    }
+
+    static Interval divide(final Interval a, final Interval b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return Interval.EMPTY;
+        }
+        final boolean mayBeNaN = a.mayBeNaN() || b.mayBeNaN() || isUnbounded(a) && isUnbounded(b);
+        if (containsZero(b)) {
+            return Interval.bounds(-INFINITY, INFINITY, mayBeNaN || containsZero(a));
+        }
+        return corners((x, y) -> x / y, 0, a.getLo(), a.getHi(), b.getLo(), b.getHi(), mayBeNaN);
+    }
+
+    static Interval reciprocal(final Interval x) {
+        return divide(ONE, x);
+    }
+
+    /**
+     * Bounds {@code operator} over a box where it is monotone in each argument. An undefined corner, like
+     * {@code 0*infinity}, takes the value {@code limit} the operator has at the finite points next to it.
+     */
+    private static Interval corners(final DoubleBinaryOperator operator, final double limit, final double a0,
+                                    final double a1, final double b0, final double b1, final boolean mayBeNaN) {
+        final double[] values = {operator.applyAsDouble(a0, b0), operator.applyAsDouble(a0, b1),
+                operator.applyAsDouble(a1, b0), operator.applyAsDouble(a1, b1)};
+        double lo = INFINITY, hi = -INFINITY;
+        boolean undefined = mayBeNaN;
+        for (double value : values) {
+            if (Double.isNaN(value)) {
+                undefined = true;
+                value = limit;
+            }
+            lo = Math.min(lo, value);
+            hi = Math.max(hi, value);
+        }
+        return Interval.bounds(lo, hi, undefined);
+    }
+
+    /**
+     * @param domainLo lowest argument the function is defined for; it is NaN below
+     * @param domainHi highest argument the function is defined for; it is NaN above
+     */
+    static Interval monotone(final Interval x, final DoubleUnaryOperator function, final boolean increasing,
+                             final double domainLo, final double domainHi) {
+        if (x.isEmpty()) {
+            return Interval.EMPTY;
+        }
+        final double lo = Math.max(x.getLo(), domainLo), hi = Math.min(x.getHi(), domainHi);
+        if (lo > hi) {
+            return Interval.EMPTY;
+        }
+        final boolean mayBeNaN = x.mayBeNaN() || x.getLo() < domainLo || x.getHi() > domainHi;
+        final double atLo = function.applyAsDouble(lo), atHi = function.applyAsDouble(hi);
+        return increasing ? Interval.bounds(atLo, atHi, mayBeNaN) : Interval.bounds(atHi, atLo, mayBeNaN);
+    }
+
+    static Interval increasing(final Interval x, final DoubleUnaryOperator function) {
+        return monotone(x, function, true, -INFINITY, INFINITY);
+    }
+
+    /**
+     * For functions decreasing up to 0 and increasing after it, like {@code abs} or {@code ch}.
+     */
+    static Interval even(final Interval x, final DoubleUnaryOperator function) {
+        if (x.isEmpty()) {
+            return Interval.EMPTY;
+        }
+        final double atLo = function.applyAsDouble(x.getLo()), atHi = function.applyAsDouble(x.getHi());
+        if (x.getLo() >= 0) {
+            return Interval.bounds(atLo, atHi, x.mayBeNaN());
+        }
+        if (x.getHi() <= 0) {
+            return Interval.bounds(atHi, atLo, x.mayBeNaN());
+        }
+        return Interval.bounds(function.applyAsDouble(0), Math.max(atLo, atHi), x.mayBeNaN());
+    }
+
+    /**
+     * For {@code sin} and {@code cos}: the function has its maxima at {@code maxAt + 2*Pi*k}, its minima at
+     * {@code minAt + 2*Pi*k} and is monotone in between. An extremum near the interval is taken to be inside it,
+     * which only ever widens the result to the true bound of +-1.
+     */
+    static Interval periodic(final Interval x, final DoubleUnaryOperator function, final double maxAt,
+                             final double minAt) {
+        if (x.isEmpty()) {
+            return Interval.EMPTY;
+        }
+        if (isUnbounded(x)) {
+            return UNIT.withNaN(true);
+        }
+        if (x.getHi() - x.getLo() >= TWO_PI || Math.max(-x.getLo(), x.getHi()) > PERIODIC_LIMIT) {
+            return UNIT.withNaN(x.mayBeNaN());
+        }
+        final double atLo = function.applyAsDouble(x.getLo()), atHi = function.applyAsDouble(x.getHi());
+        return Interval.bounds(touches(x, minAt, TWO_PI) ? -1 : Math.min(atLo, atHi),
+                touches(x, maxAt, TWO_PI) ? 1 : Math.max(atLo, atHi), x.mayBeNaN());
+    }
+
+    /**
+     * @return whether a point {@code at + period*k} may lie in {@code x}, allowing for rounding
+     */
+    private static boolean touches(final Interval x, final double at, final double period) {
+        final double slack = 1e-9 * (1 + Math.abs(x.getLo()) + Math.abs(x.getHi()));
+        final double k = Math.ceil((x.getLo() - slack - at) / period);
+        return at + k * period <= x.getHi() + slack;
+    }
+
+    /**
+     * {@code tg}, increasing between its poles at {@code Pi/2 + Pi*k}.
+     */
+    static Interval tan(final Interval x) {
+        if (x.isEmpty()) {
+            return Interval.EMPTY;
+        }
+        if (isUnbounded(x) || x.getHi() - x.getLo() >= Math.PI || Math.max(-x.getLo(), x.getHi()) > PERIODIC_LIMIT
+                || touches(x, Math.PI / 2, Math.PI)) {
+            return Interval.ENTIRE.withNaN(x.mayBeNaN() || isUnbounded(x));
+        }
+        return Interval.bounds(Math.tan(x.getLo()), Math.tan(x.getHi()), x.mayBeNaN());
+    }
+
+    /**
+     * {@link MathParser#asinh} is only monotone for non-negative arguments: for negative ones it cancels to 0 and
+     * below -1e154 its square overflows to +infinity.
+     */
+    static Interval asinh(final Interval x) {
+        if (x.isEmpty()) {
+            return Interval.EMPTY;
+        }
+        if (x.getLo() >= 0) {
+            return increasing(x, MathParser::asinh);
+        }
+        final double hi = x.getLo() < -1e154 ? INFINITY : Math.max(1, MathParser.asinh(Math.max(x.getHi(), 0)));
+        return Interval.bounds(-INFINITY, hi, true);
+    }
+
+    /**
+     * {@link MathParser#acosh} is NaN below 1, except that {@code x + sqrt(x*x - 1)} cancels to 0 for large negative
+     * arguments, giving -infinity, and below -1e154 the square overflows to +infinity.
+     */
+    static Interval acosh(final Interval x) {
+        if (x.isEmpty()) {
+            return Interval.EMPTY;
+        }
+        final Interval defined = monotone(x, MathParser::acosh, true, 1, INFINITY);
+        if (x.getLo() >= -1) {
+            return defined;
+        }
+        return Interval.bounds(-INFINITY, x.getLo() < -1e154 ? INFINITY : defined.isEmpty() ? -INFINITY
+                : defined.getHi(), true);
+    }
+
+    /**
+     * {@link Math#pow}: monotone in each argument for a non-negative base; a negative base gives +-|base|^y for
+     * integral exponents and NaN otherwise, and {@code pow(NaN, 0)} is 1.
+     */
+    static Interval pow(final Interval base, final Interval exponent) {
+        if (exponent.isEmpty()) {
+            return Interval.EMPTY;
+        }
+        final boolean zeroExponent = containsZero(exponent);
+        if (base.isEmpty()) {
+            return zeroExponent ? ONE.withNaN(true) : Interval.EMPTY;
+        }
+        Interval result = null;
+        // pow(+-1, +-infinity) is NaN
+        boolean mayBeNaN = base.mayBeNaN() || exponent.mayBeNaN()
+                || isUnbounded(exponent) && (base.contains(1) || base.contains(-1));
+        if (base.getHi() >= 0) {
+            result = magnitudePower(Math.max(base.getLo(), 0), base.getHi(), exponent);
+        }
+        if (base.getLo() <= 0) {
+            final Interval magnitude = magnitudePower(Math.max(-base.getHi(), 0), -base.getLo(), exponent);
+            final double n = exponent.getLo();
+            final Interval negative;
+            if (exponent.isPoint() && !Double.isInfinite(n) && Math.rint(n) == n) {
+                negative = Math.abs(n) < 0x1p53 && (long) n % 2 != 0 ? negate(magnitude) : magnitude;
+            } else {
+                negative = magnitude.hull(negate(magnitude));
+                mayBeNaN |= base.getLo() < 0;
+            }
+            result = result == null ? negative : result.hull(negative);
+        }
+        if (base.mayBeNaN() && zeroExponent) {
+            result = result.hull(ONE);
+        }
+        return result.withNaN(mayBeNaN || result.mayBeNaN());
+    }
+
+    private static Interval magnitudePower(final double lo, final double hi, final Interval exponent) {
+        return corners(Math::pow, 1, lo, hi, exponent.getLo(), exponent.getHi(), false);
+    }
+
+    static Interval max(final Interval a, final Interval b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return Interval.EMPTY;
+        }
+        return Interval.bounds(Math.max(a.getLo(), b.getLo()), Math.max(a.getHi(), b.getHi()),
+                a.mayBeNaN() || b.mayBeNaN());
+    }
+
+    static Interval min(final Interval a, final Interval b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return Interval.EMPTY;
+        }
+        return Interval.bounds(Math.min(a.getLo(), b.getLo()), Math.min(a.getHi(), b.getHi()),
+                a.mayBeNaN() || b.mayBeNaN());
+    }
+
+    /**
+     * {@link Math#hypot} is infinite when either argument is, even if the other is NaN.
+     */
+    static Interval hypot(final Interval a, final Interval b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            final Interval other = a.isEmpty() ? b : a;
+            return !other.isEmpty() && isUnbounded(other) ? Interval.bounds(INFINITY, INFINITY, true)
+                    : Interval.EMPTY;
+        }
+        final Interval absA = even(a, Math::abs), absB = even(b, Math::abs);
+        return Interval.bounds(Math.hypot(absA.getLo(), absB.getLo()), Math.hypot(absA.getHi(), absB.getHi()),
+                a.mayBeNaN() || b.mayBeNaN());
+    }
+
+    /**
+     * {@code a > b}, or {@code a >= b} if {@code orEqual}; false when either side is NaN.
+     */
+    static Interval greater(final Interval a, final Interval b, final boolean orEqual) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return ZERO;
+        }
+        final boolean alwaysTrue = !a.mayBeNaN() && !b.mayBeNaN()
+                && (orEqual ? a.getLo() >= b.getHi() : a.getLo() > b.getHi());
+        final boolean neverTrue = orEqual ? a.getHi() < b.getLo() : a.getHi() <= b.getLo();
+        return alwaysTrue ? ONE : neverTrue ? ZERO : BOOLEAN;
+    }
+
+    /**
+     * {@code ==} by {@link Double#compare}: NaN equals NaN and 0.0 does not equal -0.0.
+     */
+    static Interval equal(final Interval a, final Interval b) {
+        final boolean alwaysTrue = a.isEmpty() && b.isEmpty()
+                || a.isPoint() && b.isPoint() && a.getLo() == b.getLo() && a.getLo() != 0;
+        final boolean overlap = !a.isEmpty() && !b.isEmpty() && a.getLo() <= b.getHi() && b.getLo() <= a.getHi();
+        return alwaysTrue ? ONE : overlap || a.mayBeNaN() && b.mayBeNaN() ? BOOLEAN : ZERO;
+    }
+
+    static Interval not(final Interval truthValue) {
+        return truthValue == ONE ? ZERO : truthValue == ZERO ? ONE : BOOLEAN;
+    }
+}
@@ -0,0 +1,48 @@
+package com.recursivedescentmathparser.parser.loader;
+
+/**
+ * A line of a formula file that could not be loaded.
+ */
+public final class FormulaError {
+    private final int line;
+    private final int column;
+    private final String name;
+    private final String message;
+
+    FormulaError(final int line, final int column, final String name, final String message) {
+        this.line = line;
+        this.column = column;
+        this.name = name;
+        this.message = message;
+    }
+
+    /**
+     * @return one-based line number
+     */
+    public int getLine() {
+        return this.line;
+    }
+
+    /**
+     * @return one-based column of the offending token, counted in characters
+     */
+    public int getColumn() {
+        return this.column;
+    }
+
+    /**
+     * @return name of the formula defined on the line, or null if the line has no valid name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    public String getMessage() {
+        return this.message;
+    }
+
+    @Override
+    public String toString() {
+        return "line " + this.line + ", column " + this.column + ": " + this.message;
+    }
+}
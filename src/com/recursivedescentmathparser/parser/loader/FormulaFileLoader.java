@@ -0,0 +1,240 @@
+package com.recursivedescentmathparser.parser.loader;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.ExpressionCompiler;
+import com.recursivedescentmathparser.parser.ExpressionParseException;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Compiles a file of {@code name = expression} lines into a {@link FormulaLibrary}.
+ * The file is memory-mapped and cut into chunks of about {@code chunkSize} bytes at line boundaries; the chunks are
+ * compiled in parallel on a {@link ForkJoinPool}, straight from the mapped bytes, with the thread-safe
+ * {@link ExpressionCompiler}. A line that fails is reported with its line and column and the rest of the file is
+ * still loaded. Blank lines and lines starting with {@code #} are skipped, and a {@code \r} before the line feed
+ * is ignored. If a name is defined twice, the first definition is kept and the second reported.
+ */
+public class FormulaFileLoader {
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+    /** largest region mapped at once; a mapping cannot exceed 2 GB */
+    private static final long MAX_MAPPING_SIZE = 1L << 30;
+
+    private final ExpressionCompiler compiler;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public FormulaFileLoader(final ExpressionCompiler compiler) {
+        this(compiler, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public FormulaFileLoader(final ExpressionCompiler compiler, final ForkJoinPool pool, final int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.compiler = compiler;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Maps {@code file} and compiles every line. Compiled formulas keep no reference to the mapping.
+     * @throws IOException if the file cannot be read or has a line longer than the largest mapping
+     */
+    public FormulaLibrary load(final Path file) throws IOException {
+        final List<Chunk> chunks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            long offset = 0;
+            while (offset < size) {
+                final long length = Math.min(MAX_MAPPING_SIZE, size - offset);
+                final ByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                int end = (int) length;
+                if (offset + length < size) {
+                    //Cut the mapping after its last complete line, the next one starts there
+                    while (end > 0 && mapping.get(end - 1) != '\n') --end;
+                    if (end == 0) {
+                        throw new IOException("Line at byte " + offset + " is longer than " + MAX_MAPPING_SIZE
+                                + " bytes");
+                    }
+                }
+                compileChunks(mapping, 0, end, chunks);
+                offset += end;
+            }
+        }
+        return merge(chunks);
+    }
+
+    /**
+     * Compiles the lines between the buffer's position and limit, e.g. a file that is already mapped or a network
+     * buffer. The buffer's position is not moved.
+     */
+    public FormulaLibrary load(final ByteBuffer content) {
+        final List<Chunk> chunks = new ArrayList<>();
+        compileChunks(content, content.position(), content.limit(), chunks);
+        return merge(chunks);
+    }
+
+    private void compileChunks(final ByteBuffer content, final int from, final int to, final List<Chunk> chunks) {
+        final int first = chunks.size();
+        int start = from;
+        while (start < to) {
+            int end = (int) Math.min(to, (long) start + this.chunkSize);
+            while (end < to && content.get(end - 1) != '\n') ++end;
+            chunks.add(new Chunk(content, start, end));
+            start = end;
+        }
+        this.pool.invoke(new CompileChunks(chunks.subList(first, chunks.size())));
+    }
+
+    private static FormulaLibrary merge(final List<Chunk> chunks) {
+        final Map<String, CompiledExpression> formulas = new LinkedHashMap<>();
+        final Map<String, Integer> definedOn = new HashMap<>();
+        final List<FormulaError> errors = new ArrayList<>();
+        int firstLine = 1;
+        for (Chunk chunk : chunks) {
+            int nextError = 0;
+            for (int i = 0; i < chunk.names.size(); ++i) {
+                final int line = firstLine + chunk.lines.get(i);
+                while (nextError < chunk.errors.size() && chunk.errors.get(nextError).getLine() < chunk.lines.get(i)) {
+                    errors.add(relocate(chunk.errors.get(nextError++), firstLine));
+                }
+                final String name = chunk.names.get(i);
+                final Integer previous = definedOn.putIfAbsent(name, line);
+                if (previous == null) {
+                    formulas.put(name, chunk.formulas.get(i));
+                } else {
+                    errors.add(new FormulaError(line, 1, name,
+                            "Duplicate formula " + name + ", first defined on line " + previous));
+                }
+            }
+            while (nextError < chunk.errors.size()) {
+                errors.add(relocate(chunk.errors.get(nextError++), firstLine));
+            }
+            firstLine += chunk.lineCount;
+        }
+        return new FormulaLibrary(formulas, errors, firstLine - 1);
+    }
+
+    private static FormulaError relocate(final FormulaError error, final int firstLine) {
+        return new FormulaError(firstLine + error.getLine(), error.getColumn(), error.getName(), error.getMessage());
+    }
+
+    private static boolean isBlank(final int ch) {
+        return ch == ' ' || ch == '\t';
+    }
+
+    private static boolean isNameCharacter(final int ch, final boolean first) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || ch == '_'
+                || (!first && ((ch >= '0' && ch <= '9') || ch == '.'));
+    }
+
+    /**
+     * Lines of one chunk; line numbers are relative to the chunk until {@link #merge} knows where it starts.
+     */
+    private final class Chunk {
+        private final ByteBuffer content;
+        private final int from, to;
+        private final List<String> names = new ArrayList<>();
+        private final List<CompiledExpression> formulas = new ArrayList<>();
+        private final List<Integer> lines = new ArrayList<>();
+        private final List<FormulaError> errors = new ArrayList<>();
+        private int lineCount;
+
+        Chunk(final ByteBuffer content, final int from, final int to) {
+            this.content = content;
+            this.from = from;
+            this.to = to;
+        }
+
+        void compile() {
+            int lineStart = this.from;
+            while (lineStart < this.to) {
+                int lineEnd = lineStart;
+                while (lineEnd < this.to && this.content.get(lineEnd) != '\n') ++lineEnd;
+                final int next = lineEnd + 1;
+                if (lineEnd > lineStart && this.content.get(lineEnd - 1) == '\r') --lineEnd;
+                compileLine(lineStart, lineEnd);
+                ++this.lineCount;
+                lineStart = next;
+            }
+        }
+
+        private void compileLine(final int lineStart, final int lineEnd) {
+            int position = lineStart;
+            while (position < lineEnd && isBlank(this.content.get(position))) ++position;
+            if (position == lineEnd || this.content.get(position) == '#') return;
+
+            final int nameStart = position;
+            while (position < lineEnd && isNameCharacter(this.content.get(position), position == nameStart)) {
+                ++position;
+            }
+            final int nameEnd = position;
+            while (position < lineEnd && isBlank(this.content.get(position))) ++position;
+            if (nameEnd == nameStart || position == lineEnd || this.content.get(position) != '=') {
+                error(lineStart, position, null, nameEnd == nameStart
+                        ? "Expected a formula name" : "Expected name = expression");
+                return;
+            }
+            final char[] chars = new char[nameEnd - nameStart];
+            for (int i = 0; i < chars.length; ++i) chars[i] = (char) this.content.get(nameStart + i);
+            final String name = new String(chars);
+
+            final int expressionStart = position + 1;
+            final ByteBuffer expression = this.content.duplicate();
+            //Buffer casts keep the Java 8 signatures when compiled with a newer JDK
+            ((Buffer) expression).limit(lineEnd);
+            ((Buffer) expression).position(expressionStart);
+            try {
+                final CompiledExpression compiled = compiler.compile(expression);
+                this.names.add(name);
+                this.formulas.add(compiled);
+                this.lines.add(this.lineCount);
+            } catch (ExpressionParseException e) {
+                //Only blanks, a name and '=' precede the expression, so its byte offset is also a character count,
+                //the unit of the parser's positions
+                error(lineStart, expressionStart + e.getPosition(), name, e.getMessage());
+            } catch (RuntimeException e) {
+                int column = expressionStart;
+                while (column < lineEnd && isBlank(this.content.get(column))) ++column;
+                error(lineStart, column, name, e.getMessage());
+            }
+        }
+
+        private void error(final int lineStart, final int position, final String name, final String message) {
+            this.errors.add(new FormulaError(this.lineCount, position - lineStart + 1, name, message));
+        }
+    }
+
+    private static final class CompileChunks extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final List<Chunk> chunks;
+
+        CompileChunks(final List<Chunk> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.chunks.size() == 1) {
+                this.chunks.get(0).compile();
+                return;
+            }
+            if (this.chunks.isEmpty()) return;
+            final int middle = this.chunks.size() >>> 1;
+            invokeAll(new CompileChunks(this.chunks.subList(0, middle)),
+                    new CompileChunks(this.chunks.subList(middle, this.chunks.size())));
+        }
+    }
+}
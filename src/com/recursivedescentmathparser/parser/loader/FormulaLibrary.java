@@ -0,0 +1,71 @@
+package com.recursivedescentmathparser.parser.loader;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable result of {@link FormulaFileLoader#load}: the formulas that compiled, by name and in file order,
+ * plus an error for every line that did not.
+ * {@link #getFormulas()} can be handed to {@link com.recursivedescentmathparser.parser.optimizer.FormulaSet#compile}
+ * to evaluate the whole library over one shared frame.
+ */
+public final class FormulaLibrary {
+    private final Map<String, CompiledExpression> formulas;
+    private final List<FormulaError> errors;
+    private final int lineCount;
+
+    FormulaLibrary(final Map<String, CompiledExpression> formulas, final List<FormulaError> errors,
+                   final int lineCount) {
+        this.formulas = Collections.unmodifiableMap(formulas);
+        this.errors = Collections.unmodifiableList(errors);
+        this.lineCount = lineCount;
+    }
+
+    /**
+     * @return the compiled formula or null if no line defined {@code name} successfully
+     */
+    public CompiledExpression get(final String name) {
+        return this.formulas.get(name);
+    }
+
+    public boolean contains(final String name) {
+        return this.formulas.containsKey(name);
+    }
+
+    public Set<String> getNames() {
+        return this.formulas.keySet();
+    }
+
+    public Map<String, CompiledExpression> getFormulas() {
+        return this.formulas;
+    }
+
+    public int size() {
+        return this.formulas.size();
+    }
+
+    public List<FormulaError> getErrors() {
+        return this.errors;
+    }
+
+    public boolean hasErrors() {
+        return !this.errors.isEmpty();
+    }
+
+    /**
+     * @return number of lines read, including blank lines, comments and failed lines
+     */
+    public int getLineCount() {
+        return this.lineCount;
+    }
+
+    @Override
+    public String toString() {
+        return "FormulaLibrary{formulas=" + this.formulas.size() + ", errors=" + this.errors.size()
+                + ", lines=" + this.lineCount + "}";
+    }
+}
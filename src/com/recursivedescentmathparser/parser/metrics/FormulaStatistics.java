@@ -0,0 +1,37 @@
+package com.recursivedescentmathparser.parser.metrics;
+
+/**
+ * Evaluations of one formula instrumented with {@link ParserMetrics#instrument}. With a sample interval above 1
+ * the latency histogram holds only the timed evaluations, while {@link #getEvaluationCount()} counts all of them.
+ */
+public final class FormulaStatistics {
+    private final String name;
+    private final long evaluationCount;
+    private final HistogramSnapshot latency;
+
+    FormulaStatistics(final String name, final long evaluationCount, final HistogramSnapshot latency) {
+        this.name = name;
+        this.evaluationCount = evaluationCount;
+        this.latency = latency;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public long getEvaluationCount() {
+        return this.evaluationCount;
+    }
+
+    /**
+     * @return evaluation latency in nanoseconds
+     */
+    public HistogramSnapshot getLatency() {
+        return this.latency;
+    }
+
+    @Override
+    public String toString() {
+        return this.name + "{evaluations=" + this.evaluationCount + ", latency=" + this.latency + "}";
+    }
+}
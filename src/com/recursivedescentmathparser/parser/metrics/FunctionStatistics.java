@@ -0,0 +1,31 @@
+package com.recursivedescentmathparser.parser.metrics;
+
+/**
+ * Calls of one registry function made by instrumented formulas.
+ */
+public final class FunctionStatistics {
+    private final String name;
+    private final long callCount;
+
+    FunctionStatistics(final String name, final long callCount) {
+        this.name = name;
+        this.callCount = callCount;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return calls counted from the number of call sites in each formula times its evaluations; a call in the
+     * untaken branch of an {@code if} is counted as well, so this is an upper bound
+     */
+    public long getCallCount() {
+        return this.callCount;
+    }
+
+    @Override
+    public String toString() {
+        return this.name + "=" + this.callCount;
+    }
+}
@@ -0,0 +1,86 @@
+package com.recursivedescentmathparser.parser.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative longs with log-linear buckets in the manner of HdrHistogram: values below
+ * 32 have a bucket each, above that every power of two is split into 16 buckets, so a recorded value is known to
+ * within 1/16 of itself. The whole {@code long} range fits in 960 counters and recording is one array increment.
+ */
+public final class Histogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder(), total = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE), max = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param value negative values are recorded as 0
+     */
+    public void record(final long value) {
+        final long recorded = Math.max(0, value);
+        this.counts.incrementAndGet(bucketOf(recorded));
+        this.count.increment();
+        this.total.add(recorded);
+        long current;
+        while (recorded < (current = this.min.get()) && !this.min.compareAndSet(current, recorded)) {
+            // retry
+        }
+        while (recorded > (current = this.max.get()) && !this.max.compareAndSet(current, recorded)) {
+            // retry
+        }
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * Copies the counters. Values recorded while the copy is taken may be only partly reflected.
+     */
+    public HistogramSnapshot snapshot() {
+        final long[] copy = new long[BUCKET_COUNT];
+        long copied = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; ++bucket) {
+            copy[bucket] = this.counts.get(bucket);
+            copied += copy[bucket];
+        }
+        return copied == 0
+                ? HistogramSnapshot.EMPTY
+                : new HistogramSnapshot(copy, copied, this.total.sum(), this.min.get(), this.max.get());
+    }
+
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKET_COUNT; ++bucket) {
+            this.counts.set(bucket, 0);
+        }
+        this.count.reset();
+        this.total.reset();
+        this.min.set(Long.MAX_VALUE);
+        this.max.set(Long.MIN_VALUE);
+    }
+
+    static int bucketOf(final long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * @return the largest value that falls into {@code bucket}
+     */
+    static long highestValueIn(final int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
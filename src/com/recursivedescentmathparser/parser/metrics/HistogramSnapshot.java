@@ -0,0 +1,81 @@
+package com.recursivedescentmathparser.parser.metrics;
+
+/**
+ * Immutable copy of a {@link Histogram}. Percentiles are reported as the highest value of the bucket they fall in,
+ * so they over-estimate by at most 1/16. The getters double as the items of the JMX composite type.
+ */
+public final class HistogramSnapshot {
+    static final HistogramSnapshot EMPTY = new HistogramSnapshot(new long[0], 0, 0, 0, 0);
+
+    private final long[] counts;
+    private final long count;
+    private final long total;
+    private final long min;
+    private final long max;
+
+    HistogramSnapshot(final long[] counts, final long count, final long total, final long min, final long max) {
+        this.counts = counts;
+        this.count = count;
+        this.total = total;
+        this.min = min;
+        this.max = max;
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    public long getMin() {
+        return this.min;
+    }
+
+    public long getMax() {
+        return this.max;
+    }
+
+    public double getMean() {
+        return this.count == 0 ? 0 : (double) this.total / this.count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return a value that at least {@code percentile}% of the recorded values do not exceed, 0 if nothing
+     * was recorded
+     */
+    public long valueAtPercentile(final double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile " + percentile + " is not between 0 and 100");
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * this.count));
+        long seen = 0;
+        for (int bucket = 0; bucket < this.counts.length; ++bucket) {
+            seen += this.counts[bucket];
+            if (seen >= rank) {
+                return Math.min(this.max, Math.max(this.min, Histogram.highestValueIn(bucket)));
+            }
+        }
+        return this.max;
+    }
+
+    public long getMedian() {
+        return valueAtPercentile(50);
+    }
+
+    public long getP90() {
+        return valueAtPercentile(90);
+    }
+
+    public long getP99() {
+        return valueAtPercentile(99);
+    }
+
+    public long getP999() {
+        return valueAtPercentile(99.9);
+    }
+
+    @Override
+    public String toString() {
+        return "{count=" + this.count + ", min=" + this.min + ", median=" + getMedian() + ", p99=" + getP99()
+                + ", max=" + this.max + "}";
+    }
+}
@@ -0,0 +1,61 @@
+package com.recursivedescentmathparser.parser.metrics;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Point-in-time copy of a {@link ParserMetrics}, taken with {@link ParserMetrics#snapshot()}.
+ */
+public final class MetricsSnapshot {
+    private final HistogramSnapshot parseTime;
+    private final HistogramSnapshot parseNodeCount;
+    private final Map<String, FormulaStatistics> formulas;
+    private final List<FunctionStatistics> functions;
+
+    MetricsSnapshot(final HistogramSnapshot parseTime, final HistogramSnapshot parseNodeCount,
+                    final Map<String, FormulaStatistics> formulas, final List<FunctionStatistics> functions) {
+        this.parseTime = parseTime;
+        this.parseNodeCount = parseNodeCount;
+        this.formulas = Collections.unmodifiableMap(formulas);
+        this.functions = Collections.unmodifiableList(functions);
+    }
+
+    /**
+     * @return duration of the {@code MathParser.parse} calls in nanoseconds, cache hits included
+     */
+    public HistogramSnapshot getParseTime() {
+        return this.parseTime;
+    }
+
+    /**
+     * @return size of the trees returned by the {@code MathParser.parse} calls
+     */
+    public HistogramSnapshot getParseNodeCount() {
+        return this.parseNodeCount;
+    }
+
+    /**
+     * @return statistics of every instrumented formula, by name in alphabetical order
+     */
+    public Map<String, FormulaStatistics> getFormulas() {
+        return this.formulas;
+    }
+
+    public FormulaStatistics getFormula(final String name) {
+        return this.formulas.get(name);
+    }
+
+    /**
+     * @return the {@code limit} most called functions, most called first
+     */
+    public List<FunctionStatistics> getHottestFunctions(final int limit) {
+        return this.functions.subList(0, Math.min(limit, this.functions.size()));
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{parseTime=" + this.parseTime + ", formulas=" + this.formulas.values()
+                + ", hottestFunctions=" + getHottestFunctions(5) + "}";
+    }
+}
@@ -0,0 +1,281 @@
+package com.recursivedescentmathparser.parser.metrics;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.Evaluator;
+import com.recursivedescentmathparser.parser.Expression;
+import com.recursivedescentmathparser.parser.ast.BiFunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.FunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.Node;
+import com.recursivedescentmathparser.parser.ast.Nodes;
+import com.recursivedescentmathparser.parser.ast.VariadicFunctionCallNode;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in instrumentation of parsing and evaluation. Parse time and tree size are recorded for every
+ * {@code MathParser.parse} call once the metrics are handed to {@code MathParser.setMetrics}, evaluation count and
+ * latency for every formula wrapped with {@link #instrument}. Recording is lock-free; a parser without metrics pays
+ * a null check per parse and formulas that are not instrumented pay nothing.
+ * Function calls are not intercepted, since wrapping the registry's functions would hide the built-ins from the
+ * optimizer and the compilers: the call sites of a formula are counted once and multiplied by its evaluation count
+ * when a snapshot is taken.
+ */
+public class ParserMetrics implements ParserMetricsMXBean {
+    private static final String DOMAIN = "com.recursivedescentmathparser";
+
+    private final Histogram parseTime = new Histogram(), parseNodeCount = new Histogram();
+    private final ConcurrentHashMap<String, Formula> formulas = new ConcurrentHashMap<>();
+    private volatile boolean enabled = true;
+    private volatile int sampleMask;
+    private volatile int hottestFunctionLimit = 10;
+    private ObjectName objectName;
+
+    /**
+     * Called by {@code MathParser} after each parse.
+     * @param nanos duration of the call, including the cache lookup if the parser has a cache
+     */
+    public void recordParse(final long nanos, final Node root) {
+        if (this.enabled) {
+            this.parseTime.record(nanos);
+            this.parseNodeCount.record(countNodes(root, null));
+        }
+    }
+
+    /**
+     * @return {@code expression} with the same back end, recording its evaluations under {@code name}.
+     * Batch evaluation is not recorded. Instrumenting another expression under the same name adds to the same
+     * statistics and replaces the call sites counted for it.
+     */
+    public CompiledExpression instrument(final String name, final CompiledExpression expression) {
+        return expression.withEvaluator(new MeteredEvaluator(this, formula(name, expression.getRoot()),
+                expression.getEvaluator()));
+    }
+
+    /**
+     * Instruments every formula of a library or formula set under its own name.
+     */
+    public Map<String, CompiledExpression> instrument(final Map<String, CompiledExpression> expressions) {
+        final Map<String, CompiledExpression> instrumented = new LinkedHashMap<>();
+        expressions.forEach((name, expression) -> instrumented.put(name, instrument(name, expression)));
+        return instrumented;
+    }
+
+    /**
+     * Records the evaluations of an expression returned by {@code MathParser.parse}. Its tree is not visible
+     * through {@link Expression}, so its function calls are not counted.
+     */
+    public Expression instrument(final String name, final Expression expression) {
+        final Evaluator metered = new MeteredEvaluator(this, formula(name, null), variables -> expression.evaluate());
+        return () -> metered.evaluate(null);
+    }
+
+    private Formula formula(final String name, final Node root) {
+        final Formula formula = this.formulas.computeIfAbsent(name, key -> new Formula());
+        if (root != null) {
+            final Map<String, Integer> callSites = new HashMap<>();
+            countNodes(root, callSites);
+            formula.callSites = callSites;
+        }
+        return formula;
+    }
+
+    /**
+     * @param callSites if not null, receives the number of calls of each function in the tree
+     */
+    private static int countNodes(final Node root, final Map<String, Integer> callSites) {
+        final Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        int count = 0;
+        while (!pending.isEmpty()) {
+            final Node node = pending.pop();
+            ++count;
+            if (callSites != null) {
+                final String function = node instanceof FunctionCallNode ? ((FunctionCallNode) node).getName()
+                        : node instanceof BiFunctionCallNode ? ((BiFunctionCallNode) node).getName()
+                        : node instanceof VariadicFunctionCallNode ? ((VariadicFunctionCallNode) node).getName()
+                        : null;
+                if (function != null) {
+                    callSites.merge(function, 1, Integer::sum);
+                }
+            }
+            for (Node child : Nodes.children(node)) {
+                pending.push(child);
+            }
+        }
+        return count;
+    }
+
+    public MetricsSnapshot snapshot() {
+        final Map<String, FormulaStatistics> formulaStatistics = new TreeMap<>();
+        final Map<String, Long> calls = new HashMap<>();
+        this.formulas.forEach((name, formula) -> {
+            final long evaluations = formula.evaluations.sum();
+            formulaStatistics.put(name, new FormulaStatistics(name, evaluations, formula.latency.snapshot()));
+            formula.callSites.forEach((function, sites) -> calls.merge(function, sites * evaluations, Long::sum));
+        });
+        final List<FunctionStatistics> functions = new ArrayList<>();
+        calls.forEach((function, count) -> functions.add(new FunctionStatistics(function, count)));
+        functions.sort((first, second) -> first.getCallCount() != second.getCallCount()
+                ? Long.compare(second.getCallCount(), first.getCallCount())
+                : first.getName().compareTo(second.getName()));
+        return new MetricsSnapshot(this.parseTime.snapshot(), this.parseNodeCount.snapshot(), formulaStatistics,
+                functions);
+    }
+
+    /**
+     * Clears all statistics. Instrumented formulas stay instrumented.
+     */
+    @Override
+    public void reset() {
+        this.parseTime.reset();
+        this.parseNodeCount.reset();
+        this.formulas.values().forEach(formula -> {
+            formula.evaluations.reset();
+            formula.latency.reset();
+        });
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server as
+     * {@code com.recursivedescentmathparser:type=ParserMetrics,name=<name>}.
+     */
+    public synchronized ObjectName register(final String name) {
+        try {
+            final ObjectName objectName = new ObjectName(DOMAIN + ":type=ParserMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+            return objectName;
+        } catch (JMException ex) {
+            throw new IllegalStateException("Cannot register metrics " + name, ex);
+        }
+    }
+
+    public synchronized void unregister() {
+        if (this.objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+            this.objectName = null;
+        } catch (JMException ex) {
+            throw new IllegalStateException("Cannot unregister " + this.objectName, ex);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Disabled metrics record nothing; instrumented formulas only check the flag.
+     */
+    @Override
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public int getSampleInterval() {
+        return this.sampleMask + 1;
+    }
+
+    /**
+     * Times one in {@code sampleInterval} evaluations, chosen at random, to keep {@link System#nanoTime()} off
+     * formulas that evaluate in a few nanoseconds. Every evaluation is still counted.
+     * @param sampleInterval a power of two, 1 times every evaluation
+     */
+    @Override
+    public void setSampleInterval(final int sampleInterval) {
+        if (sampleInterval <= 0 || Integer.bitCount(sampleInterval) != 1) {
+            throw new IllegalArgumentException("Sample interval " + sampleInterval + " is not a power of two");
+        }
+        this.sampleMask = sampleInterval - 1;
+    }
+
+    @Override
+    public int getHottestFunctionLimit() {
+        return this.hottestFunctionLimit;
+    }
+
+    @Override
+    public void setHottestFunctionLimit(final int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative");
+        }
+        this.hottestFunctionLimit = limit;
+    }
+
+    @Override
+    public HistogramSnapshot getParseTime() {
+        return this.parseTime.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getParseNodeCount() {
+        return this.parseNodeCount.snapshot();
+    }
+
+    @Override
+    public List<FormulaStatistics> getFormulas() {
+        return new ArrayList<>(snapshot().getFormulas().values());
+    }
+
+    @Override
+    public List<FunctionStatistics> getHottestFunctions() {
+        return snapshot().getHottestFunctions(this.hottestFunctionLimit);
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    private static final class Formula {
+        private final LongAdder evaluations = new LongAdder();
+        private final Histogram latency = new Histogram();
+        private volatile Map<String, Integer> callSites = Collections.emptyMap();
+    }
+
+    private static final class MeteredEvaluator implements Evaluator {
+        private final ParserMetrics metrics;
+        private final Formula formula;
+        private final Evaluator evaluator;
+
+        MeteredEvaluator(final ParserMetrics metrics, final Formula formula, final Evaluator evaluator) {
+            this.metrics = metrics;
+            this.formula = formula;
+            this.evaluator = evaluator;
+        }
+
+        @Override
+        public double evaluate(final double[] variables) {
+            if (!this.metrics.enabled) {
+                return this.evaluator.evaluate(variables);
+            }
+            this.formula.evaluations.increment();
+            final int sampleMask = this.metrics.sampleMask;
+            if (sampleMask != 0 && (ThreadLocalRandom.current().nextInt() & sampleMask) != 0) {
+                return this.evaluator.evaluate(variables);
+            }
+            final long start = System.nanoTime();
+            final double result = this.evaluator.evaluate(variables);
+            this.formula.latency.record(System.nanoTime() - start);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.recursivedescentmathparser.parser.metrics;
+
+import java.util.List;
+
+/**
+ * Management interface of {@link ParserMetrics}, exposed through JMX by {@link ParserMetrics#register(String)}.
+ */
+public interface ParserMetricsMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    int getSampleInterval();
+
+    void setSampleInterval(int sampleInterval);
+
+    int getHottestFunctionLimit();
+
+    void setHottestFunctionLimit(int limit);
+
+    HistogramSnapshot getParseTime();
+
+    HistogramSnapshot getParseNodeCount();
+
+    List<FormulaStatistics> getFormulas();
+
+    List<FunctionStatistics> getHottestFunctions();
+
+    void reset();
+}
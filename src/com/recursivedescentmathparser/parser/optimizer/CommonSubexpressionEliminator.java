@@ -0,0 +1,259 @@
+package com.recursivedescentmathparser.parser.optimizer;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.FunctionRegistry;
+import com.recursivedescentmathparser.parser.ast.BiFunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.BinaryOperatorNode;
+import com.recursivedescentmathparser.parser.ast.ConditionalNode;
+import com.recursivedescentmathparser.parser.ast.ConstantNode;
+import com.recursivedescentmathparser.parser.ast.FunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.LetNode;
+import com.recursivedescentmathparser.parser.ast.NegateNode;
+import com.recursivedescentmathparser.parser.ast.Node;
+import com.recursivedescentmathparser.parser.ast.Nodes;
+import com.recursivedescentmathparser.parser.ast.VariableNode;
+import com.recursivedescentmathparser.parser.ast.VariadicFunctionCallNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hash-conses expression trees so that structurally equal subtrees become one node, then computes every subtree
+ * that is used more than once into a temporary slot before the expression that needs it.
+ * Only subtrees made entirely of arithmetic and pure functions are shared, so impure functions
+ * are still called as many times as they appear.
+ */
+public class CommonSubexpressionEliminator {
+    private final FunctionRegistry registry;
+
+    public CommonSubexpressionEliminator(final FunctionRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * @return an equivalent expression whose repeated subtrees are evaluated once, held in temporaries
+     * that follow the variables in the frame
+     */
+    public CompiledExpression eliminate(final CompiledExpression expression) {
+        final Schedule schedule = schedule(new Node[]{expression.getRoot()}, expression.getFrameSize());
+        Node root = schedule.roots[0];
+        for (int i = schedule.temporaries.size() - 1; i >= 0; --i) {
+            root = new LetNode(expression.getFrameSize() + i, schedule.temporaries.get(i), root);
+        }
+        return expression.withRoot(root, expression.getFrameSize() + schedule.temporaries.size());
+    }
+
+    /**
+     * Shares the subtrees common to all the given roots.
+     * @param firstTemporarySlot slot of the first temporary; temporary {@code i} goes to slot
+     * {@code firstTemporarySlot + i} and may only read temporaries before it
+     */
+    Schedule schedule(final Node[] roots, final int firstTemporarySlot) {
+        final Map<NodeKey, Node> canonical = new HashMap<>();
+        final Node[] interned = new Node[roots.length];
+        for (int i = 0; i < roots.length; ++i) {
+            interned[i] = intern(roots[i], canonical);
+        }
+
+        final Map<Node, Integer> references = new IdentityHashMap<>();
+        for (Node root : interned) {
+            countReferences(root, references);
+        }
+        final Map<Node, Boolean> purity = new IdentityHashMap<>();
+        final Lowering lowering = new Lowering(references, purity, firstTemporarySlot);
+        final Node[] lowered = new Node[interned.length];
+        for (int i = 0; i < interned.length; ++i) {
+            lowered[i] = lowering.lower(interned[i], false);
+        }
+        return new Schedule(lowering.temporaries, lowered);
+    }
+
+    private Node intern(final Node node, final Map<NodeKey, Node> canonical) {
+        final Node rebuilt = Nodes.mapChildren(node, child -> intern(child, canonical));
+        final NodeKey key = new NodeKey(rebuilt);
+        final Node existing = canonical.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        canonical.put(key, rebuilt);
+        return rebuilt;
+    }
+
+    /**
+     * Counts only what is always evaluated: the branches of a conditional are left uncounted, so nothing is hoisted
+     * out of them into a temporary that would be computed whichever branch is taken.
+     */
+    private static void countReferences(final Node node, final Map<Node, Integer> references) {
+        final Integer count = references.get(node);
+        references.put(node, count == null ? 1 : count + 1);
+        if (count == null && node instanceof ConditionalNode) {
+            countReferences(((ConditionalNode) node).getCondition(), references);
+        } else if (count == null) {
+            for (Node child : Nodes.children(node)) {
+                countReferences(child, references);
+            }
+        }
+    }
+
+    private boolean isPure(final Node node, final Map<Node, Boolean> purity) {
+        final Boolean known = purity.get(node);
+        if (known != null) {
+            return known;
+        }
+        boolean pure;
+        if (node instanceof BinaryOperatorNode) {
+            final BinaryOperatorNode operator = (BinaryOperatorNode) node;
+            pure = operator.getFunction() == BinaryOperatorNode.ADD
+                    || operator.getFunction() == BinaryOperatorNode.SUBTRACT
+                    || operator.getFunction() == BinaryOperatorNode.MULTIPLY
+                    || operator.getFunction() == BinaryOperatorNode.DIVIDE
+                    || this.registry.isPure(operator.getFunction());
+        } else if (node instanceof FunctionCallNode) {
+            pure = this.registry.isPure(((FunctionCallNode) node).getFunction());
+        } else if (node instanceof BiFunctionCallNode) {
+            pure = this.registry.isPure(((BiFunctionCallNode) node).getFunction());
+        } else if (node instanceof VariadicFunctionCallNode) {
+            pure = this.registry.isPure(((VariadicFunctionCallNode) node).getFunction());
+        } else {
+            pure = !(node instanceof LetNode);
+        }
+        for (Node child : Nodes.children(node)) {
+            pure &= isPure(child, purity);
+        }
+        purity.put(node, pure);
+        return pure;
+    }
+
+    /**
+     * Replaces shared subtrees by reads of temporaries, assigning the temporaries in dependency order.
+     */
+    private class Lowering {
+        private final Map<Node, Integer> references;
+        private final Map<Node, Boolean> purity;
+        private final int firstTemporarySlot;
+        private final Map<Node, Node> temporaryReads = new IdentityHashMap<>();
+        private final List<Node> temporaries = new ArrayList<>();
+
+        Lowering(final Map<Node, Integer> references, final Map<Node, Boolean> purity,
+                 final int firstTemporarySlot) {
+            this.references = references;
+            this.purity = purity;
+            this.firstTemporarySlot = firstTemporarySlot;
+        }
+
+        Node lower(final Node node, final boolean definition) {
+            if (definition || !isShared(node)) {
+                return Nodes.mapChildren(node, child -> lower(child, false));
+            }
+            Node read = this.temporaryReads.get(node);
+            if (read == null) {
+                final Node value = lower(node, true);
+                final int slot = this.firstTemporarySlot + this.temporaries.size();
+                this.temporaries.add(value);
+                read = new VariableNode("$" + slot, slot);
+                this.temporaryReads.put(node, read);
+            }
+            return read;
+        }
+
+        private boolean isShared(final Node node) {
+            return !(node instanceof ConstantNode) && !(node instanceof VariableNode)
+                    && this.references.getOrDefault(node, 0) > 1 && isPure(node, this.purity);
+        }
+    }
+
+    static class Schedule {
+        final List<Node> temporaries;
+        final Node[] roots;
+
+        Schedule(final List<Node> temporaries, final Node[] roots) {
+            this.temporaries = temporaries;
+            this.roots = roots;
+        }
+    }
+
+    /**
+     * Hash-consing key: the node's own label plus the identities of its (already canonical) children,
+     * so lookups cost O(1) regardless of subtree size.
+     */
+    private static final class NodeKey {
+        private final Node node;
+        private final Object label;
+        private final List<Node> children;
+        private final int hash;
+
+        NodeKey(final Node node) {
+            this.node = node;
+            this.label = label(node);
+            this.children = Nodes.children(node);
+            int hash = node.getClass().hashCode() * 31 + this.label.hashCode();
+            for (Node child : this.children) {
+                hash = hash * 31 + System.identityHashCode(child);
+            }
+            this.hash = hash;
+        }
+
+        private static Object label(final Node node) {
+            if (node instanceof ConstantNode) {
+                return Double.doubleToRawLongBits(((ConstantNode) node).getValue());
+            } else if (node instanceof VariableNode) {
+                return ((VariableNode) node).getSlot();
+            } else if (node instanceof BinaryOperatorNode) {
+                return new IdentityLabel(((BinaryOperatorNode) node).getFunction());
+            } else if (node instanceof FunctionCallNode) {
+                return new IdentityLabel(((FunctionCallNode) node).getFunction());
+            } else if (node instanceof BiFunctionCallNode) {
+                return new IdentityLabel(((BiFunctionCallNode) node).getFunction());
+            } else if (node instanceof VariadicFunctionCallNode) {
+                return new IdentityLabel(((VariadicFunctionCallNode) node).getFunction());
+            } else if (node instanceof LetNode) {
+                return ((LetNode) node).getSlot();
+            }
+            return node.getClass();
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof NodeKey)) {
+                return false;
+            }
+            final NodeKey key = (NodeKey) other;
+            if (key.hash != this.hash || key.node.getClass() != this.node.getClass()
+                    || !key.label.equals(this.label) || key.children.size() != this.children.size()) {
+                return false;
+            }
+            for (int i = 0; i < this.children.size(); ++i) {
+                if (key.children.get(i) != this.children.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    private static final class IdentityLabel {
+        private final Object target;
+
+        IdentityLabel(final Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof IdentityLabel && ((IdentityLabel) other).target == this.target;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this.target);
+        }
+    }
+}
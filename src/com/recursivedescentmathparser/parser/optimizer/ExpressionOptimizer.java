@@ -0,0 +1,335 @@
+package com.recursivedescentmathparser.parser.optimizer;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.FunctionRegistry;
+import com.recursivedescentmathparser.parser.VariadicFunction;
+import com.recursivedescentmathparser.parser.ast.BiFunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.BinaryOperatorNode;
+import com.recursivedescentmathparser.parser.ast.ConditionalNode;
+import com.recursivedescentmathparser.parser.ast.ConstantNode;
+import com.recursivedescentmathparser.parser.ast.FunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.LetNode;
+import com.recursivedescentmathparser.parser.ast.NegateNode;
+import com.recursivedescentmathparser.parser.ast.Node;
+import com.recursivedescentmathparser.parser.ast.NodeVisitor;
+import com.recursivedescentmathparser.parser.ast.Nodes;
+import com.recursivedescentmathparser.parser.ast.VariableNode;
+import com.recursivedescentmathparser.parser.ast.VariadicFunctionCallNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Simplifies an expression tree before it is evaluated:
+ * <ul>
+ *     <li>folds subtrees whose operands are constant and whose functions are marked pure in the registry;</li>
+ *     <li>removes identities that are exact in IEEE arithmetic: {@code x*1}, {@code x/1}, {@code x-0},
+ *     {@code x^1}, {@code --x}; {@code x+0} is left alone because it turns {@code -0.0} into {@code 0.0};</li>
+ *     <li>replaces {@code sqr} and {@code cube} of a variable with the same multiplications, and unless
+ *     {@link #withPowerReduction turned off}, {@code ^2} with {@code x*x}; {@code ^3} is left alone because
+ *     {@code x*x*x} rounds twice where {@link Math#pow} rounds once;</li>
+ *     <li>with {@link #withFlattening flattening}, turns chains of {@link #MIN_SUM_TERMS} or more additions into
+ *     one {@code sum} and nested {@code min} or {@code max} calls into one call, which gives the same result with
+ *     fewer nodes.</li>
+ * </ul>
+ * Variables can be declared constant (e.g. {@link #BUILTIN_CONSTANTS}), in which case the value they had when the
+ * expression was parsed is folded in.
+ */
+public class ExpressionOptimizer {
+    public static final Set<String> BUILTIN_CONSTANTS = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("E", "Pi")));
+    public static final int MIN_SUM_TERMS = 4;
+    private static final double[] NO_VARIABLES = new double[0];
+
+    private final FunctionRegistry registry;
+    private final Set<String> constantVariables;
+    private final boolean flattening;
+    private final boolean powerReduction;
+
+    public ExpressionOptimizer(final FunctionRegistry registry) {
+        this(registry, Collections.emptySet());
+    }
+
+    public ExpressionOptimizer(final FunctionRegistry registry, final Collection<String> constantVariables) {
+        this(registry, Collections.unmodifiableSet(new HashSet<>(constantVariables)), false, true);
+    }
+
+    private ExpressionOptimizer(final FunctionRegistry registry, final Set<String> constantVariables,
+                                final boolean flattening, final boolean powerReduction) {
+        this.registry = registry;
+        this.constantVariables = constantVariables;
+        this.flattening = flattening;
+        this.powerReduction = powerReduction;
+    }
+
+    /**
+     * @param flattening whether to merge {@code +} chains and nested {@code min} and {@code max} calls into variadic
+     * calls. That pays off for {@link com.recursivedescentmathparser.parser.codegen.BytecodeCompiler}, which inlines
+     * them, but the tree evaluates a variadic call slower than the chain, so it is off by default.
+     */
+    public ExpressionOptimizer withFlattening(final boolean flattening) {
+        return new ExpressionOptimizer(this.registry, this.constantVariables, flattening, this.powerReduction);
+    }
+
+    /**
+     * @param powerReduction whether to rewrite {@code x^2} as {@code x*x}. {@link Math#pow} only promises a result
+     * within 1 ulp; that it is exactly {@code x*x} for an exponent of 2 holds for fdlibm and HotSpot, not by
+     * specification. Turn it off where results must not change at all.
+     */
+    public ExpressionOptimizer withPowerReduction(final boolean powerReduction) {
+        return new ExpressionOptimizer(this.registry, this.constantVariables, this.flattening, powerReduction);
+    }
+
+    public CompiledExpression optimize(final CompiledExpression expression) {
+        final Node[] constants = new Node[expression.getVariableCount()];
+        for (int slot = 0; slot < constants.length; ++slot) {
+            if (this.constantVariables.contains(expression.getVariableNames().get(slot))) {
+                constants[slot] = new ConstantNode(expression.getDefaultValue(slot));
+            }
+        }
+        return expression.withRoot(expression.getRoot().accept(new Rewriter(constants)));
+    }
+
+    public Node optimize(final Node root) {
+        return root.accept(new Rewriter(new Node[0]));
+    }
+
+    private static boolean isConstant(final Node node) {
+        return node instanceof ConstantNode;
+    }
+
+    private static boolean isConstant(final Node node, final double value) {
+        return node instanceof ConstantNode
+                && Double.doubleToRawLongBits(((ConstantNode) node).getValue()) == Double.doubleToRawLongBits(value);
+    }
+
+    /**
+     * Operand that may be duplicated by strength reduction without repeating any work.
+     */
+    private static boolean isLeaf(final Node node) {
+        return node instanceof VariableNode || node instanceof ConstantNode;
+    }
+
+    private static Node fold(final Node node) {
+        return new ConstantNode(node.evaluate(NO_VARIABLES));
+    }
+
+    private static Node multiply(final Node left, final Node right) {
+        return new BinaryOperatorNode("*", BinaryOperatorNode.MULTIPLY, left, right);
+    }
+
+    /**
+     * @return the built-in variadic function {@code name} if the registry still has it under that name, else null
+     */
+    private VariadicFunctionCallNode builtinCall(final String name, final List<Node> arguments) {
+        final VariadicFunction function = FunctionRegistry.defaults().getVariadicFunction(name);
+        return function != null && this.registry.getVariadicFunction(name) == function
+                ? new VariadicFunctionCallNode(name, function, arguments.toArray(new Node[0]))
+                : null;
+    }
+
+    private static boolean isBuiltinCall(final Node node, final String name) {
+        if (node instanceof VariadicFunctionCallNode) {
+            final VariadicFunctionCallNode call = (VariadicFunctionCallNode) node;
+            return call.getFunction() == FunctionRegistry.defaults().getVariadicFunction(name);
+        }
+        if (node instanceof BiFunctionCallNode) {
+            final BiFunctionCallNode call = (BiFunctionCallNode) node;
+            return call.getFunction() == FunctionRegistry.defaults().getBiFunction(name);
+        }
+        return false;
+    }
+
+    /**
+     * Adds the arguments of {@code node} to {@code arguments}, and those of the calls of the same built-in
+     * among them, recursively.
+     */
+    private static void flatten(final Node node, final String name, final List<Node> arguments) {
+        for (Node argument : Nodes.children(node)) {
+            if (isBuiltinCall(argument, name)) {
+                flatten(argument, name, arguments);
+            } else {
+                arguments.add(argument);
+            }
+        }
+    }
+
+    /**
+     * @return {@code min} or {@code max} of the arguments of nested calls, or {@code call} if nothing is nested
+     */
+    private Node flattenCalls(final Node call, final String name) {
+        if (!this.flattening || !isBuiltinCall(call, name)) {
+            return call;
+        }
+        boolean nested = false;
+        for (Node argument : Nodes.children(call)) {
+            nested |= isBuiltinCall(argument, name);
+        }
+        if (!nested) {
+            return call;
+        }
+        final List<Node> arguments = new ArrayList<>();
+        flatten(call, name, arguments);
+        final Node flattened = builtinCall(name, arguments);
+        return flattened != null ? flattened : call;
+    }
+
+    /**
+     * {@code ((a + b) + c) + d} becomes {@code sum(a, b, c, d)}, which adds in the same order.
+     */
+    private Node flattenSum(final BinaryOperatorNode node) {
+        if (!this.flattening) {
+            return node;
+        }
+        final Node left = node.getLeft();
+        if (isBuiltinCall(left, "sum") && left instanceof VariadicFunctionCallNode) {
+            final List<Node> terms = new ArrayList<>(((VariadicFunctionCallNode) left).getArguments());
+            terms.add(node.getRight());
+            final Node sum = builtinCall("sum", terms);
+            return sum != null ? sum : node;
+        }
+        final List<Node> terms = new ArrayList<>();
+        Node term = node;
+        while (term instanceof BinaryOperatorNode
+                && ((BinaryOperatorNode) term).getFunction() == BinaryOperatorNode.ADD) {
+            terms.add(0, ((BinaryOperatorNode) term).getRight());
+            term = ((BinaryOperatorNode) term).getLeft();
+        }
+        terms.add(0, term);
+        if (terms.size() < MIN_SUM_TERMS) {
+            return node;
+        }
+        final Node sum = builtinCall("sum", terms);
+        return sum != null ? sum : node;
+    }
+
+    private class Rewriter implements NodeVisitor<Node> {
+        private final Node[] constants;
+
+        Rewriter(final Node[] constants) {
+            this.constants = constants;
+        }
+
+        @Override
+        public Node visitConstant(final ConstantNode node) {
+            return node;
+        }
+
+        @Override
+        public Node visitVariable(final VariableNode node) {
+            final Node constant = node.getSlot() < this.constants.length ? this.constants[node.getSlot()] : null;
+            return constant != null ? constant : node;
+        }
+
+        @Override
+        public Node visitNegate(final NegateNode node) {
+            final Node operand = node.getOperand().accept(this);
+            if (operand instanceof NegateNode) {
+                return ((NegateNode) operand).getOperand();
+            }
+            final Node result = operand == node.getOperand() ? node : new NegateNode(operand);
+            return isConstant(operand) ? fold(result) : result;
+        }
+
+        @Override
+        public Node visitBinaryOperator(final BinaryOperatorNode node) {
+            final Node left = node.getLeft().accept(this), right = node.getRight().accept(this);
+            final Node result = left == node.getLeft() && right == node.getRight()
+                    ? node
+                    : new BinaryOperatorNode(node.getOperator(), node.getFunction(), left, right);
+            final boolean arithmetic = isArithmetic(node);
+            if (isConstant(left) && isConstant(right) && (arithmetic || registry.isPure(node.getFunction()))) {
+                return fold(result);
+            }
+            if (node.getFunction() == BinaryOperatorNode.MULTIPLY) {
+                if (isConstant(right, 1.0)) return left;
+                if (isConstant(left, 1.0)) return right;
+                if (isConstant(right, -1.0)) return new NegateNode(left);
+                if (isConstant(left, -1.0)) return new NegateNode(right);
+            } else if (node.getFunction() == BinaryOperatorNode.DIVIDE) {
+                if (isConstant(right, 1.0)) return left;
+                if (isConstant(right, -1.0)) return new NegateNode(left);
+            } else if (node.getFunction() == BinaryOperatorNode.SUBTRACT) {
+                if (isConstant(right, 0.0)) return left;
+            } else if (node.getFunction() == BinaryOperatorNode.ADD) {
+                if (isConstant(right, -0.0)) return left;
+                return result instanceof BinaryOperatorNode ? flattenSum((BinaryOperatorNode) result) : result;
+            } else if (node.getFunction() == FunctionRegistry.defaults().getBinaryOperator("^")) {
+                if (isConstant(right, 1.0)) return left;
+                if (powerReduction && isConstant(right, 2.0) && isLeaf(left)) return multiply(left, left);
+            }
+            return result;
+        }
+
+        @Override
+        public Node visitFunctionCall(final FunctionCallNode node) {
+            final Node argument = node.getArgument().accept(this);
+            final Node result = argument == node.getArgument()
+                    ? node
+                    : new FunctionCallNode(node.getName(), node.getFunction(), argument);
+            if (isConstant(argument) && registry.isPure(node.getFunction())) {
+                return fold(result);
+            }
+            if (isLeaf(argument)) {
+                if (node.getFunction() == FunctionRegistry.defaults().getFunction("sqr")) {
+                    return multiply(argument, argument);
+                }
+                if (node.getFunction() == FunctionRegistry.defaults().getFunction("cube")) {
+                    return multiply(multiply(argument, argument), argument);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public Node visitBiFunctionCall(final BiFunctionCallNode node) {
+            final Node first = node.getFirst().accept(this), second = node.getSecond().accept(this);
+            final Node result = first == node.getFirst() && second == node.getSecond()
+                    ? node
+                    : new BiFunctionCallNode(node.getName(), node.getFunction(), first, second);
+            if (isConstant(first) && isConstant(second) && registry.isPure(node.getFunction())) {
+                return fold(result);
+            }
+            return flattenCalls(flattenCalls(result, "min"), "max");
+        }
+
+        @Override
+        public Node visitVariadicFunctionCall(final VariadicFunctionCallNode node) {
+            final Node result = Nodes.mapChildren(node, child -> child.accept(this));
+            boolean constant = registry.isPure(node.getFunction());
+            for (Node argument : Nodes.children(result)) {
+                constant &= isConstant(argument);
+            }
+            if (constant) {
+                return fold(result);
+            }
+            return flattenCalls(flattenCalls(result, "min"), "max");
+        }
+
+        @Override
+        public Node visitConditional(final ConditionalNode node) {
+            final Node condition = node.getCondition().accept(this);
+            if (isConstant(condition)) {
+                final double value = ((ConstantNode) condition).getValue();
+                return (value != 0 ? node.getWhenTrue() : node.getWhenFalse()).accept(this);
+            }
+            return new ConditionalNode(condition, node.getWhenTrue().accept(this), node.getWhenFalse().accept(this));
+        }
+
+        @Override
+        public Node visitLet(final LetNode node) {
+            return Nodes.mapChildren(node, child -> child.accept(this));
+        }
+
+        private boolean isArithmetic(final BinaryOperatorNode node) {
+            return node.getFunction() == BinaryOperatorNode.ADD || node.getFunction() == BinaryOperatorNode.SUBTRACT
+                    || node.getFunction() == BinaryOperatorNode.MULTIPLY
+                    || node.getFunction() == BinaryOperatorNode.DIVIDE;
+        }
+    }
+}
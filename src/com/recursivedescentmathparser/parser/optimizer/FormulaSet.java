@@ -0,0 +1,148 @@
+package com.recursivedescentmathparser.parser.optimizer;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.FunctionRegistry;
+import com.recursivedescentmathparser.parser.ast.Node;
+import com.recursivedescentmathparser.parser.ast.Nodes;
+import com.recursivedescentmathparser.parser.ast.VariableNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Named formulas compiled together: variables with the same name share a slot, and subexpressions the formulas
+ * have in common are computed once per evaluation.
+ * A frame holds the variables followed by the shared temporaries; one frame per thread.
+ */
+public class FormulaSet {
+    private final String[] formulaNames;
+    private final String[] variableNames;
+    private final double[] defaultValues;
+    private final Node[] temporaries;
+    private final Node[] roots;
+
+    private FormulaSet(final String[] formulaNames, final String[] variableNames, final double[] defaultValues,
+                       final Node[] temporaries, final Node[] roots) {
+        this.formulaNames = formulaNames;
+        this.variableNames = variableNames;
+        this.defaultValues = defaultValues;
+        this.temporaries = temporaries;
+        this.roots = roots;
+    }
+
+    /**
+     * @param formulas expressions by name, in the order their results are written by {@link #evaluate(double[],
+     * double[])}; they must not already contain temporaries
+     */
+    public static FormulaSet compile(final FunctionRegistry registry, final Map<String, CompiledExpression> formulas) {
+        final Map<String, Integer> slots = new LinkedHashMap<>();
+        final List<Double> defaults = new ArrayList<>();
+        final Node[] roots = new Node[formulas.size()];
+        int index = 0;
+        for (CompiledExpression expression : formulas.values()) {
+            if (expression.getFrameSize() != expression.getVariableCount()) {
+                throw new IllegalArgumentException("Formulas must be compiled without temporaries");
+            }
+            final int[] remap = new int[expression.getVariableCount()];
+            for (int slot = 0; slot < remap.length; ++slot) {
+                final String name = expression.getVariableNames().get(slot);
+                Integer shared = slots.get(name);
+                if (shared == null) {
+                    shared = slots.size();
+                    slots.put(name, shared);
+                    defaults.add(expression.getDefaultValue(slot));
+                }
+                remap[slot] = shared;
+            }
+            roots[index++] = remapVariables(expression.getRoot(), remap);
+        }
+        final CommonSubexpressionEliminator.Schedule schedule =
+                new CommonSubexpressionEliminator(registry).schedule(roots, slots.size());
+        final double[] defaultValues = new double[defaults.size()];
+        for (int slot = 0; slot < defaultValues.length; ++slot) {
+            defaultValues[slot] = defaults.get(slot);
+        }
+        return new FormulaSet(formulas.keySet().toArray(new String[0]), slots.keySet().toArray(new String[0]),
+                defaultValues, schedule.temporaries.toArray(new Node[0]), schedule.roots);
+    }
+
+    private static Node remapVariables(final Node node, final int[] remap) {
+        if (node instanceof VariableNode) {
+            final VariableNode variable = (VariableNode) node;
+            return new VariableNode(variable.getName(), remap[variable.getSlot()]);
+        }
+        return Nodes.mapChildren(node, child -> remapVariables(child, remap));
+    }
+
+    public List<String> getFormulaNames() {
+        return Collections.unmodifiableList(Arrays.asList(this.formulaNames));
+    }
+
+    public List<String> getVariableNames() {
+        return Collections.unmodifiableList(Arrays.asList(this.variableNames));
+    }
+
+    /**
+     * @return number of subexpressions shared between (or within) the formulas
+     */
+    public int getTemporaryCount() {
+        return this.temporaries.length;
+    }
+
+    public int getFrameSize() {
+        return this.variableNames.length + this.temporaries.length;
+    }
+
+    public int indexOf(final String varName) {
+        for (int slot = 0; slot < this.variableNames.length; ++slot) {
+            if (this.variableNames[slot].equals(varName)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    public int formulaIndexOf(final String formulaName) {
+        for (int i = 0; i < this.formulaNames.length; ++i) {
+            if (this.formulaNames[i].equals(formulaName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return a frame of {@link #getFrameSize()} values holding the variables' values at parse time
+     */
+    public double[] newFrame() {
+        return Arrays.copyOf(this.defaultValues, getFrameSize());
+    }
+
+    /**
+     * Evaluates every formula for the variable values in {@code frame}.
+     * @param frame variables by slot, followed by room for the temporaries
+     * @param results receives the value of formula {@code i} at index {@code i}
+     */
+    public void evaluate(final double[] frame, final double[] results) {
+        if (frame.length < getFrameSize()) {
+            throw new IllegalArgumentException("Frame must hold " + getFrameSize() + " values");
+        }
+        final int firstTemporary = this.variableNames.length;
+        for (int i = 0; i < this.temporaries.length; ++i) {
+            frame[firstTemporary + i] = this.temporaries[i].evaluate(frame);
+        }
+        for (int i = 0; i < this.roots.length; ++i) {
+            results[i] = this.roots[i].evaluate(frame);
+        }
+    }
+
+    public double[] evaluate(final double[] frame) {
+        final double[] results = new double[this.roots.length];
+        evaluate(frame, results);
+        return results;
+    }
+}
@@ -0,0 +1,350 @@
+package com.recursivedescentmathparser.parser.optimizer;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.FunctionRegistry;
+import com.recursivedescentmathparser.parser.ast.BiFunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.BinaryOperatorNode;
+import com.recursivedescentmathparser.parser.ast.ConditionalNode;
+import com.recursivedescentmathparser.parser.ast.ConstantNode;
+import com.recursivedescentmathparser.parser.ast.FunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.LetNode;
+import com.recursivedescentmathparser.parser.ast.Node;
+import com.recursivedescentmathparser.parser.ast.Nodes;
+import com.recursivedescentmathparser.parser.ast.VariableNode;
+import com.recursivedescentmathparser.parser.ast.VariadicFunctionCallNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Named formulas that are kept up to date as their variables change, for the pattern of changing one input and
+ * reading the results again.
+ * Every operator and function call is a cell that memoizes its value; structurally equal cells are shared between
+ * the formulas. Each variable knows the cells that depend on it, so {@link #set(int, double)} only marks those
+ * dirty and the next read recomputes just them, children before parents. Cells that call an impure function
+ * are recomputed on every read, as a tree would call the function on every evaluation. A conditional is one cell
+ * over its condition that keeps both branches as trees, so only the taken branch is evaluated.
+ * Not thread-safe: an instance holds the current values.
+ */
+public class LiveFormulaSet {
+    private final String[] formulaNames;
+    private final String[] variableNames;
+    private final Node[] cells;
+    private final Node[] roots;
+    private final int[][] dependents;
+    private final BitSet volatileCells;
+    private final BitSet dirty = new BitSet();
+    private final double[] frame;
+    private long recomputedCount;
+
+    private LiveFormulaSet(final String[] formulaNames, final String[] variableNames, final double[] defaultValues,
+                           final Node[] cells, final Node[] roots, final int[][] dependents,
+                           final BitSet volatileCells) {
+        this.formulaNames = formulaNames;
+        this.variableNames = variableNames;
+        this.cells = cells;
+        this.roots = roots;
+        this.dependents = dependents;
+        this.volatileCells = volatileCells;
+        this.frame = Arrays.copyOf(defaultValues, variableNames.length + cells.length);
+        this.dirty.set(0, cells.length);
+    }
+
+    /**
+     * @param formulas expressions by name, in the order their results are written by {@link #evaluate(double[])};
+     * they must not already contain temporaries. Variables with the same name are one input of the set and start
+     * with the default value of the first formula that uses them.
+     */
+    public static LiveFormulaSet compile(final FunctionRegistry registry,
+                                         final Map<String, CompiledExpression> formulas) {
+        final Map<String, Integer> slots = new LinkedHashMap<>();
+        final List<Double> defaults = new ArrayList<>();
+        final List<int[]> remaps = new ArrayList<>();
+        for (CompiledExpression expression : formulas.values()) {
+            if (expression.getFrameSize() != expression.getVariableCount()) {
+                throw new IllegalArgumentException("Formulas must be compiled without temporaries");
+            }
+            final int[] remap = new int[expression.getVariableCount()];
+            for (int slot = 0; slot < remap.length; ++slot) {
+                final String name = expression.getVariableNames().get(slot);
+                Integer shared = slots.get(name);
+                if (shared == null) {
+                    shared = slots.size();
+                    slots.put(name, shared);
+                    defaults.add(expression.getDefaultValue(slot));
+                }
+                remap[slot] = shared;
+            }
+            remaps.add(remap);
+        }
+
+        final Builder builder = new Builder(registry, slots.size());
+        final Node[] roots = new Node[formulas.size()];
+        int index = 0;
+        for (CompiledExpression expression : formulas.values()) {
+            roots[index] = builder.lower(expression.getRoot(), remaps.get(index));
+            ++index;
+        }
+        final double[] defaultValues = new double[defaults.size()];
+        for (int slot = 0; slot < defaultValues.length; ++slot) {
+            defaultValues[slot] = defaults.get(slot);
+        }
+        return new LiveFormulaSet(formulas.keySet().toArray(new String[0]), slots.keySet().toArray(new String[0]),
+                defaultValues, builder.cells.toArray(new Node[0]), roots, builder.dependents(),
+                builder.volatileCells);
+    }
+
+    public List<String> getFormulaNames() {
+        return Collections.unmodifiableList(Arrays.asList(this.formulaNames));
+    }
+
+    public List<String> getVariableNames() {
+        return Collections.unmodifiableList(Arrays.asList(this.variableNames));
+    }
+
+    public int indexOf(final String varName) {
+        for (int slot = 0; slot < this.variableNames.length; ++slot) {
+            if (this.variableNames[slot].equals(varName)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    public int formulaIndexOf(final String formulaName) {
+        for (int i = 0; i < this.formulaNames.length; ++i) {
+            if (this.formulaNames[i].equals(formulaName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return number of memoized operator and function call results
+     */
+    public int getCellCount() {
+        return this.cells.length;
+    }
+
+    /**
+     * @return number of cell evaluations since the set was compiled, to see how much a change costs
+     */
+    public long getRecomputedCount() {
+        return this.recomputedCount;
+    }
+
+    public double getVariable(final int slot) {
+        return this.frame[slot];
+    }
+
+    /**
+     * Changes a variable; the cells depending on it are recomputed when a formula is read next.
+     * Setting the value a variable already has does nothing.
+     */
+    public LiveFormulaSet set(final int slot, final double value) {
+        if (Double.doubleToRawLongBits(this.frame[slot]) != Double.doubleToRawLongBits(value)) {
+            this.frame[slot] = value;
+            for (int cell : this.dependents[slot]) {
+                this.dirty.set(cell);
+            }
+        }
+        return this;
+    }
+
+    public LiveFormulaSet set(final String varName, final double value) {
+        final int slot = indexOf(varName);
+        if (slot < 0) {
+            throw new IllegalArgumentException("Unknown variable " + varName);
+        }
+        return set(slot, value);
+    }
+
+    /**
+     * @return current value of formula {@code index}
+     */
+    public double get(final int index) {
+        refresh();
+        return this.roots[index].evaluate(this.frame);
+    }
+
+    public double get(final String formulaName) {
+        final int index = formulaIndexOf(formulaName);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown formula " + formulaName);
+        }
+        return get(index);
+    }
+
+    /**
+     * @param results receives the current value of formula {@code i} at index {@code i}
+     */
+    public void evaluate(final double[] results) {
+        refresh();
+        for (int i = 0; i < this.roots.length; ++i) {
+            results[i] = this.roots[i].evaluate(this.frame);
+        }
+    }
+
+    public double[] evaluate() {
+        final double[] results = new double[this.roots.length];
+        evaluate(results);
+        return results;
+    }
+
+    /**
+     * Recomputes the dirty cells in index order, which puts every cell after the cells it reads.
+     */
+    private void refresh() {
+        this.dirty.or(this.volatileCells);
+        final int firstCell = this.variableNames.length;
+        for (int cell = this.dirty.nextSetBit(0); cell >= 0; cell = this.dirty.nextSetBit(cell + 1)) {
+            this.frame[firstCell + cell] = this.cells[cell].evaluate(this.frame);
+            ++this.recomputedCount;
+        }
+        this.dirty.clear();
+    }
+
+    /**
+     * Turns the formulas into cells: each operator or call becomes a node whose operands are constants, variables
+     * or reads of other cells' slots.
+     */
+    private static class Builder {
+        private final FunctionRegistry registry;
+        private final int variableCount;
+        private final List<Node> cells = new ArrayList<>();
+        private final List<BitSet> cellVariables = new ArrayList<>();
+        private final BitSet volatileCells = new BitSet();
+        private final Map<Node, Integer> sharedCells = new HashMap<>();
+
+        Builder(final FunctionRegistry registry, final int variableCount) {
+            this.registry = registry;
+            this.variableCount = variableCount;
+        }
+
+        /**
+         * @return a constant, a variable or a read of the cell computing {@code node}
+         */
+        Node lower(final Node node, final int[] remap) {
+            if (node instanceof ConstantNode) {
+                return node;
+            }
+            if (node instanceof VariableNode) {
+                final VariableNode variable = (VariableNode) node;
+                return new VariableNode(variable.getName(), remap[variable.getSlot()]);
+            }
+            if (node instanceof LetNode) {
+                throw new IllegalArgumentException("Formulas must be compiled without temporaries");
+            }
+            final Node operation;
+            if (node instanceof ConditionalNode) {
+                final ConditionalNode conditional = (ConditionalNode) node;
+                operation = new ConditionalNode(lower(conditional.getCondition(), remap),
+                        rename(conditional.getWhenTrue(), remap), rename(conditional.getWhenFalse(), remap));
+            } else {
+                operation = Nodes.mapChildren(node, child -> lower(child, remap));
+            }
+            final BitSet variables = new BitSet();
+            final boolean isVolatile = collect(operation, variables);
+            Integer cell = isVolatile ? null : this.sharedCells.get(operation);
+            if (cell == null) {
+                cell = this.cells.size();
+                this.cells.add(operation);
+                this.cellVariables.add(variables);
+                if (isVolatile) {
+                    this.volatileCells.set(cell);
+                } else {
+                    this.sharedCells.put(operation, cell);
+                }
+            }
+            final int slot = this.variableCount + cell;
+            return new VariableNode("$" + slot, slot);
+        }
+
+        /**
+         * Branches of a conditional stay trees inside its cell, so that only the taken one is evaluated.
+         */
+        private Node rename(final Node node, final int[] remap) {
+            if (node instanceof VariableNode) {
+                final VariableNode variable = (VariableNode) node;
+                return new VariableNode(variable.getName(), remap[variable.getSlot()]);
+            }
+            if (node instanceof LetNode) {
+                throw new IllegalArgumentException("Formulas must be compiled without temporaries");
+            }
+            return Nodes.mapChildren(node, child -> rename(child, remap));
+        }
+
+        /**
+         * Adds the variables {@code node} reads, directly or through cells, to {@code variables}.
+         * @return whether {@code node} has to be recomputed on every read
+         */
+        private boolean collect(final Node node, final BitSet variables) {
+            if (node instanceof VariableNode) {
+                final int slot = ((VariableNode) node).getSlot();
+                if (slot < this.variableCount) {
+                    variables.set(slot);
+                    return false;
+                }
+                variables.or(this.cellVariables.get(slot - this.variableCount));
+                return this.volatileCells.get(slot - this.variableCount);
+            }
+            boolean isVolatile = !isPure(node);
+            for (Node child : Nodes.children(node)) {
+                isVolatile |= collect(child, variables);
+            }
+            return isVolatile;
+        }
+
+        private boolean isPure(final Node operation) {
+            if (operation instanceof BinaryOperatorNode) {
+                final BinaryOperatorNode operator = (BinaryOperatorNode) operation;
+                return operator.getFunction() == BinaryOperatorNode.ADD
+                        || operator.getFunction() == BinaryOperatorNode.SUBTRACT
+                        || operator.getFunction() == BinaryOperatorNode.MULTIPLY
+                        || operator.getFunction() == BinaryOperatorNode.DIVIDE
+                        || this.registry.isPure(operator.getFunction());
+            }
+            if (operation instanceof FunctionCallNode) {
+                return this.registry.isPure(((FunctionCallNode) operation).getFunction());
+            }
+            if (operation instanceof BiFunctionCallNode) {
+                return this.registry.isPure(((BiFunctionCallNode) operation).getFunction());
+            }
+            if (operation instanceof VariadicFunctionCallNode) {
+                return this.registry.isPure(((VariadicFunctionCallNode) operation).getFunction());
+            }
+            return true;
+        }
+
+        /**
+         * @return for each variable, the cells that depend on it in ascending order
+         */
+        int[][] dependents() {
+            final int[] counts = new int[this.variableCount];
+            for (BitSet variables : this.cellVariables) {
+                for (int slot = variables.nextSetBit(0); slot >= 0; slot = variables.nextSetBit(slot + 1)) {
+                    ++counts[slot];
+                }
+            }
+            final int[][] dependents = new int[this.variableCount][];
+            for (int slot = 0; slot < this.variableCount; ++slot) {
+                dependents[slot] = new int[counts[slot]];
+                counts[slot] = 0;
+            }
+            for (int cell = 0; cell < this.cellVariables.size(); ++cell) {
+                final BitSet variables = this.cellVariables.get(cell);
+                for (int slot = variables.nextSetBit(0); slot >= 0; slot = variables.nextSetBit(slot + 1)) {
+                    dependents[slot][counts[slot]++] = cell;
+                }
+            }
+            return dependents;
+        }
+    }
+}
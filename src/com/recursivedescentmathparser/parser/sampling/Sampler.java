@@ -0,0 +1,233 @@
+package com.recursivedescentmathparser.parser.sampling;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.VariableFrame;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Samples an expression as a function of one of its variables, e.g. to plot it.
+ * The variable is resolved to its slot once and every point is evaluated on one {@link VariableFrame} that is
+ * updated by index, so a sweep costs one evaluation per point and allocates nothing per point. The other
+ * variables keep the values they had when the expression was parsed unless set with {@link #withValue}.
+ * <p>
+ * Instances are immutable and thread-safe; every call works on its own frame.
+ */
+public class Sampler {
+    public static final int DEFAULT_MAX_DEPTH = 12;
+
+    private final CompiledExpression expression;
+    private final int slot;
+    private final double[] values;
+    private final int maxDepth;
+
+    /**
+     * @param variable the variable to sweep; an expression without it is sampled as a constant
+     */
+    public Sampler(final CompiledExpression expression, final String variable) {
+        this(expression, expression.indexOf(variable), defaultValues(expression), DEFAULT_MAX_DEPTH);
+    }
+
+    private Sampler(final CompiledExpression expression, final int slot, final double[] values, final int maxDepth) {
+        this.expression = expression;
+        this.slot = slot;
+        this.values = values;
+        this.maxDepth = maxDepth;
+    }
+
+    private static double[] defaultValues(final CompiledExpression expression) {
+        final double[] values = new double[expression.getVariableCount()];
+        for (int slot = 0; slot < values.length; ++slot) {
+            values[slot] = expression.getDefaultValue(slot);
+        }
+        return values;
+    }
+
+    public CompiledExpression getExpression() {
+        return this.expression;
+    }
+
+    /**
+     * @return a sampler that evaluates with another value of a variable that is not swept
+     */
+    public Sampler withValue(final String variable, final double value) {
+        final int valueSlot = this.expression.indexOf(variable);
+        if (valueSlot < 0) {
+            throw new IllegalArgumentException("Expression has no variable " + variable);
+        }
+        final double[] copy = this.values.clone();
+        copy[valueSlot] = value;
+        return new Sampler(this.expression, this.slot, copy, this.maxDepth);
+    }
+
+    /**
+     * @param maxDepth how many times {@link #sampleAdaptive} may halve a segment of the initial grid
+     */
+    public Sampler withMaxDepth(final int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("Depth must not be negative");
+        }
+        return new Sampler(this.expression, this.slot, this.values, maxDepth);
+    }
+
+    private VariableFrame newFrame() {
+        final VariableFrame frame = this.expression.newFrame();
+        for (int valueSlot = 0; valueSlot < this.values.length; ++valueSlot) {
+            frame.set(valueSlot, this.values[valueSlot]);
+        }
+        return frame;
+    }
+
+    private double evaluate(final VariableFrame frame, final double x) {
+        if (this.slot >= 0) {
+            frame.set(this.slot, x);
+        }
+        return this.expression.evaluate(frame);
+    }
+
+    /**
+     * @return position of point {@code index} of {@code count} evenly spaced points from {@code from} to
+     * {@code to}, both included
+     */
+    public static double positionOf(final double from, final double to, final long count, final long index) {
+        if (index == count - 1 && count > 1) {
+            return to;
+        }
+        return count > 1 ? from + (to - from) / (count - 1) * index : from;
+    }
+
+    /**
+     * @return values at {@code count} evenly spaced points from {@code from} to {@code to}, both included
+     */
+    public double[] sample(final double from, final double to, final int count) {
+        final double[] out = new double[count];
+        sample(from, to, out);
+        return out;
+    }
+
+    /**
+     * Evaluates at evenly spaced points from {@code from} to {@code to}, both included.
+     * @param out receives the values; its length is the number of points
+     */
+    public void sample(final double from, final double to, final double[] out) {
+        final VariableFrame frame = newFrame();
+        final double step = (to - from) / (out.length - 1);
+        for (int i = 0; i < out.length - 1; ++i) {
+            out[i] = evaluate(frame, from + step * i);
+        }
+        if (out.length > 0) {
+            out[out.length - 1] = evaluate(frame, out.length > 1 ? to : from);
+        }
+    }
+
+    /**
+     * Samples evenly spaced points lazily, for ranges with more points than fit in memory.
+     * Point {@code i} is at {@link #positionOf positionOf(from, to, count, i)}. The iterator is not thread-safe.
+     */
+    public PrimitiveIterator.OfDouble iterator(final double from, final double to, final long count) {
+        final VariableFrame frame = newFrame();
+        return new PrimitiveIterator.OfDouble() {
+            private long index;
+
+            @Override
+            public boolean hasNext() {
+                return this.index < count;
+            }
+
+            @Override
+            public double nextDouble() {
+                if (this.index >= count) {
+                    throw new NoSuchElementException();
+                }
+                return evaluate(frame, positionOf(from, to, count, this.index++));
+            }
+        };
+    }
+
+    /**
+     * Samples an even grid of {@code segments} segments and halves the segments where the curve bends, until the
+     * midpoint of every segment is within {@code tolerance} of the chord between its ends. Segments are also
+     * halved where the expression turns NaN or infinite, to locate the edges of its domain and its poles.
+     * <p>
+     * Points are written to {@code xs} and {@code ys} in increasing order of x. The grid is always written; the
+     * rest of the buffers is spent on refinement from left to right, and a segment is not halved more than
+     * {@link #withMaxDepth maxDepth} times.
+     * @param tolerance largest accepted distance, in units of the expression's value, of the curve from a chord
+     * @return the number of points written
+     */
+    public int sampleAdaptive(final double from, final double to, final int segments, final double tolerance,
+                              final double[] xs, final double[] ys) {
+        if (segments <= 0) {
+            throw new IllegalArgumentException("Expected at least one segment");
+        }
+        if (Math.min(xs.length, ys.length) <= segments) {
+            throw new IllegalArgumentException("Buffers must hold at least " + (segments + 1) + " points");
+        }
+        final Refinement refinement = new Refinement(newFrame(), tolerance, xs, ys, segments);
+        double x0 = from, y0 = evaluate(refinement.frame, from);
+        refinement.add(x0, y0);
+        for (int i = 1; i <= segments; ++i) {
+            final double x1 = positionOf(from, to, segments + 1, i), y1 = evaluate(refinement.frame, x1);
+            refinement.refine(x0, y0, x1, y1, 0);
+            refinement.add(x1, y1);
+            x0 = x1;
+            y0 = y1;
+        }
+        return refinement.count;
+    }
+
+    private class Refinement {
+        private final VariableFrame frame;
+        private final double tolerance;
+        private final double[] xs, ys;
+        private int count, spare;
+
+        /**
+         * @param reserved grid points still to be written, which refinement must leave room for
+         */
+        Refinement(final VariableFrame frame, final double tolerance, final double[] xs, final double[] ys,
+                   final int reserved) {
+            this.frame = frame;
+            this.tolerance = tolerance;
+            this.xs = xs;
+            this.ys = ys;
+            this.spare = Math.min(xs.length, ys.length) - reserved - 1;
+        }
+
+        void add(final double x, final double y) {
+            this.xs[this.count] = x;
+            this.ys[this.count] = y;
+            ++this.count;
+        }
+
+        /**
+         * Writes the points between the ends of a segment; the depth is bounded by {@code maxDepth}.
+         */
+        void refine(final double x0, final double y0, final double x1, final double y1, final int depth) {
+            if (depth >= maxDepth || this.spare == 0) {
+                return;
+            }
+            final double middle = x0 + (x1 - x0) / 2;
+            if (middle <= x0 || middle >= x1) {
+                return;
+            }
+            final double y = evaluate(this.frame, middle);
+            if (isStraight(y0, y, y1)) {
+                return;
+            }
+            --this.spare;
+            refine(x0, y0, middle, y, depth + 1);
+            add(middle, y);
+            refine(middle, y, x1, y1, depth + 1);
+        }
+
+        private boolean isStraight(final double y0, final double y, final double y1) {
+            if (Double.isFinite(y0) && Double.isFinite(y) && Double.isFinite(y1)) {
+                return Math.abs(y - (0.5 * y0 + 0.5 * y1)) <= this.tolerance;
+            }
+            // all NaN or all the same infinity
+            return Double.compare(y0, y) == 0 && Double.compare(y, y1) == 0;
+        }
+    }
+}
@@ -0,0 +1,516 @@
+package com.recursivedescentmathparser.parser.serialization;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.FunctionRegistry;
+import com.recursivedescentmathparser.parser.VariadicFunction;
+import com.recursivedescentmathparser.parser.ast.BiFunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.BinaryOperatorNode;
+import com.recursivedescentmathparser.parser.ast.ConditionalNode;
+import com.recursivedescentmathparser.parser.ast.ConstantNode;
+import com.recursivedescentmathparser.parser.ast.FunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.LetNode;
+import com.recursivedescentmathparser.parser.ast.NegateNode;
+import com.recursivedescentmathparser.parser.ast.Node;
+import com.recursivedescentmathparser.parser.ast.NodeVisitor;
+import com.recursivedescentmathparser.parser.ast.VariableNode;
+import com.recursivedescentmathparser.parser.ast.VariadicFunctionCallNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Compact binary form of compiled (and usually optimized) expressions, so formula libraries can be compiled once
+ * and loaded without parsing.
+ * <pre>
+ * int    magic "RDMP"
+ * short  format version
+ * long   {@link FunctionRegistry#getFingerprint()} of the registry the expressions were compiled against
+ * varint string count, then every string as varint length + UTF-8 bytes
+ * varint expression count, then per expression:
+ *        varint name + 1 (0 for an unnamed expression), varint variable count,
+ *        per variable varint name and double default value, varint frame size,
+ *        varint node count and the nodes in postfix order: an opcode byte and its operands
+ * </pre>
+ * Names, variables and functions refer to the shared string table, functions and operators by their registry
+ * name, and all numbers are big-endian. Loading rejects blobs with another magic number, format version or
+ * registry fingerprint. Instances are immutable and thread-safe.
+ */
+public final class ExpressionCodec {
+    public static final int MAGIC = 0x52444D50;
+    public static final short FORMAT_VERSION = 1;
+
+    private static final byte CONSTANT = 1;
+    private static final byte SMALL_CONSTANT = 2;
+    private static final byte VARIABLE = 3;
+    private static final byte NAMED_VARIABLE = 4;
+    private static final byte NEGATE = 5;
+    private static final byte ADD = 6;
+    private static final byte SUBTRACT = 7;
+    private static final byte MULTIPLY = 8;
+    private static final byte DIVIDE = 9;
+    private static final byte BINARY_OPERATOR = 10;
+    private static final byte FUNCTION_CALL = 11;
+    private static final byte BI_FUNCTION_CALL = 12;
+    private static final byte LET = 13;
+    private static final byte CONDITIONAL = 14;
+    private static final byte VARIADIC_FUNCTION_CALL = 15;
+
+    private final FunctionRegistry registry;
+
+    public ExpressionCodec(final FunctionRegistry registry) {
+        this.registry = registry;
+    }
+
+    public byte[] encode(final CompiledExpression expression) {
+        return encodeLibrary(Collections.singletonMap(null, expression));
+    }
+
+    /**
+     * @param library formulas by name; a null name is allowed for a single unnamed expression
+     */
+    public byte[] encodeLibrary(final Map<String, CompiledExpression> library) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            writeLibrary(library, bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if a function or operator in the trees is not the one registered under
+     *                                  its name, since it could not be restored by name
+     */
+    public void writeLibrary(final Map<String, CompiledExpression> library, final OutputStream out) throws IOException {
+        final Encoder encoder = new Encoder();
+        for (Map.Entry<String, CompiledExpression> entry : library.entrySet()) {
+            encoder.expression(entry.getKey(), entry.getValue());
+        }
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeShort(FORMAT_VERSION);
+        data.writeLong(this.registry.getFingerprint());
+        writeVarint(data, encoder.strings.size());
+        for (String string : encoder.strings) {
+            final byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+            writeVarint(data, utf8.length);
+            data.write(utf8);
+        }
+        writeVarint(data, library.size());
+        encoder.body.writeTo(data);
+        data.flush();
+    }
+
+    public CompiledExpression decode(final byte[] blob) {
+        return decode(ByteBuffer.wrap(blob));
+    }
+
+    /**
+     * Reads a blob holding one expression, starting at the buffer's position, and moves the position past it.
+     */
+    public CompiledExpression decode(final ByteBuffer in) {
+        final Map<String, CompiledExpression> library = decodeLibrary(in);
+        if (library.size() != 1) {
+            throw new ExpressionFormatException("Expected one expression, found " + library.size());
+        }
+        return library.values().iterator().next();
+    }
+
+    public Map<String, CompiledExpression> decodeLibrary(final byte[] blob) {
+        return decodeLibrary(ByteBuffer.wrap(blob));
+    }
+
+    /**
+     * Reads a library, e.g. from a memory-mapped file, starting at the buffer's position and moves the position
+     * past it.
+     * @return the expressions by name, in the order they were written
+     * @throws ExpressionFormatException if the blob is malformed or was written by another format version or
+     *                                   against a different registry
+     */
+    public Map<String, CompiledExpression> decodeLibrary(final ByteBuffer in) {
+        final ByteBuffer data = in.duplicate().order(ByteOrder.BIG_ENDIAN);
+        try {
+            final Map<String, CompiledExpression> library = new Decoder(data).library();
+            ((Buffer) in).position(data.position());
+            return library;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new ExpressionFormatException("Truncated or corrupt expression blob");
+        }
+    }
+
+    private static void writeVarint(final DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(final ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new ExpressionFormatException("Malformed varint");
+    }
+
+    /**
+     * Writes the expressions into a buffer while collecting the string table that has to precede them.
+     */
+    private final class Encoder implements NodeVisitor<Void> {
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> stringIndices = new HashMap<>();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(this.body);
+        private final ByteArrayOutputStream nodeBytes = new ByteArrayOutputStream();
+        private final DataOutputStream nodes = new DataOutputStream(this.nodeBytes);
+        private List<String> variableNames;
+        private int nodeCount;
+
+        void expression(final String name, final CompiledExpression expression) throws IOException {
+            writeVarint(this.out, name == null ? 0 : string(name) + 1);
+            this.variableNames = expression.getVariableNames();
+            writeVarint(this.out, this.variableNames.size());
+            for (int slot = 0; slot < this.variableNames.size(); ++slot) {
+                writeVarint(this.out, string(this.variableNames.get(slot)));
+                this.out.writeDouble(expression.getDefaultValue(slot));
+            }
+            writeVarint(this.out, expression.getFrameSize());
+            this.nodeBytes.reset();
+            this.nodeCount = 0;
+            expression.getRoot().accept(this);
+            writeVarint(this.out, this.nodeCount);
+            this.nodeBytes.writeTo(this.out);
+        }
+
+        private int string(final String string) {
+            Integer index = this.stringIndices.get(string);
+            if (index == null) {
+                index = this.strings.size();
+                this.strings.add(string);
+                this.stringIndices.put(string, index);
+            }
+            return index;
+        }
+
+        private void opcode(final byte opcode) {
+            ++this.nodeCount;
+            try {
+                this.nodes.writeByte(opcode);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void operand(final int value) {
+            try {
+                writeVarint(this.nodes, value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void registered(final Object function, final Object registered, final String kind,
+                                final String name) {
+            if (function != registered) {
+                throw new IllegalArgumentException(kind + " " + name + " is not the one registered under that name");
+            }
+            operand(string(name));
+        }
+
+        @Override
+        public Void visitConstant(final ConstantNode node) {
+            final double value = node.getValue();
+            final int small = (int) value;
+            if (small == value && small >= 0 && (small != 0 || Double.doubleToRawLongBits(value) == 0)) {
+                opcode(SMALL_CONSTANT);
+                operand(small);
+            } else {
+                opcode(CONSTANT);
+                try {
+                    this.nodes.writeDouble(value);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitVariable(final VariableNode node) {
+            final int slot = node.getSlot();
+            if (node.getName().equals(defaultName(this.variableNames, slot))) {
+                opcode(VARIABLE);
+                operand(slot);
+            } else {
+                opcode(NAMED_VARIABLE);
+                operand(slot);
+                operand(string(node.getName()));
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitNegate(final NegateNode node) {
+            node.getOperand().accept(this);
+            opcode(NEGATE);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryOperator(final BinaryOperatorNode node) {
+            node.getLeft().accept(this);
+            node.getRight().accept(this);
+            final DoubleBinaryOperator function = node.getFunction();
+            if (function == BinaryOperatorNode.ADD) {
+                opcode(ADD);
+            } else if (function == BinaryOperatorNode.SUBTRACT) {
+                opcode(SUBTRACT);
+            } else if (function == BinaryOperatorNode.MULTIPLY) {
+                opcode(MULTIPLY);
+            } else if (function == BinaryOperatorNode.DIVIDE) {
+                opcode(DIVIDE);
+            } else {
+                opcode(BINARY_OPERATOR);
+                registered(function, registry.getBinaryOperator(node.getOperator()), "Operator", node.getOperator());
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionCall(final FunctionCallNode node) {
+            node.getArgument().accept(this);
+            opcode(FUNCTION_CALL);
+            registered(node.getFunction(), registry.getFunction(node.getName()), "Function", node.getName());
+            return null;
+        }
+
+        @Override
+        public Void visitBiFunctionCall(final BiFunctionCallNode node) {
+            node.getFirst().accept(this);
+            node.getSecond().accept(this);
+            opcode(BI_FUNCTION_CALL);
+            registered(node.getFunction(), registry.getBiFunction(node.getName()), "Function", node.getName());
+            return null;
+        }
+
+        @Override
+        public Void visitVariadicFunctionCall(final VariadicFunctionCallNode node) {
+            for (Node argument : node.getArguments()) {
+                argument.accept(this);
+            }
+            opcode(VARIADIC_FUNCTION_CALL);
+            registered(node.getFunction(), registry.getVariadicFunction(node.getName()), "Function", node.getName());
+            operand(node.getArgumentCount());
+            return null;
+        }
+
+        @Override
+        public Void visitConditional(final ConditionalNode node) {
+            node.getCondition().accept(this);
+            node.getWhenTrue().accept(this);
+            node.getWhenFalse().accept(this);
+            opcode(CONDITIONAL);
+            return null;
+        }
+
+        @Override
+        public Void visitLet(final LetNode node) {
+            node.getValue().accept(this);
+            node.getBody().accept(this);
+            opcode(LET);
+            operand(node.getSlot());
+            return null;
+        }
+    }
+
+    /**
+     * Variables are named after their slot, temporaries introduced by common subexpression elimination after
+     * theirs; only nodes named otherwise store their name.
+     */
+    private static String defaultName(final List<String> variableNames, final int slot) {
+        return slot < variableNames.size() ? variableNames.get(slot) : "$" + slot;
+    }
+
+    private final class Decoder {
+        private final ByteBuffer in;
+        private String[] strings;
+
+        Decoder(final ByteBuffer in) {
+            this.in = in;
+        }
+
+        Map<String, CompiledExpression> library() {
+            if (this.in.getInt() != MAGIC) {
+                throw new ExpressionFormatException("Not a compiled expression blob");
+            }
+            final short version = this.in.getShort();
+            if (version != FORMAT_VERSION) {
+                throw new ExpressionFormatException("Unsupported format version " + version + ", expected "
+                        + FORMAT_VERSION);
+            }
+            if (this.in.getLong() != registry.getFingerprint()) {
+                throw new ExpressionFormatException(
+                        "Expressions were compiled against a different function registry");
+            }
+            this.strings = new String[count()];
+            for (int i = 0; i < this.strings.length; ++i) {
+                final byte[] utf8 = new byte[count()];
+                this.in.get(utf8);
+                this.strings[i] = new String(utf8, StandardCharsets.UTF_8);
+            }
+            final int count = count();
+            final Map<String, CompiledExpression> library = new LinkedHashMap<>();
+            for (int i = 0; i < count; ++i) {
+                final int name = readVarint(this.in);
+                library.put(name == 0 ? null : this.strings[name - 1], expression());
+            }
+            return library;
+        }
+
+        private CompiledExpression expression() {
+            final String[] variableNames = new String[count()];
+            final double[] defaultValues = new double[variableNames.length];
+            for (int slot = 0; slot < variableNames.length; ++slot) {
+                variableNames[slot] = this.strings[readVarint(this.in)];
+                defaultValues[slot] = this.in.getDouble();
+            }
+            final List<String> names = Arrays.asList(variableNames);
+            final int frameSize = readVarint(this.in);
+            final int nodeCount = count();
+            final Node[] stack = new Node[nodeCount];
+            int top = 0;
+            for (int i = 0; i < nodeCount; ++i) {
+                final byte opcode = this.in.get();
+                switch (opcode) {
+                    case CONSTANT:
+                        stack[top++] = new ConstantNode(this.in.getDouble());
+                        break;
+                    case SMALL_CONSTANT:
+                        stack[top++] = new ConstantNode(readVarint(this.in));
+                        break;
+                    case VARIABLE: {
+                        final int slot = slot(frameSize);
+                        stack[top++] = new VariableNode(defaultName(names, slot), slot);
+                        break;
+                    }
+                    case NAMED_VARIABLE: {
+                        final int slot = slot(frameSize);
+                        stack[top++] = new VariableNode(this.strings[readVarint(this.in)], slot);
+                        break;
+                    }
+                    case NEGATE:
+                        stack[top - 1] = new NegateNode(stack[top - 1]);
+                        break;
+                    case ADD:
+                        stack[top - 2] = new BinaryOperatorNode("+", BinaryOperatorNode.ADD, stack[top - 2],
+                                stack[--top]);
+                        break;
+                    case SUBTRACT:
+                        stack[top - 2] = new BinaryOperatorNode("-", BinaryOperatorNode.SUBTRACT, stack[top - 2],
+                                stack[--top]);
+                        break;
+                    case MULTIPLY:
+                        stack[top - 2] = new BinaryOperatorNode("*", BinaryOperatorNode.MULTIPLY, stack[top - 2],
+                                stack[--top]);
+                        break;
+                    case DIVIDE:
+                        stack[top - 2] = new BinaryOperatorNode("/", BinaryOperatorNode.DIVIDE, stack[top - 2],
+                                stack[--top]);
+                        break;
+                    case BINARY_OPERATOR: {
+                        final String operator = this.strings[readVarint(this.in)];
+                        final DoubleBinaryOperator function = lookup(registry.getBinaryOperator(operator), operator);
+                        stack[top - 2] = new BinaryOperatorNode(operator, function, stack[top - 2], stack[--top]);
+                        break;
+                    }
+                    case FUNCTION_CALL: {
+                        final String name = this.strings[readVarint(this.in)];
+                        final DoubleUnaryOperator function = lookup(registry.getFunction(name), name);
+                        stack[top - 1] = new FunctionCallNode(name, function, stack[top - 1]);
+                        break;
+                    }
+                    case BI_FUNCTION_CALL: {
+                        final String name = this.strings[readVarint(this.in)];
+                        final DoubleBinaryOperator function = lookup(registry.getBiFunction(name), name);
+                        stack[top - 2] = new BiFunctionCallNode(name, function, stack[top - 2], stack[--top]);
+                        break;
+                    }
+                    case LET: {
+                        final int slot = slot(frameSize);
+                        stack[top - 2] = new LetNode(slot, stack[top - 2], stack[--top]);
+                        break;
+                    }
+                    case VARIADIC_FUNCTION_CALL: {
+                        final String name = this.strings[readVarint(this.in)];
+                        final VariadicFunction function = lookup(registry.getVariadicFunction(name), name);
+                        final int count = readVarint(this.in);
+                        if (count < 0 || count > top) {
+                            throw new ExpressionFormatException("Malformed expression tree");
+                        }
+                        top -= count;
+                        final Node[] arguments = Arrays.copyOfRange(stack, top, top + count);
+                        stack[top++] = new VariadicFunctionCallNode(name, function, arguments);
+                        break;
+                    }
+                    case CONDITIONAL:
+                        top -= 2;
+                        stack[top - 1] = new ConditionalNode(stack[top - 1], stack[top], stack[top + 1]);
+                        break;
+                    default:
+                        throw new ExpressionFormatException("Unknown opcode " + opcode);
+                }
+            }
+            if (top != 1) {
+                throw new ExpressionFormatException("Malformed expression tree");
+            }
+            return CompiledExpression.of(stack[0], names, defaultValues, frameSize);
+        }
+
+        /**
+         * Every counted item takes at least a byte, so a larger count can only come from corrupt data.
+         */
+        private int count() {
+            final int count = readVarint(this.in);
+            if (count < 0 || count > this.in.remaining()) {
+                throw new ExpressionFormatException("Count " + count + " exceeds the remaining data");
+            }
+            return count;
+        }
+
+        private int slot(final int frameSize) {
+            final int slot = readVarint(this.in);
+            if (slot < 0 || slot >= frameSize) {
+                throw new ExpressionFormatException("Slot " + slot + " is outside the frame");
+            }
+            return slot;
+        }
+
+        private <T> T lookup(final T function, final String name) {
+            if (function == null) {
+                throw new ExpressionFormatException("Unknown function or operator " + name);
+            }
+            return function;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.recursivedescentmathparser.parser.serialization;
+
+/**
+ * Thrown when a serialized expression cannot be loaded: the data is corrupt, or it was written by another
+ * format version or against a different function registry.
+ */
+public class ExpressionFormatException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ExpressionFormatException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,118 @@
+package com.recursivedescentmathparser.parser.tiered;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.FunctionRegistry;
+import com.recursivedescentmathparser.parser.codegen.BytecodeCompiler;
+import com.recursivedescentmathparser.parser.optimizer.ExpressionOptimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Makes expressions compile themselves once they turn out to be hot.
+ * A tiered expression starts on its own evaluator, normally the tree walker, which costs nothing up front, and
+ * counts its evaluations. At {@code threshold} evaluations it is optimized with {@link ExpressionOptimizer}, with
+ * only the rewrites that leave every result bit for bit the same, and compiled with {@link BytecodeCompiler} on
+ * {@code executor}, and the generated evaluator is swapped in atomically; evaluations carry on in the first tier
+ * meanwhile. See {@link TieredEvaluator} for the specialization on variables
+ * that did not change while the expression was being profiled.
+ */
+public class TieredCompiler {
+    public static final int DEFAULT_THRESHOLD = 10000;
+
+    private final FunctionRegistry registry;
+    private final int threshold;
+    private final Executor executor;
+
+    /**
+     * @param registry decides which calls may be folded into constants; calls of functions it does not know are
+     * kept
+     */
+    public TieredCompiler(final FunctionRegistry registry) {
+        this(registry, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    private TieredCompiler(final FunctionRegistry registry, final int threshold, final Executor executor) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("Threshold must be positive");
+        }
+        this.registry = registry;
+        this.threshold = threshold;
+        this.executor = executor;
+    }
+
+    public FunctionRegistry getRegistry() {
+        return this.registry;
+    }
+
+    public int getThreshold() {
+        return this.threshold;
+    }
+
+    public Executor getExecutor() {
+        return this.executor;
+    }
+
+    public TieredCompiler withRegistry(final FunctionRegistry registry) {
+        return new TieredCompiler(registry, this.threshold, this.executor);
+    }
+
+    /**
+     * @param threshold number of evaluations after which an expression is compiled
+     */
+    public TieredCompiler withThreshold(final int threshold) {
+        return new TieredCompiler(this.registry, threshold, this.executor);
+    }
+
+    /**
+     * @param executor runs the compilations; {@code Runnable::run} compiles on the evaluating thread
+     */
+    public TieredCompiler withExecutor(final Executor executor) {
+        return new TieredCompiler(this.registry, this.threshold, executor);
+    }
+
+    /**
+     * @return the same expression with a {@link TieredEvaluator}; every call returns an expression with its own
+     * profile
+     */
+    public CompiledExpression compile(final CompiledExpression expression) {
+        return expression.withEvaluator(new TieredEvaluator(this, expression));
+    }
+
+    /**
+     * @return {@code optimizer} restricted to rewrites that give the same bits as the first tier
+     */
+    private static ExpressionOptimizer exact(final ExpressionOptimizer optimizer) {
+        return optimizer.withFlattening(true).withPowerReduction(false);
+    }
+
+    /**
+     * @return the generic compiled form, valid for any values of the variables
+     */
+    CompiledExpression generic(final CompiledExpression expression) {
+        return new BytecodeCompiler().compile(exact(new ExpressionOptimizer(this.registry)).optimize(expression));
+    }
+
+    /**
+     * @param constants for every slot, whether its value is folded
+     * @param values the values to fold, by slot
+     * @return the compiled form that is valid while the variables in {@code constants} have the given values
+     */
+    CompiledExpression specialized(final CompiledExpression expression, final boolean[] constants,
+                                   final double[] values) {
+        final List<String> constantNames = new ArrayList<>();
+        final double[] defaultValues = new double[expression.getVariableCount()];
+        for (int slot = 0; slot < defaultValues.length; ++slot) {
+            defaultValues[slot] = constants[slot] ? values[slot] : expression.getDefaultValue(slot);
+            if (constants[slot]) {
+                constantNames.add(expression.getVariableNames().get(slot));
+            }
+        }
+        final CompiledExpression observed = CompiledExpression.of(expression.getRoot(),
+                expression.getVariableNames(), defaultValues, expression.getFrameSize());
+        return new BytecodeCompiler().compile(exact(new ExpressionOptimizer(this.registry, constantNames))
+                .optimize(observed));
+    }
+}
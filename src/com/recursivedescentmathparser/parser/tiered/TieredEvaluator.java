@@ -0,0 +1,141 @@
+package com.recursivedescentmathparser.parser.tiered;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.Evaluator;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Evaluator installed by {@link TieredCompiler}. Until the threshold it evaluates with the expression's own
+ * evaluator, counting the evaluations and noting which variables kept the value of the first evaluation.
+ * Those variables are folded into the compiled form as constants, behind a guard that compares them with the
+ * folded values on every evaluation. The first time a guard fails the expression falls back to the generic
+ * compiled form for good, so a variable that changes now and then costs one comparison per evaluation, not a
+ * recompilation.
+ * <p>
+ * Thread-safe. Profiles gathered by several threads may be inaccurate, which the guards make harmless: they only
+ * decide what is worth specializing.
+ */
+public final class TieredEvaluator implements Evaluator {
+
+    public enum Tier {
+        /** evaluated by the expression's own evaluator while the evaluations are counted */
+        PROFILING,
+        /** compiled with the variables that did not change folded in */
+        SPECIALIZED,
+        /** compiled for any values of the variables */
+        COMPILED
+    }
+
+    private final TieredCompiler compiler;
+    private final CompiledExpression expression;
+    private final Evaluator interpreter;
+    private final long[] observed;
+    private final boolean[] varying;
+    private final AtomicBoolean compiling = new AtomicBoolean();
+    private int evaluations;
+    private volatile Evaluator current;
+    private volatile Tier tier = Tier.PROFILING;
+
+    TieredEvaluator(final TieredCompiler compiler, final CompiledExpression expression) {
+        this.compiler = compiler;
+        this.expression = expression;
+        this.interpreter = expression.getEvaluator();
+        this.observed = new long[expression.getVariableCount()];
+        this.varying = new boolean[expression.getVariableCount()];
+        this.current = this::profile;
+    }
+
+    public Tier getTier() {
+        return this.tier;
+    }
+
+    @Override
+    public double evaluate(final double[] variables) {
+        return this.current.evaluate(variables);
+    }
+
+    private double profile(final double[] variables) {
+        final int count = this.evaluations++;
+        for (int slot = 0; slot < this.observed.length; ++slot) {
+            final long bits = Double.doubleToRawLongBits(variables[slot]);
+            if (count == 0) {
+                this.observed[slot] = bits;
+            } else if (bits != this.observed[slot]) {
+                this.varying[slot] = true;
+            }
+        }
+        if (count + 1 >= this.compiler.getThreshold() && this.compiling.compareAndSet(false, true)) {
+            this.compiler.getExecutor().execute(this::compile);
+        }
+        return this.interpreter.evaluate(variables);
+    }
+
+    private void compile() {
+        final Evaluator generic;
+        try {
+            generic = this.compiler.generic(this.expression).getEvaluator();
+        } catch (RuntimeException failed) {
+            // stay on the first tier, without profiling
+            this.current = this.interpreter;
+            return;
+        }
+        final boolean[] constants = new boolean[this.observed.length];
+        final double[] values = new double[this.observed.length];
+        int guards = 0;
+        for (int slot = 0; slot < constants.length; ++slot) {
+            constants[slot] = !this.varying[slot];
+            values[slot] = Double.longBitsToDouble(this.observed[slot]);
+            guards += constants[slot] ? 1 : 0;
+        }
+        if (guards == 0) {
+            install(generic, Tier.COMPILED);
+            return;
+        }
+        final int[] slots = new int[guards];
+        final long[] bits = new long[guards];
+        for (int slot = 0, guard = 0; slot < constants.length; ++slot) {
+            if (constants[slot]) {
+                slots[guard] = slot;
+                bits[guard++] = Double.doubleToRawLongBits(values[slot]);
+            }
+        }
+        try {
+            final Evaluator specialized = this.compiler.specialized(this.expression, constants, values)
+                    .getEvaluator();
+            install(new Guarded(specialized, generic, slots, bits), Tier.SPECIALIZED);
+        } catch (RuntimeException failed) {
+            install(generic, Tier.COMPILED);
+        }
+    }
+
+    private void install(final Evaluator evaluator, final Tier tier) {
+        this.tier = tier;
+        this.current = evaluator;
+    }
+
+    private final class Guarded implements Evaluator {
+        private final Evaluator specialized;
+        private final Evaluator generic;
+        private final int[] slots;
+        private final long[] bits;
+
+        Guarded(final Evaluator specialized, final Evaluator generic, final int[] slots, final long[] bits) {
+            this.specialized = specialized;
+            this.generic = generic;
+            this.slots = slots;
+            this.bits = bits;
+        }
+
+        @Override
+        public double evaluate(final double[] variables) {
+            for (int guard = 0; guard < this.slots.length; ++guard) {
+                if (Double.doubleToRawLongBits(variables[this.slots[guard]]) != this.bits[guard]) {
+                    install(this.generic, Tier.COMPILED);
+                    return this.generic.evaluate(variables);
+                }
+            }
+            return this.specialized.evaluate(variables);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.recursivedescentmathparser.tests;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.codegen.BytecodeCompiler;
+import com.recursivedescentmathparser.parser.interpreter.StackCompiler;
+import com.recursivedescentmathparser.parser.optimizer.CommonSubexpressionEliminator;
+import com.recursivedescentmathparser.parser.optimizer.ExpressionOptimizer;
+import com.recursivedescentmathparser.parser.serialization.ExpressionCodec;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Helpers for the tests that evaluate formulas of {@code x} and {@code y} on every back end.
+ */
+final class BackEnds {
+
+    private BackEnds() {
+    }
+
+    /**
+     * @return {@code formula} evaluated by {@code parser} after setting {@code x} and {@code y}
+     */
+    static double evaluate(final MathParser parser, final String formula, final double x, final double y) {
+        parser.addVariable("x", x);
+        parser.addVariable("y", y);
+        return parser.parse(formula).evaluate();
+    }
+
+    /**
+     * @return a frame for {@code expression} with {@code x} and {@code y} set and its other variables at their
+     * default values
+     */
+    static double[] frame(final CompiledExpression expression, final double x, final double y) {
+        final double[] frame = new double[expression.getFrameSize()];
+        for (int slot = 0; slot < expression.getVariableCount(); ++slot) {
+            final String name = expression.getVariableNames().get(slot);
+            frame[slot] = name.equals("x") ? x : name.equals("y") ? y : expression.getDefaultValue(slot);
+        }
+        return frame;
+    }
+
+    /**
+     * Asserts that every formula, simplified by {@code optimizer} and {@link CommonSubexpressionEliminator}, gives
+     * what {@code parser} gives at every pair of {@code points}: on the tree, as a stack program, as bytecode and
+     * decoded from its serialized form.
+     */
+    static void assertMatchParser(final MathParser parser, final ExpressionOptimizer optimizer,
+                                  final String[] formulas, final double[] points) {
+        final ExpressionCodec codec = new ExpressionCodec(parser.getRegistry());
+        for (String formula : formulas) {
+            final CompiledExpression optimized = new CommonSubexpressionEliminator(parser.getRegistry())
+                    .eliminate(optimizer.optimize(parser.compile(formula)));
+            final CompiledExpression[] variants = {optimized, new StackCompiler().compile(optimized),
+                    new BytecodeCompiler().compile(optimized), codec.decode(codec.encode(optimized))};
+            for (double x : points) {
+                for (double y : points) {
+                    final double expected = evaluate(parser, formula, x, y);
+                    for (CompiledExpression variant : variants) {
+                        assertEquals(formula, expected, variant.evaluate(frame(variant, x, y)), 0);
+                    }
+                }
+            }
+        }
+    }
+}
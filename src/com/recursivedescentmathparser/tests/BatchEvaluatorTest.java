@@ -0,0 +1,135 @@
+package com.recursivedescentmathparser.tests;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.Expression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.ParsedExpression;
+import com.recursivedescentmathparser.parser.batch.BatchEvaluator;
+import com.recursivedescentmathparser.parser.batch.ParallelBatchEvaluator;
+import com.recursivedescentmathparser.parser.optimizer.CommonSubexpressionEliminator;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class BatchEvaluatorTest {
+
+    private static final String[] FORMULAS = {
+            "x", "-x + 2*y", "sqrt(sqr(x) + sqr(y))", "5e-1*(exp(x) - exp(-x))", "(x>=y)*8 + (x<y)*100",
+            "max(sin(x), cos(y)) - min(x, y)", "x^2 - y^3 + Pi", "hypot(x, y) / (1 + abs(x))", "ln(abs(x)+1)*cube(y)",
+            "degToRad(x) + degToRad(y)"
+    };
+    private static final int ROWS = 5000;
+    private MathParser parser;
+    private double[] xs, ys;
+
+    @Before
+    public void setUp() {
+        parser = new MathParser();
+        parser.addVariable("x", 0);
+        parser.addVariable("y", 0);
+        parser.addFunction("degToRad", Math::toRadians);
+        xs = new double[ROWS];
+        ys = new double[ROWS];
+        for (int row = 0; row < ROWS; ++row) {
+            xs[row] = (row - ROWS / 2) * 0.01;
+            ys[row] = Math.sin(row) * 10;
+        }
+    }
+
+    private void assertMatchesScalar(final CompiledExpression expression, final double[] out) {
+        final double[] variables = new double[expression.getFrameSize()];
+        final int x = expression.indexOf("x"), y = expression.indexOf("y");
+        for (int row = 0; row < ROWS; ++row) {
+            if (x >= 0) variables[x] = xs[row];
+            if (y >= 0) variables[y] = ys[row];
+            for (int slot = 0; slot < expression.getVariableCount(); ++slot) {
+                if (slot != x && slot != y) variables[slot] = expression.getDefaultValue(slot);
+            }
+            assertEquals(expression.toString(), expression.evaluate(variables), out[row], 0);
+        }
+    }
+
+    @Test
+    public void batchMatchesScalarEvaluationTest() {
+        for (String formula : FORMULAS) {
+            final CompiledExpression expression = parser.compile(formula);
+            final Map<String, double[]> columns = new HashMap<>();
+            columns.put("x", xs);
+            columns.put("y", ys);
+            final double[] out = new double[ROWS];
+            expression.evaluateBatch(columns, out);
+            assertMatchesScalar(expression, out);
+        }
+    }
+
+    @Test
+    public void temporariesAndPartialRangesTest() {
+        final CompiledExpression expression = new CommonSubexpressionEliminator(parser.getRegistry())
+                .eliminate(parser.compile("sqrt(sqr(x)+sqr(y))/sqr(x) + sqr(x)"));
+        final double[][] columns = new double[2][];
+        columns[expression.indexOf("x")] = xs;
+        columns[expression.indexOf("y")] = ys;
+        final double[] out = new double[ROWS];
+        final BatchEvaluator evaluator = new BatchEvaluator(expression, 100);
+        evaluator.evaluate(columns, out, 0, 1234);
+        evaluator.evaluate(columns, out, 1234, ROWS);
+        assertMatchesScalar(expression, out);
+    }
+
+    @Test
+    public void parallelEvaluationTest() {
+        final CompiledExpression expression = parser.compile("sqrt(sqr(x) + sqr(y)) * exp(-x) + max(sin(x), y)");
+        final double[][] columns = new double[2][];
+        columns[expression.indexOf("x")] = xs;
+        columns[expression.indexOf("y")] = ys;
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            double[] out = new double[ROWS];
+            new ParallelBatchEvaluator(expression, pool, 64).evaluate(columns, out);
+            assertMatchesScalar(expression, out);
+
+            out = new double[ROWS];
+            new ParallelBatchEvaluator(expression, executor, 100).evaluate(columns, out);
+            assertMatchesScalar(expression, out);
+
+            parser.addVariable("x", 0);
+            out = new double[ROWS];
+            new ParallelBatchEvaluator(parser.parse("sqrt(sqr(x) + sqr(y)) * exp(-x) + max(sin(x), y)"))
+                    .evaluate(columns, out);
+            assertMatchesScalar(expression, out);
+        } finally {
+            pool.shutdown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void parsedExpressionsUseCurrentValuesTest() {
+        parser.addVariable("x", 1);
+        parser.addVariable("y", 1);
+        final Expression expression = parser.parse("x+y");
+        parser.addVariable("x", 5);
+        final ParallelBatchEvaluator evaluator = new ParallelBatchEvaluator(expression);
+        final double[] out = new double[3];
+        final double[][] columns = new double[2][];
+        columns[((ParsedExpression) expression).getCompiledExpression().indexOf("y")] = new double[]{1, 2, 3};
+        evaluator.evaluate(columns, out);
+        assertArrayEquals(new double[]{6, 7, 8}, out, 0);
+        assertEquals(6, expression.evaluate(), 0);
+
+        parser.addVariable("x", -1);
+        evaluator.evaluate(Collections.singletonMap("y", new double[]{1, 2, 3}), out);
+        assertArrayEquals(new double[]{0, 1, 2}, out, 0);
+    }
+}
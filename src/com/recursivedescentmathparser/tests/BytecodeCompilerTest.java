@@ -0,0 +1,163 @@
+package com.recursivedescentmathparser.tests;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.VariableFrame;
+import com.recursivedescentmathparser.parser.ast.ArgumentStack;
+import com.recursivedescentmathparser.parser.codegen.BytecodeCompiler;
+import com.sun.management.ThreadMXBean;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class BytecodeCompilerTest {
+
+    private static final String[] FORMULAS = {
+            "0", "-5", "+++4", "--4", "5e-7", "-5e+7", "10--2", "9e7 / 3e5", "1e2^2", "-(-5)",
+            "2 * (3 - 17) + 5 * (2 + 15)", "3e+4+2e-7*(12e-2-5e+7)", "signum(-100.78)*5", "sqrt(sqr(6) + sqr(8))",
+            "cube(5)", "5e-1*(exp(13) - exp(-13))", "ln(E^2)", "log2(512)", "log16(256)", "sin(2*Pi/3)",
+            "ctg(3*Pi/4)", "cosec(Pi/3)", "arcsec(sqrt(2))", "arccosec(2)", "(sin(Pi/4))^2+(cos(Pi/4))^2",
+            "cth(0)", "arcsech(0.3)", "arccth(2)", "1020!=10", "15>=15", "10<=10", "5>7", "100<200", "10==10",
+            "hypot(3,4)", "log(49,7)", "max(sin(Pi/6),sin(Pi/3))", "min(-57,100)", "(5!=7)*8+(9<14)*100",
+            "E^Pi + Pi^E"
+    };
+    private static final double EPS = 1e-9;
+    private MathParser parser;
+    private BytecodeCompiler compiler;
+
+    @Before
+    public void setUp() {
+        parser = new MathParser();
+        compiler = new BytecodeCompiler();
+    }
+
+    @Test
+    public void generatedCodeMatchesInterpreterTest() {
+        for (String formula : FORMULAS) {
+            final CompiledExpression interpreted = parser.compile(formula);
+            final CompiledExpression generated = compiler.compile(interpreted);
+            assertNotSame(interpreted.getEvaluator(), generated.getEvaluator());
+            assertEquals(formula, interpreted.evaluate(interpreted.newFrame()),
+                    generated.evaluate(generated.newFrame()), 0);
+        }
+    }
+
+    @Test
+    public void variablesAndUserFunctionsTest() {
+        parser.addVariable("x", 0);
+        parser.addVariable("y", 0);
+        parser.addFunction("degToRad", Math::toRadians);
+        parser.addBinaryOperator("%", (a, b) -> a % b);
+        parser.addPrimitiveFunction("sin", arg -> 2 * arg);
+        final CompiledExpression generated = compiler.compile(parser.compile("sin(degToRad(x)) + y%3 - x*y"));
+        final VariableFrame frame = generated.newFrame();
+        for (double x = -180; x <= 180; x += 15) {
+            for (double y = -5; y <= 5; ++y) {
+                frame.set("x", x).set("y", y);
+                assertEquals(2 * Math.toRadians(x) + y % 3 - x * y, generated.evaluate(frame), EPS);
+            }
+        }
+    }
+
+    @Test
+    public void methodsTooLargeForTheJitAreNotGeneratedTest() {
+        parser.addVariable("x", 0.5);
+        // about 22 bytes of bytecode per term
+        for (int terms : new int[]{100, 500}) {
+            final StringBuilder formula = new StringBuilder("0");
+            for (int i = 1; i <= terms; ++i) {
+                formula.append("+sin(x*").append(i).append(")*cos(x+").append(i).append(')');
+            }
+            final CompiledExpression interpreted = parser.compile(formula.toString());
+            final CompiledExpression generated = compiler.compile(interpreted);
+            if (terms == 100) {
+                assertNotSame(interpreted.getEvaluator(), generated.getEvaluator());
+            } else {
+                assertSame(interpreted.getEvaluator(), generated.getEvaluator());
+            }
+            assertEquals(interpreted.evaluate(new double[]{0.5}), generated.evaluate(new double[]{0.5}), 0);
+        }
+    }
+
+    @Test
+    public void variadicCallsTest() {
+        final StringBuilder order = new StringBuilder();
+        parser.addVariable("x", 0);
+        parser.addPrimitiveFunction("trace", arg -> {
+            order.append((int) arg);
+            return arg;
+        }, false);
+        parser.addVariadicFunction("weighted", (arguments, offset, count) -> {
+            if (count % 2 != 0) {
+                throw new IllegalArgumentException("Expected value, weight pairs");
+            }
+            double sum = 0;
+            for (int i = offset; i < offset + count; i += 2) {
+                sum += arguments[i] * arguments[i + 1];
+            }
+            return sum;
+        });
+        final String formula = "poly(trace(x), trace(1), 2, trace(3), poly(trace(4), x, 5)) + poly(trace(6))"
+                + " + weighted(trace(7), poly(x, 1, 2), 2, weighted(x, trace(8)), 1, 0.5)";
+        final CompiledExpression interpreted = parser.compile(formula);
+        final CompiledExpression generated = compiler.compile(interpreted);
+        for (double x = -3; x <= 3; x += 0.25) {
+            order.setLength(0);
+            final double expected = interpreted.evaluate(new double[]{x});
+            final String expectedOrder = order.toString();
+            order.setLength(0);
+            assertEquals(Double.doubleToRawLongBits(expected),
+                    Double.doubleToRawLongBits(generated.evaluate(new double[]{x})));
+            assertEquals(expectedOrder, order.toString());
+        }
+
+        // a failing call frees its arguments, so the calls after it get the same slots
+        final CompiledExpression failing = compiler.compile(parser.compile("weighted(x, 2, x)"));
+        for (int i = 0; i < 100000; ++i) {
+            try {
+                failing.evaluate(new double[]{i});
+            } catch (IllegalArgumentException expected) {
+                // thrown by weighted
+            }
+        }
+        assertEquals(0, ArgumentStack.current().push(0));
+    }
+
+    @Test
+    public void variadicCallsDoNotAllocateTest() {
+        // com.sun.management.ThreadMXBean, the HotSpot extension that counts allocated bytes
+        if (!(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean)) {
+            return;
+        }
+        final ThreadMXBean allocationBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!allocationBean.isThreadAllocatedMemorySupported() || !allocationBean.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+        parser.addVariable("x", 0.5);
+        parser.addVariadicFunction("product", (arguments, offset, count) -> {
+            double product = 1;
+            for (int i = offset; i < offset + count; ++i) {
+                product *= arguments[i];
+            }
+            return product;
+        });
+        final CompiledExpression generated = compiler.compile(
+                parser.compile("poly(x, 1, 2, 3, 4) + product(x, poly(x, 5, 6), product(x, 2))"));
+        final double[] variables = {0.5};
+        double sink = generated.evaluate(variables);
+        // measured before the JIT compiles the evaluator, as escape analysis could hide an argument array
+        final long threadId = Thread.currentThread().getId();
+        final long before = allocationBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; ++i) {
+            sink += generated.evaluate(variables);
+        }
+        final long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+        assertEquals(0, allocated, 1024);
+        assertEquals(1001 * generated.evaluate(variables), sink, 1e-6);
+    }
+}
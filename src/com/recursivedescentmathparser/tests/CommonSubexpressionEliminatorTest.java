@@ -0,0 +1,102 @@
+package com.recursivedescentmathparser.tests;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.VariableFrame;
+import com.recursivedescentmathparser.parser.codegen.BytecodeCompiler;
+import com.recursivedescentmathparser.parser.optimizer.CommonSubexpressionEliminator;
+import com.recursivedescentmathparser.parser.optimizer.FormulaSet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class CommonSubexpressionEliminatorTest {
+
+    private static final double EPS = 1e-9;
+    private MathParser parser;
+    private int calls;
+
+    @Before
+    public void setUp() {
+        parser = new MathParser();
+        parser.addVariable("x", 3);
+        parser.addVariable("y", 4);
+        calls = 0;
+        parser.addPrimitiveFunction("tracked", arg -> {
+            ++calls;
+            return arg * 10;
+        }, true);
+    }
+
+    private CompiledExpression eliminate(final String formula) {
+        return new CommonSubexpressionEliminator(parser.getRegistry()).eliminate(parser.compile(formula));
+    }
+
+    @Test
+    public void repeatedSubtreesAreComputedOnceTest() {
+        CompiledExpression expression = eliminate("(sin(Pi/4))^2+(cos(Pi/4))^2");
+        assertEquals(1, expression.getFrameSize() - expression.getVariableCount());
+        assertEquals(1.0, expression.evaluate(expression.newFrame()), EPS);
+
+        expression = eliminate("sqrt(sqr(x)+sqr(y))/sqr(x)");
+        assertEquals(1, expression.getFrameSize() - expression.getVariableCount());
+        assertEquals(5.0 / 9, expression.evaluate(new double[]{3, 4}), EPS);
+        assertEquals(5.0 / 9, new BytecodeCompiler().compile(expression).evaluate(new double[]{3, 4}), EPS);
+
+        expression = eliminate("tracked(x+y) * tracked(x+y) - tracked(x+y)");
+        assertEquals(70 * 70 - 70, expression.evaluate(expression.newFrame()), EPS);
+        assertEquals(1, calls);
+    }
+
+    @Test
+    public void framesOfTheOriginalExpressionTest() {
+        final CompiledExpression original = parser.compile("sqrt(sqr(x)+sqr(y))/sqr(x)");
+        final CompiledExpression expression = new CommonSubexpressionEliminator(parser.getRegistry())
+                .eliminate(original);
+        final VariableFrame frame = original.newFrame();
+        assertEquals(5.0 / 9, expression.evaluate(frame), EPS);
+        assertEquals(10.0 / 36, expression.evaluate(frame.set("x", 6).set("y", 8)), EPS);
+        assertEquals(10.0 / 36, new BytecodeCompiler().compile(expression).evaluate(frame), EPS);
+    }
+
+    @Test
+    public void impureFunctionsAreNotSharedTest() {
+        parser.addPrimitiveFunction("impure", arg -> {
+            ++calls;
+            return arg;
+        });
+        final CompiledExpression expression = eliminate("impure(x) + impure(x) + sqr(x+1) + sqr(x+1)");
+        assertEquals(1, expression.getFrameSize() - expression.getVariableCount());
+        assertEquals(3 + 3 + 16 + 16, expression.evaluate(expression.newFrame()), EPS);
+        assertEquals(2, calls);
+    }
+
+    @Test
+    public void formulaSetTest() {
+        final Map<String, CompiledExpression> formulas = new LinkedHashMap<>();
+        formulas.put("a", parser.compile("tracked(x*y) + 1"));
+        formulas.put("b", parser.compile("2 * tracked(x*y)"));
+        formulas.put("c", parser.compile("tracked(x*y) / y - tracked(x)"));
+        final FormulaSet set = FormulaSet.compile(parser.getRegistry(), formulas);
+        assertEquals(2, set.getVariableNames().size());
+        assertEquals(1, set.getTemporaryCount());
+
+        final double[] frame = set.newFrame();
+        final double[] results = new double[3];
+        final int x = set.indexOf("x"), y = set.indexOf("y");
+        for (int row = 1; row <= 10; ++row) {
+            frame[x] = row;
+            frame[y] = row + 1;
+            set.evaluate(frame, results);
+            final double product = 10.0 * row * (row + 1);
+            assertEquals(product + 1, results[set.formulaIndexOf("a")], EPS);
+            assertEquals(2 * product, results[set.formulaIndexOf("b")], EPS);
+            assertEquals(product / (row + 1) - 10 * row, results[set.formulaIndexOf("c")], EPS);
+        }
+        assertEquals(20, calls);
+    }
+}
@@ -0,0 +1,154 @@
+package com.recursivedescentmathparser.tests;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.LiveExpression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.batch.BatchEvaluator;
+import com.recursivedescentmathparser.parser.codegen.BytecodeCompiler;
+import com.recursivedescentmathparser.parser.derivative.Differentiator;
+import com.recursivedescentmathparser.parser.interpreter.StackCompiler;
+import com.recursivedescentmathparser.parser.optimizer.CommonSubexpressionEliminator;
+import com.recursivedescentmathparser.parser.optimizer.ExpressionOptimizer;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.recursivedescentmathparser.tests.BackEnds.assertMatchParser;
+import static com.recursivedescentmathparser.tests.BackEnds.evaluate;
+import static com.recursivedescentmathparser.tests.BackEnds.frame;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConditionalTest {
+
+    private static final String[] FORMULAS = {
+            "if(x>0, sqrt(x), -x)", "x>1&&y<2", "x<0||y>=1", "!(x>1)", "if(x>0&&y>0, sqr(x+y)*2, sqr(x+y)-1)",
+            "if(x, 1, 2) + if(y<0, if(x<0, 3, 4), 5)", "!x || !y", "2*if(x>y, sin(x), cos(y))"
+    };
+    private static final double[] POINTS = {-2, -0.5, 0, 0.5, 1.5, 3};
+    private MathParser parser;
+    private int calls;
+
+    @Before
+    public void setUp() {
+        parser = new MathParser();
+        parser.addVariable("x", 0);
+        parser.addVariable("y", 0);
+        parser.addPrimitiveFunction("counted", arg -> {
+            ++calls;
+            return arg;
+        }, false);
+    }
+
+    @Test
+    public void semanticsTest() {
+        assertEquals(2, evaluate(parser, "if(x>0, sqrt(x), -x)", 4, 0), 0);
+        assertEquals(4, evaluate(parser, "if(x>0, sqrt(x), -x)", -4, 0), 0);
+        assertEquals(1, evaluate(parser, "x>1&&y<2", 2, 1), 0);
+        assertEquals(0, evaluate(parser, "x>1&&y<2", 2, 3), 0);
+        assertEquals(1, evaluate(parser, "x>1&&y<2 || x<0", -1, 3), 0);
+        assertEquals(0, evaluate(parser, "!(x>1)", 2, 0), 0);
+        assertEquals(1, evaluate(parser, "!x", 0, 0), 0);
+        assertEquals(1, evaluate(parser, "x && y", 5, -3), 0);
+        assertEquals(7, evaluate(parser, "1 + if(x, 6, 0)", Double.NaN, 0), 0);
+    }
+
+    @Test
+    public void untakenBranchIsNotEvaluatedTest() {
+        assertEquals(3, evaluate(parser, "if(x>0, counted(x), counted(-x))", 3, 0), 0);
+        assertEquals(1, calls);
+        assertEquals(0, evaluate(parser, "x>5 && counted(y)>0", 3, 1), 0);
+        assertEquals(1, evaluate(parser, "x>1 || counted(y)>0", 3, 1), 0);
+        assertEquals(1, calls);
+
+        final CompiledExpression expression = new CommonSubexpressionEliminator(parser.getRegistry())
+                .eliminate(parser.compile("if(x>0, counted(y)*2, 1) + if(x>0, counted(y)*2, 1)"));
+        calls = 0;
+        assertEquals(2, expression.evaluate(frame(expression, -1, 4)), 0);
+        assertEquals(0, calls);
+        calls = 0;
+        new StackCompiler().compile(expression).evaluate(frame(expression, -1, 4));
+        new BytecodeCompiler().compile(expression).evaluate(frame(expression, -1, 4));
+        assertEquals(0, calls);
+    }
+
+    @Test
+    public void backEndsMatchTreeTest() {
+        assertMatchParser(parser, new ExpressionOptimizer(parser.getRegistry()), FORMULAS, POINTS);
+    }
+
+    @Test
+    public void derivativeTest() {
+        final Differentiator differentiator = new Differentiator(parser.getRegistry());
+        for (String formula : FORMULAS) {
+            final CompiledExpression derivative = differentiator.derivative(parser.compile(formula), "x");
+            for (double x : POINTS) {
+                for (double y : POINTS) {
+                    final double h = 1e-7;
+                    final double slope = (evaluate(parser, formula, x + h, y) - evaluate(parser, formula, x - h, y))
+                            / (2 * h);
+                    final double actual = derivative.evaluate(frame(derivative, x, y));
+                    if (Math.abs(slope) < 1e3 && Double.isFinite(actual)) {
+                        assertEquals(formula + " d/dx at " + x + "," + y, slope, actual, 1e-4);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void batchTest() {
+        final int rows = 3000;
+        final double[] xs = new double[rows], ys = new double[rows];
+        for (int row = 0; row < rows; ++row) {
+            // long runs of agreeing rows first, then rows that alternate within one block
+            xs[row] = row < 2048 ? (row < 1024 ? 1 : -1) * (row + 1) * 0.001 : Math.sin(row);
+            ys[row] = Math.cos(row);
+        }
+        for (String formula : FORMULAS) {
+            final CompiledExpression expression = new CommonSubexpressionEliminator(parser.getRegistry())
+                    .eliminate(parser.compile(formula));
+            final double[][] columns = new double[expression.getVariableCount()][];
+            for (int slot = 0; slot < columns.length; ++slot) {
+                columns[slot] = expression.getVariableNames().get(slot).equals("x") ? xs : ys;
+            }
+            final double[] out = new double[rows];
+            new BatchEvaluator(expression).evaluate(columns, out);
+            for (int row = 0; row < rows; ++row) {
+                assertEquals(formula, expression.evaluate(frame(expression, xs[row], ys[row])), out[row], 0);
+            }
+        }
+    }
+
+    @Test
+    public void liveTest() {
+        parser.addVariable("x", 2);
+        parser.addVariable("y", 1);
+        final LiveExpression expression = parser.parseLive("if(x>1 && y<2, counted(x)*3, y)");
+        assertEquals(6, expression.evaluate(), 0);
+        parser.addVariable("y", 5);
+        assertEquals(5, expression.evaluate(), 0);
+        assertEquals(1, calls);
+    }
+
+    @Test
+    public void constantConditionIsFoldedTest() {
+        final CompiledExpression folded = new ExpressionOptimizer(parser.getRegistry())
+                .optimize(parser.compile("if(4>3, x*2, counted(y)) * !(1>2 && counted(y))"));
+        assertEquals("(x * 2.0)", folded.getRoot().toString());
+    }
+
+    @Test
+    public void syntaxErrorsTest() {
+        for (String formula : new String[]{"if(x>1, 2)", "if x", "x & y", "x |y", "if(x, 1, 2"}) {
+            try {
+                parser.parse(formula);
+                fail("Expected " + formula + " to be rejected");
+            } catch (RuntimeException ex) {
+                assertTrue(ex.getMessage(), ex.getMessage() != null);
+            }
+        }
+        parser.addVariable("if", 3);
+        assertEquals(4, parser.parse("if+1").evaluate(), 0);
+    }
+}
@@ -0,0 +1,115 @@
+package com.recursivedescentmathparser.tests;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.FunctionRegistry;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.derivative.Differentiator;
+import com.recursivedescentmathparser.parser.derivative.Gradient;
+import com.recursivedescentmathparser.parser.optimizer.CommonSubexpressionEliminator;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static com.recursivedescentmathparser.tests.BackEnds.frame;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DifferentiatorTest {
+
+    private static final double[] POINTS = {-2.5, -0.6, 0.3, 0.7, 1.6, 2.5};
+    private MathParser parser;
+    private Differentiator differentiator;
+
+    @Before
+    public void setUp() {
+        parser = new MathParser();
+        parser.addVariable("x", 0.5);
+        parser.addVariable("y", 1.5);
+        differentiator = new Differentiator(parser.getRegistry());
+    }
+
+    /**
+     * Compares d/dx with a central difference at every point where both are finite.
+     * @return number of points compared
+     */
+    private int assertMatchesFiniteDifferences(final String formula) {
+        final CompiledExpression expression = parser.compile(formula);
+        final CompiledExpression derivative = differentiator.derivative(expression, "x");
+        final double h = 1e-6;
+        int compared = 0;
+        for (double x : POINTS) {
+            final double expected = (expression.evaluate(frame(expression, x + h, 1.5))
+                    - expression.evaluate(frame(expression, x - h, 1.5))) / (2 * h);
+            final double actual = derivative.evaluate(frame(derivative, x, 1.5));
+            if (Double.isFinite(expected) && Double.isFinite(actual)) {
+                assertEquals(formula + " at " + x, expected, actual, 1e-5 * Math.max(1, Math.abs(expected)));
+                ++compared;
+            }
+        }
+        return compared;
+    }
+
+    @Test
+    public void builtinsTest() {
+        for (String function : FunctionRegistry.defaults().getFunctions().keySet()) {
+            assertTrue(function, assertMatchesFiniteDifferences(function + "(x)") > 0);
+            assertMatchesFiniteDifferences(function + "(x*y-x/4)");
+        }
+        for (String biFunction : FunctionRegistry.defaults().getBiFunctions().keySet()) {
+            assertTrue(biFunction, assertMatchesFiniteDifferences(biFunction + "(x*x+1,y)") > 0);
+            assertTrue(biFunction, assertMatchesFiniteDifferences(biFunction + "(y+3,x*x+1)") > 0);
+        }
+        final String[] formulas = {"x^3", "y^x", "(x*x+1)^(x/2)", "3e-x", "x*x>=y", "x/(y+x*x)", "-(x-y)*-x"};
+        for (String formula : formulas) {
+            assertTrue(formula, assertMatchesFiniteDifferences(formula) > 0);
+        }
+    }
+
+    @Test
+    public void simplifiedDerivativeTest() {
+        final CompiledExpression derivative = differentiator.derivative(parser.compile("x^3 + 2*y"), "x");
+        assertEquals(3 * 4.0, derivative.evaluate(frame(derivative, 2, 7)), 0);
+        assertEquals(0, differentiator.derivative(parser.compile("sin(y)"), "x").evaluate(new double[]{0, 0, 0, 0}),
+                0);
+        assertEquals("(2.0 * y)", differentiator.derivative(parser.compile("sqr(y) + sin(Pi)"), "y").getRoot()
+                .toString());
+    }
+
+    @Test
+    public void registeredDerivativeTest() {
+        parser.addFunction("cubed", arg -> arg * arg * arg, arg -> 3 * arg * arg);
+        parser.addFunction("plain", arg -> arg + 1);
+        final Differentiator withUserFunctions = new Differentiator(parser.getRegistry());
+        final CompiledExpression derivative = withUserFunctions.derivative(parser.compile("cubed(sin(x))"), "x");
+        assertEquals(3 * Math.pow(Math.sin(0.8), 2) * Math.cos(0.8), derivative.evaluate(frame(derivative, 0.8, 0)),
+                1e-12);
+        assertEquals(0, withUserFunctions.derivative(parser.compile("plain(y)"), "x").getRoot().evaluate(null), 0);
+        try {
+            withUserFunctions.derivative(parser.compile("plain(x)"), "x");
+            fail("Expected a function without a derivative to be rejected");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains("plain"));
+        }
+    }
+
+    @Test
+    public void gradientTest() {
+        final CompiledExpression expression = new CommonSubexpressionEliminator(parser.getRegistry())
+                .eliminate(parser.compile("sqrt(x*x+y*y)*sin(x*y) + sqrt(x*x+y*y)"));
+        final Gradient gradient = differentiator.gradient(expression, "x", "y");
+        assertEquals(Arrays.asList("x", "y"), gradient.getDifferentiatedVariables());
+        final double[] frame = gradient.newFrame();
+        frame[gradient.indexOf("x")] = 3;
+        frame[gradient.indexOf("y")] = 4;
+        final double r = 5, s = Math.sin(12), c = Math.cos(12);
+        final double[] expected = {r * s + r, 3 / r * s + r * 4 * c + 3 / r, 4 / r * s + r * 3 * c + 4 / r};
+        assertArrayEquals(expected, gradient.evaluate(frame), 1e-12);
+        final double[] out = new double[3];
+        gradient.evaluate(frame, out);
+        assertArrayEquals(expected, out, 1e-12);
+        assertEquals(2, differentiator.gradient(expression).getDifferentiatedVariables().size());
+    }
+}
@@ -0,0 +1,86 @@
+package com.recursivedescentmathparser.tests;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.Expression;
+import com.recursivedescentmathparser.parser.ExpressionCompiler;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.ParsedExpression;
+import com.recursivedescentmathparser.parser.cache.ExpressionCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExpressionCacheTest {
+
+    private static final double EPS = 1e-9;
+    private MathParser parser;
+    private ExpressionCache cache;
+
+    @Before
+    public void setUp() {
+        parser = new MathParser();
+        cache = new ExpressionCache(100);
+        parser.setExpressionCache(cache);
+    }
+
+    private static CompiledExpression compiled(final Expression expression) {
+        return ((ParsedExpression) expression).getCompiledExpression();
+    }
+
+    @Test
+    public void normalizationTest() {
+        assertEquals("2 + 2", ExpressionCache.normalize("  2   +  2 "));
+        assertEquals("x>=1", ExpressionCache.normalize("x>=1"));
+        final CompiledExpression first = compiled(parser.parse("sqrt(49) +  14/2"));
+        assertSame(first, compiled(parser.parse(" sqrt(49) + 14/2  ")));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(14.0, parser.parse("sqrt(49) + 14/2").evaluate(), EPS);
+    }
+
+    @Test
+    public void registryAndDeclarationChangesInvalidateTest() {
+        parser.addVariable("x", 2);
+        parser.addFunction("f", arg -> arg);
+        final Expression before = parser.parse("f(x)*2");
+        assertEquals(4, before.evaluate(), EPS);
+        parser.addVariable("x", 5);
+        assertSame(compiled(before), compiled(parser.parse("f(x)*2")));
+
+        parser.addFunction("f", arg -> arg * arg);
+        final Expression after = parser.parse("f(x)*2");
+        assertNotSame(compiled(before), compiled(after));
+        assertEquals(50, after.evaluate(), EPS);
+
+        parser.addVariable("f", 3);
+        try {
+            parser.parse("f(x)*2");
+            fail("f is a variable now, the cached function call must not be reused");
+        } catch (RuntimeException expected) {
+            assertEquals(15, parser.parse("f*x").evaluate(), EPS);
+        }
+    }
+
+    @Test
+    public void evictionTest() {
+        final ExpressionCache small = new ExpressionCache(10);
+        final ExpressionCompiler compiler = parser.compiler().withCache(small);
+        for (int i = 0; i < 10; ++i) {
+            compiler.compile(i + "+1");
+        }
+        for (int i = 10; i < 50; ++i) {
+            compiler.compile(i + "+1");
+            compiler.compile("0+1");
+        }
+        assertTrue(small.size() <= 10);
+        assertTrue(small.getEvictionCount() > 0);
+        final long hits = small.getHitCount();
+        assertEquals(1.0, compiler.compile("0+1").evaluate(new double[0]), EPS);
+        assertEquals(hits + 1, small.getHitCount());
+    }
+}
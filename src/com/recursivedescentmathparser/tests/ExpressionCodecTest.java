@@ -0,0 +1,109 @@
+package com.recursivedescentmathparser.tests;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.optimizer.CommonSubexpressionEliminator;
+import com.recursivedescentmathparser.parser.optimizer.ExpressionOptimizer;
+import com.recursivedescentmathparser.parser.serialization.ExpressionCodec;
+import com.recursivedescentmathparser.parser.serialization.ExpressionFormatException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExpressionCodecTest {
+
+    private static final double EPS = 1e-9;
+    private MathParser parser;
+    private ExpressionCodec codec;
+
+    @Before
+    public void setUp() {
+        parser = new MathParser();
+        parser.addVariable("x", 3);
+        parser.addVariable("y", 4);
+        parser.addPrimitiveFunction("twice", arg -> 2 * arg, true);
+        codec = new ExpressionCodec(parser.getRegistry());
+    }
+
+    private CompiledExpression optimize(final String formula) {
+        final CompiledExpression compiled = new ExpressionOptimizer(parser.getRegistry())
+                .optimize(parser.compile(formula));
+        return new CommonSubexpressionEliminator(parser.getRegistry()).eliminate(compiled);
+    }
+
+    @Test
+    public void roundTripTest() {
+        final CompiledExpression original = optimize("sqrt(sqr(x)+sqr(y))/sqr(x) + twice(x)^-0.5 + log(2,8) - -0.0"
+                + " + max(x>=y, 1e3) + 1234567");
+        final CompiledExpression decoded = codec.decode(codec.encode(original));
+        assertEquals(original.getRoot(), decoded.getRoot());
+        assertEquals(original.getVariableNames(), decoded.getVariableNames());
+        assertEquals(original.getFrameSize(), decoded.getFrameSize());
+        assertEquals(original.evaluate(original.newFrame()), decoded.evaluate(decoded.newFrame()), 0);
+        assertEquals(4, decoded.getDefaultValue(decoded.indexOf("y")), 0);
+        assertEquals(original.evaluate(new double[]{1, 2}), decoded.evaluate(new double[]{1, 2}), 0);
+    }
+
+    @Test
+    public void libraryTest() {
+        final Map<String, CompiledExpression> library = new LinkedHashMap<>();
+        library.put("hypot", optimize("sqrt(x*x+y*y)"));
+        library.put("double", optimize("twice(y)"));
+        library.put("constant", optimize("2*Pi"));
+        final byte[] blob = codec.encodeLibrary(library);
+
+        final ByteBuffer mapped = ByteBuffer.allocateDirect(blob.length + 3);
+        mapped.put(blob).put(new byte[]{1, 2, 3}).flip();
+        final Map<String, CompiledExpression> loaded = codec.decodeLibrary(mapped);
+        assertEquals(blob.length, mapped.position());
+        assertEquals(Arrays.asList("hypot", "double", "constant"), Arrays.asList(loaded.keySet().toArray()));
+        assertEquals(5, loaded.get("hypot").evaluate(loaded.get("hypot").newFrame()), EPS);
+        assertEquals(8, loaded.get("double").evaluate(new double[]{4}), EPS);
+        assertEquals(2 * Math.PI, loaded.get("constant").evaluate(loaded.get("constant").newFrame()), EPS);
+        assertNull(loaded.get("missing"));
+    }
+
+    private void assertRejected(final ExpressionCodec codec, final byte[] blob, final String message) {
+        try {
+            codec.decode(blob);
+            fail("Expected the blob to be rejected");
+        } catch (ExpressionFormatException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains(message));
+        }
+    }
+
+    @Test
+    public void mismatchesAreRejectedTest() {
+        final byte[] blob = codec.encode(optimize("twice(x)+1"));
+
+        parser.addPrimitiveFunction("other", arg -> arg);
+        assertRejected(new ExpressionCodec(parser.getRegistry()), blob, "different function registry");
+
+        final byte[] otherVersion = blob.clone();
+        otherVersion[5] = 2;
+        assertRejected(codec, otherVersion, "Unsupported format version 2");
+        assertRejected(codec, Arrays.copyOf(blob, blob.length - 2), "Truncated");
+        assertRejected(codec, new byte[]{1, 2, 3, 4, 5, 6}, "Not a compiled expression blob");
+    }
+
+    @Test
+    public void unregisteredFunctionsAreNotWrittenTest() {
+        final CompiledExpression compiled = parser.compile("twice(x)");
+        parser.addPrimitiveFunction("twice", arg -> arg + arg, true);
+        try {
+            new ExpressionCodec(parser.getRegistry()).encode(compiled);
+            fail("Expected a replaced function to be rejected");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains("twice"));
+        }
+    }
+}
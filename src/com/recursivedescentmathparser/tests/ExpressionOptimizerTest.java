@@ -0,0 +1,78 @@
+package com.recursivedescentmathparser.tests;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.ast.ConstantNode;
+import com.recursivedescentmathparser.parser.ast.FunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.VariableNode;
+import com.recursivedescentmathparser.parser.optimizer.ExpressionOptimizer;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExpressionOptimizerTest {
+
+    private MathParser parser;
+    private ExpressionOptimizer optimizer;
+
+    @Before
+    public void setUp() {
+        parser = new MathParser();
+        parser.addVariable("x", 0);
+        optimizer = new ExpressionOptimizer(parser.getRegistry(), ExpressionOptimizer.BUILTIN_CONSTANTS);
+    }
+
+    private CompiledExpression optimize(final String formula) {
+        return optimizer.optimize(parser.compile(formula));
+    }
+
+    @Test
+    public void constantFoldingTest() {
+        for (String formula : new String[]{"2*Pi/3", "log(49,7)", "5e-1*(exp(4) + exp(-4))", "--4", "10==10",
+                "(sin(Pi/4))^2+(cos(Pi/4))^2", "max((2+3),(2+2))"}) {
+            final CompiledExpression optimized = optimize(formula);
+            assertTrue(formula, optimized.getRoot() instanceof ConstantNode);
+            assertEquals(formula, parser.parse(formula).evaluate(), optimized.evaluate(optimized.newFrame()), 0);
+        }
+    }
+
+    @Test
+    public void identitiesTest() {
+        for (String formula : new String[]{"x*1", "1*x", "x/1", "x-0", "--x", "x^1", "+(--(x))*1"}) {
+            assertTrue(formula, optimize(formula).getRoot() instanceof VariableNode);
+        }
+        assertEquals("(x + 0.0)", optimize("x+0").getRoot().toString());
+        assertEquals("-(x)", optimize("x*-1").getRoot().toString());
+    }
+
+    @Test
+    public void strengthReductionTest() {
+        assertEquals("(x * x)", optimize("sqr(x)").getRoot().toString());
+        assertEquals("(x * x)", optimize("x^2").getRoot().toString());
+        assertEquals("((x * x) * x)", optimize("cube(x)").getRoot().toString());
+        assertEquals(parser.compile("x^3").getRoot(), optimize("x^3").getRoot());
+        final CompiledExpression original = parser.compile("sqrt(sqr(x)+cube(x))/x^2 + x^3");
+        final CompiledExpression expression = optimizer.optimize(original);
+        for (double x = -49.9; x < 50; x += 0.37) {
+            assertEquals(original.evaluate(new double[]{x}), expression.evaluate(new double[]{x}), 0);
+        }
+        // 73.08781907032909^3 rounds differently as x*x*x
+        assertEquals(Math.pow(73.08781907032909, 3), optimize("x^3").evaluate(new double[]{73.08781907032909}), 0);
+    }
+
+    @Test
+    public void impureFunctionsAreNotFoldedTest() {
+        final int[] calls = {0};
+        parser.addPrimitiveFunction("counted", arg -> arg + ++calls[0]);
+        parser.addPrimitiveFunction("twice", arg -> 2 * arg, true);
+        optimizer = new ExpressionOptimizer(parser.getRegistry(), ExpressionOptimizer.BUILTIN_CONSTANTS);
+        assertTrue(optimize("counted(1)").getRoot() instanceof FunctionCallNode);
+        assertTrue(optimize("twice(Pi)").getRoot() instanceof ConstantNode);
+        final CompiledExpression expression = optimize("counted(1)");
+        expression.evaluate(expression.newFrame());
+        expression.evaluate(expression.newFrame());
+        assertEquals(2, calls[0]);
+    }
+}
@@ -0,0 +1,124 @@
+package com.recursivedescentmathparser.tests;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.ExpressionCompiler;
+import com.recursivedescentmathparser.parser.FunctionRegistry;
+import com.recursivedescentmathparser.parser.cache.ExpressionCache;
+import com.recursivedescentmathparser.parser.loader.FormulaError;
+import com.recursivedescentmathparser.parser.loader.FormulaFileLoader;
+import com.recursivedescentmathparser.parser.loader.FormulaLibrary;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FormulaFileLoaderTest {
+
+    private static final double EPS = 1e-9;
+    private ExpressionCompiler compiler;
+
+    @Before
+    public void setUp() {
+        compiler = new ExpressionCompiler(FunctionRegistry.defaults(), Collections.singletonMap("x", 2.0));
+    }
+
+    private static double evaluate(final CompiledExpression expression) {
+        return expression.evaluate(expression.newFrame());
+    }
+
+    @Test
+    public void loadFileTest() throws IOException {
+        final Path file = Files.createTempFile("formulas", ".txt");
+        try {
+            Files.write(file, Arrays.asList(
+                    "# rules",
+                    "area = 3*x^2",
+                    "",
+                    "  double=2*x\r",
+                    "broken = (x+1",
+                    "unknown = 1 + foo(x)",
+                    "= 1",
+                    "area = 0",
+                    "last=max(x,10)"), StandardCharsets.US_ASCII);
+            final FormulaLibrary library = new FormulaFileLoader(compiler, ForkJoinPool.commonPool(), 8).load(file);
+
+            assertEquals(9, library.getLineCount());
+            assertEquals(Arrays.asList("area", "double", "last"), Arrays.asList(library.getNames().toArray()));
+            assertEquals(12, evaluate(library.get("area")), EPS);
+            assertEquals(4, evaluate(library.get("double")), EPS);
+            assertEquals(10, evaluate(library.get("last")), EPS);
+            assertNull(library.get("broken"));
+
+            assertEquals(4, library.getErrors().size());
+            final FormulaError broken = library.getErrors().get(0);
+            assertEquals(5, broken.getLine());
+            assertEquals(14, broken.getColumn());
+            assertEquals("broken", broken.getName());
+            assertEquals("Unbalanced parentheses", broken.getMessage());
+            final FormulaError unknown = library.getErrors().get(1);
+            assertEquals(6, unknown.getLine());
+            assertEquals(15, unknown.getColumn());
+            assertEquals(7, library.getErrors().get(2).getLine());
+            assertNull(library.getErrors().get(2).getName());
+            assertEquals(8, library.getErrors().get(3).getLine());
+            assertTrue(library.getErrors().get(3).getMessage().contains("first defined on line 2"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void cachedErrorColumnsTest() {
+        final ExpressionCompiler cached = compiler.withCache(new ExpressionCache(16));
+        final String lines = "unknown =   1 +   foo(x)\n"
+                + "  broken=  (x+1\n"
+                + "again = 1 + foo(x)\n";
+        for (int pass = 0; pass < 2; ++pass) {
+            final FormulaLibrary library = new FormulaFileLoader(cached)
+                    .load(ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8)));
+            assertEquals(3, library.getErrors().size());
+            assertEquals(19, library.getErrors().get(0).getColumn());
+            assertEquals(16, library.getErrors().get(1).getColumn());
+            assertEquals(13, library.getErrors().get(2).getColumn());
+        }
+    }
+
+    @Test
+    public void parallelChunksMatchSequentialTest() {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; ++i) {
+            text.append("f").append(i).append(" = ").append(i % 97 == 0 ? "x+" : "x*" + i).append('\n');
+        }
+        final ByteBuffer content = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.US_ASCII));
+        final FormulaLibrary sequential = new FormulaFileLoader(compiler, ForkJoinPool.commonPool(),
+                Integer.MAX_VALUE).load(content);
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        final FormulaLibrary parallel;
+        try {
+            parallel = new FormulaFileLoader(compiler, pool, 100).load(content);
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(0, content.position());
+
+        assertEquals(5000, parallel.getLineCount());
+        assertEquals(sequential.getNames().toString(), parallel.getNames().toString());
+        assertEquals(sequential.getErrors().toString(), parallel.getErrors().toString());
+        assertEquals(52, parallel.getErrors().size());
+        assertEquals(98, parallel.getErrors().get(1).getLine());
+        assertFalse(parallel.contains("f97"));
+        assertEquals(2 * 4999, evaluate(parallel.get("f4999")), EPS);
+    }
+}
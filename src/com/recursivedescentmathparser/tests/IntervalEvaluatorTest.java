@@ -0,0 +1,200 @@
+package com.recursivedescentmathparser.tests;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.interval.Interval;
+import com.recursivedescentmathparser.parser.interval.IntervalEvaluator;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IntervalEvaluatorTest {
+
+    private static final String[] FORMULAS = {
+            "sin(x)", "cos(x)", "tg(x)", "ctg(x)", "sec(x)", "cosec(x)", "arcsin(x)", "arccos(x)", "arctg(x)",
+            "arcsec(x)", "arccosec(x)", "arcctg(x)", "sh(x)", "ch(x)", "th(x)", "cth(x)", "sech(x)", "cosech(x)",
+            "arcsh(x)", "arcch(x)", "arcth(x)", "arcsech(x)", "arccosech(x)", "arccth(x)", "sqr(x)", "cube(x)",
+            "sqrt(x)", "cbrt(x)", "signum(x)", "abs(x)", "exp(x)", "ln(x)", "log2(x)", "log4(x)", "log8(x)",
+            "log10(x)", "log16(x)", "x^y", "x>=y", "x<=y", "x>y", "x<y", "x==y", "x!=y", "(x)e(y)", "max(x, y)",
+            "min(x, y)", "hypot(x, y)", "log(x, y)", "sum(x, y, x*y)", "avg(x, y, 1)", "min(x, y, -x)",
+            "max(x, y, -y)", "poly(x, 1, y, 3)", "x + y", "x - y", "x*y", "x/y", "-x", "!(x>y)",
+            "x>0 && y>0", "x<0 || y<0", "if(x>y, sqrt(x - y), ln(y - x))", "sin(x)^2 + cos(x)^2",
+            "exp(-sqr(x)) * sin(10*y)", "(x - y)/(x + y)", "sqrt(sqr(x) + sqr(y)) - hypot(x, y)"
+    };
+    private static final double[] SPECIAL = {0, -0.0, 1, -1, Math.PI / 2, -Math.PI, 1e154, -1e160, 710, -710, 2};
+    private MathParser parser;
+    private IntervalEvaluator evaluator;
+
+    @Before
+    public void setUp() {
+        parser = new MathParser();
+        parser.addVariable("x", 0);
+        parser.addVariable("y", 0);
+        evaluator = new IntervalEvaluator(parser.getRegistry());
+    }
+
+    private double randomBound(final Random random) {
+        switch (random.nextInt(6)) {
+            case 0:
+                return SPECIAL[random.nextInt(SPECIAL.length)];
+            case 1:
+                return (random.nextBoolean() ? 1 : -1) * Math.pow(10, random.nextInt(40) - 20);
+            case 2:
+                return random.nextInt(3) - 1.0 + random.nextDouble() * 1e-9;
+            case 3:
+                return random.nextBoolean() ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+            default:
+                return random.nextGaussian() * 4;
+        }
+    }
+
+    private Interval randomInterval(final Random random) {
+        final double a = randomBound(random), b = random.nextInt(4) == 0 ? a : randomBound(random);
+        return Interval.of(Math.min(a, b), Math.max(a, b));
+    }
+
+    private static List<Double> samples(final Interval range, final Random random) {
+        final List<Double> samples = new ArrayList<>();
+        samples.add(range.getLo());
+        samples.add(range.getHi());
+        for (double special : SPECIAL) {
+            if (range.contains(special)) samples.add(special);
+        }
+        final double lo = Math.max(range.getLo(), -Double.MAX_VALUE), hi = Math.min(range.getHi(), Double.MAX_VALUE);
+        for (int i = 0; i < 8; ++i) {
+            final double sample = lo + random.nextDouble() * (hi - lo);
+            if (range.contains(sample)) samples.add(sample);
+        }
+        if (lo < hi) {
+            samples.add(Math.nextUp(lo));
+            samples.add(Math.nextDown(hi));
+        }
+        return samples;
+    }
+
+    @Test
+    public void enclosesEveryComputedValueTest() {
+        final Random random = new Random(23);
+        for (String formula : FORMULAS) {
+            final CompiledExpression expression = parser.compile(formula);
+            final int x = expression.indexOf("x"), y = expression.indexOf("y");
+            for (int trial = 0; trial < 300; ++trial) {
+                final Interval[] ranges = new Interval[expression.getVariableCount()];
+                for (int slot = 0; slot < ranges.length; ++slot) {
+                    ranges[slot] = randomInterval(random);
+                }
+                final Interval enclosure = evaluator.evaluate(expression, ranges);
+                final double[] variables = new double[expression.getFrameSize()];
+                for (double xValue : x < 0 ? Collections.singletonList(0.0) : samples(ranges[x], random)) {
+                    for (double yValue : y < 0 ? Collections.singletonList(0.0) : samples(ranges[y], random)) {
+                        if (x >= 0) variables[x] = xValue;
+                        if (y >= 0) variables[y] = yValue;
+                        final double value = expression.evaluate(variables);
+                        if (!enclosure.contains(value)) {
+                            fail(formula + " at x=" + xValue + ", y=" + yValue + " is " + value + ", outside "
+                                    + enclosure + " for x in " + (x < 0 ? "-" : ranges[x]) + ", y in "
+                                    + (y < 0 ? "-" : ranges[y]));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tightEnclosuresTest() {
+        assertEquals(Interval.of(0, 4), evaluator.evaluate(parser.compile("x^2"), Interval.of(-1, 2)));
+        assertEquals(Interval.of(0, 4), evaluator.evaluate(parser.compile("sqr(x)"), Interval.of(-1, 2)));
+        assertEquals(Interval.of(-1, 8), evaluator.evaluate(parser.compile("cube(x)"), Interval.of(-1, 2)));
+        assertEquals(Interval.of(-1, 1), evaluator.evaluate(parser.compile("sin(x)"), Interval.of(-2, 2)));
+        assertEquals(Interval.of(0, Math.sin(3)).getLo(),
+                evaluator.evaluate(parser.compile("sin(x)"), Interval.of(0, 3)).getLo(), 0);
+        assertEquals(1, evaluator.evaluate(parser.compile("sin(x)"), Interval.of(0, 3)).getHi(), 0);
+        assertEquals(Interval.of(2, 3), evaluator.evaluate(parser.compile("sqrt(x)"), Interval.of(4, 9)));
+        assertEquals(Interval.point(1), evaluator.evaluate(parser.compile("x>y"), Interval.of(2, 3),
+                Interval.of(0, 1)));
+
+        final Interval undefined = evaluator.evaluate(parser.compile("sqrt(x)"), Interval.of(-4, 9));
+        assertEquals(Interval.of(0, 3), Interval.of(undefined.getLo(), undefined.getHi()));
+        assertTrue(undefined.mayBeNaN());
+        assertTrue(evaluator.evaluate(parser.compile("ln(x)"), Interval.of(-2, -1)).isEmpty());
+        assertEquals(Interval.ENTIRE, evaluator.evaluate(parser.compile("1/x"), Interval.of(-1, 1)));
+    }
+
+    @Test
+    public void conditionalsEvaluateOnlyReachableBranchesTest() {
+        final CompiledExpression expression = parser.compile("if(x>=0, sqrt(x), -x)");
+        assertEquals(Interval.of(1, 2), evaluator.evaluate(expression, Interval.of(1, 4)));
+        assertEquals(Interval.of(1, 4), evaluator.evaluate(expression, Interval.of(-4, -1)));
+        // both branches are evaluated over the whole range
+        final Interval both = evaluator.evaluate(expression, Interval.of(-4, 4));
+        assertEquals(-4, both.getLo(), 0);
+        assertEquals(4, both.getHi(), 0);
+        assertTrue(both.mayBeNaN());
+    }
+
+    @Test
+    public void userFunctionsTest() {
+        parser.addPrimitiveFunction("twice", v -> 2 * v, true);
+        final CompiledExpression expression = parser.compile("twice(x) + y");
+        evaluator = new IntervalEvaluator(parser.getRegistry());
+        assertEquals(Interval.point(7), evaluator.evaluate(expression, Interval.point(3), Interval.point(1)));
+        final Interval unknown = evaluator.evaluate(expression, Interval.of(0, 1), Interval.point(1));
+        assertEquals(Double.NEGATIVE_INFINITY, unknown.getLo(), 0);
+        assertTrue(unknown.mayBeNaN());
+        final IntervalEvaluator withTwice = evaluator.withFunction("twice",
+                v -> Interval.of(2 * v.getLo(), 2 * v.getHi()));
+        assertEquals(Interval.of(1, 3), withTwice.evaluate(expression, Interval.of(0, 1), Interval.point(1)));
+
+        final CompiledExpression overridden = parser.compile("sin(x) + y");
+        parser.addFunction("sin", v -> 5 * v);
+        assertEquals(Interval.of(-1, 1), evaluator.evaluate(overridden, Interval.of(-2, 2)));
+        assertEquals(Interval.ENTIRE.getHi(), evaluator.evaluate(parser.compile("sin(x)"), Interval.of(-2, 2)).getHi(),
+                0);
+        assertEquals(Interval.of(3, 4), evaluator.evaluate(parser.compile("x + y"),
+                Collections.singletonMap("x", Interval.of(3, 4))));
+    }
+
+    /**
+     * Finds the roots of a function by bisection, discarding every sub-interval whose enclosure misses 0.
+     */
+    @Test
+    public void rootFindingByCullingTest() {
+        final CompiledExpression expression = parser.compile("sin(x) - x/10");
+        final List<Interval> pending = new ArrayList<>(), roots = new ArrayList<>();
+        pending.add(Interval.of(-20, 20));
+        int evaluations = 0;
+        while (!pending.isEmpty()) {
+            final Interval range = pending.remove(pending.size() - 1);
+            ++evaluations;
+            if (!evaluator.evaluate(expression, range).contains(0)) {
+                continue;
+            }
+            if (range.getWidth() < 1e-6) {
+                if (roots.isEmpty() || range.getLo() - roots.get(roots.size() - 1).getHi() > 1e-3) {
+                    roots.add(range);
+                } else {
+                    roots.set(roots.size() - 1, roots.get(roots.size() - 1).hull(range));
+                }
+                continue;
+            }
+            final double middle = (range.getLo() + range.getHi()) / 2;
+            pending.add(Interval.of(middle, range.getHi()));
+            pending.add(Interval.of(range.getLo(), middle));
+        }
+        assertEquals(7, roots.size());
+        for (Interval root : roots) {
+            final double at = (root.getLo() + root.getHi()) / 2;
+            assertEquals(0, Math.sin(at) - at / 10, 1e-5);
+        }
+        assertTrue("Culling should discard most of the range, took " + evaluations, evaluations < 5000);
+    }
+}
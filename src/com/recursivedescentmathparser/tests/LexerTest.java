@@ -0,0 +1,68 @@
+package com.recursivedescentmathparser.tests;
+
+import com.recursivedescentmathparser.parser.MathParser;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LexerTest {
+
+    private static final double EPS = 1e-9;
+    private MathParser parser;
+
+    @Before
+    public void setUp() {
+        parser = new MathParser();
+    }
+
+    private void assertParseFails(final String expression, final String message) {
+        try {
+            parser.parse(expression);
+            fail("Expected " + expression + " to be rejected");
+        } catch (RuntimeException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains(message));
+        }
+    }
+
+    @Test
+    public void operatorsSharingPrefixesTest() {
+        parser.addPrimitiveBinaryOperator("**", Math::pow);
+        parser.addPrimitiveBinaryOperator("<<", (a, b) -> a * Math.pow(2, b));
+        parser.addPrimitiveBinaryOperator("<<<", (a, b) -> a * Math.pow(8, b));
+        assertEquals(1024, parser.parse("2**10").evaluate(), EPS);
+        assertEquals(12, parser.parse("3<<2").evaluate(), EPS);
+        assertEquals(64, parser.parse("1<<<2").evaluate(), EPS);
+        assertEquals(1, parser.parse("1<2").evaluate(), EPS);
+        assertEquals(1, parser.parse("2>=2").evaluate(), EPS);
+        assertEquals(5e-7, parser.parse("5e-7").evaluate(), EPS);
+        assertParseFails("2<<<<1", "Unknown operator <<<<");
+        assertParseFails("2=1", "Unknown operator =");
+    }
+
+    @Test
+    public void operatorsOnlyFollowOperandsTest() {
+        assertEquals(Math.exp(1), parser.parse("exp(1)").evaluate(), EPS);
+        assertEquals(4, parser.parse("(1+1)^2").evaluate(), EPS);
+        assertParseFails("^2", "Unexpected: ^");
+        parser.addVariable("x", 1);
+        assertParseFails("(x >= 1)", "Unbalanced parentheses");
+    }
+
+    @Test
+    public void identifierResolutionTest() {
+        for (int i = 0; i < 500; ++i) {
+            final int offset = i;
+            parser.addPrimitiveFunction("f" + i, arg -> arg + offset);
+        }
+        assertEquals(10 + 499, parser.parse("f499(10)").evaluate(), EPS);
+        assertEquals(2, parser.parse("f1(sin(0))+max(0,f1(0))").evaluate(), EPS);
+
+        parser.addVariable("f7", 3);
+        assertParseFails("f7(1)", "Unexpected character: (");
+        assertEquals(6, parser.parse("f7*2").evaluate(), EPS);
+        assertParseFails("g(1)", "Unknown function or variable g");
+    }
+}
@@ -0,0 +1,94 @@
+package com.recursivedescentmathparser.tests;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.LiveExpression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.optimizer.LiveFormulaSet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class LiveFormulaSetTest {
+
+    private MathParser parser;
+
+    @Before
+    public void setUp() {
+        parser = new MathParser();
+        parser.addVariable("a", 1);
+        parser.addVariable("b", 2);
+        parser.addVariable("c", 3);
+    }
+
+    @Test
+    public void matchesTreeEvaluationTest() {
+        final Map<String, CompiledExpression> formulas = new LinkedHashMap<>();
+        formulas.put("first", parser.compile("sqrt(a*a+b*b)*sin(c) + max(a,b)"));
+        formulas.put("second", parser.compile("sqrt(a*a+b*b)/(1+c^2)"));
+        formulas.put("third", parser.compile("E*c - log(2,8)"));
+        formulas.put("constant", parser.compile("42"));
+        final LiveFormulaSet live = LiveFormulaSet.compile(parser.getRegistry(), formulas);
+
+        final Random random = new Random(7);
+        final String[] names = {"a", "b", "c"};
+        for (int step = 0; step < 200; ++step) {
+            final String name = names[random.nextInt(names.length)];
+            final double value = random.nextInt(5) - 2 + random.nextDouble();
+            live.set(name, value);
+            parser.addVariable(name, value);
+            final double[] results = live.evaluate();
+            int index = 0;
+            for (CompiledExpression formula : formulas.values()) {
+                final double[] values = new double[formula.getVariableCount()];
+                for (int slot = 0; slot < values.length; ++slot) {
+                    values[slot] = parser.getVariables().get(formula.getVariableNames().get(slot));
+                }
+                final double expected = formula.evaluate(values);
+                assertEquals(expected, results[index], 0);
+                assertEquals(expected, live.get(index++), 0);
+            }
+        }
+    }
+
+    @Test
+    public void onlyDirtyPathIsRecomputedTest() {
+        final Map<String, CompiledExpression> formulas = new LinkedHashMap<>();
+        formulas.put("left", parser.compile("sin(a)*b + cos(c)"));
+        formulas.put("right", parser.compile("sin(a)*b - 1"));
+        final LiveFormulaSet live = LiveFormulaSet.compile(parser.getRegistry(), formulas);
+        assertEquals(5, live.getCellCount());
+
+        live.evaluate();
+        assertEquals(5, live.getRecomputedCount());
+        live.set("c", 0);
+        assertEquals(Math.sin(1) * 2 + 1, live.get("left"), 1e-12);
+        assertEquals(7, live.getRecomputedCount());
+        live.set("c", 0).set("a", 1);
+        live.evaluate();
+        assertEquals(7, live.getRecomputedCount());
+        live.set("b", 3);
+        assertEquals(Math.sin(1) * 3 - 1, live.get("right"), 1e-12);
+        assertEquals(10, live.getRecomputedCount());
+    }
+
+    @Test
+    public void parseLiveTest() {
+        final int[] calls = {0};
+        parser.addPrimitiveFunction("counted", arg -> {
+            ++calls[0];
+            return arg;
+        });
+        final LiveExpression expression = parser.parseLive("exp(a)*sin(b) + counted(c)");
+        for (double a = -2; a <= 2; ++a) {
+            parser.addVariable("a", a);
+            assertEquals(Math.exp(a) * Math.sin(2) + 3, expression.evaluate(), 1e-12);
+        }
+        assertEquals(5, calls[0]);
+        assertEquals(5 + 4 * 4, expression.getFormula().getRecomputedCount());
+    }
+}
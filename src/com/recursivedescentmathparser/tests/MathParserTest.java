@@ -1,10 +1,21 @@
 package com.recursivedescentmathparser.tests;
 
+import com.recursivedescentmathparser.parser.CompiledExpression;
 import com.recursivedescentmathparser.parser.Expression;
+import com.recursivedescentmathparser.parser.ExpressionCompiler;
 import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.VariableFrame;
+import com.sun.management.ThreadMXBean;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -266,4 +277,91 @@ public class MathParserTest {
             assertEquals(Math.cos(Math.toRadians(angle)), cosine.evaluate(), EPS);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void variablesAreNotFrozenAtParseTimeTest() {
+        parser.addVariable("x", 1.0);
+        Expression sum = parser.parse("x + 1");
+        Expression product = parser.parse("2 * x * x - x / 4");
+        for (double x = -10.0; x <= 10.0; x += 0.5) {
+            parser.addVariable("x", x);
+            assertEquals(x + 1, sum.evaluate(), EPS);
+            assertEquals(2 * x * x - x / 4, product.evaluate(), EPS);
+        }
+    }
+
+    @Test
+    public void evaluationDoesNotAllocateTest() {
+        // com.sun.management.ThreadMXBean, the HotSpot extension that counts allocated bytes
+        if (!(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean)) {
+            return;
+        }
+        final ThreadMXBean allocationBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!allocationBean.isThreadAllocatedMemorySupported() || !allocationBean.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+        parser.addVariable("x", 0.5);
+        Expression expression = parser.parse("sqrt(sqr(x) + cube(x)) * max(sin(x), cos(x)) - log(49,7) + (x>=0.5)");
+        double sink = 0;
+        for (int i = 0; i < 10000; ++i) {
+            sink += expression.evaluate();
+        }
+        final long threadId = Thread.currentThread().getId();
+        final long before = allocationBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100000; ++i) {
+            sink += expression.evaluate();
+        }
+        final long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+        assertEquals(0, allocated, 1024);
+        assertEquals(110000 * expression.evaluate(), sink, 1e-3);
+    }
+
+    @Test
+    public void slotIndexedEvaluationTest() {
+        parser.addVariable("x", 0);
+        parser.addVariable("y", 0);
+        CompiledExpression expression = parser.compile("sqrt(sqr(x)+sqr(y))/x + Pi");
+        assertEquals(0, expression.indexOf("x"));
+        assertEquals(1, expression.indexOf("y"));
+        assertEquals(2, expression.indexOf("Pi"));
+        assertEquals(-1, expression.indexOf("z"));
+        assertEquals(5.0 / 3 + 1, expression.evaluate(new double[]{3, 4, 1}), EPS);
+
+        VariableFrame frame = expression.newFrame();
+        final int x = frame.indexOf("x"), y = frame.indexOf("y");
+        for (double row = 1; row <= 100; ++row) {
+            frame.set(x, row).set(y, 2 * row);
+            assertEquals(Math.sqrt(5) + Math.PI, expression.evaluate(frame), EPS);
+        }
+    }
+
+    @Test
+    public void concurrentEvaluationTest() throws Exception {
+        parser.addVariable("x", 0);
+        final ExpressionCompiler compiler = parser.compiler();
+        final CompiledExpression expression = compiler.compile("sin(x)*cos(x) + x^2");
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Double>> results = new ArrayList<>();
+            for (int thread = 0; thread < 8; ++thread) {
+                final double offset = thread;
+                results.add(executor.submit(() -> {
+                    final VariableFrame frame = expression.newFrame();
+                    double maxError = 0;
+                    for (int i = 0; i < 20000; ++i) {
+                        final double x = offset + i * 1e-4;
+                        frame.set(0, x);
+                        final double expected = Math.sin(x) * Math.cos(x) + x * x;
+                        maxError = Math.max(maxError, Math.abs(expected - expression.evaluate(frame)));
+                    }
+                    return maxError;
+                }));
+            }
+            for (Future<Double> result : results) {
+                assertEquals(0, result.get(), EPS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
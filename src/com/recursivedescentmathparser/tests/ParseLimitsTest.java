@@ -0,0 +1,122 @@
+package com.recursivedescentmathparser.tests;
+
+import com.recursivedescentmathparser.parser.ExpressionCompiler;
+import com.recursivedescentmathparser.parser.ExpressionParseException;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.ParseLimits;
+import com.recursivedescentmathparser.parser.cache.ExpressionCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ParseLimitsTest {
+
+    private MathParser parser;
+
+    @Before
+    public void setUp() {
+        parser = new MathParser();
+        parser.addVariable("x", 3);
+    }
+
+    private static String repeat(final String text, final int count) {
+        final StringBuilder repeated = new StringBuilder();
+        for (int i = 0; i < count; ++i) {
+            repeated.append(text);
+        }
+        return repeated.toString();
+    }
+
+    private void assertRejected(final String formula, final ExpressionParseException.Reason reason,
+                                final int position) {
+        try {
+            parser.parse(formula);
+            fail("Expected " + (formula.length() > 40 ? formula.substring(0, 40) + "..." : formula)
+                    + " to be rejected");
+        } catch (ExpressionParseException ex) {
+            assertEquals(ex.getMessage(), reason, ex.getReason());
+            assertEquals(ex.getMessage(), position, ex.getPosition());
+        }
+    }
+
+    @Test
+    public void precedenceTest() {
+        assertEquals(-9, parser.parse("-x^2").evaluate(), 0);
+        assertEquals(512, parser.parse("2^3^2").evaluate(), 0);
+        assertEquals(18, parser.parse("2*x^2").evaluate(), 0);
+        assertEquals(Math.pow(2, -9), parser.parse("2^-x^2").evaluate(), 0);
+        assertEquals(Math.sin(9), parser.parse("sin(x)^2").evaluate(), 0);
+        assertEquals(Math.sin(3) * 2, parser.parse("sin x*2").evaluate(), 0);
+        assertEquals(2, parser.parse("!x>4 + 1").evaluate(), 0);
+        assertEquals(1, parser.parse("x-1-1==1 && 8/2/2==2").evaluate(), 0);
+    }
+
+    @Test
+    public void deepInputDoesNotOverflowTheStackTest() {
+        assertRejected(repeat("-", 100000) + "x", ExpressionParseException.Reason.TOO_DEEP, 1000);
+        assertRejected(repeat("(", 100000) + "x", ExpressionParseException.Reason.TOO_DEEP, 1000);
+        assertEquals(3, parser.parse(repeat("+", 100000) + "x").evaluate(), 0);
+
+        parser.setParseLimits(ParseLimits.DEFAULT.withMaxDepth(100000));
+        assertEquals(3, parser.parse(repeat("(", 50000) + "x" + repeat(")", 50000)).evaluate(), 0);
+        assertRejected(repeat("(", 50000) + "x" + repeat(")", 49999), ExpressionParseException.Reason.SYNTAX,
+                100000);
+    }
+
+    @Test
+    public void longFlatChainsAreTooDeepTest() {
+        assertRejected("x" + repeat("+x", 200000), ExpressionParseException.Reason.TOO_DEEP, 2002);
+        assertRejected("x" + repeat("*1", 200000), ExpressionParseException.Reason.TOO_DEEP, 2002);
+        assertRejected("x" + repeat("||x", 200000), ExpressionParseException.Reason.TOO_DEEP, 3000);
+        try {
+            parser.compile("x" + repeat("-1", 200000));
+            fail("Expected a flat chain to be rejected by compile as well");
+        } catch (ExpressionParseException ex) {
+            assertEquals(ExpressionParseException.Reason.TOO_DEEP, ex.getReason());
+        }
+        assertEquals(3000, parser.parse("x" + repeat("+x", 999)).evaluate(), 0);
+
+        parser.setParseLimits(ParseLimits.DEFAULT.withMaxDepth(3));
+        assertEquals(9, parser.parse("x+x+x").evaluate(), 0);
+        assertRejected("x+x+x+x", ExpressionParseException.Reason.TOO_DEEP, 7);
+    }
+
+    @Test
+    public void nodeAndLengthLimitsTest() {
+        parser.setParseLimits(ParseLimits.DEFAULT.withMaxNodes(5).withMaxLength(12));
+        assertEquals(9, parser.parse("x + x + x").evaluate(), 0);
+        assertRejected("x+x+x+x", ExpressionParseException.Reason.TOO_MANY_NODES, 6);
+        assertRejected("x + 1 + 2 + 3", ExpressionParseException.Reason.TOO_LONG, 12);
+        assertRejected("x + y", ExpressionParseException.Reason.UNKNOWN_NAME, 4);
+        assertRejected("x + )", ExpressionParseException.Reason.SYNTAX, 4);
+        try {
+            ParseLimits.DEFAULT.withMaxNodes(0);
+            fail("Expected a limit of 0 to be rejected");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("Parse limits must be positive", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void lengthIsCheckedBeforeTheCacheTest() {
+        final ExpressionCache cache = new ExpressionCache(16);
+        parser.setExpressionCache(cache);
+        parser.parse("x + 1 + 2 + 3");
+        parser.setParseLimits(ParseLimits.DEFAULT.withMaxLength(12));
+        assertRejected("x + 1 + 2 + 3", ExpressionParseException.Reason.TOO_LONG, 12);
+
+        final ExpressionCompiler compiler = new ExpressionCompiler(parser.getRegistry(),
+                Collections.singletonMap("x", 1.0), cache).withLimits(ParseLimits.DEFAULT.withMaxLength(4));
+        assertEquals(ParseLimits.DEFAULT.withMaxLength(4).getMaxLength(), compiler.getLimits().getMaxLength());
+        try {
+            compiler.compile("x + 1 + 2 + 3");
+            fail("Expected the compiler's length limit to apply to cached expressions");
+        } catch (ExpressionParseException ex) {
+            assertEquals(ExpressionParseException.Reason.TOO_LONG, ex.getReason());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.recursivedescentmathparser.tests;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.Expression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.codegen.BytecodeCompiler;
+import com.recursivedescentmathparser.parser.metrics.Histogram;
+import com.recursivedescentmathparser.parser.metrics.HistogramSnapshot;
+import com.recursivedescentmathparser.parser.metrics.MetricsSnapshot;
+import com.recursivedescentmathparser.parser.metrics.ParserMetrics;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ParserMetricsTest {
+
+    private MathParser parser;
+    private ParserMetrics metrics;
+
+    @Before
+    public void setUp() {
+        parser = new MathParser();
+        parser.addVariable("x", 2);
+        metrics = new ParserMetrics();
+    }
+
+    @Test
+    public void histogramTest() {
+        final Histogram histogram = new Histogram();
+        for (long value = 1; value <= 1000; ++value) {
+            histogram.record(value);
+        }
+        histogram.record(Long.MAX_VALUE);
+        final HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(1001, snapshot.getCount());
+        assertEquals(1, snapshot.getMin());
+        assertEquals(Long.MAX_VALUE, snapshot.getMax());
+        for (double percentile : new double[]{10, 50, 90, 99}) {
+            final long value = snapshot.valueAtPercentile(percentile);
+            final double exact = percentile * 10.01;
+            assertTrue(percentile + ": " + value, value >= exact - 1 && value <= exact * (1 + 1.0 / 16) + 1);
+        }
+        assertEquals(Long.MAX_VALUE, snapshot.valueAtPercentile(100));
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getP99());
+    }
+
+    @Test
+    public void parseAndEvaluationTest() {
+        parser.setMetrics(metrics);
+        parser.parse("sin(x) + 1");
+        parser.parse("x");
+        final CompiledExpression compiled = metrics.instrument("wave",
+                new BytecodeCompiler().compile(parser.compile("sin(x)*sin(x) + max(x, 1, cos(x))")));
+        final Expression parsed = metrics.instrument("parsed", parser.parse("x*3"));
+        for (int i = 0; i < 100; ++i) {
+            compiled.evaluate(new double[]{i});
+        }
+        assertEquals(6, parsed.evaluate(), 0);
+
+        final MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(3, snapshot.getParseTime().getCount());
+        assertEquals(4, snapshot.getParseNodeCount().getMax());
+        assertEquals(1, snapshot.getParseNodeCount().getMin());
+        assertEquals(100, snapshot.getFormula("wave").getEvaluationCount());
+        assertEquals(100, snapshot.getFormula("wave").getLatency().getCount());
+        assertEquals(1, snapshot.getFormula("parsed").getEvaluationCount());
+        assertEquals("[sin=200, cos=100]", snapshot.getHottestFunctions(2).toString());
+        assertEquals(3, snapshot.getHottestFunctions(10).size());
+
+        metrics.reset();
+        assertEquals(0, metrics.snapshot().getFormula("wave").getEvaluationCount());
+        parser.setMetrics(null);
+        parser.parse("x");
+        assertEquals(0, metrics.snapshot().getParseTime().getCount());
+    }
+
+    @Test
+    public void disabledAndSampledTest() {
+        final CompiledExpression compiled = metrics.instrument("f", parser.compile("x + 1"));
+        metrics.setEnabled(false);
+        assertEquals(4, compiled.evaluate(new double[]{3}), 0);
+        assertEquals(0, metrics.snapshot().getFormula("f").getEvaluationCount());
+
+        metrics.setEnabled(true);
+        metrics.setSampleInterval(64);
+        for (int i = 0; i < 10000; ++i) {
+            compiled.evaluate(new double[]{i});
+        }
+        assertEquals(10000, metrics.snapshot().getFormula("f").getEvaluationCount());
+        final long timed = metrics.snapshot().getFormula("f").getLatency().getCount();
+        assertTrue(String.valueOf(timed), timed > 50 && timed < 400);
+    }
+
+    @Test
+    public void jmxTest() throws Exception {
+        parser.setMetrics(metrics);
+        parser.parse("sqrt(x)");
+        metrics.instrument("root", parser.compile("sqrt(x)")).evaluate(new double[]{4});
+        final ObjectName name = metrics.register("jmxTest");
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertTrue(server.isRegistered(name));
+            assertEquals(1L, ((CompositeData) server.getAttribute(name, "ParseTime")).get("count"));
+            final CompositeData[] formulas = (CompositeData[]) server.getAttribute(name, "Formulas");
+            assertEquals("root", formulas[0].get("name"));
+            assertEquals(1L, formulas[0].get("evaluationCount"));
+            final CompositeData[] functions = (CompositeData[]) server.getAttribute(name, "HottestFunctions");
+            assertEquals("sqrt", functions[0].get("name"));
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, ((CompositeData) server.getAttribute(name, "ParseTime")).get("count"));
+        } finally {
+            metrics.unregister();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
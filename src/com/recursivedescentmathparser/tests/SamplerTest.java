@@ -0,0 +1,122 @@
+package com.recursivedescentmathparser.tests;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.sampling.Sampler;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SamplerTest {
+
+    private MathParser parser;
+
+    @Before
+    public void setUp() {
+        parser = new MathParser();
+        parser.addVariable("exis", 3.0);
+        parser.addVariable("a", 2.0);
+    }
+
+    @Test
+    public void sampleMatchesRebindingTest() {
+        final CompiledExpression parabola = parser.compile("exis^2");
+        final double[] out = new Sampler(parabola, "exis").sample(-20, 20, 41);
+        for (int i = 0; i < out.length; ++i) {
+            final double x = -20.0 + i;
+            parser.addVariable("exis", x);
+            assertEquals(parser.parse("exis^2").evaluate(), out[i], 0);
+        }
+
+        parser.addFunction("degToRad", Math::toRadians);
+        parser.addVariable("angle", -2 * Math.PI);
+        final Sampler sine = new Sampler(parser.compile("sin(degToRad(angle))"), "angle");
+        final double[] buffer = new double[73];
+        sine.sample(-180, 180, buffer);
+        for (int i = 0; i < buffer.length; ++i) {
+            assertEquals(Math.sin(Math.toRadians(-180.0 + 5 * i)), buffer[i], 1e-12);
+        }
+    }
+
+    @Test
+    public void otherVariablesTest() {
+        final Sampler sampler = new Sampler(parser.compile("a*exis + 1"), "exis");
+        assertEquals(7, sampler.sample(3, 3, 1)[0], 0);
+        assertEquals(-2, sampler.withValue("a", -1).sample(3, 3, 1)[0], 0);
+        assertEquals(7, sampler.sample(3, 3, 1)[0], 0);
+        assertEquals(2, new Sampler(parser.compile("a"), "exis").sample(0, 1, 2)[1], 0);
+        try {
+            sampler.withValue("y", 1);
+            fail("Expected an unknown variable to be rejected");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("Expression has no variable y", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void iteratorTest() {
+        final Sampler sampler = new Sampler(parser.compile("exis*2"), "exis");
+        final PrimitiveIterator.OfDouble values = sampler.iterator(0, 1, 1_000_001);
+        long count = 0;
+        double last = Double.NaN;
+        while (values.hasNext()) {
+            last = values.nextDouble();
+            assertEquals(2 * Sampler.positionOf(0, 1, 1_000_001, count), last, 0);
+            ++count;
+        }
+        assertEquals(1_000_001, count);
+        assertEquals(2, last, 0);
+        assertFalse(values.hasNext());
+        try {
+            values.nextDouble();
+            fail("Expected the iterator to be exhausted");
+        } catch (NoSuchElementException expected) {
+            // exhausted
+        }
+    }
+
+    @Test
+    public void adaptiveSamplingRefinesWhereTheCurveBendsTest() {
+        final Sampler sampler = new Sampler(parser.compile("abs(exis - 1.3) + exis/2"), "exis");
+        final double[] xs = new double[200], ys = new double[200];
+        final int count = sampler.sampleAdaptive(-10, 10, 4, 1e-3, xs, ys);
+        assertTrue("Only the kink should be refined, got " + count, count > 5 && count < 60);
+        int nearKink = 0;
+        for (int i = 0; i < count; ++i) {
+            if (i > 0) assertTrue(xs[i] > xs[i - 1]);
+            assertEquals(Math.abs(xs[i] - 1.3) + xs[i] / 2, ys[i], 1e-12);
+            if (Math.abs(xs[i] - 1.3) < 0.01) ++nearKink;
+        }
+        assertEquals(-10, xs[0], 0);
+        assertEquals(10, xs[count - 1], 0);
+        assertTrue("Points should gather at the kink, got " + nearKink, nearKink >= 5);
+
+        // a straight line needs no refinement
+        assertEquals(5, new Sampler(parser.compile("3*exis"), "exis").sampleAdaptive(-10, 10, 4, 1e-9, xs, ys));
+    }
+
+    @Test
+    public void adaptiveSamplingStaysInTheBuffersTest() {
+        final Sampler sampler = new Sampler(parser.compile("sqrt(exis) + sin(50*exis)"), "exis");
+        final double[] xs = new double[16], ys = new double[16];
+        assertEquals(16, sampler.sampleAdaptive(-1, 1, 8, 1e-6, xs, ys));
+        assertEquals(1, xs[15], 0);
+        for (int i = 1; i < 16; ++i) {
+            assertTrue(xs[i] > xs[i - 1]);
+        }
+        assertEquals(9, sampler.withMaxDepth(0).sampleAdaptive(-1, 1, 8, 1e-6, xs, ys));
+        try {
+            sampler.sampleAdaptive(-1, 1, 16, 1e-6, xs, ys);
+            fail("Expected buffers smaller than the grid to be rejected");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("Buffers must hold at least 17 points", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.recursivedescentmathparser.tests;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.interpreter.StackCompiler;
+import com.recursivedescentmathparser.parser.interpreter.StackProgram;
+import com.recursivedescentmathparser.parser.optimizer.CommonSubexpressionEliminator;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StackCompilerTest {
+
+    private static final double EPS = 1e-9;
+    private static final String[] FORMULAS = {
+            "2+2*2", "-x^2", "sin(x)^2+cos(x)^2", "sqrt(x*x+y*y)", "max(x,y)-min(x,y)", "log(2,8)*ln(E)",
+            "x>=y", "5e-7*y", "abs(-x)/exp(0)", "tg(x)+ctg(x)+sec(y)", "((x+1)*(y-1))/((x+1)*(y+1))",
+            "hypot(x,y)+signum(-y)", "tenfold(x)+twice(y,x)"
+    };
+    private MathParser parser;
+    private StackCompiler compiler;
+
+    @Before
+    public void setUp() {
+        parser = new MathParser();
+        parser.addVariable("x", 0.7);
+        parser.addVariable("y", -2.5);
+        parser.addPrimitiveFunction("tenfold", arg -> 10 * arg);
+        parser.setRegistry(parser.getRegistry().withBiFunction("twice", (a, b) -> 2 * a + b));
+        compiler = new StackCompiler();
+    }
+
+    @Test
+    public void matchesTreeEvaluationTest() {
+        for (String formula : FORMULAS) {
+            final CompiledExpression tree = parser.compile(formula);
+            final CompiledExpression program = compiler.compile(tree);
+            assertTrue(program.getEvaluator() instanceof StackProgram);
+            for (double x = -3; x <= 3; x += 0.75) {
+                final double[] values = new double[tree.getVariableCount()];
+                for (int slot = 0; slot < values.length; ++slot) {
+                    values[slot] = tree.getVariableNames().get(slot).equals("x") ? x : tree.getDefaultValue(slot);
+                }
+                assertEquals(formula, tree.evaluate(values), program.evaluate(values), 0);
+            }
+        }
+    }
+
+    @Test
+    public void temporariesAndConstantPoolTest() {
+        final CompiledExpression shared = new CommonSubexpressionEliminator(parser.getRegistry())
+                .eliminate(parser.compile("sqrt(x*x+y*y)/(1+sqrt(x*x+y*y))+1"));
+        final StackProgram program = compiler.lower(shared.getRoot());
+        assertEquals(shared.getRoot().evaluate(new double[]{3, 4, 0}), program.evaluate(new double[]{3, 4, 0}), EPS);
+        assertEquals(5.0 / 6 + 1, compiler.compile(shared).evaluate(new double[]{3, 4}), EPS);
+        assertEquals(1, program.getConstantCount());
+        assertEquals(5.0 / 6 + 1, program.evaluate(new double[]{3, 4, 0}, new double[program.getMaxStack()]), EPS);
+    }
+
+    @Test
+    public void nestedEvaluationTest() {
+        final StackProgram inner = compiler.lower(parser.compile("x*100+1").getRoot());
+        parser.addPrimitiveFunction("inner", arg -> inner.evaluate(new double[]{arg}));
+        final CompiledExpression outer = compiler.compile(parser.compile("(x+1)*(2+inner(x))"));
+        assertEquals((0.7 + 1) * (2 + 71), outer.evaluate(outer.newFrame()), EPS);
+    }
+}
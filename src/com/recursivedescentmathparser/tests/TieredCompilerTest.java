@@ -0,0 +1,156 @@
+package com.recursivedescentmathparser.tests;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.Expression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.ParsedExpression;
+import com.recursivedescentmathparser.parser.tiered.TieredCompiler;
+import com.recursivedescentmathparser.parser.tiered.TieredEvaluator;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TieredCompilerTest {
+
+    private static final String[] FORMULAS = {
+            "a*sin(x) + b", "sqrt(sqr(x) + sqr(a))/b", "if(a>0, x^a, -x)", "max(a, x, b) + sum(a, b, x, 1)",
+            "x*1 - 0 + a/b", "1/(a - x)", "ln(b)*cube(x) + hypot(a, b)"
+    };
+    private MathParser parser;
+    private TieredCompiler compiler;
+
+    @Before
+    public void setUp() {
+        parser = new MathParser();
+        parser.addVariable("x", 0);
+        parser.addVariable("a", 2);
+        parser.addVariable("b", -0.0);
+        compiler = new TieredCompiler(parser.getRegistry()).withThreshold(10).withExecutor(Runnable::run);
+    }
+
+    private static TieredEvaluator.Tier tierOf(final CompiledExpression expression) {
+        return ((TieredEvaluator) expression.getEvaluator()).getTier();
+    }
+
+    @Test
+    public void everyTierMatchesTheTreeTest() {
+        for (String formula : FORMULAS) {
+            final CompiledExpression plain = parser.compile(formula);
+            final CompiledExpression tiered = compiler.compile(plain);
+            final double[] variables = new double[plain.getFrameSize()];
+            for (int slot = 0; slot < plain.getVariableCount(); ++slot) {
+                variables[slot] = plain.getDefaultValue(slot);
+            }
+            final int x = plain.indexOf("x"), a = plain.indexOf("a");
+            for (int i = 0; i < 40; ++i) {
+                variables[x] = i * 0.25 - 3;
+                if (i == 25) {
+                    assertEquals(formula, TieredEvaluator.Tier.SPECIALIZED, tierOf(tiered));
+                    variables[a] = -1;
+                }
+                assertEquals(formula, plain.evaluate(variables), tiered.evaluate(variables), 0);
+                assertEquals(formula, Double.doubleToRawLongBits(plain.evaluate(variables)),
+                        Double.doubleToRawLongBits(tiered.evaluate(variables)));
+            }
+            assertEquals(formula, TieredEvaluator.Tier.COMPILED, tierOf(tiered));
+        }
+    }
+
+    @Test
+    public void tierUpKeepsEveryBitTest() {
+        parser.setTieredCompiler(compiler.withThreshold(2));
+        final Expression cubed = parser.parse("x^3"), squared = parser.parse("a*x^2 + sqr(x)");
+        final MathParser plain = new MathParser();
+        plain.addVariable("a", 2);
+        final Random random = new Random(42);
+        for (int i = 0; i < 10000; ++i) {
+            final double x = i == 0 ? 73.08781907032909 : random.nextDouble() * 200 - 100;
+            parser.addVariable("x", x);
+            plain.addVariable("x", x);
+            assertEquals(Double.doubleToRawLongBits(plain.parse("x^3").evaluate()),
+                    Double.doubleToRawLongBits(cubed.evaluate()));
+            assertEquals(Double.doubleToRawLongBits(plain.parse("a*x^2 + sqr(x)").evaluate()),
+                    Double.doubleToRawLongBits(squared.evaluate()));
+        }
+        assertEquals(TieredEvaluator.Tier.COMPILED,
+                tierOf(((ParsedExpression) cubed).getCompiledExpression()));
+        parser.addVariable("x", 73.08781907032909);
+        assertEquals(Double.doubleToRawLongBits(Math.pow(73.08781907032909, 3)),
+                Double.doubleToRawLongBits(cubed.evaluate()));
+    }
+
+    @Test
+    public void profilingTest() {
+        final CompiledExpression tiered = compiler.compile(parser.compile("a*x + b"));
+        final double[] variables = {0, 2, 1};
+        for (int i = 0; i < 9; ++i) {
+            variables[0] = i;
+            tiered.evaluate(variables);
+            assertEquals(TieredEvaluator.Tier.PROFILING, tierOf(tiered));
+        }
+        tiered.evaluate(variables);
+        assertEquals(TieredEvaluator.Tier.SPECIALIZED, tierOf(tiered));
+        assertEquals(21, tiered.evaluate(new double[]{10, 2, 1}), 0);
+
+        // every variable changed: nothing to specialize on
+        final CompiledExpression varying = compiler.compile(parser.compile("a*x"));
+        for (int i = 0; i < 10; ++i) {
+            varying.evaluate(new double[]{i, i});
+        }
+        assertEquals(TieredEvaluator.Tier.COMPILED, tierOf(varying));
+        assertEquals(12, varying.evaluate(new double[]{3, 4}), 0);
+    }
+
+    @Test
+    public void compilesInTheBackgroundTest() throws Exception {
+        final List<Runnable> pending = new ArrayList<>();
+        final CompiledExpression tiered = compiler.withExecutor(pending::add).compile(parser.compile("a*x"));
+        for (int i = 0; i < 100; ++i) {
+            assertEquals(2.0 * i, tiered.evaluate(new double[]{i, 2}), 0);
+        }
+        assertEquals(1, pending.size());
+        assertEquals(TieredEvaluator.Tier.PROFILING, tierOf(tiered));
+
+        final ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            final Future<?> evaluating = threads.submit(() -> {
+                for (int i = 0; i < 200000; ++i) {
+                    assertEquals(2.0 * i, tiered.evaluate(new double[]{i, 2}), 0);
+                }
+            });
+            threads.submit(pending.get(0)).get(10, TimeUnit.SECONDS);
+            evaluating.get(10, TimeUnit.SECONDS);
+        } finally {
+            threads.shutdown();
+        }
+        assertEquals(TieredEvaluator.Tier.SPECIALIZED, tierOf(tiered));
+    }
+
+    @Test
+    public void parsedExpressionsTest() {
+        parser.setTieredCompiler(compiler);
+        final Expression expression = parser.parse("a*sin(x) + 1");
+        assertTrue(((ParsedExpression) expression).getCompiledExpression().getEvaluator()
+                instanceof TieredEvaluator);
+        for (int i = 0; i < 30; ++i) {
+            parser.addVariable("x", i);
+            assertEquals(2 * Math.sin(i) + 1, expression.evaluate(), 0);
+        }
+        parser.addVariable("a", 3);
+        assertEquals(3 * Math.sin(29) + 1, expression.evaluate(), 0);
+
+        parser.setTieredCompiler(null);
+        assertTrue(!(((ParsedExpression) parser.parse("a*x")).getCompiledExpression().getEvaluator()
+                instanceof TieredEvaluator));
+    }
+}
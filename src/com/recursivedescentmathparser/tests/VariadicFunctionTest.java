@@ -0,0 +1,129 @@
+package com.recursivedescentmathparser.tests;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.MathParser;
+import com.recursivedescentmathparser.parser.ast.BiFunctionCallNode;
+import com.recursivedescentmathparser.parser.ast.VariadicFunctionCallNode;
+import com.recursivedescentmathparser.parser.batch.BatchEvaluator;
+import com.recursivedescentmathparser.parser.derivative.Differentiator;
+import com.recursivedescentmathparser.parser.optimizer.ExpressionOptimizer;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.recursivedescentmathparser.tests.BackEnds.assertMatchParser;
+import static com.recursivedescentmathparser.tests.BackEnds.evaluate;
+import static com.recursivedescentmathparser.tests.BackEnds.frame;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VariadicFunctionTest {
+
+    private static final String[] FORMULAS = {
+            "sum(x, y, 3, x*y)", "avg(x, y, 1)", "min(x, y, -1, sin(x))", "max(x, 2*y, 0.5)", "poly(x, 1, -2, 0.5, y)",
+            "sum(max(x, y, 0), poly(y, x, 1), min(x))", "weighted(x, 1, y, 2) + weighted(y, 3)", "x+y+x*y+1+sin(y)",
+            "max(max(max(x, y), x*y), 1)"
+    };
+    private static final double[] POINTS = {-2, -0.5, 0, 0.7, 1.5, 3};
+    private MathParser parser;
+
+    @Before
+    public void setUp() {
+        parser = new MathParser();
+        parser.addVariable("x", 0);
+        parser.addVariable("y", 0);
+        // sum of value * weight pairs
+        parser.addVariadicFunction("weighted", (arguments, offset, count) -> {
+            double sum = 0;
+            for (int i = offset; i + 1 < offset + count; i += 2) {
+                sum += arguments[i] * arguments[i + 1];
+            }
+            return sum;
+        }, true);
+    }
+
+    @Test
+    public void builtinsTest() {
+        assertEquals(10, evaluate(parser, "sum(1, 2, 3, x)", 4, 0), 0);
+        assertEquals(2.5, evaluate(parser, "avg(1, 2, 3, x)", 4, 0), 0);
+        assertEquals(-7, evaluate(parser, "min(3, y, 5, x)", -7, 1), 0);
+        assertEquals(9, evaluate(parser, "max(3, 9, x)", 4, 0), 0);
+        assertEquals(1 + 2 * 3 + 3 * 9 + 4 * 27, evaluate(parser, "poly(x, 1, 2, 3, 4)", 3, 0), 0);
+        assertEquals(5, evaluate(parser, "poly(x, 5)", 3, 0), 0);
+        assertEquals(Math.sin(2), evaluate(parser, "min(sin(x))", 2, 0), 0);
+        assertEquals(1 * 2 + 3 * 4, evaluate(parser, "weighted(1, 2, 3, x)", 4, 0), 0);
+        assertEquals(2 + (3 + 2) + 4,
+                evaluate(parser, "sum(2, sum(3, max(1, 2, sum(x, 1, 1))), min(4, 5, 6))", 0, 0), 0);
+    }
+
+    @Test
+    public void twoArgumentCallsKeepTheirFunctionTest() {
+        assertTrue(parser.compile("max(x, y)").getRoot() instanceof BiFunctionCallNode);
+        assertTrue(parser.compile("max(x, y, 1)").getRoot() instanceof VariadicFunctionCallNode);
+        assertEquals(5, evaluate(parser, "log(32, 2)", 0, 0), 1e-12);
+        for (String formula : new String[]{"hypot(1, 2, 3)", "log(8)", "sum(1, 2", "sum 1"}) {
+            try {
+                parser.parse(formula);
+                fail("Expected " + formula + " to be rejected");
+            } catch (RuntimeException ex) {
+                assertTrue(ex.getMessage(), ex.getMessage() != null);
+            }
+        }
+    }
+
+    @Test
+    public void optimizerFlattensChainsTest() {
+        final ExpressionOptimizer optimizer = new ExpressionOptimizer(parser.getRegistry()).withFlattening(true);
+        assertEquals("max(x, y, (x * y), 1.0)",
+                optimizer.optimize(parser.compile("max(max(max(x, y), x*y), 1)")).getRoot().toString());
+        assertEquals("sum(x, y, (x * y), 1.0, sin(y))",
+                optimizer.optimize(parser.compile("x+y+x*y+1+sin(y)")).getRoot().toString());
+        assertEquals("((x + y) + 1.0)", optimizer.optimize(parser.compile("x+y+1")).getRoot().toString());
+        assertEquals(4.5, optimizer.optimize(parser.compile("avg(3, 6)")).getRoot().evaluate(null), 0);
+        assertEquals("max(max(x, y), 1.0)", new ExpressionOptimizer(parser.getRegistry())
+                .optimize(parser.compile("max(max(x, y), 1)")).getRoot().toString());
+    }
+
+    @Test
+    public void backEndsMatchTreeTest() {
+        assertMatchParser(parser, new ExpressionOptimizer(parser.getRegistry()).withFlattening(true), FORMULAS, POINTS);
+    }
+
+    @Test
+    public void batchTest() {
+        for (String formula : FORMULAS) {
+            final CompiledExpression flattened = new ExpressionOptimizer(parser.getRegistry()).withFlattening(true)
+                    .optimize(parser.compile(formula));
+            final double[][] columns = new double[flattened.getVariableCount()][];
+            final double[] out = new double[POINTS.length];
+            for (int slot = 0; slot < columns.length; ++slot) {
+                columns[slot] = POINTS;
+            }
+            new BatchEvaluator(flattened).evaluate(columns, out);
+            for (int row = 0; row < out.length; ++row) {
+                assertEquals(formula, evaluate(parser, formula, POINTS[row], POINTS[row]), out[row], 0);
+            }
+        }
+    }
+
+    @Test
+    public void derivativeTest() {
+        final Differentiator differentiator = new Differentiator(parser.getRegistry());
+        for (String formula : new String[]{"sum(x, y, x*x)", "avg(sin(x), x, 2)", "max(x, y, 1)", "min(x*x, y)",
+                "poly(x, 1, 2, 3, 4)", "poly(y, x, x*x)", "poly(sin(x), 1, x)"}) {
+            final CompiledExpression derivative = differentiator.derivative(parser.compile(formula), "x");
+            for (double x : POINTS) {
+                final double h = 1e-6;
+                final double expected =
+                        (evaluate(parser, formula, x + h, 0.3) - evaluate(parser, formula, x - h, 0.3)) / (2 * h);
+                assertEquals(formula + " at " + x, expected, derivative.evaluate(frame(derivative, x, 0.3)), 1e-5);
+            }
+        }
+        try {
+            differentiator.derivative(parser.compile("weighted(x, 2)"), "x");
+            fail("Expected a variadic function without a derivative to be rejected");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains("weighted"));
+        }
+    }
+}
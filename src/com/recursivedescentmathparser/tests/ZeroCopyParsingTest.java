@@ -0,0 +1,79 @@
+package com.recursivedescentmathparser.tests;
+
+import com.recursivedescentmathparser.parser.CompiledExpression;
+import com.recursivedescentmathparser.parser.ExpressionCompiler;
+import com.recursivedescentmathparser.parser.MathParser;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ZeroCopyParsingTest {
+
+    private static final double EPS = 1e-9;
+    private MathParser parser;
+
+    @Before
+    public void setUp() {
+        parser = new MathParser();
+        parser.addVariable("x", 3);
+    }
+
+    @Test
+    public void charSequenceTest() {
+        final StringBuilder builder = new StringBuilder("sqrt(x*12)+");
+        builder.append("max(2,x)");
+        assertEquals(9, parser.parse(builder).evaluate(), EPS);
+        assertEquals(5e-7, parser.parse(new StringBuilder("5e-7")).evaluate(), EPS);
+        assertEquals(-5e+7, parser.parse(new StringBuilder("-5e+7")).evaluate(), EPS);
+    }
+
+    @Test
+    public void charArrayRegionTest() {
+        final char[] line = "a = 2*x^2 + 0.25; b = 1".toCharArray();
+        assertEquals(18.25, parser.parse(line, 4, 12).evaluate(), EPS);
+        final CompiledExpression compiled = parser.compiler().compile(line, 22, 1);
+        assertEquals(1, compiled.evaluate(compiled.newFrame()), EPS);
+    }
+
+    @Test
+    public void byteBufferTest() {
+        final ByteBuffer heap = ByteBuffer.wrap("id=42;value=x*10+0.5\n".getBytes(StandardCharsets.US_ASCII));
+        heap.position(12).limit(20);
+        assertEquals(30.5, parser.parse(heap).evaluate(), EPS);
+        assertEquals(12, heap.position());
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(32);
+        direct.put("cos(0)+1.5e3".getBytes(StandardCharsets.US_ASCII)).flip();
+        assertEquals(1501, parser.parse(direct).evaluate(), EPS);
+        assertEquals(0, direct.position());
+    }
+
+    @Test
+    public void utf8ByteBufferTest() {
+        parser.addPrimitiveBinaryOperator("\u00d7", (a, b) -> a * b);
+        final ByteBuffer buffer = ByteBuffer.wrap("x\u00d74".getBytes(StandardCharsets.UTF_8));
+        assertEquals(12, parser.parse(buffer).evaluate(), EPS);
+    }
+
+    @Test
+    public void numberLiteralsTest() {
+        final ExpressionCompiler compiler = parser.compiler();
+        final String[] literals = {"0.1", "0.2", "3.141592653589793", "123456789012345678901234", ".5", "7.",
+                "0.000000000000000000000000001", "9007199254740993"};
+        for (String literal : literals) {
+            final CompiledExpression compiled = compiler.compile(new StringBuilder(literal));
+            assertEquals(Double.parseDouble(literal), compiled.evaluate(compiled.newFrame()), 0);
+        }
+        try {
+            parser.parse(new StringBuilder("1.2.3"));
+            fail("Expected a malformed literal to be rejected");
+        } catch (NumberFormatException ex) {
+            assertEquals("multiple points", ex.getMessage());
+        }
+    }
+}